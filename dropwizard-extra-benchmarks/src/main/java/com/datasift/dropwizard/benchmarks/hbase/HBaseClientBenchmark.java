@@ -0,0 +1,120 @@
+package com.datasift.dropwizard.benchmarks.hbase;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datasift.dropwizard.hbase.BoundedHBaseClient;
+import com.datasift.dropwizard.hbase.HBaseClient;
+import com.datasift.dropwizard.hbase.InstrumentedHBaseClient;
+import com.datasift.dropwizard.hbase.TrackingHBaseClient;
+import com.stumbleupon.async.Deferred;
+import io.dropwizard.util.Duration;
+import org.hbase.async.GetRequest;
+import org.hbase.async.KeyValue;
+import org.hbase.async.PutRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of the {@link HBaseClient} decorators built by {@link
+ * com.datasift.dropwizard.hbase.HBaseClientFactory}.
+ * <p/>
+ * Each request is dispatched through the decorator chain to a {@link StubHBaseClient}, which
+ * completes it immediately, so only the cost of the decorators themselves is measured. Run with
+ * {@code -prof gc} to compare the allocation per-request of each chain.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HBaseClientBenchmark {
+
+    /**
+     * The decorator chains to measure.
+     */
+    public enum Chain {
+
+        /**
+         * No decorators, to provide a baseline.
+         */
+        NONE {
+            @Override
+            HBaseClient build(final HBaseClient client, final MetricRegistry registry) {
+                return client;
+            }
+        },
+
+        /**
+         * A {@link BoundedHBaseClient}.
+         */
+        BOUNDED {
+            @Override
+            HBaseClient build(final HBaseClient client, final MetricRegistry registry) {
+                return new BoundedHBaseClient(client, MAX_REQUESTS);
+            }
+        },
+
+        /**
+         * An {@link InstrumentedHBaseClient}.
+         */
+        INSTRUMENTED {
+            @Override
+            HBaseClient build(final HBaseClient client, final MetricRegistry registry) {
+                return new InstrumentedHBaseClient(client, registry, NAME);
+            }
+        },
+
+        /**
+         * An {@link InstrumentedHBaseClient} wrapping a {@link BoundedHBaseClient}.
+         */
+        STACKED {
+            @Override
+            HBaseClient build(final HBaseClient client, final MetricRegistry registry) {
+                return new InstrumentedHBaseClient(
+                        new BoundedHBaseClient(client, MAX_REQUESTS), registry, NAME);
+            }
+        },
+
+        /**
+         * A {@link TrackingHBaseClient}, which is equivalent to {@link #STACKED}.
+         */
+        TRACKING {
+            @Override
+            HBaseClient build(final HBaseClient client, final MetricRegistry registry) {
+                return new TrackingHBaseClient(
+                        client, registry, NAME, MAX_REQUESTS, Duration.seconds(1));
+            }
+        };
+
+        private static final String NAME = "benchmark";
+        private static final int MAX_REQUESTS = 1000;
+
+        abstract HBaseClient build(HBaseClient client, MetricRegistry registry);
+    }
+
+    @Param
+    public Chain chain;
+
+    private HBaseClient client;
+    private PutRequest put;
+    private GetRequest get;
+
+    @Setup
+    public void setUp() {
+        client = chain.build(new StubHBaseClient(), new MetricRegistry());
+        put = new PutRequest("table", "row", "family", "qualifier", "value");
+        get = new GetRequest("table", "row");
+    }
+
+    @Benchmark
+    public Deferred<Object> put() {
+        return client.put(put);
+    }
+
+    @Benchmark
+    public Deferred<ArrayList<KeyValue>> get() {
+        return client.get(get);
+    }
+}
@@ -0,0 +1,156 @@
+package com.datasift.dropwizard.benchmarks.hbase;
+
+import com.datasift.dropwizard.hbase.HBaseClient;
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
+import com.stumbleupon.async.Deferred;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+import org.hbase.async.*;
+import org.jboss.netty.util.Timer;
+
+import java.util.ArrayList;
+
+/**
+ * An {@link HBaseClient} that completes every request immediately, without doing any work.
+ * <p/>
+ * This stands in for the {@link com.datasift.dropwizard.hbase.HBaseClientProxy} at the bottom of
+ * a decorator chain, so that the cost of the decorators can be measured in isolation. The
+ * underlying {@link org.hbase.async.HBaseClient} is final and connects to a cluster on first use,
+ * so it can't be used for this purpose.
+ */
+public class StubHBaseClient implements HBaseClient {
+
+    private static final ArrayList<KeyValue> NO_CELLS = new ArrayList<>(0);
+
+    private Duration flushInterval = Duration.seconds(1);
+    private Size incrementBufferSize = Size.kilobytes(64);
+
+    @Override
+    public Duration getFlushInterval() {
+        return flushInterval;
+    }
+
+    @Override
+    public Size getIncrementBufferSize() {
+        return incrementBufferSize;
+    }
+
+    @Override
+    public Duration setFlushInterval(final Duration flushInterval) {
+        final Duration previous = this.flushInterval;
+        this.flushInterval = flushInterval;
+        return previous;
+    }
+
+    @Override
+    public Size setIncrementBufferSize(final Size incrementBufferSize) {
+        final Size previous = this.incrementBufferSize;
+        this.incrementBufferSize = incrementBufferSize;
+        return previous;
+    }
+
+    @Override
+    public Deferred<Boolean> create(final PutRequest edit) {
+        return Deferred.fromResult(true);
+    }
+
+    @Override
+    public Deferred<Long> bufferIncrement(final AtomicIncrementRequest request) {
+        return Deferred.fromResult(1L);
+    }
+
+    @Override
+    public Deferred<Long> increment(final AtomicIncrementRequest request) {
+        return Deferred.fromResult(1L);
+    }
+
+    @Override
+    public Deferred<Long> increment(final AtomicIncrementRequest request, final Boolean durable) {
+        return Deferred.fromResult(1L);
+    }
+
+    @Override
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final byte[] expected) {
+        return Deferred.fromResult(true);
+    }
+
+    @Override
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final String expected) {
+        return Deferred.fromResult(true);
+    }
+
+    @Override
+    public Deferred<Object> delete(final DeleteRequest request) {
+        return Deferred.fromResult(null);
+    }
+
+    @Override
+    public Deferred<Object> ensureTableExists(final byte[] table) {
+        return Deferred.fromResult(null);
+    }
+
+    @Override
+    public Deferred<Object> ensureTableExists(final String table) {
+        return Deferred.fromResult(null);
+    }
+
+    @Override
+    public Deferred<Object> ensureTableFamilyExists(final byte[] table, final byte[] family) {
+        return Deferred.fromResult(null);
+    }
+
+    @Override
+    public Deferred<Object> ensureTableFamilyExists(final String table, final String family) {
+        return Deferred.fromResult(null);
+    }
+
+    @Override
+    public Deferred<Object> flush() {
+        return Deferred.fromResult(null);
+    }
+
+    @Override
+    public Deferred<ArrayList<KeyValue>> get(final GetRequest request) {
+        return Deferred.fromResult(NO_CELLS);
+    }
+
+    @Override
+    public Deferred<RowLock> lockRow(final RowLockRequest request) {
+        return Deferred.fromResult(null);
+    }
+
+    @Override
+    public RowScanner scan(final byte[] table) {
+        throw new UnsupportedOperationException("scanning is not supported by the stub client");
+    }
+
+    @Override
+    public RowScanner scan(final String table) {
+        throw new UnsupportedOperationException("scanning is not supported by the stub client");
+    }
+
+    @Override
+    public Deferred<Object> put(final PutRequest request) {
+        return Deferred.fromResult(null);
+    }
+
+    @Override
+    public Deferred<Object> shutdown() {
+        return Deferred.fromResult(null);
+    }
+
+    @Override
+    public ClientStats stats() {
+        throw new UnsupportedOperationException("stats are not supported by the stub client");
+    }
+
+    @Override
+    public Timer getTimer() {
+        throw new UnsupportedOperationException("the stub client has no timer");
+    }
+
+    @Override
+    public Deferred<Object> unlockRow(final RowLock lock) {
+        return Deferred.fromResult(null);
+    }
+}
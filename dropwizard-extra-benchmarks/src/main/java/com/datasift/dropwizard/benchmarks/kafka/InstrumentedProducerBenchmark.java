@@ -0,0 +1,82 @@
+package com.datasift.dropwizard.benchmarks.kafka;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datasift.dropwizard.kafka.producer.InstrumentedProducer;
+import com.datasift.dropwizard.kafka.producer.KafkaProducer;
+import kafka.producer.KeyedMessage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of an {@link InstrumentedProducer}.
+ * <p/>
+ * Messages are sent to a {@link KafkaProducer} that discards them, so only the cost of the
+ * instrumentation is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstrumentedProducerBenchmark {
+
+    @Param({"false", "true"})
+    public boolean instrumented;
+
+    private KafkaProducer<String, String> producer;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        final KafkaProducer<String, String> stub = new DiscardingProducer<>(blackhole);
+        producer = instrumented
+                ? new InstrumentedProducer<>(stub, new MetricRegistry(), "benchmark")
+                : stub;
+    }
+
+    @Benchmark
+    public void send() {
+        producer.send("topic", "key", "message");
+    }
+
+    /**
+     * A {@link KafkaProducer} that consumes messages in to a {@link Blackhole}.
+     */
+    static class DiscardingProducer<K, V> implements KafkaProducer<K, V> {
+
+        private final Blackhole blackhole;
+
+        DiscardingProducer(final Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void send(final String topic, final V message) {
+            blackhole.consume(message);
+        }
+
+        @Override
+        public void send(final String topic, final K key, final V message) {
+            blackhole.consume(key);
+            blackhole.consume(message);
+        }
+
+        @Override
+        public void send(final KeyedMessage<K, V> message) {
+            blackhole.consume(message);
+        }
+
+        @Override
+        public void send(final List<KeyedMessage<K, V>> messages) {
+            blackhole.consume(messages);
+        }
+
+        @Override
+        public void close() {
+            // nothing to close
+        }
+    }
+}
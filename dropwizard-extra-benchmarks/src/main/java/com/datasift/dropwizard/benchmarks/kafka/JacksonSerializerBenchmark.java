@@ -0,0 +1,87 @@
+package com.datasift.dropwizard.benchmarks.kafka;
+
+import com.datasift.dropwizard.kafka.serializer.JacksonDecoder;
+import com.datasift.dropwizard.kafka.serializer.JacksonEncoder;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.jackson.Jackson;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of the {@link JacksonEncoder} and {@link JacksonDecoder} for a typical
+ * message.
+ * <p/>
+ * Run with {@code -prof gc} to compare the allocation per-message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JacksonSerializerBenchmark {
+
+    private JacksonEncoder<Message> encoder;
+    private JacksonDecoder<Message> decoder;
+    private Message message;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        final ObjectMapper mapper = Jackson.newObjectMapper();
+        encoder = new JacksonEncoder<>(mapper);
+        decoder = new JacksonDecoder<>(mapper, Message.class);
+        message = new Message(
+                "d3c1a6f0-5b1e-4e2a-9f7c-2b8d1c9e4a11",
+                1404226800000L,
+                "the quick brown fox jumps over the lazy dog",
+                Arrays.asList("fox", "dog", "jumps"));
+        encoded = encoder.toBytes(message);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return encoder.toBytes(message);
+    }
+
+    @Benchmark
+    public Message decode() {
+        return decoder.fromBytes(encoded);
+    }
+
+    /**
+     * A message representative of those typically sent through Kafka.
+     */
+    public static class Message {
+
+        @JsonProperty
+        private String id;
+
+        @JsonProperty
+        private long timestamp;
+
+        @JsonProperty
+        private String content;
+
+        @JsonProperty
+        private List<String> tags;
+
+        Message() {
+            // for Jackson
+        }
+
+        Message(final String id,
+                final long timestamp,
+                final String content,
+                final List<String> tags) {
+            this.id = id;
+            this.timestamp = timestamp;
+            this.content = content;
+            this.tags = tags;
+        }
+    }
+}
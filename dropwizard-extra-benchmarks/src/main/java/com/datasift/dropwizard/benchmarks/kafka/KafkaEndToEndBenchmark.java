@@ -0,0 +1,285 @@
+package com.datasift.dropwizard.benchmarks.kafka;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.UniformReservoir;
+import com.datasift.dropwizard.kafka.KafkaConsumerFactory;
+import com.datasift.dropwizard.kafka.KafkaProducerFactory;
+import com.datasift.dropwizard.kafka.consumer.MessageProcessor;
+import com.datasift.dropwizard.kafka.consumer.SynchronousConsumer;
+import com.datasift.dropwizard.kafka.producer.KafkaProducer;
+import com.datasift.dropwizard.kafka.testing.EmbeddedKafkaCluster;
+import com.datasift.dropwizard.kafka.testing.EmbeddedZooKeeper;
+import com.google.common.collect.ImmutableMap;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+import kafka.producer.Partitioner;
+import kafka.serializer.DefaultEncoder;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures end-to-end throughput, latency and rebalance time of consumers built by a {@link
+ * KafkaConsumerFactory} and producers built by a {@link KafkaProducerFactory}.
+ * <p/>
+ * Unlike the JMH benchmarks, this runs against real, in-process ZooKeeper and Kafka brokers, so
+ * the results include the network stack, the broker and the consumer's fetcher threads. No
+ * external services are required, so runs are reproducible locally:
+ * <p/>
+ * <code>
+ *     java -cp benchmarks.jar com.datasift.dropwizard.benchmarks.kafka.KafkaEndToEndBenchmark
+ *          messages=100000 partitions=4 fetchSize=1MB queuedChunks=10 async=true
+ * </code>
+ * <p/>
+ * Each message carries the {@link System#nanoTime()} at which it was sent, from which the
+ * consumer records its end-to-end latency. Measurement starts once the consumer has been assigned
+ * its partitions, so the initial rebalance is excluded.
+ * <p/>
+ * Rebalance time is measured as the time from a second consumer joining the group until it
+ * receives its first message, while messages continue to be produced. Partitions are assigned to
+ * streams by range, so each consumer runs half as many streams as there are partitions, by
+ * default, to ensure the joining consumer is assigned some of them.
+ */
+public class KafkaEndToEndBenchmark {
+
+    private static final String TOPIC = "benchmark";
+    private static final String GROUP = "benchmark";
+    private static final Class<? extends Partitioner> DEFAULT_PARTITIONER = null;
+    private static final Duration TIMEOUT = Duration.minutes(5);
+
+    private final int messages;
+    private final int messageSize;
+    private final int partitions;
+    private final int streams;
+    private final Size fetchSize;
+    private final int queuedChunks;
+    private final boolean async;
+    private final int batchSize;
+    private final boolean rebalance;
+
+    private final Histogram latency = new Histogram(new UniformReservoir(100000));
+    private volatile long measureFrom = Long.MAX_VALUE;
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args options for the benchmark, each formatted as: name=value
+     *
+     * @throws Exception if the benchmark fails.
+     */
+    public static void main(final String[] args) throws Exception {
+        final Map<String, String> options = new HashMap<>();
+        for (final String arg : args) {
+            final int i = arg.indexOf('=');
+            if (i < 1) {
+                throw new IllegalArgumentException("Options must be formatted as name=value: " + arg);
+            }
+            options.put(arg.substring(0, i), arg.substring(i + 1));
+        }
+
+        new KafkaEndToEndBenchmark(options).run();
+        System.exit(0);
+    }
+
+    private KafkaEndToEndBenchmark(final Map<String, String> options) {
+        this.messages = Integer.parseInt(option(options, "messages", "100000"));
+        this.messageSize = Math.max(8, Integer.parseInt(option(options, "messageSize", "100")));
+        this.partitions = Integer.parseInt(option(options, "partitions", "4"));
+        this.streams = Integer.parseInt(
+                option(options, "streams", Integer.toString(Math.max(1, partitions / 2))));
+        this.fetchSize = Size.parse(option(options, "fetchSize", "300KB"));
+        this.queuedChunks = Integer.parseInt(option(options, "queuedChunks", "100"));
+        this.async = Boolean.parseBoolean(option(options, "async", "true"));
+        this.batchSize = Integer.parseInt(option(options, "batchSize", "200"));
+        this.rebalance = Boolean.parseBoolean(option(options, "rebalance", "true"));
+
+        if (rebalance && streams * 2 > partitions) {
+            throw new IllegalArgumentException(
+                    "Measuring rebalance requires at least twice as many partitions as streams");
+        }
+    }
+
+    private void run() throws Exception {
+        final EmbeddedZooKeeper zookeeper = new EmbeddedZooKeeper();
+        final EmbeddedKafkaCluster kafka = new EmbeddedKafkaCluster(zookeeper);
+        final ScheduledExecutorService executor = Executors.newScheduledThreadPool(streams * 2);
+
+        zookeeper.start();
+        kafka.start();
+        try {
+            kafka.createTopic(TOPIC, partitions, 1, Duration.seconds(30));
+
+            final KafkaProducerFactory producerFactory = kafka.newProducerFactory();
+            producerFactory.setAsync(async);
+            producerFactory.setAsyncBatchSize(batchSize);
+            producerFactory.setAsyncBatchInterval(Duration.milliseconds(10));
+            final KafkaProducer<byte[], byte[]> producer = producerFactory.build(
+                    DefaultEncoder.class, DefaultEncoder.class, DEFAULT_PARTITIONER, "benchmark");
+
+            final KafkaConsumerFactory consumerFactory =
+                    kafka.newConsumerFactory(GROUP, ImmutableMap.of(TOPIC, streams));
+            consumerFactory.setFetchSize(fetchSize);
+            consumerFactory.setQueuedChunks(queuedChunks);
+
+            try {
+                throughput(producer, consumerFactory, executor);
+                if (rebalance) {
+                    rebalance(producer, consumerFactory, executor);
+                }
+            } finally {
+                producer.close();
+            }
+        } finally {
+            executor.shutdownNow();
+            kafka.stop();
+            zookeeper.stop();
+        }
+    }
+
+    private void throughput(final KafkaProducer<byte[], byte[]> producer,
+                            final KafkaConsumerFactory factory,
+                            final ScheduledExecutorService executor) throws Exception {
+        final CountDownLatch firstMessage = new CountDownLatch(1);
+        final CountDownLatch received = new CountDownLatch(messages);
+        final SynchronousConsumer<byte[], byte[]> consumer = factory
+                .processWith(new LatencyRecordingProcessor(firstMessage, received))
+                .build(executor);
+
+        // warm up until the consumer has been assigned its partitions
+        produceUntil(producer, consumer, firstMessage);
+
+        final long start = System.nanoTime();
+        measureFrom = start;
+        for (int i = 0; i < messages; i++) {
+            send(producer, i);
+        }
+        final long sent = System.nanoTime() - start;
+        await(received);
+        final long elapsed = System.nanoTime() - start;
+
+        final double seconds = elapsed / (double) TimeUnit.SECONDS.toNanos(1);
+        final Snapshot snapshot = latency.getSnapshot();
+        System.out.printf("messages:     %d x %d bytes, %d partitions, %d streams%n",
+                messages, messageSize, partitions, streams);
+        System.out.printf("producer:     %.0f msg/s%n",
+                messages / (sent / (double) TimeUnit.SECONDS.toNanos(1)));
+        System.out.printf("end-to-end:   %.0f msg/s, %.2f MB/s%n",
+                messages / seconds, messages * (double) messageSize / seconds / (1024 * 1024));
+        System.out.printf("latency (ms): p50=%.2f p95=%.2f p99=%.2f p999=%.2f max=%.2f%n",
+                millis(snapshot.getMedian()),
+                millis(snapshot.get95thPercentile()),
+                millis(snapshot.get99thPercentile()),
+                millis(snapshot.get999thPercentile()),
+                millis(snapshot.getMax()));
+
+        // leave the first consumer running, so the rebalance has to move partitions away from it
+        if (!rebalance) {
+            consumer.stop();
+        }
+    }
+
+    private void rebalance(final KafkaProducer<byte[], byte[]> producer,
+                           final KafkaConsumerFactory factory,
+                           final ScheduledExecutorService executor) throws Exception {
+        final CountDownLatch firstMessage = new CountDownLatch(1);
+        final SynchronousConsumer<byte[], byte[]> joining = factory
+                .processWith(new LatencyRecordingProcessor(firstMessage, new CountDownLatch(0)))
+                .build(executor);
+
+        final long elapsed = produceUntil(producer, joining, firstMessage);
+        joining.stop();
+
+        System.out.printf("rebalance:    %.2f ms until a joining consumer received a message%n",
+                millis(elapsed));
+    }
+
+    /**
+     * Starts a consumer and produces messages until it receives one.
+     *
+     * @return the time, in nanoseconds, from starting the consumer until it received a message.
+     */
+    private long produceUntil(final KafkaProducer<byte[], byte[]> producer,
+                              final SynchronousConsumer<byte[], byte[]> consumer,
+                              final CountDownLatch firstMessage) throws Exception {
+        final AtomicBoolean producing = new AtomicBoolean(true);
+        final Thread background = new Thread("benchmark-producer") {
+            @Override
+            public void run() {
+                for (int i = 0; producing.get(); i++) {
+                    send(producer, i);
+                }
+            }
+        };
+        background.start();
+
+        try {
+            final long start = System.nanoTime();
+            consumer.start();
+            await(firstMessage);
+            return System.nanoTime() - start;
+        } finally {
+            producing.set(false);
+            background.join();
+        }
+    }
+
+    private static void await(final CountDownLatch latch) throws Exception {
+        if (!latch.await(TIMEOUT.getQuantity(), TIMEOUT.getUnit())) {
+            throw new TimeoutException("Messages were not consumed within " + TIMEOUT);
+        }
+    }
+
+    private void send(final KafkaProducer<byte[], byte[]> producer, final int i) {
+        final ByteBuffer message = ByteBuffer.allocate(messageSize);
+        message.putLong(0, System.nanoTime());
+        producer.send(TOPIC, ByteBuffer.allocate(4).putInt(0, i).array(), message.array());
+    }
+
+    private static double millis(final double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static String option(final Map<String, String> options,
+                                 final String name,
+                                 final String defaultValue) {
+        final String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * Records the end-to-end latency of each message.
+     */
+    private class LatencyRecordingProcessor extends MessageProcessor<byte[], byte[]> {
+
+        private final CountDownLatch firstMessage;
+        private final CountDownLatch received;
+
+        LatencyRecordingProcessor(final CountDownLatch firstMessage,
+                                  final CountDownLatch received) {
+            this.firstMessage = firstMessage;
+            this.received = received;
+        }
+
+        @Override
+        public void process(final byte[] key,
+                            final byte[] message,
+                            final String topic,
+                            final int partition,
+                            final long offset) {
+            final long sentAt = ByteBuffer.wrap(message).getLong(0);
+            firstMessage.countDown();
+            if (sentAt >= measureFrom) {
+                latency.update(System.nanoTime() - sentAt);
+                received.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.datasift.dropwizard.benchmarks.util;
+
+import com.datasift.dropwizard.util.Classes;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of reflectively instantiating objects with {@link Classes}.
+ * <p/>
+ * {@link Classes#newInstance(Class, Object...)} searches for an applicable {@link Constructor} on
+ * every call; this is compared with invoking a previously resolved {@link Constructor} and with
+ * invoking the constructor directly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassesBenchmark {
+
+    private String message;
+    private Constructor<StringBuilder> constructor;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        message = "benchmark";
+        constructor = Classes.getApplicableConstructor(
+                StringBuilder.class, Classes.of(message));
+    }
+
+    @Benchmark
+    public StringBuilder direct() {
+        return new StringBuilder(message);
+    }
+
+    @Benchmark
+    public StringBuilder resolvedConstructor() throws Exception {
+        return constructor.newInstance(message);
+    }
+
+    @Benchmark
+    public StringBuilder newInstance() throws Exception {
+        return Classes.newInstance(StringBuilder.class, message);
+    }
+}
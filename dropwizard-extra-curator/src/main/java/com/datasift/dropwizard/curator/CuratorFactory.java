@@ -1,11 +1,30 @@
 package com.datasift.dropwizard.curator;
 
 import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+import com.datasift.dropwizard.curator.compression.InstrumentedCompressionProvider;
+import com.datasift.dropwizard.curator.compression.Lz4CompressionProvider;
+import com.datasift.dropwizard.curator.compression.SnappyCompressionProvider;
+import com.datasift.dropwizard.curator.compression.ThresholdCompressionProvider;
 import com.datasift.dropwizard.curator.ensemble.DropwizardConfiguredEnsembleProvider;
 import com.datasift.dropwizard.curator.ensemble.DropwizardConfiguredZooKeeperFactory;
+import com.datasift.dropwizard.curator.ensemble.EnsembleDiscoveryFactory;
+import com.datasift.dropwizard.curator.ensemble.EnsembleSource;
 import com.datasift.dropwizard.curator.health.CuratorHealthCheck;
+import com.datasift.dropwizard.curator.retry.BoundedTimeRetry;
+import com.datasift.dropwizard.curator.retry.BudgetedRetryPolicy;
+import com.datasift.dropwizard.curator.retry.DecorrelatedJitterRetry;
+import com.datasift.dropwizard.curator.retry.InstrumentedRetryPolicy;
+import com.datasift.dropwizard.curator.retry.RetryBudget;
 import com.datasift.dropwizard.zookeeper.ZooKeeperFactory;
+import com.datasift.dropwizard.zookeeper.ZooKeeperSessionRegistry;
+import com.datasift.dropwizard.zookeeper.cache.ZooKeeperCache;
+import com.datasift.dropwizard.zookeeper.health.ZooKeeperHealthMonitor;
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.curator.RetryPolicy;
 import org.apache.curator.framework.CuratorFramework;
@@ -13,11 +32,15 @@ import org.apache.curator.framework.CuratorFrameworkFactory;
 import io.dropwizard.setup.Environment;
 import org.apache.curator.framework.api.CompressionProvider;
 import org.apache.curator.framework.imps.GzipCompressionProvider;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
 import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.zookeeper.ZooKeeper;
 
 import javax.validation.Valid;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A factory for creating and managing {@link CuratorFramework} instances.
@@ -45,37 +68,133 @@ public class CuratorFactory {
          *
          * @see GzipCompressionProvider
          */
-        GZIP(new GzipCompressionProvider());
+        GZIP {
+            @Override
+            CompressionProvider createProvider() {
+                return new GzipCompressionProvider();
+            }
+        },
 
-        final private CompressionProvider provider;
+        /**
+         * LZ4 compression; much faster than GZIP, at the cost of a lower compression ratio.
+         *
+         * @see Lz4CompressionProvider
+         */
+        LZ4 {
+            @Override
+            CompressionProvider createProvider() {
+                return new Lz4CompressionProvider();
+            }
+        },
 
-        CompressionCodec(final CompressionProvider provider) {
-            this.provider = provider;
-        }
+        /**
+         * Snappy compression; much faster than GZIP, at the cost of a lower compression ratio.
+         *
+         * @see SnappyCompressionProvider
+         */
+        SNAPPY {
+            @Override
+            CompressionProvider createProvider() {
+                return new SnappyCompressionProvider();
+            }
+        };
+
+        private volatile CompressionProvider provider = null;
+
+        /**
+         * Creates the {@link CompressionProvider} for this codec.
+         * <p/>
+         * Providers are created on first use, so that codecs that aren't used never load their
+         * (possibly native) implementations.
+         *
+         * @return a new provider for this codec.
+         */
+        abstract CompressionProvider createProvider();
 
         /**
-         * Gets the {@link CompressionProvider} for this codec.
+         * Gets the {@link CompressionProvider} for this codec, creating it if necessary.
          *
          * @return the provider for this codec.
          */
         public CompressionProvider getProvider() {
+            CompressionProvider provider = this.provider;
+            if (provider == null) {
+                synchronized (this) {
+                    provider = this.provider;
+                    if (provider == null) {
+                        provider = createProvider();
+                        this.provider = provider;
+                    }
+                }
+            }
             return provider;
         }
     }
 
+    /**
+     * An enumeration of the policies available for retrying failed operations.
+     *
+     * @see #getRetryPolicy()
+     */
+    public enum RetryPolicyType {
+
+        /**
+         * Retry a bounded number of times, sleeping for a random exponential back-off.
+         *
+         * @see ExponentialBackoffRetry
+         */
+        EXPONENTIAL,
+
+        /**
+         * Retry a bounded number of times, sleeping for a decorrelated jitter back-off.
+         *
+         * @see DecorrelatedJitterRetry
+         */
+        DECORRELATED_JITTER,
+
+        /**
+         * Retry until a time limit has elapsed, sleeping for a random exponential back-off.
+         *
+         * @see BoundedTimeRetry
+         */
+        BOUNDED_TIME
+    }
+
     @Valid
     @NotNull
     protected ZooKeeperFactory ensemble = new ZooKeeperFactory();
 
+    @Valid
+    @NotNull
+    protected EnsembleDiscoveryFactory discovery = new EnsembleDiscoveryFactory();
+
     @Min(0)
     protected int maxRetries = 1;
 
     @NotNull
     protected Duration backOffBaseTime = Duration.seconds(1);
 
+    @NotNull
+    protected RetryPolicyType retryPolicy = RetryPolicyType.EXPONENTIAL;
+
+    @NotNull
+    protected Duration maxBackOffTime = Duration.seconds(30);
+
+    @NotNull
+    protected Duration maxRetryTime = Duration.minutes(1);
+
+    @Min(0)
+    protected int retryBudget = 0;
+
+    @NotNull
+    protected Duration retryBudgetInterval = Duration.seconds(1);
+
     @NotNull
     protected CompressionCodec compression = CompressionCodec.GZIP;
 
+    @NotNull
+    protected Size compressionThreshold = Size.bytes(0);
+
     /**
      * Returns a {@link ZooKeeperFactory} for the ZooKeeper ensemble to connect to.
      *
@@ -96,6 +215,28 @@ public class CuratorFactory {
         this.ensemble = factory;
     }
 
+    /**
+     * Returns the {@link EnsembleDiscoveryFactory} for discovering changes to the servers of the
+     * ensemble at runtime.
+     *
+     * @return a factory for the source of the servers of the ensemble.
+     */
+    @JsonProperty
+    public EnsembleDiscoveryFactory getDiscovery() {
+        return discovery;
+    }
+
+    /**
+     * Sets the {@link EnsembleDiscoveryFactory} for discovering changes to the servers of the
+     * ensemble at runtime.
+     *
+     * @param discovery a factory for the source of the servers of the ensemble.
+     */
+    @JsonProperty
+    public void setDiscovery(final EnsembleDiscoveryFactory discovery) {
+        this.discovery = discovery;
+    }
+
     /**
      * Returns the maximum number of retries to attempt to connect to the ensemble.
      *
@@ -141,18 +282,157 @@ public class CuratorFactory {
     }
 
     /**
-     * Returns a {@link RetryPolicy} for handling failed connection attempts.
+     * Returns the type of {@link RetryPolicy} for handling failed operations.
+     *
+     * @return the type of policy for retrying failed operations.
+     */
+    @JsonProperty("retryPolicy")
+    public RetryPolicyType getRetryPolicyType() {
+        return retryPolicy;
+    }
+
+    /**
+     * Sets the type of {@link RetryPolicy} for handling failed operations.
+     *
+     * @param type the type of policy for retrying failed operations.
+     */
+    @JsonProperty("retryPolicy")
+    public void setRetryPolicyType(final RetryPolicyType type) {
+        this.retryPolicy = type;
+    }
+
+    /**
+     * Returns the maximum time to wait between retries of a failed operation.
+     * <p/>
+     * Ignored by the {@link RetryPolicyType#EXPONENTIAL exponential} policy, which has no bound.
+     *
+     * @return the maximum time to wait before trying again.
+     */
+    @JsonProperty
+    public Duration getMaxBackOffTime() {
+        return maxBackOffTime;
+    }
+
+    /**
+     * Sets the maximum time to wait between retries of a failed operation.
+     * <p/>
+     * Ignored by the {@link RetryPolicyType#EXPONENTIAL exponential} policy, which has no bound.
+     *
+     * @param maxBackOffTime the maximum time to wait before trying again.
+     */
+    @JsonProperty
+    public void setMaxBackOffTime(final Duration maxBackOffTime) {
+        this.maxBackOffTime = maxBackOffTime;
+    }
+
+    /**
+     * Returns the maximum time to retry a failed operation for, when using the {@link
+     * RetryPolicyType#BOUNDED_TIME bounded-time} policy.
+     *
+     * @return the maximum time to retry a failed operation for.
+     */
+    @JsonProperty
+    public Duration getMaxRetryTime() {
+        return maxRetryTime;
+    }
+
+    /**
+     * Sets the maximum time to retry a failed operation for, when using the {@link
+     * RetryPolicyType#BOUNDED_TIME bounded-time} policy.
+     *
+     * @param maxRetryTime the maximum time to retry a failed operation for.
+     */
+    @JsonProperty
+    public void setMaxRetryTime(final Duration maxRetryTime) {
+        this.maxRetryTime = maxRetryTime;
+    }
+
+    /**
+     * Returns the maximum number of retries, per {@link #getRetryBudgetInterval() interval}, by
+     * every client of the ensemble in this process.
+     * <p/>
+     * Once the budget is exhausted, failed operations are abandoned without retrying, until it's
+     * replenished.
+     *
+     * @return the maximum number of retries per interval; or 0, for no limit.
+     *
+     * @see RetryBudget
+     */
+    @JsonProperty
+    public int getRetryBudget() {
+        return retryBudget;
+    }
+
+    /**
+     * Sets the maximum number of retries, per {@link #getRetryBudgetInterval() interval}, by
+     * every client of the ensemble in this process.
+     *
+     * @param retryBudget the maximum number of retries per interval; or 0, for no limit.
+     *
+     * @see RetryBudget
+     */
+    @JsonProperty
+    public void setRetryBudget(final int retryBudget) {
+        this.retryBudget = retryBudget;
+    }
+
+    /**
+     * Returns the interval over which the {@link #getRetryBudget() retry budget} is replenished.
+     *
+     * @return the interval over which the retry budget is replenished.
+     */
+    @JsonProperty
+    public Duration getRetryBudgetInterval() {
+        return retryBudgetInterval;
+    }
+
+    /**
+     * Sets the interval over which the {@link #getRetryBudget() retry budget} is replenished.
+     *
+     * @param interval the interval over which the retry budget is replenished.
+     */
+    @JsonProperty
+    public void setRetryBudgetInterval(final Duration interval) {
+        this.retryBudgetInterval = interval;
+    }
+
+    /**
+     * Returns a {@link RetryPolicy} for handling failed operations.
      * <p/>
-     * Always configures an {@link ExponentialBackoffRetry} based on the {@link #getMaxRetries()
-     * maximum retries} and {@link #getBackOffBaseTime() initial back-off} configured.
+     * Configures a policy of the {@link #getRetryPolicyType() configured type}, based on the
+     * {@link #getMaxRetries() maximum retries}, {@link #getBackOffBaseTime() initial back-off},
+     * {@link #getMaxBackOffTime() maximum back-off} and {@link #getMaxRetryTime() maximum retry
+     * time} configured. If a {@link #getRetryBudget() retry budget} is configured, retries are
+     * limited by a budget shared by every client of the ensemble in this process.
      *
-     * @return a {@link RetryPolicy} for handling failed connection attempts.
+     * @return a {@link RetryPolicy} for handling failed operations.
      *
-     * @see #getMaxRetries()
-     * @see #getBackOffBaseTime()
+     * @see #getRetryPolicyType()
+     * @see #getRetryBudget()
      */
     public RetryPolicy getRetryPolicy() {
-        return new ExponentialBackoffRetry((int) backOffBaseTime.toMilliseconds(), maxRetries);
+        final int baseSleepMs = (int) backOffBaseTime.toMilliseconds();
+        final RetryPolicy policy;
+        switch (getRetryPolicyType()) {
+            case DECORRELATED_JITTER:
+                policy = new DecorrelatedJitterRetry(
+                        baseSleepMs, maxBackOffTime.toMilliseconds(), maxRetries);
+                break;
+            case BOUNDED_TIME:
+                policy = new BoundedTimeRetry(
+                        baseSleepMs,
+                        maxBackOffTime.toMilliseconds(),
+                        maxRetryTime.toMilliseconds());
+                break;
+            default:
+                policy = new ExponentialBackoffRetry(baseSleepMs, maxRetries);
+                break;
+        }
+
+        return retryBudget > 0
+                ? new BudgetedRetryPolicy(policy, RetryBudget.shared(
+                        getZooKeeperFactory().getQuorumSpec(), retryBudget, retryBudgetInterval))
+                : policy;
     }
 
     /**
@@ -179,15 +459,50 @@ public class CuratorFactory {
         this.compression = codec;
     }
 
+    /**
+     * Returns the size of the smallest value to compress.
+     * <p/>
+     * If non-zero, smaller values, and values that don't shrink when compressed, are stored
+     * uncompressed. Each value is marked with whether it's compressed, so values written with a
+     * threshold can't be read without one, and vice versa.
+     *
+     * @return the size of the smallest value to compress; or 0, to compress every value.
+     *
+     * @see ThresholdCompressionProvider
+     */
+    @JsonProperty
+    public Size getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Sets the size of the smallest value to compress.
+     * <p/>
+     * If non-zero, smaller values, and values that don't shrink when compressed, are stored
+     * uncompressed. Each value is marked with whether it's compressed, so values written with a
+     * threshold can't be read without one, and vice versa.
+     *
+     * @param threshold the size of the smallest value to compress; or 0, to compress every value.
+     *
+     * @see ThresholdCompressionProvider
+     */
+    @JsonProperty
+    public void setCompressionThreshold(final Size threshold) {
+        this.compressionThreshold = threshold;
+    }
+
     /**
      * Returns a {@link CompressionProvider} to compress values with.
      *
      * @return the compression provider used to compress values.
      *
      * @see CompressionCodec
+     * @see #getCompressionThreshold()
      */
     public CompressionProvider getCompressionProvider() {
-        return getCompressionCodec().getProvider();
+        final CompressionProvider provider = getCompressionCodec().getProvider();
+        final long threshold = getCompressionThreshold().toBytes();
+        return threshold > 0 ? new ThresholdCompressionProvider(provider, threshold) : provider;
     }
 
     /**
@@ -213,15 +528,39 @@ public class CuratorFactory {
     public CuratorFramework build(final Environment environment, final String name) {
         final ZooKeeperFactory factory = getZooKeeperFactory();
         final String namespace = factory.getNamespace();
+
+        // the dynamic configuration can only be read once the framework has connected
+        final AtomicReference<CuratorFramework> built = new AtomicReference<>();
+        final Optional<EnsembleSource> source = getDiscovery().build(new Supplier<ZooKeeper>() {
+            @Override
+            public ZooKeeper get() {
+                final CuratorFramework framework = built.get();
+                return framework == null || !framework.getZookeeperClient().isConnected()
+                        ? null
+                        : zookeeper(framework).get();
+            }
+        });
+
         final CuratorFrameworkFactory.Builder builder = CuratorFrameworkFactory.builder()
-                .zookeeperFactory(new DropwizardConfiguredZooKeeperFactory(environment, name))
-                .ensembleProvider(new DropwizardConfiguredEnsembleProvider(factory))
+                .zookeeperFactory(new DropwizardConfiguredZooKeeperFactory(
+                        environment,
+                        name,
+                        factory.isShareSession() ? ZooKeeperSessionRegistry.getDefault() : null,
+                        factory.getAuth()))
+                .ensembleProvider(new DropwizardConfiguredEnsembleProvider(
+                        factory, source.orNull(), getDiscovery().getRefreshInterval()))
                 .connectionTimeoutMs((int) factory.getConnectionTimeout().toMilliseconds())
                 .threadFactory(new ThreadFactoryBuilder().setNameFormat(name + "-%d").build())
                 .sessionTimeoutMs((int) factory.getSessionTimeout().toMilliseconds())
                 .namespace(namespace.startsWith("/") ? namespace.substring(1) : namespace)
-                .compressionProvider(getCompressionProvider())
-                .retryPolicy(getRetryPolicy())
+                .compressionProvider(new InstrumentedCompressionProvider(
+                        getCompressionProvider(),
+                        environment.metrics(),
+                        MetricRegistry.name(name, "compression")))
+                .retryPolicy(new InstrumentedRetryPolicy(
+                        getRetryPolicy(),
+                        environment.metrics(),
+                        MetricRegistry.name(name, "retry")))
                 .canBeReadOnly(factory.isReadOnly());
 
         // add optional auth details
@@ -231,10 +570,109 @@ public class CuratorFactory {
         }
 
         final CuratorFramework framework = builder.build();
+        built.set(framework);
 
-        environment.healthChecks().register(name, new CuratorHealthCheck(framework));
+        // Curator connects without a chroot, so the namespace must be probed explicitly
+        final ZooKeeperHealthMonitor monitor = factory.buildHealthMonitor(
+                environment, zookeeper(framework), root(framework, "/"), name);
+        framework.getConnectionStateListenable().addListener(new ConnectionStateListener() {
+            @Override
+            public void stateChanged(final CuratorFramework client,
+                                     final ConnectionState state) {
+                switch (state) {
+                    case CONNECTED:
+                    case RECONNECTED:
+                    case READ_ONLY:
+                        monitor.connected();
+                        break;
+                    case SUSPENDED:
+                        monitor.disconnected();
+                        break;
+                    case LOST:
+                        monitor.expired();
+                        break;
+                    default:
+                        break;
+                }
+            }
+        });
+
+        factory.registerServerMetrics(environment.metrics(), zookeeper(framework), name);
+        environment.healthChecks().register(name, new CuratorHealthCheck(framework, monitor));
         environment.lifecycle().manage(new ManagedCuratorFramework(framework));
+        environment.lifecycle().manage(monitor);
 
         return framework;
     }
+
+    /**
+     * Builds a {@link ZooKeeperCache} of a subtree, read by a {@link CuratorFramework} built by
+     * this factory.
+     * <p/>
+     * The cache is managed by the {@link Environment}, and must be built after the {@link
+     * CuratorFramework}, so that it's started after it. Since Curator replaces its ZooKeeper
+     * client when a session is lost, the cache is re-synchronized whenever the {@link
+     * CuratorFramework} reconnects after losing its session.
+     *
+     * @param environment the {@link Environment} to build the {@link ZooKeeperCache} for.
+     * @param framework the {@link CuratorFramework} to read the subtree with.
+     * @param path the path of the root of the subtree to cache, relative to the namespace of the
+     *             {@link CuratorFramework}.
+     * @param name the name for the {@link ZooKeeperCache}.
+     *
+     * @return a {@link ZooKeeperCache} of the subtree at the path, managed by the environment.
+     */
+    public ZooKeeperCache buildCache(final Environment environment,
+                                     final CuratorFramework framework,
+                                     final String path,
+                                     final String name) {
+        final ZooKeeperCache cache = new ZooKeeperCache(
+                zookeeper(framework), root(framework, path), environment.metrics(), name);
+
+        framework.getConnectionStateListenable().addListener(new ConnectionStateListener() {
+            private boolean lost = false;
+
+            @Override
+            public void stateChanged(final CuratorFramework client,
+                                     final ConnectionState state) {
+                if (state == ConnectionState.LOST) {
+                    lost = true;
+                } else if (state == ConnectionState.RECONNECTED && lost) {
+                    lost = false;
+                    cache.resync();
+                }
+            }
+        });
+
+        environment.lifecycle().manage(cache);
+        return cache;
+    }
+
+    /**
+     * Returns a {@link Supplier} of the current {@link ZooKeeper} client of a {@link
+     * CuratorFramework}, which is replaced whenever its session is lost.
+     */
+    private static Supplier<ZooKeeper> zookeeper(final CuratorFramework framework) {
+        return new Supplier<ZooKeeper>() {
+            @Override
+            public ZooKeeper get() {
+                try {
+                    return framework.getZookeeperClient().getZooKeeper();
+                } catch (final Exception e) {
+                    throw Throwables.propagate(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Resolves a path, relative to the namespace of a {@link CuratorFramework}, to an absolute
+     * path.
+     */
+    private static String root(final CuratorFramework framework, final String path) {
+        final String namespace = framework.getNamespace();
+        return namespace == null || namespace.isEmpty()
+                ? path
+                : "/" + namespace + ("/".equals(path) ? "" : path);
+    }
 }
@@ -0,0 +1,67 @@
+package com.datasift.dropwizard.curator.compression;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.apache.curator.framework.api.CompressionProvider;
+
+/**
+ * A {@link CompressionProvider} that records metrics for another.
+ * <p/>
+ * The following metrics are registered:
+ * <ul>
+ *     <li><i>name</i>.compress: the time taken to compress values.</li>
+ *     <li><i>name</i>.decompress: the time taken to decompress values.</li>
+ *     <li><i>name</i>.ratio: the size of each compressed value, as a percentage of its
+ *     uncompressed size.</li>
+ * </ul>
+ */
+public class InstrumentedCompressionProvider implements CompressionProvider {
+
+    private final CompressionProvider delegate;
+    private final Timer compress;
+    private final Timer decompress;
+    private final Histogram ratio;
+
+    /**
+     * Records metrics for the given {@link CompressionProvider}.
+     *
+     * @param delegate the provider to record metrics for.
+     * @param registry the registry to register metrics with.
+     * @param name the name to prefix the metrics with.
+     */
+    public InstrumentedCompressionProvider(final CompressionProvider delegate,
+                                           final MetricRegistry registry,
+                                           final String name) {
+        this.delegate = delegate;
+        this.compress = registry.timer(MetricRegistry.name(name, "compress"));
+        this.decompress = registry.timer(MetricRegistry.name(name, "decompress"));
+        this.ratio = registry.histogram(MetricRegistry.name(name, "ratio"));
+    }
+
+    @Override
+    public byte[] compress(final String path, final byte[] data) throws Exception {
+        final Timer.Context timer = compress.time();
+        final byte[] compressed;
+        try {
+            compressed = delegate.compress(path, data);
+        } finally {
+            timer.stop();
+        }
+
+        if (data.length > 0) {
+            ratio.update(compressed.length * 100L / data.length);
+        }
+        return compressed;
+    }
+
+    @Override
+    public byte[] decompress(final String path, final byte[] compressedData) throws Exception {
+        final Timer.Context timer = decompress.time();
+        try {
+            return delegate.decompress(path, compressedData);
+        } finally {
+            timer.stop();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.datasift.dropwizard.curator.compression;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import org.apache.curator.framework.api.CompressionProvider;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link CompressionProvider} that compresses values with LZ4.
+ * <p/>
+ * Compressed values are prefixed with their uncompressed length, as a 4-byte big-endian integer,
+ * followed by a single LZ4 block. The fastest available LZ4 implementation is used; native, if
+ * possible.
+ * <p/>
+ * Since compressed values are read from ZooKeeper, which may hold data written by other clients,
+ * the length prefix isn't trusted: lengths beyond what the block could possibly decompress to are
+ * rejected before allocating the result, blocks are decompressed with a bounds-checking
+ * decompressor, and values whose block doesn't decompress to exactly the prefixed length are
+ * rejected.
+ */
+public class Lz4CompressionProvider implements CompressionProvider {
+
+    private static final int LENGTH_SIZE = 4;
+
+    // each byte of an LZ4 block decompresses to at most 255 bytes
+    private static final int MAX_EXPANSION = 255;
+
+    private final LZ4Compressor compressor;
+    private final LZ4SafeDecompressor decompressor;
+
+    /**
+     * Creates a provider using the fastest available LZ4 implementation.
+     */
+    public Lz4CompressionProvider() {
+        final LZ4Factory factory = LZ4Factory.fastestInstance();
+        this.compressor = factory.fastCompressor();
+        this.decompressor = factory.safeDecompressor();
+    }
+
+    @Override
+    public byte[] compress(final String path, final byte[] data) {
+        final byte[] compressed =
+                new byte[LENGTH_SIZE + compressor.maxCompressedLength(data.length)];
+        ByteBuffer.wrap(compressed).putInt(data.length);
+        final int length = compressor.compress(
+                data, 0, data.length, compressed, LENGTH_SIZE, compressed.length - LENGTH_SIZE);
+
+        final byte[] result = new byte[LENGTH_SIZE + length];
+        System.arraycopy(compressed, 0, result, 0, result.length);
+        return result;
+    }
+
+    @Override
+    public byte[] decompress(final String path, final byte[] compressedData) {
+        if (compressedData.length < LENGTH_SIZE) {
+            throw new IllegalArgumentException("Compressed data for " + path + " is truncated");
+        }
+        final int length = ByteBuffer.wrap(compressedData).getInt();
+        if (length < 0) {
+            throw new IllegalArgumentException(
+                    "Compressed data for " + path + " has a negative length: " + length);
+        }
+        final long maxLength = (long) (compressedData.length - LENGTH_SIZE) * MAX_EXPANSION;
+        if (length > maxLength) {
+            throw new IllegalArgumentException("Compressed data for " + path + " has a length of "
+                    + length + " bytes; its block decompresses to at most " + maxLength);
+        }
+
+        final byte[] result = new byte[length];
+        final int decompressed = decompressor.decompress(
+                compressedData, LENGTH_SIZE, compressedData.length - LENGTH_SIZE, result, 0);
+        if (decompressed != length) {
+            throw new IllegalArgumentException("Compressed data for " + path + " decompressed to "
+                    + decompressed + " bytes; expected " + length);
+        }
+        return result;
+    }
+}
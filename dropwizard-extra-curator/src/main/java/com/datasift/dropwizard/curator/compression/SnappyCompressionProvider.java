@@ -0,0 +1,24 @@
+package com.datasift.dropwizard.curator.compression;
+
+import org.apache.curator.framework.api.CompressionProvider;
+import org.xerial.snappy.Snappy;
+
+import java.io.IOException;
+
+/**
+ * A {@link CompressionProvider} that compresses values with Snappy.
+ * <p/>
+ * Values are compressed in Snappy's raw format, which encodes their uncompressed length.
+ */
+public class SnappyCompressionProvider implements CompressionProvider {
+
+    @Override
+    public byte[] compress(final String path, final byte[] data) throws IOException {
+        return Snappy.compress(data);
+    }
+
+    @Override
+    public byte[] decompress(final String path, final byte[] compressedData) throws IOException {
+        return Snappy.uncompress(compressedData);
+    }
+}
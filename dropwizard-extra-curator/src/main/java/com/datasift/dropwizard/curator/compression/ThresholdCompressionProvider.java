@@ -0,0 +1,68 @@
+package com.datasift.dropwizard.curator.compression;
+
+import org.apache.curator.framework.api.CompressionProvider;
+
+/**
+ * A {@link CompressionProvider} that only compresses values of at least a threshold size.
+ * <p/>
+ * Compressing small values costs more CPU than it saves in space, so values smaller than the
+ * threshold, and values that don't shrink when compressed, are stored as they are. Each value is
+ * prefixed with a single byte that marks whether it's compressed, so values written by this
+ * provider can only be read by it.
+ */
+public class ThresholdCompressionProvider implements CompressionProvider {
+
+    private static final byte STORED = 0;
+    private static final byte COMPRESSED = 1;
+
+    private final CompressionProvider delegate;
+    private final long threshold;
+
+    /**
+     * Creates a provider that compresses values of at least the given size with a delegate.
+     *
+     * @param delegate the provider to compress values with.
+     * @param threshold the size, in bytes, of the smallest value to compress.
+     */
+    public ThresholdCompressionProvider(final CompressionProvider delegate, final long threshold) {
+        this.delegate = delegate;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public byte[] compress(final String path, final byte[] data) throws Exception {
+        if (data.length >= threshold) {
+            final byte[] compressed = delegate.compress(path, data);
+            if (compressed.length < data.length) {
+                return frame(COMPRESSED, compressed);
+            }
+        }
+        return frame(STORED, data);
+    }
+
+    @Override
+    public byte[] decompress(final String path, final byte[] compressedData) throws Exception {
+        if (compressedData.length == 0) {
+            throw new IllegalArgumentException("Missing compression marker for " + path);
+        }
+
+        final byte[] data = new byte[compressedData.length - 1];
+        System.arraycopy(compressedData, 1, data, 0, data.length);
+
+        switch (compressedData[0]) {
+            case STORED:
+                return data;
+            case COMPRESSED:
+                return delegate.decompress(path, data);
+            default:
+                throw new IllegalArgumentException("Unknown compression marker for " + path);
+        }
+    }
+
+    private static byte[] frame(final byte marker, final byte[] data) {
+        final byte[] framed = new byte[data.length + 1];
+        framed[0] = marker;
+        System.arraycopy(data, 0, framed, 1, data.length);
+        return framed;
+    }
+}
@@ -0,0 +1,141 @@
+package com.datasift.dropwizard.curator.ensemble;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+
+import javax.naming.Context;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.List;
+
+/**
+ * An {@link EnsembleSource} that resolves the servers of an ensemble from DNS SRV records.
+ * <p/>
+ * Each SRV record of the configured name (e.g. "_zookeeper._tcp.example.com") names one server
+ * and the port it serves clients on. Records are ordered by priority, then weight.
+ * <p/>
+ * Records are resolved by the JDK's DNS provider, from the configured resolver (e.g. a local
+ * caching stub, such as "dns://127.0.0.1"), or from the system's resolvers if none is configured.
+ */
+public class DnsSrvEnsembleSource implements EnsembleSource {
+
+    private static final String DNS_CONTEXT_FACTORY = "com.sun.jndi.dns.DnsContextFactory";
+    private static final String SRV = "SRV";
+
+    /**
+     * A parsed SRV record.
+     */
+    static class SrvRecord {
+
+        final int priority;
+        final int weight;
+        final int port;
+        final String target;
+
+        SrvRecord(final int priority, final int weight, final int port, final String target) {
+            this.priority = priority;
+            this.weight = weight;
+            this.port = port;
+            this.target = target;
+        }
+
+        @Override
+        public String toString() {
+            return target + ":" + port;
+        }
+    }
+
+    private static final Comparator<SrvRecord> BY_PRIORITY = new Comparator<SrvRecord>() {
+        @Override
+        public int compare(final SrvRecord a, final SrvRecord b) {
+            return a.priority != b.priority
+                    ? Integer.compare(a.priority, b.priority)
+                    : Integer.compare(b.weight, a.weight);
+        }
+    };
+
+    private final String name;
+    private final String resolver;
+
+    /**
+     * Creates a source that resolves the SRV records of the given name.
+     *
+     * @param name     the name of the SRV records of the ensemble.
+     * @param resolver the URL of the DNS server to resolve records with, (e.g.
+     *                 "dns://127.0.0.1"); or "dns:" to use the system's resolvers.
+     */
+    public DnsSrvEnsembleSource(final String name, final String resolver) {
+        this.name = name;
+        this.resolver = resolver;
+    }
+
+    @Override
+    public void start(final Runnable onChange) {
+        // DNS can't be watched, changes are picked up by periodic refreshes
+    }
+
+    @Override
+    public String getConnectionString() throws NamingException {
+        final Hashtable<String, String> env = new Hashtable<>();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, DNS_CONTEXT_FACTORY);
+        env.put(Context.PROVIDER_URL, resolver);
+
+        final DirContext context = new InitialDirContext(env);
+        try {
+            final Attribute records = context.getAttributes(name, new String[] { SRV }).get(SRV);
+            if (records == null) {
+                return null;
+            }
+
+            final List<String> values = new ArrayList<>();
+            final NamingEnumeration<?> all = records.getAll();
+            while (all.hasMore()) {
+                values.add(String.valueOf(all.next()));
+            }
+            final String connectionString = toConnectionString(values);
+            return connectionString.isEmpty() ? null : connectionString;
+        } catch (final NameNotFoundException e) {
+            return null;
+        } finally {
+            context.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        // nothing to do
+    }
+
+    @Override
+    public String toString() {
+        return "dns-srv:" + name;
+    }
+
+    /**
+     * Converts SRV record values, formatted as: priority weight port target, to a connection
+     * string, ordered by priority and then weight.
+     */
+    static String toConnectionString(final List<String> values) {
+        final List<SrvRecord> records = new ArrayList<>(values.size());
+        for (final String value : values) {
+            final String[] fields = value.trim().split("\\s+");
+            if (fields.length == 4) {
+                final String target = fields[3].endsWith(".")
+                        ? fields[3].substring(0, fields[3].length() - 1)
+                        : fields[3];
+                records.add(new SrvRecord(Integer.parseInt(fields[0]),
+                        Integer.parseInt(fields[1]), Integer.parseInt(fields[2]), target));
+            }
+        }
+        Collections.sort(records, BY_PRIORITY);
+        return Joiner.on(',').join(ImmutableList.copyOf(records));
+    }
+}
@@ -1,38 +1,157 @@
 package com.datasift.dropwizard.curator.ensemble;
 
 import com.datasift.dropwizard.zookeeper.ZooKeeperFactory;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.util.Duration;
 import org.apache.curator.ensemble.EnsembleProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
- * An {@link EnsembleProvider} for a fixed ensemble, configured by a {@link ZooKeeperFactory}.
+ * An {@link EnsembleProvider} for an ensemble configured by a {@link ZooKeeperFactory}.
+ * <p/>
+ * When given an {@link EnsembleSource}, the servers of the ensemble are periodically refreshed
+ * from it, and whenever it reports a change. Until the source yields any servers, or if it fails,
+ * the servers configured by the {@link ZooKeeperFactory} are used. Either way, the servers are
+ * {@link ZooKeeperFactory#selectServers(String) selected} according to the factory's server
+ * selection, so the configured zones apply to discovered servers too.
+ * <p/>
+ * Curator only adopts a new connection string when its client next (re)connects, so a change to
+ * the ensemble never forces sessions to be re-established. The connection string only changes
+ * when the set of servers does; re-ordered or duplicate results from a source are ignored.
  */
 public class DropwizardConfiguredEnsembleProvider implements EnsembleProvider {
 
+    private static final Logger LOG =
+            LoggerFactory.getLogger(DropwizardConfiguredEnsembleProvider.class);
+
+    private static final Splitter SERVERS = Splitter.on(',').trimResults().omitEmptyStrings();
+
     private final ZooKeeperFactory factory;
+    private final EnsembleSource source;
+    private final Duration refreshInterval;
+
+    private volatile String discovered = null;
+    private ScheduledExecutorService refresher = null;
 
     /**
-     * Initializes this provider with the given {@code configuration}.
+     * Initializes this provider for the fixed ensemble configured by the given {@code factory}.
      *
      * @param factory a factory for ZooKeeper client instances.
      */
     public DropwizardConfiguredEnsembleProvider(final ZooKeeperFactory factory) {
+        this(factory, null, null);
+    }
+
+    /**
+     * Initializes this provider for an ensemble discovered from the given {@link EnsembleSource}.
+     *
+     * @param factory         a factory for ZooKeeper client instances, used for the servers of the
+     *                        ensemble until the source yields any.
+     * @param source          the source to discover the servers of the ensemble from.
+     * @param refreshInterval the interval between refreshes of the servers from the source.
+     */
+    public DropwizardConfiguredEnsembleProvider(final ZooKeeperFactory factory,
+                                                final EnsembleSource source,
+                                                final Duration refreshInterval) {
         this.factory = factory;
+        this.source = source;
+        this.refreshInterval = refreshInterval;
     }
 
     @Override
-    public void start() throws Exception {
-        // nothing to do
+    public synchronized void start() throws Exception {
+        if (source == null || refresher != null) {
+            return;
+        }
+
+        refresh();
+
+        refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("ensemble-refresh-%d")
+                .setDaemon(true)
+                .build());
+
+        final Runnable refresh = new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        };
+
+        // stagger the first refresh, so that many clients don't hit the source in lock-step
+        final long interval = refreshInterval.toMilliseconds();
+        refresher.scheduleWithFixedDelay(refresh,
+                interval + new Random().nextInt((int) Math.max(1, interval / 2)),
+                interval,
+                TimeUnit.MILLISECONDS);
+
+        // the source may notify us after we've been closed, so don't rely on the field
+        final ScheduledExecutorService executor = refresher;
+        source.start(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    executor.execute(refresh);
+                } catch (final RejectedExecutionException e) {
+                    LOG.debug("Ignoring change to ensemble from {} after close", source);
+                }
+            }
+        });
     }
 
     @Override
     public String getConnectionString() {
-        return factory.getQuorumSpec();
+        final String servers = discovered;
+        return servers == null
+                ? factory.getSelectedQuorumSpec()
+                : factory.selectServers(servers);
     }
 
     @Override
-    public void close() throws IOException {
-        // nothing to do
+    public synchronized void close() throws IOException {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+        if (source != null) {
+            source.close();
+        }
+    }
+
+    /**
+     * Refreshes the servers of the ensemble from the source, retaining the current servers if the
+     * source fails or yields none.
+     */
+    void refresh() {
+        try {
+            final String servers = source.getConnectionString();
+            if (servers == null) {
+                return;
+            }
+
+            final String current = discovered;
+            if (current == null || !serversOf(current).equals(serversOf(servers))) {
+                LOG.info("Ensemble from {} changed: {} -> {}",
+                        source, getConnectionString(), servers);
+                discovered = servers;
+            }
+        } catch (final Exception e) {
+            LOG.warn("Failed to refresh ensemble from " + source
+                    + ", retaining: " + getConnectionString(), e);
+        }
+    }
+
+    private static ImmutableSortedSet<String> serversOf(final String connectionString) {
+        return ImmutableSortedSet.copyOf(SERVERS.split(connectionString));
     }
 }
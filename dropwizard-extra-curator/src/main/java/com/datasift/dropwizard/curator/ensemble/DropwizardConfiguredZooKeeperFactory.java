@@ -1,12 +1,18 @@
 package com.datasift.dropwizard.curator.ensemble;
 
 import io.dropwizard.setup.Environment;
+import com.datasift.dropwizard.zookeeper.ManagedSharedZooKeeper;
+import com.datasift.dropwizard.zookeeper.ManagedZooKeeper;
+import com.datasift.dropwizard.zookeeper.SharedZooKeeper;
 import com.datasift.dropwizard.zookeeper.ZooKeeperFactory;
+import com.datasift.dropwizard.zookeeper.ZooKeeperSessionRegistry;
 import org.apache.curator.utils.ZookeeperFactory;
 import io.dropwizard.util.Duration;
 import org.apache.zookeeper.Watcher;
 import org.apache.zookeeper.ZooKeeper;
 
+import java.util.HashSet;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -15,6 +21,10 @@ import java.util.regex.Pattern;
  * <p/>
  * This ensures that {@link ZooKeeper} instances created by Curator integrate properly with the
  * Dropwizard application life-cycle.
+ * <p/>
+ * When given a {@link ZooKeeperSessionRegistry}, Curator shares its session with other clients of
+ * the same ensemble. Curator's reference to the shared session is released whenever it replaces
+ * its client, or when the application stops.
  */
 public class DropwizardConfiguredZooKeeperFactory implements ZookeeperFactory {
 
@@ -22,6 +32,11 @@ public class DropwizardConfiguredZooKeeperFactory implements ZookeeperFactory {
 
     private final String name;
     private final Environment environment;
+    private final ZooKeeperSessionRegistry registry;
+    private final ZooKeeperFactory.Auth auth;
+
+    private SharedZooKeeper shared = null;
+    private Watcher sharedWatcher = null;
 
     /**
      * Initializes this factory with the {@link ZooKeeperFactory} to create {@link ZooKeeper}
@@ -30,8 +45,27 @@ public class DropwizardConfiguredZooKeeperFactory implements ZookeeperFactory {
      * @param name the name of the Curator instance creating {@link ZooKeeper} clients.
      */
     public DropwizardConfiguredZooKeeperFactory(final Environment environment, final String name) {
+        this(environment, name, null, null);
+    }
+
+    /**
+     * Initializes this factory to acquire shared {@link ZooKeeper} clients from a {@link
+     * ZooKeeperSessionRegistry}.
+     *
+     * @param name the name of the Curator instance creating {@link ZooKeeper} clients.
+     * @param registry the registry to acquire shared sessions from; or null, to create a new
+     *                 session for each client.
+     * @param auth the authentication Curator adds to its sessions, which distinguishes them from
+     *             unauthenticated sessions; may be null.
+     */
+    public DropwizardConfiguredZooKeeperFactory(final Environment environment,
+                                                final String name,
+                                                final ZooKeeperSessionRegistry registry,
+                                                final ZooKeeperFactory.Auth auth) {
         this.environment = environment;
         this.name = name;
+        this.registry = registry;
+        this.auth = auth;
     }
 
     @Override
@@ -40,8 +74,31 @@ public class DropwizardConfiguredZooKeeperFactory implements ZookeeperFactory {
                                   final Watcher watcher,
                                   final boolean canBeReadOnly) throws Exception {
 
-        return new DynamicZooKeeperFactory(connectString, sessionTimeout, canBeReadOnly)
-                .build(environment, watcher, String.format("curator-%s", name));
+        final DynamicZooKeeperFactory factory =
+                new DynamicZooKeeperFactory(connectString, sessionTimeout, canBeReadOnly);
+
+        if (registry != null) {
+            factory.setAuth(auth);
+            return acquire(factory, watcher);
+        }
+
+        // health is monitored by the CuratorHealthCheck, which survives client replacement
+        final ZooKeeper client = factory.buildClient(watcher);
+        environment.lifecycle().manage(new ManagedZooKeeper(client));
+        return client;
+    }
+
+    private synchronized ZooKeeper acquire(final ZooKeeperFactory factory, final Watcher watcher)
+            throws Exception {
+        // closing a shared client can't tell its holders apart, so release the client Curator
+        // replaced on its behalf
+        if (shared != null) {
+            shared.release(sharedWatcher);
+        }
+        shared = registry.acquire(factory, watcher);
+        sharedWatcher = watcher;
+        environment.lifecycle().manage(new ManagedSharedZooKeeper(shared, watcher));
+        return shared;
     }
 
     static class DynamicZooKeeperFactory extends ZooKeeperFactory {
@@ -53,8 +110,21 @@ public class DropwizardConfiguredZooKeeperFactory implements ZookeeperFactory {
             final int hostLength = idx == -1 ? connectString.length() : idx;
             final String authority = connectString.substring(0, hostLength);
             final Matcher matcher = PORT_PATTERN.matcher(authority);
-            this.port = matcher.find() ? Integer.parseInt(matcher.group(1)) : port;
-            this.hosts = matcher.replaceAll("").split(",");
+            final Set<String> ports = new HashSet<>();
+            while (matcher.find()) {
+                ports.add(matcher.group(1));
+            }
+
+            // retain per-host ports, unless every host shares the same port
+            if (ports.size() > 1) {
+                this.hosts = authority.split(",");
+            } else {
+                this.port = ports.isEmpty() ? port : Integer.parseInt(ports.iterator().next());
+                this.hosts = matcher.replaceAll("").split(",");
+            }
+
+            // servers have already been selected by the EnsembleProvider
+            this.serverSelection = ServerSelection.ALL;
             this.namespace = idx == -1 ? "/" : connectString.substring(idx);
             this.sessionTimeout = Duration.milliseconds(sessionTimeout);
             this.readOnly = canBeReadOnly;
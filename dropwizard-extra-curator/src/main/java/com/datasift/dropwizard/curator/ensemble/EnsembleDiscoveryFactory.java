@@ -0,0 +1,224 @@
+package com.datasift.dropwizard.curator.ensemble;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import io.dropwizard.util.Duration;
+import io.dropwizard.validation.ValidationMethod;
+import org.apache.zookeeper.ZooKeeper;
+
+import javax.validation.constraints.NotNull;
+import java.nio.file.Paths;
+
+/**
+ * A factory for {@link EnsembleSource}s, to discover the servers of a ZooKeeper ensemble at
+ * runtime.
+ *
+ * @see DropwizardConfiguredEnsembleProvider
+ */
+public class EnsembleDiscoveryFactory {
+
+    /**
+     * An enumeration of the sources the servers of an ensemble may be discovered from.
+     */
+    public enum Source {
+
+        /**
+         * The servers are fixed by configuration, and never refreshed.
+         */
+        STATIC,
+
+        /**
+         * The servers are read from a local file, which is watched for changes.
+         *
+         * @see FileEnsembleSource
+         */
+        FILE,
+
+        /**
+         * The servers are resolved from DNS SRV records.
+         *
+         * @see DnsSrvEnsembleSource
+         */
+        DNS,
+
+        /**
+         * The servers are read from the dynamic configuration of a ZooKeeper 3.5+ ensemble.
+         *
+         * @see ZooKeeperConfigEnsembleSource
+         */
+        ZOOKEEPER
+    }
+
+    @NotNull
+    protected Source source = Source.STATIC;
+
+    protected String file = null;
+
+    protected String dnsName = null;
+
+    @NotNull
+    protected String dnsServer = "dns:";
+
+    @NotNull
+    protected Duration refreshInterval = Duration.seconds(30);
+
+    /**
+     * Returns the {@link Source} to discover the servers of the ensemble from.
+     *
+     * @return the source of the servers of the ensemble.
+     */
+    @JsonProperty
+    public Source getSource() {
+        return source;
+    }
+
+    /**
+     * Sets the {@link Source} to discover the servers of the ensemble from.
+     *
+     * @param source the source of the servers of the ensemble.
+     */
+    @JsonProperty
+    public void setSource(final Source source) {
+        this.source = source;
+    }
+
+    /**
+     * Returns the path of the file to read the servers of the ensemble from.
+     *
+     * @return the path of the file listing the servers of the ensemble.
+     *
+     * @see Source#FILE
+     */
+    @JsonProperty
+    public String getFile() {
+        return file;
+    }
+
+    /**
+     * Sets the path of the file to read the servers of the ensemble from.
+     *
+     * @param file the path of the file listing the servers of the ensemble.
+     *
+     * @see Source#FILE
+     */
+    @JsonProperty
+    public void setFile(final String file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns the name of the DNS SRV records of the servers of the ensemble.
+     *
+     * @return the name of the SRV records of the ensemble, e.g. "_zookeeper._tcp.example.com".
+     *
+     * @see Source#DNS
+     */
+    @JsonProperty
+    public String getDnsName() {
+        return dnsName;
+    }
+
+    /**
+     * Sets the name of the DNS SRV records of the servers of the ensemble.
+     *
+     * @param dnsName the name of the SRV records of the ensemble.
+     *
+     * @see Source#DNS
+     */
+    @JsonProperty
+    public void setDnsName(final String dnsName) {
+        this.dnsName = dnsName;
+    }
+
+    /**
+     * Returns the URL of the DNS server to resolve SRV records with.
+     *
+     * @return the URL of the DNS server, e.g. "dns://127.0.0.1"; or "dns:" for the system's
+     *         resolvers.
+     *
+     * @see Source#DNS
+     */
+    @JsonProperty
+    public String getDnsServer() {
+        return dnsServer;
+    }
+
+    /**
+     * Sets the URL of the DNS server to resolve SRV records with.
+     *
+     * @param dnsServer the URL of the DNS server, e.g. "dns://127.0.0.1"; or "dns:" for the
+     *                  system's resolvers.
+     *
+     * @see Source#DNS
+     */
+    @JsonProperty
+    public void setDnsServer(final String dnsServer) {
+        this.dnsServer = dnsServer;
+    }
+
+    /**
+     * Returns the interval between refreshes of the servers of the ensemble from the source.
+     *
+     * @return the interval between refreshes of the servers.
+     */
+    @JsonProperty
+    public Duration getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    /**
+     * Sets the interval between refreshes of the servers of the ensemble from the source.
+     *
+     * @param refreshInterval the interval between refreshes of the servers.
+     */
+    @JsonProperty
+    public void setRefreshInterval(final Duration refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * Validates that a file is configured when discovering servers from a file.
+     *
+     * @return true if a file is configured, or not required; false if it's missing.
+     */
+    @JsonIgnore
+    @ValidationMethod(message = "'file' must be set when the source is 'file'")
+    public boolean isFileConfigured() {
+        return source != Source.FILE || (file != null && !file.isEmpty());
+    }
+
+    /**
+     * Validates that a DNS name is configured when discovering servers from DNS.
+     *
+     * @return true if a DNS name is configured, or not required; false if it's missing.
+     */
+    @JsonIgnore
+    @ValidationMethod(message = "'dnsName' must be set when the source is 'dns'")
+    public boolean isDnsNameConfigured() {
+        return source != Source.DNS || (dnsName != null && !dnsName.isEmpty());
+    }
+
+    /**
+     * Builds an {@link EnsembleSource} for the configured {@link Source}.
+     *
+     * @param client a {@link Supplier} of a client connected to the ensemble, with no namespace,
+     *               used to read the dynamic configuration of the ensemble.
+     *
+     * @return the source of the servers of the ensemble; or absent, if the servers are static.
+     */
+    public Optional<EnsembleSource> build(final Supplier<ZooKeeper> client) {
+        switch (getSource()) {
+            case FILE:
+                return Optional.<EnsembleSource>of(new FileEnsembleSource(Paths.get(getFile())));
+            case DNS:
+                return Optional.<EnsembleSource>of(
+                        new DnsSrvEnsembleSource(getDnsName(), getDnsServer()));
+            case ZOOKEEPER:
+                return Optional.<EnsembleSource>of(new ZooKeeperConfigEnsembleSource(client));
+            default:
+                return Optional.absent();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.datasift.dropwizard.curator.ensemble;
+
+import java.io.Closeable;
+
+/**
+ * A source of the current servers of a ZooKeeper ensemble.
+ *
+ * @see DropwizardConfiguredEnsembleProvider
+ * @see EnsembleDiscoveryFactory
+ */
+public interface EnsembleSource extends Closeable {
+
+    /**
+     * Begins watching the source for changes, if the source supports it.
+     *
+     * @param onChange a callback to run whenever the source may have changed.
+     *
+     * @throws Exception if the source could not be watched.
+     */
+    void start(Runnable onChange) throws Exception;
+
+    /**
+     * Retrieves the current servers of the ensemble from the source.
+     *
+     * @return the servers of the ensemble, formatted as: host1:port1,host2:port2[,hostN:portN];
+     *         or null, if the servers are not currently known.
+     *
+     * @throws Exception if the source could not be read.
+     */
+    String getConnectionString() throws Exception;
+}
@@ -0,0 +1,109 @@
+package com.datasift.dropwizard.curator.ensemble;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * An {@link EnsembleSource} that reads the servers of an ensemble from a local file.
+ * <p/>
+ * Servers may be separated by commas, whitespace or new-lines; lines beginning with '#' are
+ * ignored. The directory containing the file is watched with a {@link WatchService}, so changes
+ * to the file, including atomic replacement, are picked up as soon as they're made.
+ */
+public class FileEnsembleSource implements EnsembleSource {
+
+    private static final Splitter SERVERS =
+            Splitter.onPattern("[,\\s]+").trimResults().omitEmptyStrings();
+
+    private final Path file;
+    private WatchService watcher = null;
+
+    /**
+     * Creates a source that reads the servers of an ensemble from the given file.
+     *
+     * @param file the file to read the servers from.
+     */
+    public FileEnsembleSource(final Path file) {
+        this.file = file.toAbsolutePath();
+    }
+
+    @Override
+    public synchronized void start(final Runnable onChange) throws IOException {
+        if (watcher != null) {
+            return;
+        }
+
+        final WatchService watcher = file.getFileSystem().newWatchService();
+        file.getParent().register(watcher,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        this.watcher = watcher;
+
+        final Thread thread = new Thread("ensemble-watcher-" + file.getFileName()) {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        final WatchKey key = watcher.take();
+                        boolean changed = false;
+                        for (final WatchEvent<?> event : key.pollEvents()) {
+                            changed |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                                    || file.getFileName().equals(event.context());
+                        }
+                        if (changed) {
+                            onChange.run();
+                        }
+                        if (!key.reset()) {
+                            return;
+                        }
+                    }
+                } catch (final InterruptedException | ClosedWatchServiceException e) {
+                    // source closed
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public String getConnectionString() throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        final StringBuilder servers = new StringBuilder();
+        for (final String line : Files.readAllLines(file, Charsets.UTF_8)) {
+            if (!line.trim().startsWith("#")) {
+                servers.append(line).append('\n');
+            }
+        }
+
+        final String connectionString = Joiner.on(',').join(SERVERS.split(servers));
+        return connectionString.isEmpty() ? null : connectionString;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "file:" + file;
+    }
+}
@@ -0,0 +1,104 @@
+package com.datasift.dropwizard.curator.ensemble;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Supplier;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooKeeper;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * An {@link EnsembleSource} that reads the servers of an ensemble from the dynamic configuration
+ * ZNode of a ZooKeeper 3.5+ ensemble.
+ * <p/>
+ * The configuration is read through an existing connection to the ensemble, so this can only
+ * follow changes to an ensemble it's already connected to. Ensembles that don't support dynamic
+ * configuration have no configuration ZNode, so the statically configured servers are used.
+ */
+public class ZooKeeperConfigEnsembleSource implements EnsembleSource {
+
+    /**
+     * The path of the dynamic configuration ZNode.
+     */
+    public static final String CONFIG_NODE = "/zookeeper/config";
+
+    private static final String WILDCARD_ADDRESS = "0.0.0.0";
+
+    private final Supplier<ZooKeeper> client;
+
+    /**
+     * Creates a source that reads the configuration of the ensemble a client is connected to.
+     *
+     * @param client a {@link Supplier} of a client connected to the ensemble, with no namespace.
+     */
+    public ZooKeeperConfigEnsembleSource(final Supplier<ZooKeeper> client) {
+        this.client = client;
+    }
+
+    @Override
+    public void start(final Runnable onChange) {
+        // changes are picked up by periodic refreshes, rather than watches that may be lost
+    }
+
+    @Override
+    public String getConnectionString() throws Exception {
+        final ZooKeeper zookeeper = client.get();
+        if (zookeeper == null || !zookeeper.getState().isConnected()) {
+            return null;
+        }
+
+        try {
+            final String config = new String(
+                    zookeeper.getData(CONFIG_NODE, false, null), Charsets.UTF_8);
+            final String connectionString = parse(config);
+            return connectionString.isEmpty() ? null : connectionString;
+        } catch (final KeeperException.NoNodeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        // nothing to do
+    }
+
+    @Override
+    public String toString() {
+        return "zookeeper:" + CONFIG_NODE;
+    }
+
+    /**
+     * Parses the client addresses of each server from a dynamic configuration.
+     * <p/>
+     * Servers are formatted as: server.id=host:quorumPort:electionPort[:role];[clientHost:]clientPort
+     * where a missing or wildcard client host means the server's host.
+     */
+    static String parse(final String config) {
+        final Set<String> servers = new LinkedHashSet<>();
+        for (final String line : config.split("\n")) {
+            final String entry = line.trim();
+            if (!entry.startsWith("server.") || entry.indexOf('=') == -1) {
+                continue;
+            }
+
+            final String spec = entry.substring(entry.indexOf('=') + 1);
+            final int separator = spec.indexOf(';');
+            if (separator == -1) {
+                continue;
+            }
+
+            final String host = spec.substring(0, spec.indexOf(':'));
+            final String client = spec.substring(separator + 1);
+            final int colon = client.lastIndexOf(':');
+            final String clientHost = colon == -1 ? "" : client.substring(0, colon);
+            final String clientPort = client.substring(colon + 1);
+
+            servers.add((clientHost.isEmpty() || WILDCARD_ADDRESS.equals(clientHost)
+                    ? host
+                    : clientHost) + ":" + clientPort);
+        }
+        return Joiner.on(',').join(servers);
+    }
+}
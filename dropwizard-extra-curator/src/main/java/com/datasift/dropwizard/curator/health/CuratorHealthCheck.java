@@ -1,5 +1,6 @@
 package com.datasift.dropwizard.curator.health;
 
+import com.datasift.dropwizard.zookeeper.health.ZooKeeperHealthMonitor;
 import org.apache.curator.framework.CuratorFramework;
 import com.codahale.metrics.health.HealthCheck;
 import org.apache.curator.framework.imps.CuratorFrameworkState;
@@ -7,37 +8,64 @@ import org.apache.curator.framework.imps.CuratorFrameworkState;
 /**
  * A {@link HealthCheck} that ensures a {@link CuratorFramework} is started and that the configured
  * root namespace exists.
+ * <p/>
+ * The connection to the ensemble is checked in the background by a {@link
+ * ZooKeeperHealthMonitor}, so checking health never blocks on, or adds load to, the ensemble.
  */
 public class CuratorHealthCheck extends HealthCheck {
 
     private final CuratorFramework framework;
+    private final ZooKeeperHealthMonitor monitor;
 
     /**
-     * Create a new {@link HealthCheck} instance with the given name.
+     * Create a new {@link HealthCheck} instance that checks the {@link CuratorFramework} directly
+     * each time its health is checked.
      *
      * @param framework The {@link CuratorFramework} instance to check the health of.
+     *
+     * @deprecated checks block on, and add load to, the ensemble; use {@link
+     *             #CuratorHealthCheck(CuratorFramework, ZooKeeperHealthMonitor)} instead.
      */
+    @Deprecated
     public CuratorHealthCheck(final CuratorFramework framework) {
+        this(framework, null);
+    }
+
+    /**
+     * Create a new {@link HealthCheck} instance with the given name.
+     *
+     * @param framework The {@link CuratorFramework} instance to check the health of.
+     * @param monitor the monitor of the connection of the {@link CuratorFramework} to the
+     *                ensemble.
+     */
+    public CuratorHealthCheck(final CuratorFramework framework,
+                              final ZooKeeperHealthMonitor monitor) {
         this.framework = framework;
+        this.monitor = monitor;
     }
 
     /**
      * Checks that the {@link CuratorFramework} instance is started and that the configured root
-     * namespace exists.
+     * namespace existed when last checked.
      *
      * @return {@link Result#unhealthy(String)} if the {@link CuratorFramework} is not started or
      *         the configured root namespace does not exist; otherwise, {@link Result#healthy()}.
-     * @throws Exception if an error occurs checking the health of the ZooKeeper ensemble.
+     * @throws Exception if an error occurs checking the health of a client without a monitor.
      */
     @Override
     protected Result check() throws Exception {
-        final String namespace = framework.getNamespace();
         if (framework.getState() != CuratorFrameworkState.STARTED) {
             return Result.unhealthy("Client not started");
-        } else if (framework.checkExists().forPath(namespace.isEmpty() ? "/" : "") == null) {
-            return Result.unhealthy("Root for namespace does not exist");
         }
 
-        return Result.healthy();
+        if (monitor == null) {
+            final String namespace = framework.getNamespace();
+            if (framework.checkExists().forPath(namespace.isEmpty() ? "/" : "") == null) {
+                return Result.unhealthy("Root for namespace does not exist");
+            }
+            return Result.healthy();
+        }
+
+        return monitor.getResult();
     }
 }
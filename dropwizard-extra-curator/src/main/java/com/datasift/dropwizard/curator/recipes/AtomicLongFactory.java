@@ -0,0 +1,184 @@
+package com.datasift.dropwizard.curator.recipes;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.setup.Environment;
+import io.dropwizard.util.Duration;
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.atomic.DistributedAtomicLong;
+import org.apache.curator.framework.recipes.atomic.PromotedToLock;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A factory for creating {@link DistributedAtomicLong}s.
+ * <p/>
+ * Updates to the counter are attempted optimistically, retrying conflicting updates according to
+ * the configured back-off. If a {@link #getLockPath() lock path} is configured, updates that
+ * exhaust their optimistic retries are retried while holding a lock at that path.
+ *
+ * @see InstrumentedAtomicLong
+ */
+public class AtomicLongFactory {
+
+    @NotEmpty
+    @Pattern(regexp = "^\\/\\S*$")
+    protected String path = "/counter";
+
+    @Min(0)
+    protected int maxRetries = 3;
+
+    @NotNull
+    protected Duration backOffBaseTime = Duration.milliseconds(100);
+
+    @Pattern(regexp = "^\\/\\S*$")
+    protected String lockPath = null;
+
+    @NotNull
+    protected Duration lockTimeout = Duration.seconds(1);
+
+    /**
+     * Returns the path of the ZNode holding the counter.
+     *
+     * @return the path of the counter, relative to the namespace of the {@link
+     *         CuratorFramework}.
+     */
+    @JsonProperty
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Sets the path of the ZNode holding the counter.
+     *
+     * @param path the path of the counter, relative to the namespace of the {@link
+     *             CuratorFramework}.
+     */
+    @JsonProperty
+    public void setPath(final String path) {
+        this.path = path;
+    }
+
+    /**
+     * Returns the maximum number of times to retry an update that conflicts with another.
+     *
+     * @return the maximum number of retries of a conflicting update.
+     */
+    @JsonProperty
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Sets the maximum number of times to retry an update that conflicts with another.
+     *
+     * @param maxRetries the maximum number of retries of a conflicting update.
+     */
+    @JsonProperty
+    public void setMaxRetries(final int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Returns the initial time to wait before retrying a conflicting update.
+     * <p/>
+     * Subsequent retries will wait an exponential amount of time more than this.
+     *
+     * @return the initial time to wait before retrying an update.
+     */
+    @JsonProperty
+    public Duration getBackOffBaseTime() {
+        return backOffBaseTime;
+    }
+
+    /**
+     * Sets the initial time to wait before retrying a conflicting update.
+     * <p/>
+     * Subsequent retries will wait an exponential amount of time more than this.
+     *
+     * @param backOffBaseTime the initial time to wait before retrying an update.
+     */
+    @JsonProperty
+    public void setBackOffBaseTime(final Duration backOffBaseTime) {
+        this.backOffBaseTime = backOffBaseTime;
+    }
+
+    /**
+     * Returns the path of the lock to retry updates under, once optimistic retries are exhausted.
+     *
+     * @return the path of the lock, relative to the namespace of the {@link CuratorFramework}; or
+     *         null, if updates are never retried under a lock.
+     */
+    @JsonProperty
+    public String getLockPath() {
+        return lockPath;
+    }
+
+    /**
+     * Sets the path of the lock to retry updates under, once optimistic retries are exhausted.
+     *
+     * @param lockPath the path of the lock, relative to the namespace of the {@link
+     *                 CuratorFramework}; or null, if updates are never retried under a lock.
+     */
+    @JsonProperty
+    public void setLockPath(final String lockPath) {
+        this.lockPath = lockPath;
+    }
+
+    /**
+     * Returns the maximum time to wait for the lock to retry updates under.
+     *
+     * @return the maximum time to wait for the lock.
+     */
+    @JsonProperty
+    public Duration getLockTimeout() {
+        return lockTimeout;
+    }
+
+    /**
+     * Sets the maximum time to wait for the lock to retry updates under.
+     *
+     * @param lockTimeout the maximum time to wait for the lock.
+     */
+    @JsonProperty
+    public void setLockTimeout(final Duration lockTimeout) {
+        this.lockTimeout = lockTimeout;
+    }
+
+    /**
+     * Returns a {@link RetryPolicy} for retrying conflicting updates.
+     *
+     * @return a {@link RetryPolicy} for conflicting updates.
+     */
+    public RetryPolicy getRetryPolicy() {
+        return new ExponentialBackoffRetry((int) backOffBaseTime.toMilliseconds(), maxRetries);
+    }
+
+    /**
+     * Builds an {@link InstrumentedAtomicLong} for the given {@link Environment}.
+     *
+     * @param environment the {@link Environment} to register the metrics of the counter with.
+     * @param framework the {@link CuratorFramework} to update the counter with.
+     * @param name the name of the counter.
+     *
+     * @return an {@link InstrumentedAtomicLong}.
+     */
+    public InstrumentedAtomicLong build(final Environment environment,
+                                        final CuratorFramework framework,
+                                        final String name) {
+        final DistributedAtomicLong counter = getLockPath() == null
+                ? new DistributedAtomicLong(framework, getPath(), getRetryPolicy())
+                : new DistributedAtomicLong(framework, getPath(), getRetryPolicy(),
+                        PromotedToLock.builder()
+                                .lockPath(getLockPath())
+                                .retryPolicy(getRetryPolicy())
+                                .timeout(getLockTimeout().toMilliseconds(), TimeUnit.MILLISECONDS)
+                                .build());
+        return new InstrumentedAtomicLong(counter, environment.metrics(), name);
+    }
+}
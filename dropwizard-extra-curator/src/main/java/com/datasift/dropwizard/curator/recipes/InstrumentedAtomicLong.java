@@ -0,0 +1,161 @@
+package com.datasift.dropwizard.curator.recipes;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.apache.curator.framework.recipes.atomic.AtomicStats;
+import org.apache.curator.framework.recipes.atomic.AtomicValue;
+import org.apache.curator.framework.recipes.atomic.DistributedAtomicLong;
+
+/**
+ * Records metrics for the operations on a {@link DistributedAtomicLong}.
+ * <p/>
+ * Updates are attempted optimistically, and retried when they conflict with concurrent updates;
+ * the number of attempts an update took is a measure of the contention for the counter. The
+ * following metrics are registered:
+ * <ul>
+ *     <li><i>name</i>.updates: the time taken to update the counter.</li>
+ *     <li><i>name</i>.attempts: the number of attempts each update took.</li>
+ *     <li><i>name</i>.contended: the number of updates that conflicted with another update.</li>
+ *     <li><i>name</i>.failures: the number of updates that exhausted their retries.</li>
+ * </ul>
+ *
+ * @see AtomicLongFactory
+ */
+public class InstrumentedAtomicLong {
+
+    private final DistributedAtomicLong counter;
+    private final Timer updates;
+    private final Histogram attempts;
+    private final Counter contended;
+    private final Counter failures;
+
+    /**
+     * Records metrics for the given {@link DistributedAtomicLong}.
+     *
+     * @param counter the counter to record metrics for.
+     * @param registry the registry to register metrics with.
+     * @param name the name of the counter, to prefix its metrics with.
+     */
+    public InstrumentedAtomicLong(final DistributedAtomicLong counter,
+                                  final MetricRegistry registry,
+                                  final String name) {
+        this.counter = counter;
+        this.updates = registry.timer(MetricRegistry.name(name, "updates"));
+        this.attempts = registry.histogram(MetricRegistry.name(name, "attempts"));
+        this.contended = registry.counter(MetricRegistry.name(name, "contended"));
+        this.failures = registry.counter(MetricRegistry.name(name, "failures"));
+    }
+
+    /**
+     * Returns the underlying {@link DistributedAtomicLong}.
+     *
+     * @return the underlying counter.
+     */
+    public DistributedAtomicLong getCounter() {
+        return counter;
+    }
+
+    /**
+     * Returns the current value of the counter.
+     *
+     * @return the current value of the counter.
+     *
+     * @throws Exception if the counter could not be read.
+     */
+    public AtomicValue<Long> get() throws Exception {
+        return counter.get();
+    }
+
+    /**
+     * Adds 1 to the counter.
+     *
+     * @return the result of the update; check {@link AtomicValue#succeeded()}.
+     *
+     * @throws Exception if the counter could not be updated.
+     */
+    public AtomicValue<Long> increment() throws Exception {
+        return add(1L);
+    }
+
+    /**
+     * Subtracts 1 from the counter.
+     *
+     * @return the result of the update; check {@link AtomicValue#succeeded()}.
+     *
+     * @throws Exception if the counter could not be updated.
+     */
+    public AtomicValue<Long> decrement() throws Exception {
+        return add(-1L);
+    }
+
+    /**
+     * Adds the given delta to the counter.
+     *
+     * @param delta the amount to add to the counter.
+     *
+     * @return the result of the update; check {@link AtomicValue#succeeded()}.
+     *
+     * @throws Exception if the counter could not be updated.
+     */
+    public AtomicValue<Long> add(final long delta) throws Exception {
+        final Timer.Context timer = updates.time();
+        try {
+            return record(counter.add(delta));
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Sets the counter to the given value, if its current value is the expected value.
+     *
+     * @param expected the expected current value of the counter.
+     * @param value the new value of the counter.
+     *
+     * @return the result of the update; check {@link AtomicValue#succeeded()}.
+     *
+     * @throws Exception if the counter could not be updated.
+     */
+    public AtomicValue<Long> compareAndSet(final long expected, final long value)
+            throws Exception {
+        final Timer.Context timer = updates.time();
+        try {
+            return record(counter.compareAndSet(expected, value));
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Sets the counter to the given value, regardless of its current value.
+     *
+     * @param value the new value of the counter.
+     *
+     * @return the result of the update; check {@link AtomicValue#succeeded()}.
+     *
+     * @throws Exception if the counter could not be updated.
+     */
+    public AtomicValue<Long> trySet(final long value) throws Exception {
+        final Timer.Context timer = updates.time();
+        try {
+            return record(counter.trySet(value));
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private AtomicValue<Long> record(final AtomicValue<Long> result) {
+        final AtomicStats stats = result.getStats();
+        final int tries = stats.getOptimisticTries() + stats.getPromotedLockTries();
+        attempts.update(tries);
+        if (tries > 1) {
+            contended.inc();
+        }
+        if (!result.succeeded()) {
+            failures.inc();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,147 @@
+package com.datasift.dropwizard.curator.recipes;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.apache.curator.framework.recipes.locks.InterProcessLock;
+import org.apache.curator.framework.recipes.locks.InterProcessMutex;
+import org.apache.zookeeper.KeeperException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link InterProcessLock} that records metrics for an {@link InterProcessMutex}.
+ * <p/>
+ * Before each outermost acquisition, the participants of the lock are listed; if any hold, or
+ * are waiting for, the lock, the acquisition is counted as contended. Listing participants only
+ * reads from the ensemble, so detecting contention neither adds writes nor changes the order in
+ * which waiters are granted the lock.
+ * The following metrics are registered:
+ * <ul>
+ *     <li><i>name</i>.acquisition: the time taken to acquire the lock.</li>
+ *     <li><i>name</i>.contended: the number of acquisitions that had to wait for the lock.</li>
+ *     <li><i>name</i>.timeouts: the number of acquisitions that gave up waiting for the lock.</li>
+ *     <li><i>name</i>.held: the time, in milliseconds, the lock was held before it was released.
+ *     </li>
+ * </ul>
+ * The lock is re-entrant; the hold time spans from the outermost acquisition to its release.
+ * Locks are held by ephemeral ZNodes, so any still held when the {@link
+ * org.apache.curator.framework.CuratorFramework} is stopped are released with its session.
+ *
+ * @see MutexFactory
+ */
+public class InstrumentedInterProcessMutex implements InterProcessLock {
+
+    /**
+     * The re-entrant holds of the lock by a thread.
+     */
+    private static class Hold {
+        int depth = 0;
+        long since = 0;
+    }
+
+    private final InterProcessMutex mutex;
+    private final Timer acquisition;
+    private final Counter contended;
+    private final Counter timeouts;
+    private final Histogram held;
+    private final ThreadLocal<Hold> holds = new ThreadLocal<Hold>() {
+        @Override
+        protected Hold initialValue() {
+            return new Hold();
+        }
+    };
+
+    /**
+     * Records metrics for the given {@link InterProcessMutex}.
+     *
+     * @param mutex the mutex to record metrics for.
+     * @param registry the registry to register metrics with.
+     * @param name the name of the mutex, to prefix its metrics with.
+     */
+    public InstrumentedInterProcessMutex(final InterProcessMutex mutex,
+                                    final MetricRegistry registry,
+                                    final String name) {
+        this.mutex = mutex;
+        this.acquisition = registry.timer(MetricRegistry.name(name, "acquisition"));
+        this.contended = registry.counter(MetricRegistry.name(name, "contended"));
+        this.timeouts = registry.counter(MetricRegistry.name(name, "timeouts"));
+        this.held = registry.histogram(MetricRegistry.name(name, "held"));
+    }
+
+    /**
+     * Returns the underlying {@link InterProcessMutex}.
+     *
+     * @return the underlying mutex.
+     */
+    public InterProcessMutex getMutex() {
+        return mutex;
+    }
+
+    @Override
+    public void acquire() throws Exception {
+        final long start = System.nanoTime();
+        if (isContended()) {
+            contended.inc();
+        }
+        mutex.acquire();
+        acquired(start);
+    }
+
+    @Override
+    public boolean acquire(final long time, final TimeUnit unit) throws Exception {
+        final long start = System.nanoTime();
+        if (isContended()) {
+            contended.inc();
+        }
+        if (!mutex.acquire(time, unit)) {
+            timeouts.inc();
+            return false;
+        }
+        acquired(start);
+        return true;
+    }
+
+    @Override
+    public void release() throws Exception {
+        mutex.release();
+
+        final Hold hold = holds.get();
+        if (hold.depth > 0 && --hold.depth == 0) {
+            held.update(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - hold.since));
+            holds.remove();
+        }
+    }
+
+    @Override
+    public boolean isAcquiredInThisProcess() {
+        return mutex.isAcquiredInThisProcess();
+    }
+
+    /**
+     * Determines whether another participant holds, or is waiting for, the lock; re-entrant
+     * acquisitions by the holder are never contended.
+     */
+    private boolean isContended() throws Exception {
+        if (holds.get().depth > 0) {
+            return false;
+        }
+        try {
+            return !mutex.getParticipantNodes().isEmpty();
+        } catch (final KeeperException.NoNodeException e) {
+            // the lock has never been acquired
+            return false;
+        }
+    }
+
+    private void acquired(final long start) {
+        final long now = System.nanoTime();
+        acquisition.update(now - start, TimeUnit.NANOSECONDS);
+
+        final Hold hold = holds.get();
+        if (hold.depth++ == 0) {
+            hold.since = now;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.datasift.dropwizard.curator.recipes;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.setup.Environment;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.leader.LeaderLatch;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
+
+/**
+ * A factory for creating and managing {@link LeaderLatch}es.
+ *
+ * @see ManagedLeaderLatch
+ */
+public class LeaderLatchFactory {
+
+    @NotEmpty
+    @Pattern(regexp = "^\\/\\S*$")
+    protected String path = "/leader";
+
+    @NotNull
+    protected String id = "";
+
+    /**
+     * Returns the path of the ZNode to hold the election under.
+     *
+     * @return the path of the election, relative to the namespace of the {@link
+     *         CuratorFramework}.
+     */
+    @JsonProperty
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Sets the path of the ZNode to hold the election under.
+     *
+     * @param path the path of the election, relative to the namespace of the {@link
+     *             CuratorFramework}.
+     */
+    @JsonProperty
+    public void setPath(final String path) {
+        this.path = path;
+    }
+
+    /**
+     * Returns the identifier of this participant in the election.
+     *
+     * @return the identifier of this participant, reported to the other participants.
+     */
+    @JsonProperty
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Sets the identifier of this participant in the election.
+     *
+     * @param id the identifier of this participant, reported to the other participants.
+     */
+    @JsonProperty
+    public void setId(final String id) {
+        this.id = id;
+    }
+
+    /**
+     * Builds a {@link ManagedLeaderLatch} for the given {@link Environment}.
+     * <p/>
+     * The latch is managed by the {@link Environment}, and must be built after the {@link
+     * CuratorFramework}, so that it joins the election after the framework is started.
+     *
+     * @param environment the {@link Environment} to build the latch for.
+     * @param framework the {@link CuratorFramework} to hold the election with.
+     * @param name the name of the latch.
+     *
+     * @return a {@link ManagedLeaderLatch}, managed by the environment.
+     */
+    public ManagedLeaderLatch build(final Environment environment,
+                                    final CuratorFramework framework,
+                                    final String name) {
+        final ManagedLeaderLatch latch = new ManagedLeaderLatch(
+                new LeaderLatch(framework, getPath(), getId()), environment.metrics(), name);
+        environment.lifecycle().manage(latch);
+        return latch;
+    }
+}
@@ -0,0 +1,130 @@
+package com.datasift.dropwizard.curator.recipes;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.util.Duration;
+import org.apache.curator.framework.recipes.leader.LeaderLatch;
+import org.apache.curator.framework.recipes.leader.LeaderLatchListener;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manages the lifecycle of a {@link LeaderLatch}, recording metrics for its elections.
+ * <p/>
+ * The latch joins the election when started, and leaves it, relinquishing leadership, when
+ * stopped. The following metrics are registered:
+ * <ul>
+ *     <li><i>name</i>.leader: 1 while the latch has leadership; otherwise, 0.</li>
+ *     <li><i>name</i>.acquisition: the time taken to gain leadership after joining the election
+ *     or losing it.</li>
+ *     <li><i>name</i>.elections: the rate at which leadership is gained.</li>
+ *     <li><i>name</i>.held: the time, in milliseconds, leadership was held before it was lost.</li>
+ * </ul>
+ *
+ * @see LeaderLatchFactory
+ */
+public class ManagedLeaderLatch implements Managed, LeaderLatchListener {
+
+    private final LeaderLatch latch;
+    private final Timer acquisition;
+    private final Meter elections;
+    private final Histogram held;
+
+    private volatile long waitingSince = 0;
+    private volatile long leaderSince = 0;
+
+    /**
+     * Manages the given {@link LeaderLatch}.
+     *
+     * @param latch the latch to manage.
+     * @param registry the registry to register metrics with.
+     * @param name the name of the latch, to prefix its metrics with.
+     */
+    public ManagedLeaderLatch(final LeaderLatch latch,
+                              final MetricRegistry registry,
+                              final String name) {
+        this.latch = latch;
+        this.acquisition = registry.timer(MetricRegistry.name(name, "acquisition"));
+        this.elections = registry.meter(MetricRegistry.name(name, "elections"));
+        this.held = registry.histogram(MetricRegistry.name(name, "held"));
+
+        registry.register(MetricRegistry.name(name, "leader"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return latch.hasLeadership() ? 1 : 0;
+            }
+        });
+
+        latch.addListener(this);
+    }
+
+    /**
+     * Returns the managed {@link LeaderLatch}.
+     *
+     * @return the managed latch.
+     */
+    public LeaderLatch getLatch() {
+        return latch;
+    }
+
+    /**
+     * Returns whether the latch currently has leadership.
+     *
+     * @return true if this latch is the leader; false if it is not.
+     */
+    public boolean hasLeadership() {
+        return latch.hasLeadership();
+    }
+
+    /**
+     * Waits for the latch to gain leadership.
+     *
+     * @param timeout the maximum time to wait for leadership.
+     *
+     * @return true if the latch gained leadership; false if the timeout elapsed first.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean await(final Duration timeout) throws InterruptedException {
+        return latch.await(timeout.getQuantity(), timeout.getUnit());
+    }
+
+    @Override
+    public void start() throws Exception {
+        waitingSince = System.nanoTime();
+        latch.start();
+    }
+
+    @Override
+    public void stop() throws Exception {
+        final boolean leader = latch.hasLeadership();
+        latch.close();
+
+        // closing the latch doesn't notify its listeners
+        if (leader) {
+            notLeader();
+        }
+    }
+
+    @Override
+    public void isLeader() {
+        final long now = System.nanoTime();
+        acquisition.update(now - waitingSince, TimeUnit.NANOSECONDS);
+        elections.mark();
+        leaderSince = now;
+    }
+
+    @Override
+    public void notLeader() {
+        final long now = System.nanoTime();
+        if (leaderSince != 0) {
+            held.update(TimeUnit.NANOSECONDS.toMillis(now - leaderSince));
+            leaderSince = 0;
+        }
+        waitingSince = now;
+    }
+}
@@ -0,0 +1,121 @@
+package com.datasift.dropwizard.curator.recipes;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.dropwizard.lifecycle.Managed;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manages the lifecycle of a {@link PathChildrenCache}, recording metrics for its contents.
+ * <p/>
+ * The cache is populated when started, and closed when stopped. The following metrics are
+ * registered:
+ * <ul>
+ *     <li><i>name</i>.size: the number of children in the cache.</li>
+ *     <li><i>name</i>.initialization: the time taken to populate the cache when started.</li>
+ *     <li><i>name</i>.updates: the rate at which children are added, updated or removed.</li>
+ * </ul>
+ *
+ * @see PathChildrenCacheFactory
+ */
+public class ManagedPathChildrenCache implements Managed, PathChildrenCacheListener {
+
+    private final PathChildrenCache cache;
+    private final Timer initialization;
+    private final Meter updates;
+
+    private volatile Timer.Context initializing = null;
+
+    /**
+     * Manages the given {@link PathChildrenCache}.
+     *
+     * @param cache the cache to manage.
+     * @param registry the registry to register metrics with.
+     * @param name the name of the cache, to prefix its metrics with.
+     */
+    public ManagedPathChildrenCache(final PathChildrenCache cache,
+                                    final MetricRegistry registry,
+                                    final String name) {
+        this.cache = cache;
+        this.initialization = registry.timer(MetricRegistry.name(name, "initialization"));
+        this.updates = registry.meter(MetricRegistry.name(name, "updates"));
+
+        registry.register(MetricRegistry.name(name, "size"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return cache.getCurrentData().size();
+            }
+        });
+
+        cache.getListenable().addListener(this);
+    }
+
+    /**
+     * Returns the managed {@link PathChildrenCache}.
+     *
+     * @return the managed cache.
+     */
+    public PathChildrenCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Returns the current children in the cache.
+     *
+     * @return the children in the cache, sorted by path.
+     */
+    public List<ChildData> getCurrentData() {
+        return cache.getCurrentData();
+    }
+
+    /**
+     * Returns the current data of a child in the cache.
+     *
+     * @param path the full path of the child.
+     *
+     * @return the data of the child; or null, if it's not in the cache.
+     */
+    public ChildData getCurrentData(final String path) {
+        return cache.getCurrentData(path);
+    }
+
+    @Override
+    public void start() throws Exception {
+        initializing = initialization.time();
+        cache.start(PathChildrenCache.StartMode.POST_INITIALIZED_EVENT);
+    }
+
+    @Override
+    public void stop() throws Exception {
+        cache.close();
+    }
+
+    @Override
+    public void childEvent(final CuratorFramework client, final PathChildrenCacheEvent event) {
+        switch (event.getType()) {
+            case CHILD_ADDED:
+            case CHILD_UPDATED:
+            case CHILD_REMOVED:
+                updates.mark();
+                break;
+            case INITIALIZED:
+                final Timer.Context context = initializing;
+                if (context != null) {
+                    initializing = null;
+                    context.stop();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+}
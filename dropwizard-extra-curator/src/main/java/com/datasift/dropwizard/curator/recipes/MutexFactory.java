@@ -0,0 +1,58 @@
+package com.datasift.dropwizard.curator.recipes;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.setup.Environment;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.locks.InterProcessMutex;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.constraints.Pattern;
+
+/**
+ * A factory for creating {@link InterProcessMutex}es.
+ *
+ * @see InstrumentedInterProcessMutex
+ */
+public class MutexFactory {
+
+    @NotEmpty
+    @Pattern(regexp = "^\\/\\S*$")
+    protected String path = "/lock";
+
+    /**
+     * Returns the path of the ZNode to hold the lock under.
+     *
+     * @return the path of the lock, relative to the namespace of the {@link CuratorFramework}.
+     */
+    @JsonProperty
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Sets the path of the ZNode to hold the lock under.
+     *
+     * @param path the path of the lock, relative to the namespace of the {@link
+     *             CuratorFramework}.
+     */
+    @JsonProperty
+    public void setPath(final String path) {
+        this.path = path;
+    }
+
+    /**
+     * Builds an {@link InstrumentedInterProcessMutex} for the given {@link Environment}.
+     *
+     * @param environment the {@link Environment} to register the metrics of the lock with.
+     * @param framework the {@link CuratorFramework} to hold the lock with.
+     * @param name the name of the lock.
+     *
+     * @return an {@link InstrumentedInterProcessMutex}.
+     */
+    public InstrumentedInterProcessMutex build(final Environment environment,
+                                               final CuratorFramework framework,
+                                               final String name) {
+        return new InstrumentedInterProcessMutex(
+                new InterProcessMutex(framework, getPath()), environment.metrics(), name);
+    }
+}
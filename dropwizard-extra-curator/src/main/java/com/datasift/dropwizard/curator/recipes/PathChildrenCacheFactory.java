@@ -0,0 +1,94 @@
+package com.datasift.dropwizard.curator.recipes;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.setup.Environment;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.constraints.Pattern;
+
+/**
+ * A factory for creating and managing {@link PathChildrenCache}s.
+ *
+ * @see ManagedPathChildrenCache
+ */
+public class PathChildrenCacheFactory {
+
+    @NotEmpty
+    @Pattern(regexp = "^\\/\\S*$")
+    protected String path = "/";
+
+    protected boolean cacheData = true;
+
+    /**
+     * Returns the path of the ZNode whose children are cached.
+     *
+     * @return the path of the parent of the cached ZNodes, relative to the namespace of the
+     *         {@link CuratorFramework}.
+     */
+    @JsonProperty
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Sets the path of the ZNode whose children are cached.
+     *
+     * @param path the path of the parent of the cached ZNodes, relative to the namespace of the
+     *             {@link CuratorFramework}.
+     */
+    @JsonProperty
+    public void setPath(final String path) {
+        this.path = path;
+    }
+
+    /**
+     * Returns whether the data of each child is cached, in addition to its {@link
+     * org.apache.zookeeper.data.Stat}.
+     *
+     * @return true if the data of each child is cached; false if only its stat is.
+     */
+    @JsonProperty
+    public boolean isCacheData() {
+        return cacheData;
+    }
+
+    /**
+     * Sets whether the data of each child is cached, in addition to its {@link
+     * org.apache.zookeeper.data.Stat}.
+     *
+     * @param cacheData true if the data of each child is cached; false if only its stat is.
+     */
+    @JsonProperty
+    public void setCacheData(final boolean cacheData) {
+        this.cacheData = cacheData;
+    }
+
+    /**
+     * Builds a {@link ManagedPathChildrenCache} for the given {@link Environment}.
+     * <p/>
+     * The cache is managed by the {@link Environment}, and must be built after the {@link
+     * CuratorFramework}, so that it's populated after the framework is started.
+     *
+     * @param environment the {@link Environment} to build the cache for.
+     * @param framework the {@link CuratorFramework} to read the children with.
+     * @param name the name of the cache.
+     *
+     * @return a {@link ManagedPathChildrenCache}, managed by the environment.
+     */
+    public ManagedPathChildrenCache build(final Environment environment,
+                                          final CuratorFramework framework,
+                                          final String name) {
+        final PathChildrenCache cache = new PathChildrenCache(
+                framework,
+                getPath(),
+                isCacheData(),
+                new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build());
+        final ManagedPathChildrenCache managed =
+                new ManagedPathChildrenCache(cache, environment.metrics(), name);
+        environment.lifecycle().manage(managed);
+        return managed;
+    }
+}
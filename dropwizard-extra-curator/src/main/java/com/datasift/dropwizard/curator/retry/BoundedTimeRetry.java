@@ -0,0 +1,62 @@
+package com.datasift.dropwizard.curator.retry;
+
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.RetrySleeper;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link RetryPolicy} that retries until a time limit has elapsed, sleeping for a jittered
+ * exponential back-off between attempts.
+ * <p/>
+ * Each sleep is chosen at random up to an exponentially growing bound, capped at a maximum, and
+ * never extends past the time limit, so an operation is abandoned promptly once its time is up.
+ */
+public class BoundedTimeRetry implements RetryPolicy {
+
+    private static final int MAX_SHIFT = 30;
+
+    private final Random random = new Random();
+    private final long baseSleepMs;
+    private final long maxSleepMs;
+    private final long maxElapsedMs;
+
+    /**
+     * Creates a policy that retries until {@code maxElapsedMs} have elapsed.
+     *
+     * @param baseSleepMs the initial bound on the time to sleep between attempts, in
+     *                    milliseconds.
+     * @param maxSleepMs the maximum time to sleep between attempts, in milliseconds.
+     * @param maxElapsedMs the maximum time to retry for, in milliseconds.
+     */
+    public BoundedTimeRetry(final long baseSleepMs,
+                            final long maxSleepMs,
+                            final long maxElapsedMs) {
+        this.baseSleepMs = Math.max(1, baseSleepMs);
+        this.maxSleepMs = Math.max(this.baseSleepMs, maxSleepMs);
+        this.maxElapsedMs = maxElapsedMs;
+    }
+
+    @Override
+    public boolean allowRetry(final int retryCount,
+                              final long elapsedTimeMs,
+                              final RetrySleeper sleeper) {
+        final long remaining = maxElapsedMs - elapsedTimeMs;
+        if (remaining <= 0) {
+            return false;
+        }
+
+        final long bound = Math.min(maxSleepMs,
+                baseSleepMs << Math.min(MAX_SHIFT, Math.max(0, retryCount)));
+        final long sleep = Math.min(remaining, 1 + (long) (random.nextDouble() * bound));
+
+        try {
+            sleeper.sleepFor(sleep, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,42 @@
+package com.datasift.dropwizard.curator.retry;
+
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.RetrySleeper;
+
+/**
+ * A {@link RetryPolicy} that only retries while a {@link RetryBudget} allows it.
+ * <p/>
+ * Only retries that are made are withdrawn from the budget. The budget is checked before asking
+ * the delegate, since the delegate sleeps before allowing a retry; a retry the delegate refuses is
+ * refunded.
+ */
+public class BudgetedRetryPolicy implements RetryPolicy {
+
+    private final RetryPolicy delegate;
+    private final RetryBudget budget;
+
+    /**
+     * Limits the retries of the given {@link RetryPolicy} to the given {@link RetryBudget}.
+     *
+     * @param delegate the policy to decide whether, and when, to retry.
+     * @param budget the budget each retry is withdrawn from.
+     */
+    public BudgetedRetryPolicy(final RetryPolicy delegate, final RetryBudget budget) {
+        this.delegate = delegate;
+        this.budget = budget;
+    }
+
+    @Override
+    public boolean allowRetry(final int retryCount,
+                              final long elapsedTimeMs,
+                              final RetrySleeper sleeper) {
+        if (!budget.tryAcquire()) {
+            return false;
+        }
+        if (delegate.allowRetry(retryCount, elapsedTimeMs, sleeper)) {
+            return true;
+        }
+        budget.refund();
+        return false;
+    }
+}
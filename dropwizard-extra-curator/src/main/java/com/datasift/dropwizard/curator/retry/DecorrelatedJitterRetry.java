@@ -0,0 +1,74 @@
+package com.datasift.dropwizard.curator.retry;
+
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.RetrySleeper;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link RetryPolicy} that retries a bounded number of times, sleeping for a "decorrelated
+ * jitter" back-off between attempts.
+ * <p/>
+ * Each sleep is chosen at random between the base sleep time and three times the previous sleep,
+ * capped at a maximum. Unlike a plain exponential back-off, the sleeps of clients that fail at the
+ * same time quickly diverge, so they don't retry in lock-step.
+ * <p/>
+ * Curator retries each operation on the thread that performs it, so the previous sleep is tracked
+ * per thread, and reset at the start of each operation.
+ */
+public class DecorrelatedJitterRetry implements RetryPolicy {
+
+    private final Random random = new Random();
+    private final ThreadLocal<Long> previous = new ThreadLocal<>();
+    private final long baseSleepMs;
+    private final long maxSleepMs;
+    private final int maxRetries;
+
+    /**
+     * Creates a policy that retries at most {@code maxRetries} times.
+     *
+     * @param baseSleepMs the minimum time to sleep between attempts, in milliseconds.
+     * @param maxSleepMs the maximum time to sleep between attempts, in milliseconds.
+     * @param maxRetries the maximum number of times to retry.
+     */
+    public DecorrelatedJitterRetry(final long baseSleepMs,
+                                   final long maxSleepMs,
+                                   final int maxRetries) {
+        this.baseSleepMs = Math.max(1, baseSleepMs);
+        this.maxSleepMs = Math.max(this.baseSleepMs, maxSleepMs);
+        this.maxRetries = maxRetries;
+    }
+
+    @Override
+    public boolean allowRetry(final int retryCount,
+                              final long elapsedTimeMs,
+                              final RetrySleeper sleeper) {
+        if (retryCount >= maxRetries) {
+            previous.remove();
+            return false;
+        }
+
+        final Long last = retryCount == 0 ? null : previous.get();
+        final long sleep = nextSleepMs(last == null ? baseSleepMs : last);
+        previous.set(sleep);
+
+        try {
+            sleeper.sleepFor(sleep, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Chooses the time to sleep after the given previous sleep.
+     */
+    long nextSleepMs(final long previousSleepMs) {
+        final long upper = Math.min(maxSleepMs, previousSleepMs * 3);
+        final long range = Math.max(0, upper - baseSleepMs);
+        final long jitter = range == 0 ? 0 : (long) (random.nextDouble() * (range + 1));
+        return Math.min(maxSleepMs, baseSleepMs + jitter);
+    }
+}
@@ -0,0 +1,64 @@
+package com.datasift.dropwizard.curator.retry;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.RetrySleeper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link RetryPolicy} that records metrics for another.
+ * <p/>
+ * The following metrics are registered:
+ * <ul>
+ *     <li><i>name</i>.retries: the rate of retries.</li>
+ *     <li><i>name</i>.exhausted: the rate of operations abandoned without a further retry.</li>
+ *     <li><i>name</i>.delay: the time, in milliseconds, slept before each retry.</li>
+ * </ul>
+ */
+public class InstrumentedRetryPolicy implements RetryPolicy {
+
+    private final RetryPolicy delegate;
+    private final Meter retries;
+    private final Meter exhausted;
+    private final Histogram delay;
+
+    /**
+     * Records metrics for the given {@link RetryPolicy}.
+     *
+     * @param delegate the policy to record metrics for.
+     * @param registry the registry to register metrics with.
+     * @param name the name to prefix the metrics with.
+     */
+    public InstrumentedRetryPolicy(final RetryPolicy delegate,
+                                   final MetricRegistry registry,
+                                   final String name) {
+        this.delegate = delegate;
+        this.retries = registry.meter(MetricRegistry.name(name, "retries"));
+        this.exhausted = registry.meter(MetricRegistry.name(name, "exhausted"));
+        this.delay = registry.histogram(MetricRegistry.name(name, "delay"));
+    }
+
+    @Override
+    public boolean allowRetry(final int retryCount,
+                              final long elapsedTimeMs,
+                              final RetrySleeper sleeper) {
+        final boolean allowed = delegate.allowRetry(retryCount, elapsedTimeMs, new RetrySleeper() {
+            @Override
+            public void sleepFor(final long time, final TimeUnit unit)
+                    throws InterruptedException {
+                delay.update(unit.toMillis(time));
+                sleeper.sleepFor(time, unit);
+            }
+        });
+
+        if (allowed) {
+            retries.mark();
+        } else {
+            exhausted.mark();
+        }
+        return allowed;
+    }
+}
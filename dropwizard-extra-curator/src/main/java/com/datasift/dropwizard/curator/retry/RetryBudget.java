@@ -0,0 +1,91 @@
+package com.datasift.dropwizard.curator.retry;
+
+import io.dropwizard.util.Duration;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A budget of retries, replenished at a fixed rate, shared by every client in the process.
+ * <p/>
+ * When an ensemble is unavailable, every client retries every failed operation; a budget caps
+ * the rate of retries across the whole process, so that retries fail fast once it's exhausted,
+ * instead of piling onto an ensemble that's trying to recover.
+ *
+ * @see BudgetedRetryPolicy
+ */
+public class RetryBudget {
+
+    private static final ConcurrentMap<String, RetryBudget> BUDGETS = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the budget shared by every client in the process with the given name, creating it
+     * if it doesn't yet exist.
+     * <p/>
+     * The size of a shared budget is fixed by the first client to request it.
+     *
+     * @param name the name of the budget; e.g. the ensemble it's shared by clients of.
+     * @param retries the maximum number of retries to allow per interval.
+     * @param interval the interval over which the budget is replenished.
+     *
+     * @return the shared budget.
+     */
+    public static RetryBudget shared(final String name,
+                                     final int retries,
+                                     final Duration interval) {
+        final RetryBudget budget = new RetryBudget(retries, interval);
+        final RetryBudget existing = BUDGETS.putIfAbsent(name, budget);
+        return existing == null ? budget : existing;
+    }
+
+    private final double capacity;
+    private final double refillPerNano;
+    private double available;
+    private long lastRefill;
+
+    /**
+     * Creates a budget of {@code retries} per {@code interval}.
+     *
+     * @param retries the maximum number of retries to allow per interval.
+     * @param interval the interval over which the budget is replenished.
+     */
+    public RetryBudget(final int retries, final Duration interval) {
+        this.capacity = retries;
+        this.refillPerNano = retries / (double) Math.max(1, interval.toNanoseconds());
+        this.available = retries;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Attempts to withdraw a retry from the budget.
+     *
+     * @return true if the retry is allowed; false if the budget is exhausted.
+     */
+    public synchronized boolean tryAcquire() {
+        final long now = System.nanoTime();
+        available = Math.min(capacity, available + (now - lastRefill) * refillPerNano);
+        lastRefill = now;
+
+        if (available >= 1) {
+            available -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns a retry withdrawn by {@link #tryAcquire()} that wasn't made to the budget.
+     */
+    public synchronized void refund() {
+        available = Math.min(capacity, available + 1);
+    }
+
+    /**
+     * Returns the number of retries currently available.
+     *
+     * @return the number of retries that may be made before the budget is exhausted.
+     */
+    public synchronized int getAvailable() {
+        return (int) available;
+    }
+}
@@ -2,6 +2,13 @@ package com.datasift.dropwizard.curator;
 
 import io.dropwizard.configuration.ConfigurationFactory;
 import io.dropwizard.jackson.Jackson;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+import com.datasift.dropwizard.curator.compression.ThresholdCompressionProvider;
+import com.datasift.dropwizard.curator.ensemble.DnsSrvEnsembleSource;
+import com.datasift.dropwizard.curator.retry.BudgetedRetryPolicy;
+import com.datasift.dropwizard.curator.retry.DecorrelatedJitterRetry;
+import com.datasift.dropwizard.curator.ensemble.EnsembleDiscoveryFactory;
 import com.datasift.dropwizard.zookeeper.ZooKeeperFactory;
 import com.google.common.io.Resources;
 import org.apache.curator.framework.api.CompressionProvider;
@@ -42,6 +49,19 @@ public class CuratorFactoryTest {
                 instanceOf(ExponentialBackoffRetry.class));
     }
 
+    @Test
+    public void testConfiguredRetryPolicy() {
+        factory.setRetryPolicyType(CuratorFactory.RetryPolicyType.DECORRELATED_JITTER);
+        assertThat("has decorrelated jitter RetryPolicy",
+                factory.getRetryPolicy(),
+                instanceOf(DecorrelatedJitterRetry.class));
+
+        factory.setRetryBudget(100);
+        assertThat("has budgeted RetryPolicy",
+                factory.getRetryPolicy(),
+                instanceOf(BudgetedRetryPolicy.class));
+    }
+
     @Test
     public void testCompressionCodec() {
         assertThat("has CompressionCodec",
@@ -55,4 +75,28 @@ public class CuratorFactoryTest {
                 factory.getCompressionProvider(),
                 instanceOf(CompressionProvider.class));
     }
+
+    @Test
+    public void testCompressionThreshold() {
+        assertThat("has compression threshold",
+                factory.getCompressionThreshold(),
+                is(Size.kilobytes(1)));
+        assertThat("supplied threshold CompressionProvider",
+                factory.getCompressionProvider(),
+                instanceOf(ThresholdCompressionProvider.class));
+    }
+
+    @Test
+    public void testDiscovery() {
+        final EnsembleDiscoveryFactory discovery = factory.getDiscovery();
+        assertThat("has discovery source",
+                discovery.getSource(),
+                is(EnsembleDiscoveryFactory.Source.DNS));
+        assertThat("has refresh interval",
+                discovery.getRefreshInterval(),
+                is(Duration.minutes(1)));
+        assertThat("builds DNS source",
+                discovery.build(null).get(),
+                instanceOf(DnsSrvEnsembleSource.class));
+    }
 }
@@ -0,0 +1,99 @@
+package com.datasift.dropwizard.curator.compression;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import org.apache.curator.framework.api.CompressionProvider;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests the {@link CompressionProvider}s.
+ */
+public class CompressionProviderTest {
+
+    private static final byte[] LARGE =
+            Strings.repeat("compressible value ", 100).getBytes(Charsets.UTF_8);
+    private static final byte[] SMALL = "small".getBytes(Charsets.UTF_8);
+
+    @Test
+    public void lz4RoundTrips() throws Exception {
+        assertRoundTrips(new Lz4CompressionProvider());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lz4RejectsNegativeLength() throws Exception {
+        final byte[] compressed = new Lz4CompressionProvider().compress("/large", LARGE);
+        ByteBuffer.wrap(compressed).putInt(-1);
+        new Lz4CompressionProvider().decompress("/large", compressed);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lz4RejectsWrongLength() throws Exception {
+        final byte[] compressed = new Lz4CompressionProvider().compress("/large", LARGE);
+        ByteBuffer.wrap(compressed).putInt(LARGE.length + 1);
+        new Lz4CompressionProvider().decompress("/large", compressed);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lz4RejectsOversizedLength() throws Exception {
+        final byte[] compressed = new Lz4CompressionProvider().compress("/large", LARGE);
+        ByteBuffer.wrap(compressed).putInt(Integer.MAX_VALUE);
+        new Lz4CompressionProvider().decompress("/large", compressed);
+    }
+
+    @Test
+    public void lz4RoundTripsHighlyCompressibleValues() throws Exception {
+        final CompressionProvider provider = new Lz4CompressionProvider();
+        final byte[] zeroes = new byte[1 << 20];
+        assertThat("round-trips",
+                provider.decompress("/zeroes", provider.compress("/zeroes", zeroes)),
+                is(zeroes));
+    }
+
+    @Test
+    public void snappyRoundTrips() throws Exception {
+        assertRoundTrips(new SnappyCompressionProvider());
+    }
+
+    @Test
+    public void thresholdStoresSmallValues() throws Exception {
+        final CompressionProvider provider =
+                new ThresholdCompressionProvider(new Lz4CompressionProvider(), 64);
+
+        final byte[] stored = provider.compress("/small", SMALL);
+        assertThat("stores small value with marker", stored.length, is(SMALL.length + 1));
+        assertThat("reads stored value", provider.decompress("/small", stored), is(SMALL));
+
+        assertRoundTrips(provider);
+    }
+
+    @Test
+    public void recordsCompressionMetrics() throws Exception {
+        final MetricRegistry registry = new MetricRegistry();
+        final CompressionProvider provider = new InstrumentedCompressionProvider(
+                new SnappyCompressionProvider(), registry, "compression");
+
+        provider.decompress("/large", provider.compress("/large", LARGE));
+
+        assertThat("times compression",
+                registry.timer("compression.compress").getCount(),
+                is(1L));
+        assertThat("times decompression",
+                registry.timer("compression.decompress").getCount(),
+                is(1L));
+        assertThat("records compression ratio",
+                registry.histogram("compression.ratio").getSnapshot().getMax(),
+                is(lessThan(100L)));
+    }
+
+    private static void assertRoundTrips(final CompressionProvider provider) throws Exception {
+        final byte[] compressed = provider.compress("/large", LARGE);
+        assertThat("compresses value", compressed.length, is(lessThan(LARGE.length)));
+        assertThat("decompresses value", provider.decompress("/large", compressed), is(LARGE));
+    }
+}
@@ -0,0 +1,145 @@
+package com.datasift.dropwizard.curator.ensemble;
+
+import com.datasift.dropwizard.zookeeper.ZooKeeperFactory;
+import com.google.common.collect.ImmutableMap;
+import io.dropwizard.util.Duration;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests {@link DropwizardConfiguredEnsembleProvider}.
+ */
+public class DropwizardConfiguredEnsembleProviderTest {
+
+    private final ZooKeeperFactory factory = mock(ZooKeeperFactory.class);
+    private final EnsembleSource source = mock(EnsembleSource.class);
+    private DropwizardConfiguredEnsembleProvider provider = null;
+
+    @Before
+    public void setup() {
+        when(factory.getSelectedQuorumSpec()).thenReturn("static1:2181,static2:2181");
+        when(factory.selectServers(anyString())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(final InvocationOnMock invocation) {
+                return (String) invocation.getArguments()[0];
+            }
+        });
+        provider = new DropwizardConfiguredEnsembleProvider(
+                factory, source, Duration.minutes(10));
+    }
+
+    @Test
+    public void usesStaticServersWithoutSource() throws Exception {
+        final DropwizardConfiguredEnsembleProvider provider =
+                new DropwizardConfiguredEnsembleProvider(factory);
+        provider.start();
+
+        assertThat("uses configured servers",
+                provider.getConnectionString(),
+                is("static1:2181,static2:2181"));
+    }
+
+    @Test
+    public void usesDiscoveredServersOnStart() throws Exception {
+        when(source.getConnectionString()).thenReturn("zk1:2181,zk2:2181");
+        provider.start();
+        try {
+            assertThat("uses discovered servers",
+                    provider.getConnectionString(),
+                    is("zk1:2181,zk2:2181"));
+            verify(source).start(any(Runnable.class));
+        } finally {
+            provider.close();
+        }
+        verify(source).close();
+    }
+
+    @Test
+    public void fallsBackToStaticServersWhenSourceFails() throws Exception {
+        when(source.getConnectionString()).thenThrow(new IOException("unavailable"));
+        provider.start();
+        try {
+            assertThat("uses configured servers",
+                    provider.getConnectionString(),
+                    is("static1:2181,static2:2181"));
+        } finally {
+            provider.close();
+        }
+    }
+
+    @Test
+    public void retainsServersWhenSourceFailsLater() throws Exception {
+        when(source.getConnectionString())
+                .thenReturn("zk1:2181")
+                .thenReturn(null)
+                .thenThrow(new IOException("unavailable"));
+
+        provider.refresh();
+        provider.refresh();
+        provider.refresh();
+
+        assertThat("retains last discovered servers",
+                provider.getConnectionString(),
+                is("zk1:2181"));
+    }
+
+    @Test
+    public void ignoresReorderedServers() throws Exception {
+        when(source.getConnectionString())
+                .thenReturn("zk1:2181,zk2:2181")
+                .thenReturn("zk2:2181,zk1:2181")
+                .thenReturn("zk2:2181,zk3:2181");
+
+        provider.refresh();
+        provider.refresh();
+        assertThat("keeps connection string when servers are unchanged",
+                provider.getConnectionString(),
+                is("zk1:2181,zk2:2181"));
+
+        provider.refresh();
+        assertThat("adopts changed servers",
+                provider.getConnectionString(),
+                is("zk2:2181,zk3:2181"));
+    }
+
+    @Test
+    public void selectsDiscoveredServersByZone() throws Exception {
+        final ZooKeeperFactory factory = new ZooKeeperFactory();
+        factory.setZone("a");
+        factory.setZones(ImmutableMap.of("zk1", "a", "zk2", "b"));
+        factory.setServerSelection(ZooKeeperFactory.ServerSelection.LOCAL_ZONE_ONLY);
+        when(source.getConnectionString()).thenReturn("zk1:2181,zk2:2181");
+
+        final DropwizardConfiguredEnsembleProvider provider =
+                new DropwizardConfiguredEnsembleProvider(factory, source, Duration.minutes(10));
+        provider.refresh();
+
+        assertThat("only discovered servers in the local zone are used",
+                provider.getConnectionString(),
+                is("zk1:2181"));
+    }
+
+    @Test
+    public void ignoresChangesReportedAfterClose() throws Exception {
+        when(source.getConnectionString()).thenReturn("zk1:2181");
+        provider.start();
+        final ArgumentCaptor<Runnable> onChange = ArgumentCaptor.forClass(Runnable.class);
+        verify(source).start(onChange.capture());
+
+        provider.close();
+        onChange.getValue().run();
+
+        assertThat("retains last discovered servers",
+                provider.getConnectionString(),
+                is("zk1:2181"));
+    }
+}
@@ -41,4 +41,21 @@ public class DynamicZooKeeperConfigurationTest {
 
         assertThat("uses default port", conf.getPort(), is(port));
     }
+
+    @Test
+    public void parsesConnectionStringWithPerHostPorts() {
+        final DropwizardConfiguredZooKeeperFactory.DynamicZooKeeperFactory conf
+                = new DropwizardConfiguredZooKeeperFactory.DynamicZooKeeperFactory(
+                    "zk1.lan:2181,zk2.lan:2182/namespace", 0, true);
+
+        assertThat("retains per-host ports",
+                conf.getHosts(),
+                is(equalTo(new String[] { "zk1.lan:2181", "zk2.lan:2182" })));
+
+        assertThat("reconstructs quorum spec",
+                conf.getQuorumSpec(),
+                is("zk1.lan:2181,zk2.lan:2182"));
+
+        assertThat("parses namespace", conf.getNamespace(), is("/namespace"));
+    }
 }
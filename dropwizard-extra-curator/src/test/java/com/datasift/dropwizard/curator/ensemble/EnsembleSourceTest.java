@@ -0,0 +1,104 @@
+package com.datasift.dropwizard.curator.ensemble;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@link EnsembleSource}s.
+ */
+public class EnsembleSourceTest {
+
+    private Path dir = null;
+
+    @Before
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("ensemble");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (final Path file : Files.newDirectoryStream(dir)) {
+            Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void readsServersFromFile() throws Exception {
+        final Path file = dir.resolve("servers");
+        Files.write(file, "# ensemble\nzk1:2181, zk2:2181\n\nzk3:2182\n".getBytes(Charsets.UTF_8));
+
+        assertThat("reads servers from file",
+                new FileEnsembleSource(file).getConnectionString(),
+                is("zk1:2181,zk2:2181,zk3:2182"));
+    }
+
+    @Test
+    public void missingFileHasNoServers() throws Exception {
+        assertThat("missing file yields no servers",
+                new FileEnsembleSource(dir.resolve("missing")).getConnectionString(),
+                is(nullValue()));
+    }
+
+    @Test
+    public void notifiesOfReplacedFile() throws Exception {
+        final Path file = dir.resolve("servers");
+        Files.write(file, "zk1:2181".getBytes(Charsets.UTF_8));
+
+        final CountDownLatch changed = new CountDownLatch(1);
+        final FileEnsembleSource source = new FileEnsembleSource(file);
+        source.start(new Runnable() {
+            @Override
+            public void run() {
+                changed.countDown();
+            }
+        });
+
+        try {
+            final Path replacement = dir.resolve("servers.tmp");
+            Files.write(replacement, "zk2:2181".getBytes(Charsets.UTF_8));
+            Files.move(replacement, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+
+            assertThat("notified of change", changed.await(30, TimeUnit.SECONDS), is(true));
+            assertThat("reads replaced servers", source.getConnectionString(), is("zk2:2181"));
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void parsesSrvRecordsByPriority() {
+        assertThat("orders records by priority, then weight",
+                DnsSrvEnsembleSource.toConnectionString(ImmutableList.of(
+                        "20 0 2181 zk3.example.com.",
+                        "10 5 2181 zk2.example.com.",
+                        "10 10 2182 zk1.example.com.")),
+                is("zk1.example.com:2182,zk2.example.com:2181,zk3.example.com:2181"));
+    }
+
+    @Test
+    public void parsesDynamicConfiguration() {
+        final String config = "server.1=zk1:2888:3888:participant;0.0.0.0:2181\n"
+                + "server.2=zk2:2888:3888:participant;10.0.0.2:2181\n"
+                + "server.3=zk3:2888:3888:observer;2182\n"
+                + "version=100000000";
+
+        assertThat("parses client addresses of servers",
+                ZooKeeperConfigEnsembleSource.parse(config),
+                is("zk1:2181,10.0.0.2:2181,zk3:2182"));
+    }
+}
@@ -0,0 +1,171 @@
+package com.datasift.dropwizard.curator.recipes;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datasift.dropwizard.zookeeper.testing.EmbeddedZooKeeper;
+import com.google.common.collect.ImmutableList;
+import io.dropwizard.util.Duration;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.atomic.DistributedAtomicLong;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.leader.LeaderLatch;
+import org.apache.curator.framework.recipes.locks.InterProcessMutex;
+import org.apache.curator.retry.RetryOneTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the instrumented Curator recipes.
+ */
+public class CuratorRecipesTest {
+
+    private static final Duration TIMEOUT = Duration.seconds(10);
+
+    private EmbeddedZooKeeper zookeeper;
+    private CuratorFramework framework;
+    private MetricRegistry registry;
+
+    @Before
+    public void setUp() throws Exception {
+        zookeeper = new EmbeddedZooKeeper();
+        zookeeper.start();
+
+        framework = CuratorFrameworkFactory.newClient(
+                zookeeper.getConnectString(), new RetryOneTime(100));
+        framework.start();
+        registry = new MetricRegistry();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        // Curator 2.0.1 closes its client with a Guava method that Dropwizard's Guava lacks
+        framework.getZookeeperClient().getZooKeeper().close();
+        zookeeper.stop();
+    }
+
+    @Test
+    public void recordsLeadership() throws Exception {
+        final ManagedLeaderLatch latch = new ManagedLeaderLatch(
+                new LeaderLatch(framework, "/leader"), registry, "latch");
+        latch.start();
+
+        assertThat("gains leadership", latch.await(TIMEOUT), is(true));
+        assertThat("reports leadership", registry.getGauges().get("latch.leader").getValue(),
+                is((Object) 1));
+        assertThat("records election", registry.meter("latch.elections").getCount(), is(1L));
+        assertThat("records acquisition",
+                registry.timer("latch.acquisition").getCount(),
+                is(1L));
+
+        latch.stop();
+        assertThat("records hold time", registry.histogram("latch.held").getCount(), is(1L));
+    }
+
+    @Test
+    public void recordsLockContention() throws Exception {
+        final InstrumentedInterProcessMutex mutex = new InstrumentedInterProcessMutex(
+                new InterProcessMutex(framework, "/lock"), registry, "lock");
+
+        mutex.acquire();
+        mutex.acquire();
+        assertThat("uncontended and re-entrant acquisitions",
+                registry.counter("lock.contended").getCount(),
+                is(0L));
+        mutex.release();
+
+        // a mutex is re-entrant for its holder, so contend from another thread
+        final CountDownLatch attempted = new CountDownLatch(1);
+        final boolean[] acquired = { true };
+        final Thread contender = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    acquired[0] = mutex.acquire(100, TimeUnit.MILLISECONDS);
+                } catch (final Exception e) {
+                    // leave as acquired, to fail the test
+                }
+                attempted.countDown();
+            }
+        };
+        contender.start();
+        attempted.await(TIMEOUT.getQuantity(), TIMEOUT.getUnit());
+
+        assertThat("contender times out", acquired[0], is(false));
+        assertThat("records contention", registry.counter("lock.contended").getCount(), is(1L));
+        assertThat("records timeout", registry.counter("lock.timeouts").getCount(), is(1L));
+        assertThat("contender leaves no lock node behind",
+                framework.getChildren().forPath("/lock").size(),
+                is(1));
+
+        mutex.release();
+        assertThat("records acquisitions", registry.timer("lock.acquisition").getCount(), is(2L));
+        assertThat("records hold time", registry.histogram("lock.held").getCount(), is(1L));
+    }
+
+    @Test
+    public void detectsContentionWithoutTryingTheLock() throws Exception {
+        final InterProcessMutex underlying = mock(InterProcessMutex.class);
+        when(underlying.getParticipantNodes()).thenReturn(ImmutableList.of("holder"));
+        final InstrumentedInterProcessMutex mutex =
+                new InstrumentedInterProcessMutex(underlying, registry, "lock");
+
+        mutex.acquire();
+
+        verify(underlying, never()).acquire(anyLong(), any(TimeUnit.class));
+        verify(underlying).acquire();
+        assertThat("records contention", registry.counter("lock.contended").getCount(), is(1L));
+    }
+
+    @Test
+    public void recordsCounterUpdates() throws Exception {
+        final InstrumentedAtomicLong counter = new InstrumentedAtomicLong(
+                new DistributedAtomicLong(framework, "/counter", new RetryOneTime(10)),
+                registry,
+                "counter");
+
+        assertThat("increments", counter.increment().succeeded(), is(true));
+        assertThat("adds", counter.add(2).postValue(), is(3L));
+        assertThat("has value", counter.get().postValue(), is(3L));
+        assertThat("records updates", registry.timer("counter.updates").getCount(), is(2L));
+        assertThat("records attempts", registry.histogram("counter.attempts").getCount(), is(2L));
+        assertThat("records no failures", registry.counter("counter.failures").getCount(), is(0L));
+    }
+
+    @Test
+    public void recordsCacheContents() throws Exception {
+        framework.create().creatingParentsIfNeeded().forPath("/children/a", new byte[0]);
+        framework.create().forPath("/children/b", new byte[0]);
+
+        final ManagedPathChildrenCache cache = new ManagedPathChildrenCache(
+                new PathChildrenCache(framework, "/children", true), registry, "cache");
+        cache.start();
+        try {
+            final long deadline = System.currentTimeMillis() + TIMEOUT.toMilliseconds();
+            while (registry.timer("cache.initialization").getCount() == 0
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertThat("records initialization",
+                    registry.timer("cache.initialization").getCount(),
+                    is(1L));
+            assertThat("reports size", registry.getGauges().get("cache.size").getValue(),
+                    is((Object) 2));
+        } finally {
+            cache.stop();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.datasift.dropwizard.curator.retry;
+
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.util.Duration;
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.RetrySleeper;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests the {@link RetryPolicy}s.
+ */
+public class RetryPolicyTest {
+
+    /**
+     * Records sleeps, rather than sleeping.
+     */
+    private static class RecordingSleeper implements RetrySleeper {
+
+        final List<Long> sleeps = new ArrayList<>();
+
+        @Override
+        public void sleepFor(final long time, final TimeUnit unit) {
+            sleeps.add(unit.toMillis(time));
+        }
+    }
+
+    private final RecordingSleeper sleeper = new RecordingSleeper();
+
+    @Test
+    public void decorrelatedJitterIsBounded() {
+        final RetryPolicy policy = new DecorrelatedJitterRetry(10, 100, 50);
+
+        int retries = 0;
+        while (policy.allowRetry(retries, 0, sleeper)) {
+            retries++;
+        }
+
+        assertThat("retries up to the limit", retries, is(50));
+        for (final long sleep : sleeper.sleeps) {
+            assertThat("sleeps at least the base time", sleep, is(greaterThanOrEqualTo(10L)));
+            assertThat("sleeps at most the maximum time", sleep, is(lessThanOrEqualTo(100L)));
+        }
+    }
+
+    @Test
+    public void decorrelatedJitterGrowsFromPreviousSleep() {
+        final DecorrelatedJitterRetry policy = new DecorrelatedJitterRetry(10, 10000, 5);
+        for (int i = 0; i < 100; i++) {
+            assertThat("sleeps at most three times the previous sleep",
+                    policy.nextSleepMs(20),
+                    is(lessThanOrEqualTo(60L)));
+        }
+    }
+
+    @Test
+    public void boundedTimeStopsAtTimeLimit() {
+        final RetryPolicy policy = new BoundedTimeRetry(10, 1000, 500);
+
+        assertThat("retries within time limit", policy.allowRetry(10, 450, sleeper), is(true));
+        assertThat("sleeps no longer than remaining time",
+                sleeper.sleeps.get(0),
+                is(lessThanOrEqualTo(50L)));
+        assertThat("stops at time limit", policy.allowRetry(11, 500, sleeper), is(false));
+    }
+
+    @Test
+    public void budgetLimitsRetries() {
+        final RetryBudget budget = new RetryBudget(2, Duration.hours(1));
+        final RetryPolicy policy =
+                new BudgetedRetryPolicy(new DecorrelatedJitterRetry(1, 1, 100), budget);
+
+        assertThat("allows first retry", policy.allowRetry(0, 0, sleeper), is(true));
+        assertThat("allows second retry", policy.allowRetry(1, 0, sleeper), is(true));
+        assertThat("denies retry once exhausted", policy.allowRetry(2, 0, sleeper), is(false));
+        assertThat("has no retries available", budget.getAvailable(), is(0));
+    }
+
+    @Test
+    public void budgetIsNotSpentOnRefusedRetries() {
+        final RetryBudget budget = new RetryBudget(2, Duration.hours(1));
+        final RetryPolicy policy =
+                new BudgetedRetryPolicy(new DecorrelatedJitterRetry(1, 1, 1), budget);
+
+        assertThat("allows first retry", policy.allowRetry(0, 0, sleeper), is(true));
+        assertThat("delegate refuses retry", policy.allowRetry(1, 0, sleeper), is(false));
+        assertThat("refunds refused retry", budget.getAvailable(), is(1));
+    }
+
+    @Test
+    public void exhaustedBudgetDoesNotSleep() {
+        final RetryBudget budget = new RetryBudget(1, Duration.hours(1));
+        final RetryPolicy policy =
+                new BudgetedRetryPolicy(new DecorrelatedJitterRetry(1, 1, 100), budget);
+
+        policy.allowRetry(0, 0, sleeper);
+        assertThat("denies retry once exhausted", policy.allowRetry(1, 0, sleeper), is(false));
+        assertThat("sleeps only for allowed retry", sleeper.sleeps.size(), is(1));
+    }
+
+    @Test
+    public void sharedBudgetsAreShared() {
+        assertThat("returns shared budget",
+                RetryBudget.shared("test", 10, Duration.seconds(1)),
+                is(sameInstance(RetryBudget.shared("test", 20, Duration.seconds(1)))));
+    }
+
+    @Test
+    public void recordsRetryMetrics() {
+        final MetricRegistry registry = new MetricRegistry();
+        final RetryPolicy policy = new InstrumentedRetryPolicy(
+                new DecorrelatedJitterRetry(5, 5, 1), registry, "retry");
+
+        policy.allowRetry(0, 0, sleeper);
+        policy.allowRetry(1, 0, sleeper);
+
+        assertThat("records retry", registry.meter("retry.retries").getCount(), is(1L));
+        assertThat("records exhaustion", registry.meter("retry.exhausted").getCount(), is(1L));
+        assertThat("records delay",
+                registry.histogram("retry.delay").getSnapshot().getMax(),
+                is(5L));
+        assertThat("sleeps through delegate", sleeper.sleeps.size(), is(1));
+    }
+}
@@ -0,0 +1,678 @@
+package com.datasift.dropwizard.hbase.testing;
+
+import com.datasift.dropwizard.hbase.HBaseClient;
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
+import com.datasift.dropwizard.util.Classes;
+import com.datasift.dropwizard.util.Exceptions;
+import com.google.common.cache.CacheStats;
+import com.stumbleupon.async.Deferred;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+import org.hbase.async.*;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link HBaseClient} that stores its data in-memory, for testing.
+ * <p/>
+ * Each table is a sorted, concurrent map of rows, so gets, puts, deletes, increments,
+ * compare-and-set and scans all behave as they would against a single HBase region server: every
+ * single-row operation is atomic and scans return rows in key order. Only the latest version of
+ * each cell is retained.
+ * <p/>
+ * Tables must be {@link #createTable(String, String...) created} before use; requests for tables
+ * that don't exist fail with a {@link TableNotFoundException}, and requests for column families
+ * the table wasn't created with fail with a {@link NoSuchColumnFamilyException}. The {@code .META.}
+ * and {@code -ROOT-} tables always exist.
+ * <p/>
+ * To exercise the behaviour of applications under adverse conditions, a fixed latency may be
+ * added to every request, and a proportion of requests may be failed with an {@link
+ * InjectedFailureException}. Requests that succeed take effect immediately, but their results
+ * are only delivered once the latency has elapsed. Requests that fail take no effect.
+ * <p/>
+ * Row locks are granted, but not enforced.
+ */
+public class InMemoryHBaseClient implements HBaseClient {
+
+    /**
+     * The tables that always exist.
+     */
+    private static final String[] SYSTEM_TABLES = { ".META.", "-ROOT-" };
+
+    /**
+     * The tables of this client, by name.
+     */
+    private final ConcurrentSkipListMap<byte[], InMemoryTable> tables =
+            new ConcurrentSkipListMap<>(Bytes.MEMCMP);
+
+    /**
+     * The latency to add to every request, in nanoseconds.
+     */
+    private final long latency;
+
+    /**
+     * The proportion of requests to fail, between 0 and 1.
+     */
+    private final double errorRate;
+
+    /**
+     * The source of randomness for choosing which requests to fail.
+     */
+    private final Random random;
+
+    /**
+     * The {@link Timer} used to delay the delivery of results.
+     */
+    private final HashedWheelTimer timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS);
+
+    private final AtomicLong lockIds = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong gets = new AtomicLong();
+    private final AtomicLong scannersOpened = new AtomicLong();
+    private final AtomicLong scans = new AtomicLong();
+    private final AtomicLong puts = new AtomicLong();
+    private final AtomicLong rowLocks = new AtomicLong();
+    private final AtomicLong deletes = new AtomicLong();
+    private final AtomicLong atomicIncrements = new AtomicLong();
+
+    private volatile Duration flushInterval = Duration.seconds(1);
+    private volatile Size incrementBufferSize = Size.kilobytes(64);
+
+    /**
+     * Creates a new {@link InMemoryHBaseClient} that completes every request immediately.
+     */
+    public InMemoryHBaseClient() {
+        this(Duration.milliseconds(0), 0, new Random());
+    }
+
+    /**
+     * Creates a new {@link InMemoryHBaseClient} that adds latency to, and fails a proportion of,
+     * its requests.
+     *
+     * @param latency   the latency to add to every request.
+     * @param errorRate the proportion of requests to fail, between 0 and 1.
+     * @param random    the source of randomness for choosing which requests to fail.
+     */
+    public InMemoryHBaseClient(final Duration latency,
+                               final double errorRate,
+                               final Random random) {
+        if (errorRate < 0 || errorRate > 1) {
+            throw new IllegalArgumentException("errorRate must be between 0 and 1: " + errorRate);
+        }
+        this.latency = latency.toNanoseconds();
+        this.errorRate = errorRate;
+        this.random = random;
+
+        for (final String table : SYSTEM_TABLES) {
+            createTable(table);
+        }
+    }
+
+    /**
+     * Creates a table, if it doesn't already exist.
+     *
+     * @param table    the name of the table to create.
+     * @param families the column families of the table; if none are given, the table will accept
+     *                 any column family.
+     */
+    public void createTable(final String table, final String... families) {
+        final byte[][] familyBytes = new byte[families.length][];
+        for (int i = 0; i < families.length; i++) {
+            familyBytes[i] = families[i].getBytes();
+        }
+        createTable(table.getBytes(), familyBytes);
+    }
+
+    /**
+     * Creates a table, if it doesn't already exist.
+     *
+     * @param table    the name of the table to create.
+     * @param families the column families of the table; if none are given, the table will accept
+     *                 any column family.
+     */
+    public void createTable(final byte[] table, final byte[]... families) {
+        tables.putIfAbsent(table, new InMemoryTable(families));
+    }
+
+    /**
+     * Deletes a table and all of its data, if it exists.
+     *
+     * @param table the name of the table to delete.
+     */
+    public void deleteTable(final String table) {
+        tables.remove(table.getBytes());
+    }
+
+    /**
+     * Get the maximum time for which edits may be buffered before being flushed.
+     * <p/>
+     * Edits are never buffered by this client; this is retained only for compatibility.
+     *
+     * @return the maximum time for which edits may be buffered.
+     */
+    public Duration getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * Get the capacity of the increment buffer.
+     * <p/>
+     * Increments are never buffered by this client; this is retained only for compatibility.
+     *
+     * @return the capacity of the increment buffer.
+     */
+    public Size getIncrementBufferSize() {
+        return incrementBufferSize;
+    }
+
+    /**
+     * Sets the maximum time for which edits may be buffered before being flushed.
+     *
+     * @param flushInterval the maximum time for which edits may be buffered.
+     *
+     * @return the previous flush interval.
+     */
+    public Duration setFlushInterval(final Duration flushInterval) {
+        final Duration previous = this.flushInterval;
+        this.flushInterval = flushInterval;
+        return previous;
+    }
+
+    /**
+     * Sets the capacity of the increment buffer.
+     *
+     * @param incrementBufferSize the capacity of the increment buffer.
+     *
+     * @return the previous increment buffer capacity.
+     */
+    public Size setIncrementBufferSize(final Size incrementBufferSize) {
+        final Size previous = this.incrementBufferSize;
+        this.incrementBufferSize = incrementBufferSize;
+        return previous;
+    }
+
+    /**
+     * Atomically creates a cell if, and only if, it doesn't already exist.
+     *
+     * @param edit the new cell to create.
+     *
+     * @return true if the cell was created, false if the cell already exists.
+     */
+    public Deferred<Boolean> create(final PutRequest edit) {
+        return compareAndSet(edit, new byte[0]);
+    }
+
+    /**
+     * Buffer a durable increment for coalescing.
+     * <p/>
+     * Increments are never buffered by this client; they're applied immediately.
+     *
+     * @param request the increment to buffer
+     *
+     * @return the new value of the cell, after the increment.
+     */
+    public Deferred<Long> bufferIncrement(final AtomicIncrementRequest request) {
+        return increment(request);
+    }
+
+    /**
+     * Atomically and durably increment a cell value.
+     *
+     * @param request the increment to make.
+     *
+     * @return the new value of the cell, after the increment.
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request) {
+        atomicIncrements.incrementAndGet();
+        if (shouldFail()) {
+            return fail(request);
+        }
+        final InMemoryTable table = table(request.table());
+        if (table == null) {
+            return tableNotFound(request.table());
+        }
+        if (!table.hasFamily(request.family())) {
+            return noSuchColumnFamily(request.family(), request);
+        }
+        try {
+            return respond(table.increment(request.key(),
+                    request.family(),
+                    request.qualifier(),
+                    request.getAmount(),
+                    System.currentTimeMillis()));
+        } catch (final IllegalArgumentException e) {
+            return respond(e);
+        }
+    }
+
+    /**
+     * Atomically increment a cell value, with optional durability.
+     * <p/>
+     * All increments are equally durable in-memory.
+     *
+     * @param request the increment to make.
+     * @param durable whether to guarantee this increment succeeded durably.
+     *
+     * @return the new value of the cell, after the increment.
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request, final Boolean durable) {
+        return increment(request);
+    }
+
+    /**
+     * Atomically sets a cell to the given value if it currently holds the expected value.
+     *
+     * @param edit     the new cell to set.
+     * @param expected the expected current value of the cell; an empty value expects the cell
+     *                 to not exist.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final byte[] expected) {
+        puts.incrementAndGet();
+        if (shouldFail()) {
+            return fail(edit);
+        }
+        final InMemoryTable table = table(edit.table());
+        if (table == null) {
+            return tableNotFound(edit.table());
+        }
+        if (!table.hasFamily(edit.family())) {
+            return noSuchColumnFamily(edit.family(), edit);
+        }
+        return respond(table.compareAndSet(edit.key(),
+                edit.family(),
+                edit.qualifier(),
+                edit.value(),
+                timestamp(edit.timestamp()),
+                expected));
+    }
+
+    /**
+     * Atomically sets a cell to the given value if it currently holds the expected value.
+     *
+     * @param edit     the new cell to set.
+     * @param expected the expected current value of the cell; an empty value expects the cell
+     *                 to not exist.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final String expected) {
+        return compareAndSet(edit, expected.getBytes());
+    }
+
+    /**
+     * Deletes the specified cells.
+     *
+     * @param request the cell(s) to delete.
+     *
+     * @return a {@link Deferred} indicating when the deletion completes.
+     */
+    public Deferred<Object> delete(final DeleteRequest request) {
+        deletes.incrementAndGet();
+        if (shouldFail()) {
+            return fail(request);
+        }
+        final InMemoryTable table = table(request.table());
+        if (table == null) {
+            return tableNotFound(request.table());
+        }
+        if (!table.hasFamily(request.family())) {
+            return noSuchColumnFamily(request.family(), request);
+        }
+
+        final byte[] family = request.family();
+        final byte[][] qualifiers = request.qualifiers();
+        table.delete(request.key(),
+                family == null || family.length == 0 ? null : family,
+                isWholeFamily(qualifiers) ? null : qualifiers,
+                request.timestamp());
+        return respond(null);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion; fails with a {@link
+     *         TableNotFoundException} if the table doesn't exist.
+     */
+    public Deferred<Object> ensureTableExists(final byte[] table) {
+        return ensureTableFamilyExists(table, null);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion; fails with a {@link
+     *         TableNotFoundException} if the table doesn't exist.
+     */
+    public Deferred<Object> ensureTableExists(final String table) {
+        return ensureTableExists(table.getBytes());
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table  the table to check.
+     * @param family the column family to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion; fails with a {@link
+     *         TableNotFoundException} if the table doesn't exist, or a {@link
+     *         NoSuchColumnFamilyException} if the column family doesn't exist.
+     */
+    public Deferred<Object> ensureTableFamilyExists(final byte[] table, final byte[] family) {
+        if (shouldFail()) {
+            return fail("ensureTableFamilyExists(" + Bytes.pretty(table) + ")");
+        }
+        final InMemoryTable t = table(table);
+        if (t == null) {
+            return tableNotFound(table);
+        }
+        if (!t.hasFamily(family)) {
+            return noSuchColumnFamily(family, null);
+        }
+        return respond(null);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table  the table to check.
+     * @param family the column family to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion; fails with a {@link
+     *         TableNotFoundException} if the table doesn't exist, or a {@link
+     *         NoSuchColumnFamilyException} if the column family doesn't exist.
+     */
+    public Deferred<Object> ensureTableFamilyExists(final String table, final String family) {
+        return ensureTableFamilyExists(table.getBytes(), family.getBytes());
+    }
+
+    /**
+     * Flushes all requests buffered on the client-side.
+     * <p/>
+     * Requests are never buffered by this client, so there is never anything to flush.
+     *
+     * @return a {@link Deferred} indicating the completion of the flush.
+     */
+    public Deferred<Object> flush() {
+        flushes.incrementAndGet();
+        return respond(null);
+    }
+
+    /**
+     * Retrieves the specified cells.
+     *
+     * @param request the cells to get.
+     *
+     * @return the requested cells.
+     */
+    public Deferred<ArrayList<KeyValue>> get(final GetRequest request) {
+        gets.incrementAndGet();
+        if (shouldFail()) {
+            return fail(request);
+        }
+        final InMemoryTable table = table(request.table());
+        if (table == null) {
+            return tableNotFound(request.table());
+        }
+        if (!table.hasFamily(request.family())) {
+            return noSuchColumnFamily(request.family(), request);
+        }
+        return respond(table.get(request.key(), request.family(), request.qualifiers()));
+    }
+
+    /**
+     * Acquire an explicit row lock.
+     * <p/>
+     * The lock is granted immediately, but isn't enforced against other requests.
+     *
+     * @param request the row(s) to lock.
+     *
+     * @return the row lock.
+     */
+    public Deferred<RowLock> lockRow(final RowLockRequest request) {
+        rowLocks.incrementAndGet();
+        if (shouldFail()) {
+            return fail(request);
+        }
+        if (table(request.table()) == null) {
+            return tableNotFound(request.table());
+        }
+        try {
+            return respond(Classes.unsafeNewInstance(
+                    RowLock.class, request.table(), lockIds.incrementAndGet()));
+        } catch (final Exception e) {
+            throw new IllegalStateException("Unable to create RowLock", e);
+        }
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link RowScanner} for the specified table.
+     */
+    public RowScanner scan(final byte[] table) {
+        scannersOpened.incrementAndGet();
+        return new InMemoryRowScanner(this, table);
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link RowScanner} for the specified table.
+     */
+    public RowScanner scan(final String table) {
+        return scan(table.getBytes());
+    }
+
+    /**
+     * Stores the specified cell(s).
+     *
+     * @param request the cell(s) to store.
+     *
+     * @return a {@link Deferred} indicating the completion of the put operation.
+     */
+    public Deferred<Object> put(final PutRequest request) {
+        puts.incrementAndGet();
+        if (shouldFail()) {
+            return fail(request);
+        }
+        final InMemoryTable table = table(request.table());
+        if (table == null) {
+            return tableNotFound(request.table());
+        }
+        if (!table.hasFamily(request.family())) {
+            return noSuchColumnFamily(request.family(), request);
+        }
+        table.put(request.key(),
+                request.family(),
+                request.qualifiers(),
+                request.values(),
+                timestamp(request.timestamp()));
+        return respond(null);
+    }
+
+    /**
+     * Performs a graceful shutdown of this client.
+     * <p/>
+     * The results of any requests still awaiting delivery are delivered immediately.
+     *
+     * @return a {@link Deferred} indicating the completion of the shutdown operation.
+     */
+    public Deferred<Object> shutdown() {
+        for (final Timeout timeout : timer.stop()) {
+            try {
+                timeout.getTask().run(timeout);
+            } catch (final Exception e) {
+                // delivery callbacks don't throw
+            }
+        }
+        return Deferred.fromResult(null);
+    }
+
+    /**
+     * Get an immutable snapshot of client usage statistics.
+     * <p/>
+     * Statistics that relate to the workings of a real cluster (connections, region lookups,
+     * etc.) are always zero.
+     *
+     * @return an immutable snapshot of client usage statistics.
+     */
+    public ClientStats stats() {
+        try {
+            return Classes.unsafeNewInstance(ClientStats.class,
+                    0L, // connectionsCreated
+                    0L, // rootLookups
+                    0L, // uncontendedMetaLookups
+                    0L, // contendedMetaLookups
+                    flushes.get(),
+                    0L, // noSuchRegionExceptions
+                    0L, // numRpcDelayedDueToNSRE
+                    0L, // numBatchedRpcSent
+                    gets.get(),
+                    scannersOpened.get(),
+                    scans.get(),
+                    puts.get(),
+                    rowLocks.get(),
+                    deletes.get(),
+                    atomicIncrements.get(),
+                    new CacheStats(0, 0, 0, 0, 0, 0));
+        } catch (final Exception e) {
+            throw new IllegalStateException("Unable to create ClientStats", e);
+        }
+    }
+
+    /**
+     * Get the underlying {@link Timer} used to delay the delivery of results.
+     *
+     * @return the underlying {@link Timer} used to delay the delivery of results.
+     */
+    public Timer getTimer() {
+        return timer;
+    }
+
+    /**
+     * Release an explicit row lock.
+     *
+     * @param lock the lock to release.
+     *
+     * @return a {@link Deferred} indicating the completion of the release operation.
+     */
+    public Deferred<Object> unlockRow(final RowLock lock) {
+        if (shouldFail()) {
+            return fail(lock);
+        }
+        return respond(null);
+    }
+
+    /**
+     * Gets a table by name.
+     *
+     * @param table the name of the table to get.
+     *
+     * @return the table, or null if it doesn't exist.
+     */
+    InMemoryTable table(final byte[] table) {
+        return tables.get(table);
+    }
+
+    /**
+     * Records that a scanner has fetched a batch of rows.
+     */
+    void scanned() {
+        scans.incrementAndGet();
+    }
+
+    /**
+     * Determines whether a request should have a failure injected.
+     *
+     * @return true if the request should fail; false if it should succeed.
+     */
+    boolean shouldFail() {
+        return errorRate > 0 && random.nextDouble() < errorRate;
+    }
+
+    /**
+     * Fails a request with an {@link InjectedFailureException}, after the configured latency.
+     *
+     * @param request the request to fail.
+     * @param <T>     the type of the result of the request.
+     *
+     * @return a {@link Deferred} that will fail with an {@link InjectedFailureException}.
+     */
+    <T> Deferred<T> fail(final Object request) {
+        return respond(new InjectedFailureException(String.valueOf(request)));
+    }
+
+    /**
+     * Fails a request with a {@link TableNotFoundException}, after the configured latency.
+     *
+     * @param table the table that doesn't exist.
+     * @param <T>   the type of the result of the request.
+     *
+     * @return a {@link Deferred} that will fail with a {@link TableNotFoundException}.
+     */
+    <T> Deferred<T> tableNotFound(final byte[] table) {
+        return respond(Exceptions.unsafeNewInstance(TableNotFoundException.class, table));
+    }
+
+    /**
+     * Delivers the result of a request, after the configured latency.
+     * <p/>
+     * If the result is an {@link Exception}, the request will fail with it.
+     *
+     * @param result the result of the request.
+     * @param <T>    the type of the result of the request.
+     *
+     * @return a {@link Deferred} that will receive the result of the request.
+     */
+    @SuppressWarnings("unchecked")
+    <T> Deferred<T> respond(final Object result) {
+        if (latency <= 0) {
+            return result instanceof Exception
+                    ? Deferred.<T>fromError((Exception) result)
+                    : Deferred.fromResult((T) result);
+        }
+
+        final Deferred<T> deferred = new Deferred<>();
+        timer.newTimeout(new TimerTask() {
+            @Override
+            public void run(final Timeout timeout) {
+                deferred.callback(result);
+            }
+        }, latency, TimeUnit.NANOSECONDS);
+        return deferred;
+    }
+
+    private <T> Deferred<T> noSuchColumnFamily(final byte[] family, final HBaseRpc request) {
+        return respond(Exceptions.unsafeNewInstance(NoSuchColumnFamilyException.class,
+                "No such column family: " + Bytes.pretty(family), request));
+    }
+
+    private static long timestamp(final long timestamp) {
+        return timestamp == KeyValue.TIMESTAMP_NOW ? System.currentTimeMillis() : timestamp;
+    }
+
+    private static boolean isWholeFamily(final byte[][] qualifiers) {
+        return qualifiers == null
+                || qualifiers.length == 0
+                || (qualifiers.length == 1 && qualifiers[0].length == 0);
+    }
+}
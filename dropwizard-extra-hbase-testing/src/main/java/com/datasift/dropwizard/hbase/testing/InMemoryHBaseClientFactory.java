@@ -0,0 +1,122 @@
+package com.datasift.dropwizard.hbase.testing;
+
+import com.datasift.dropwizard.hbase.HBaseClient;
+import com.datasift.dropwizard.hbase.HBaseClientFactory;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.setup.Environment;
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.NotNull;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A factory for creating and managing {@link InMemoryHBaseClient} instances.
+ * <p/>
+ * The resulting {@link HBaseClient} is instrumented, bounded, health-checked and managed exactly
+ * as one built by an {@link HBaseClientFactory}, but stores its data in-memory rather than
+ * connecting to an HBase cluster, which makes it suitable for use in tests.
+ *
+ * @see InMemoryHBaseClient
+ */
+public class InMemoryHBaseClientFactory extends HBaseClientFactory {
+
+    @NotNull
+    protected Map<String, List<String>> tables = Collections.emptyMap();
+
+    @NotNull
+    protected Duration latency = Duration.milliseconds(0);
+
+    @DecimalMin("0.0")
+    @DecimalMax("1.0")
+    protected double errorRate = 0;
+
+    /**
+     * Returns the tables to create, each with its column families.
+     * <p/>
+     * A table with no column families will accept any column family.
+     *
+     * @return the column families of each table to create, by table name.
+     */
+    @JsonProperty
+    public Map<String, List<String>> getTables() {
+        return tables;
+    }
+
+    /**
+     * Sets the tables to create, each with its column families.
+     * <p/>
+     * A table with no column families will accept any column family.
+     *
+     * @param tables the column families of each table to create, by table name.
+     */
+    @JsonProperty
+    public void setTables(final Map<String, List<String>> tables) {
+        this.tables = tables;
+    }
+
+    /**
+     * Returns the latency to add to every request.
+     *
+     * @return the latency to add to every request.
+     */
+    @JsonProperty
+    public Duration getLatency() {
+        return latency;
+    }
+
+    /**
+     * Sets the latency to add to every request.
+     *
+     * @param latency the latency to add to every request.
+     */
+    @JsonProperty
+    public void setLatency(final Duration latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * Returns the proportion of requests to fail with an {@link InjectedFailureException}.
+     *
+     * @return the proportion of requests to fail, between 0 and 1.
+     */
+    @JsonProperty
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    /**
+     * Sets the proportion of requests to fail with an {@link InjectedFailureException}.
+     *
+     * @param errorRate the proportion of requests to fail, between 0 and 1.
+     */
+    @JsonProperty
+    public void setErrorRate(final double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Builds an {@link InMemoryHBaseClient} with the configured tables, latency and error rate.
+     *
+     * @param environment the {@link Environment} the {@link HBaseClient} is being built for.
+     * @param name the name for the {@link HBaseClient}.
+     *
+     * @return a new {@link InMemoryHBaseClient}.
+     */
+    @Override
+    protected HBaseClient buildClient(final Environment environment, final String name) {
+        final InMemoryHBaseClient client =
+                new InMemoryHBaseClient(getLatency(), getErrorRate(), new Random());
+        for (final Map.Entry<String, List<String>> table : getTables().entrySet()) {
+            final List<String> families = table.getValue() == null
+                    ? Collections.<String>emptyList()
+                    : table.getValue();
+            client.createTable(table.getKey(), families.toArray(new String[families.size()]));
+        }
+        return client;
+    }
+}
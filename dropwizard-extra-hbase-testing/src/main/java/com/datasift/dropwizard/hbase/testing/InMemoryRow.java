@@ -0,0 +1,227 @@
+package com.datasift.dropwizard.hbase.testing;
+
+import org.hbase.async.Bytes;
+import org.hbase.async.KeyValue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * An immutable snapshot of a row stored by an {@link InMemoryTable}.
+ * <p/>
+ * Rows are never modified in-place; every mutation produces a new {@link InMemoryRow}, sharing
+ * the column families that it didn't touch with the row it was derived from. This allows a row
+ * to be read without locking, and mutated atomically by swapping the snapshot in its table.
+ * <p/>
+ * Only the latest version of each cell is retained.
+ */
+final class InMemoryRow {
+
+    /**
+     * The key of the row.
+     */
+    private final byte[] key;
+
+    /**
+     * The cells of the row, by family and qualifier. Never modified once the row is constructed.
+     */
+    private final NavigableMap<byte[], NavigableMap<byte[], KeyValue>> families;
+
+    /**
+     * Creates a new, empty {@link InMemoryRow} with the given key.
+     *
+     * @param key the key of the row.
+     */
+    InMemoryRow(final byte[] key) {
+        this(key, new TreeMap<byte[], NavigableMap<byte[], KeyValue>>(Bytes.MEMCMP));
+    }
+
+    /**
+     * Creates a new {@link InMemoryRow} with the given key and cells.
+     *
+     * @param key      the key of the row.
+     * @param families the cells of the row, by family and qualifier.
+     */
+    private InMemoryRow(final byte[] key,
+                        final NavigableMap<byte[], NavigableMap<byte[], KeyValue>> families) {
+        this.key = key;
+        this.families = families;
+    }
+
+    /**
+     * Returns the key of this row.
+     *
+     * @return the key of this row.
+     */
+    byte[] key() {
+        return key;
+    }
+
+    /**
+     * Determines whether this row has no cells.
+     *
+     * @return true if this row contains no cells; false if it contains at least one cell.
+     */
+    boolean isEmpty() {
+        return families.isEmpty();
+    }
+
+    /**
+     * Gets the cell in this row for the given column.
+     *
+     * @param family    the family of the column.
+     * @param qualifier the qualifier of the column.
+     *
+     * @return the cell for the column, or null if this row has no value for it.
+     */
+    KeyValue cell(final byte[] family, final byte[] qualifier) {
+        final NavigableMap<byte[], KeyValue> cells = families.get(family);
+        return cells == null ? null : cells.get(qualifier);
+    }
+
+    /**
+     * Gets the cells in this row that match the given criteria.
+     *
+     * @param family       the family to get cells from, or null for all families.
+     * @param qualifiers   the qualifiers to get cells for, or null for all qualifiers.
+     * @param minTimestamp the minimum timestamp (inclusive) of the cells to get.
+     * @param maxTimestamp the maximum timestamp (exclusive) of the cells to get.
+     *
+     * @return the matching cells, ordered by family and qualifier.
+     */
+    ArrayList<KeyValue> cells(final byte[] family,
+                              final byte[][] qualifiers,
+                              final long minTimestamp,
+                              final long maxTimestamp) {
+        final ArrayList<KeyValue> result = new ArrayList<>();
+        final Map<byte[], NavigableMap<byte[], KeyValue>> selected = family == null
+                ? families
+                : families.subMap(family, true, family, true);
+
+        for (final NavigableMap<byte[], KeyValue> cells : selected.values()) {
+            if (qualifiers == null) {
+                for (final KeyValue cell : cells.values()) {
+                    addIfInRange(result, cell, minTimestamp, maxTimestamp);
+                }
+            } else {
+                for (final byte[] qualifier : sorted(qualifiers)) {
+                    addIfInRange(result, cells.get(qualifier), minTimestamp, maxTimestamp);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates a copy of this row with the given values written to it.
+     * <p/>
+     * Existing cells are only overwritten by values with an equal or newer timestamp.
+     *
+     * @param family     the family to write the values to.
+     * @param qualifiers the qualifiers to write the values to.
+     * @param values     the values to write, in parallel with the {@code qualifiers}.
+     * @param timestamp  the timestamp to write the values with.
+     *
+     * @return a new row containing the cells of this row, with the given values written.
+     */
+    InMemoryRow put(final byte[] family,
+                    final byte[][] qualifiers,
+                    final byte[][] values,
+                    final long timestamp) {
+        final NavigableMap<byte[], KeyValue> existing = families.get(family);
+        final NavigableMap<byte[], KeyValue> cells = existing == null
+                ? new TreeMap<byte[], KeyValue>(Bytes.MEMCMP)
+                : new TreeMap<>(existing);
+
+        for (int i = 0; i < qualifiers.length; i++) {
+            final KeyValue previous = cells.get(qualifiers[i]);
+            if (previous == null || previous.timestamp() <= timestamp) {
+                cells.put(qualifiers[i],
+                        new KeyValue(key, family, qualifiers[i], timestamp, values[i]));
+            }
+        }
+
+        return withFamily(family, cells);
+    }
+
+    /**
+     * Creates a copy of this row with the matching cells removed.
+     *
+     * @param family     the family to delete cells from, or null to delete from all families.
+     * @param qualifiers the qualifiers of the cells to delete, or null to delete all cells in the
+     *                   family.
+     * @param timestamp  the maximum timestamp (inclusive) of the cells to delete.
+     *
+     * @return a new row containing the cells of this row, less the deleted cells; or null if no
+     *         cells remain.
+     */
+    InMemoryRow delete(final byte[] family, final byte[][] qualifiers, final long timestamp) {
+        final NavigableMap<byte[], NavigableMap<byte[], KeyValue>> copy = new TreeMap<>(families);
+        final Map<byte[], NavigableMap<byte[], KeyValue>> selected = family == null
+                ? families
+                : families.subMap(family, true, family, true);
+
+        for (final Map.Entry<byte[], NavigableMap<byte[], KeyValue>> entry : selected.entrySet()) {
+            final NavigableMap<byte[], KeyValue> cells = new TreeMap<>(entry.getValue());
+            if (qualifiers == null) {
+                final Iterator<KeyValue> it = cells.values().iterator();
+                while (it.hasNext()) {
+                    if (it.next().timestamp() <= timestamp) {
+                        it.remove();
+                    }
+                }
+            } else {
+                for (final byte[] qualifier : qualifiers) {
+                    final KeyValue cell = cells.get(qualifier);
+                    if (cell != null && cell.timestamp() <= timestamp) {
+                        cells.remove(qualifier);
+                    }
+                }
+            }
+
+            if (cells.isEmpty()) {
+                copy.remove(entry.getKey());
+            } else {
+                copy.put(entry.getKey(), cells);
+            }
+        }
+
+        return copy.isEmpty() ? null : new InMemoryRow(key, copy);
+    }
+
+    /**
+     * Creates a copy of this row with the cells of the given family replaced.
+     *
+     * @param family the family to replace.
+     * @param cells  the new cells of the family.
+     *
+     * @return a new row containing the cells of this row, with the given family replaced.
+     */
+    private InMemoryRow withFamily(final byte[] family,
+                                   final NavigableMap<byte[], KeyValue> cells) {
+        final NavigableMap<byte[], NavigableMap<byte[], KeyValue>> copy = new TreeMap<>(families);
+        copy.put(family, cells);
+        return new InMemoryRow(key, copy);
+    }
+
+    private static void addIfInRange(final ArrayList<KeyValue> result,
+                                     final KeyValue cell,
+                                     final long minTimestamp,
+                                     final long maxTimestamp) {
+        if (cell != null && cell.timestamp() >= minTimestamp && cell.timestamp() < maxTimestamp) {
+            result.add(cell);
+        }
+    }
+
+    private static Iterable<byte[]> sorted(final byte[][] qualifiers) {
+        final TreeMap<byte[], byte[]> result = new TreeMap<>(Bytes.MEMCMP);
+        for (final byte[] qualifier : qualifiers) {
+            result.put(qualifier, qualifier);
+        }
+        return result.keySet();
+    }
+}
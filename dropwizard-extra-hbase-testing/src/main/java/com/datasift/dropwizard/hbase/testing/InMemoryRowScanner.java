@@ -0,0 +1,385 @@
+package com.datasift.dropwizard.hbase.testing;
+
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
+import com.stumbleupon.async.Deferred;
+import org.hbase.async.Bytes;
+import org.hbase.async.KeyValue;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link RowScanner} over a table of an {@link InMemoryHBaseClient}.
+ * <p/>
+ * Rows are scanned in key order from the live table, so rows written after the scan started may
+ * be seen by subsequent batches if they sort after the rows already scanned. Like a real scanner,
+ * each batch of rows is subject to the latency and failures injected by the client.
+ */
+public class InMemoryRowScanner implements RowScanner {
+
+    /**
+     * The default maximum number of rows to fetch in each batch.
+     */
+    private static final int DEFAULT_MAX_NUM_ROWS = 128;
+
+    /**
+     * The {@link Charset} to match keys against a regular expression with, unless otherwise
+     * specified.
+     */
+    private static final Charset DEFAULT_CHARSET = Charset.forName("ISO-8859-1");
+
+    private final InMemoryHBaseClient client;
+    private final byte[] table;
+
+    private byte[] startKey = new byte[0];
+    private byte[] stopKey = new byte[0];
+    private byte[] family = null;
+    private byte[][] qualifiers = null;
+    private Pattern keyRegexp = null;
+    private Charset keyCharset = DEFAULT_CHARSET;
+    private int maxNumRows = DEFAULT_MAX_NUM_ROWS;
+    private long minTimestamp = 0;
+    private long maxTimestamp = Long.MAX_VALUE;
+
+    /**
+     * The key of the last row scanned, or null if no rows have been scanned yet.
+     */
+    private byte[] currentKey = null;
+
+    /**
+     * Whether the scanner has been exhausted or closed.
+     */
+    private boolean done = false;
+
+    /**
+     * Creates a new {@link InMemoryRowScanner} for the given table.
+     *
+     * @param client the {@link InMemoryHBaseClient} that owns the table.
+     * @param table  the name of the table to scan.
+     */
+    InMemoryRowScanner(final InMemoryHBaseClient client, final byte[] table) {
+        this.client = client;
+        this.table = table;
+    }
+
+    /**
+     * Set the first key in the range to scan.
+     *
+     * @param key the first key to scan from (inclusive).
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setStartKey(final byte[] key) {
+        this.startKey = key;
+        return this;
+    }
+
+    /**
+     * Set the first key in the range to scan.
+     *
+     * @param key the first key to scan from (inclusive).
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setStartKey(final String key) {
+        return setStartKey(key.getBytes());
+    }
+
+    /**
+     * Set the end key in the range to scan.
+     *
+     * @param key the end key to scan until (exclusive); an empty key scans to the end of the
+     *            table.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setStopKey(final byte[] key) {
+        this.stopKey = key;
+        return this;
+    }
+
+    /**
+     * Set the end key in the range to scan.
+     *
+     * @param key the end key to scan until (exclusive); an empty key scans to the end of the
+     *            table.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setStopKey(final String key) {
+        return setStopKey(key.getBytes());
+    }
+
+    /**
+     * Set the family to scan.
+     *
+     * @param family the family to scan.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setFamily(final byte[] family) {
+        this.family = family;
+        return this;
+    }
+
+    /**
+     * Set the family to scan.
+     *
+     * @param family the family to scan.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setFamily(final String family) {
+        return setFamily(family.getBytes());
+    }
+
+    /**
+     * Set the qualifier to select from cells
+     *
+     * @param qualifier the qualifier to select from cells.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setQualifier(final byte[] qualifier) {
+        return setQualifiers(new byte[][] { qualifier });
+    }
+
+    /**
+     * Set the qualifiers to select from cells
+     *
+     * @param qualifiers the qualifiers to select from cells.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setQualifiers(final byte[][] qualifiers) {
+        this.qualifiers = qualifiers;
+        return this;
+    }
+
+    /**
+     * Set the qualifier to select from cells
+     *
+     * @param qualifier the qualifier to select from cells.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setQualifier(final String qualifier) {
+        return setQualifier(qualifier.getBytes());
+    }
+
+    /**
+     * Set a regular expression to filter keys being scanned.
+     *
+     * @param regexp a regular expression to filter keys with.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setKeyRegexp(final String regexp) {
+        return setKeyRegexp(regexp, DEFAULT_CHARSET);
+    }
+
+    /**
+     * Set a regular expression to filter keys being scanned.
+     *
+     * @param regexp  a regular expression to filter keys with.
+     * @param charset the charset to decode the keys as.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setKeyRegexp(final String regexp, final Charset charset) {
+        this.keyRegexp = Pattern.compile(regexp);
+        this.keyCharset = charset;
+        return this;
+    }
+
+    /**
+     * Set whether to use the server-side block cache during the scan.
+     * <p/>
+     * There is no block cache in-memory, so this has no effect.
+     *
+     * @param populateBlockcache whether to use the server-side block cache.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setServerBlockCache(final boolean populateBlockcache) {
+        return this;
+    }
+
+    /**
+     * Set the maximum number of rows to fetch in each batch.
+     *
+     * @param maxRows the maximum number of rows to fetch in each batch.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setMaxNumRows(final int maxRows) {
+        this.maxNumRows = maxRows;
+        return this;
+    }
+
+    /**
+     * Set the maximum number of {@link KeyValue}s to fetch in each batch.
+     * <p/>
+     * Batches are only bounded by the number of rows in-memory, so this has no effect.
+     *
+     * @param maxKeyValues the maximum number of {@link KeyValue}s to fetch in each batch.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setMaxNumKeyValues(final int maxKeyValues) {
+        return this;
+    }
+
+    /**
+     * Sets the minimum timestamp of the cells to yield.
+     *
+     * @param timestamp the minimum timestamp of the cells to yield.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setMinTimestamp(final long timestamp) {
+        this.minTimestamp = timestamp;
+        return this;
+    }
+
+    /**
+     * Gets the minimum timestamp of the cells to yield.
+     *
+     * @return the minimum timestamp of the cells to yield.
+     */
+    public long getMinTimestamp() {
+        return minTimestamp;
+    }
+
+    /**
+     * Sets the maximum timestamp of the cells to yield.
+     *
+     * @param timestamp the maximum timestamp of the cells to yield.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setMaxTimestamp(final long timestamp) {
+        this.maxTimestamp = timestamp;
+        return this;
+    }
+
+    /**
+     * Gets the maximum timestamp of the cells to yield.
+     *
+     * @return the maximum timestamp of the cells to yield.
+     */
+    public long getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    /**
+     * Sets the time range of the cells to yield.
+     *
+     * @param minTimestamp the minimum timestamp of the cells to yield.
+     * @param maxTimestamp the maximum timestamp of the cells to yield.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setTimeRange(final long minTimestamp, final long maxTimestamp) {
+        return setMinTimestamp(minTimestamp).setMaxTimestamp(maxTimestamp);
+    }
+
+    /**
+     * Get the key of the current row being scanned.
+     *
+     * @return the key of the current row, or null if no rows have been scanned yet.
+     */
+    public byte[] getCurrentKey() {
+        return currentKey;
+    }
+
+    /**
+     * Closes this Scanner
+     *
+     * @return a Deferred indicating when the close operation has completed.
+     */
+    public Deferred<Object> close() {
+        done = true;
+        return client.respond(null);
+    }
+
+    /**
+     * Scans the next batch of rows
+     *
+     * @return next batch of rows that were scanned, or null if the scanner is exhausted.
+     */
+    public Deferred<ArrayList<ArrayList<KeyValue>>> nextRows() {
+        return nextRows(maxNumRows);
+    }
+
+    /**
+     * Scans the next batch of rows
+     *
+     * @param rows maximum number of rows to retrieve in the batch.
+     *
+     * @return next batch of rows that were scanned, or null if the scanner is exhausted.
+     */
+    public synchronized Deferred<ArrayList<ArrayList<KeyValue>>> nextRows(final int rows) {
+        if (done) {
+            return client.respond(null);
+        }
+
+        client.scanned();
+        if (client.shouldFail()) {
+            return client.fail(this);
+        }
+
+        final InMemoryTable t = client.table(table);
+        if (t == null) {
+            return client.tableNotFound(table);
+        }
+
+        final ArrayList<ArrayList<KeyValue>> batch = new ArrayList<>();
+        for (final InMemoryRow row : range(t.rows()).values()) {
+            currentKey = row.key();
+            if (keyRegexp == null
+                    || keyRegexp.matcher(new String(row.key(), keyCharset)).find()) {
+                final ArrayList<KeyValue> cells =
+                        row.cells(family, qualifiers, minTimestamp, maxTimestamp);
+                if (!cells.isEmpty()) {
+                    batch.add(cells);
+                    if (batch.size() >= rows) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (batch.isEmpty()) {
+            done = true;
+            return client.respond(null);
+        }
+        return client.respond(batch);
+    }
+
+    /**
+     * Gets the rows that remain to be scanned.
+     *
+     * @param rows all of the rows in the table.
+     *
+     * @return the rows after the {@link #currentKey}, between the start and stop keys.
+     */
+    private NavigableMap<byte[], InMemoryRow> range(final NavigableMap<byte[], InMemoryRow> rows) {
+        final byte[] from = currentKey == null ? startKey : currentKey;
+        if (stopKey.length > 0 && Bytes.memcmp(from, stopKey) >= 0) {
+            return new TreeMap<>(Bytes.MEMCMP);
+        }
+        return stopKey.length == 0
+                ? rows.tailMap(from, currentKey == null)
+                : rows.subMap(from, currentKey == null, stopKey, false);
+    }
+
+    @Override
+    public String toString() {
+        return "InMemoryRowScanner(table=" + new String(table) + ", currentKey="
+                + (currentKey == null ? "null" : new String(currentKey)) + ")";
+    }
+}
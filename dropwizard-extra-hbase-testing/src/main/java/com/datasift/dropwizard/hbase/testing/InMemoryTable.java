@@ -0,0 +1,224 @@
+package com.datasift.dropwizard.hbase.testing;
+
+import org.hbase.async.Bytes;
+import org.hbase.async.KeyValue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * A table stored in-memory by an {@link InMemoryHBaseClient}.
+ * <p/>
+ * Rows are kept sorted by key in a {@link ConcurrentSkipListMap}, each as an immutable {@link
+ * InMemoryRow} snapshot. Mutations build a new snapshot of the row and atomically swap it in,
+ * retrying if the row was concurrently modified; this makes every single-row operation atomic,
+ * without any locking on the read path.
+ */
+final class InMemoryTable {
+
+    /**
+     * The rows of the table, ordered by key.
+     */
+    private final ConcurrentSkipListMap<byte[], InMemoryRow> rows =
+            new ConcurrentSkipListMap<>(Bytes.MEMCMP);
+
+    /**
+     * The column families of the table, or null if the table accepts any column family.
+     */
+    private final NavigableSet<byte[]> families;
+
+    /**
+     * Creates a new, empty {@link InMemoryTable} with the given column families.
+     *
+     * @param families the column families of the table; if empty, any column family will be
+     *                 accepted.
+     */
+    InMemoryTable(final byte[]... families) {
+        if (families.length == 0) {
+            this.families = null;
+        } else {
+            this.families = new ConcurrentSkipListSet<>(Bytes.MEMCMP);
+            this.families.addAll(Arrays.asList(families));
+        }
+    }
+
+    /**
+     * Determines whether the given column family exists in this table.
+     *
+     * @param family the column family to check for.
+     *
+     * @return true if the column family exists, or this table accepts any column family; false
+     *         if it doesn't exist.
+     */
+    boolean hasFamily(final byte[] family) {
+        return families == null || family == null || family.length == 0
+                || families.contains(family);
+    }
+
+    /**
+     * Returns a view of the rows in this table, ordered by key.
+     *
+     * @return a view of the rows in this table.
+     */
+    NavigableMap<byte[], InMemoryRow> rows() {
+        return rows;
+    }
+
+    /**
+     * Gets the cells for a row.
+     *
+     * @param key        the key of the row to get.
+     * @param family     the family to get cells from, or null for all families.
+     * @param qualifiers the qualifiers to get cells for, or null for all qualifiers.
+     *
+     * @return the matching cells of the row; empty if there are none.
+     */
+    ArrayList<KeyValue> get(final byte[] key, final byte[] family, final byte[][] qualifiers) {
+        final InMemoryRow row = rows.get(key);
+        return row == null
+                ? new ArrayList<KeyValue>(0)
+                : row.cells(family, qualifiers, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Writes values to a row.
+     *
+     * @param key        the key of the row to write to.
+     * @param family     the family to write the values to.
+     * @param qualifiers the qualifiers to write the values to.
+     * @param values     the values to write, in parallel with the {@code qualifiers}.
+     * @param timestamp  the timestamp to write the values with.
+     */
+    void put(final byte[] key,
+             final byte[] family,
+             final byte[][] qualifiers,
+             final byte[][] values,
+             final long timestamp) {
+        InMemoryRow current;
+        do {
+            current = rows.get(key);
+        } while (!swap(key, current, row(key, current).put(family, qualifiers, values, timestamp)));
+    }
+
+    /**
+     * Atomically writes a value to a cell if the cell currently holds the expected value.
+     *
+     * @param key       the key of the row to write to.
+     * @param family    the family of the cell to write.
+     * @param qualifier the qualifier of the cell to write.
+     * @param value     the value to write.
+     * @param timestamp the timestamp to write the value with.
+     * @param expected  the value the cell is expected to hold; an empty value expects the cell to
+     *                  not exist.
+     *
+     * @return true if the value was written; false if the cell didn't hold the expected value.
+     */
+    boolean compareAndSet(final byte[] key,
+                          final byte[] family,
+                          final byte[] qualifier,
+                          final byte[] value,
+                          final long timestamp,
+                          final byte[] expected) {
+        InMemoryRow current;
+        do {
+            current = rows.get(key);
+            final KeyValue cell = current == null ? null : current.cell(family, qualifier);
+            final boolean matches = cell == null
+                    ? expected.length == 0
+                    : Bytes.equals(cell.value(), expected);
+            if (!matches) {
+                return false;
+            }
+        } while (!swap(key, current, row(key, current).put(
+                family, new byte[][] { qualifier }, new byte[][] { value }, timestamp)));
+        return true;
+    }
+
+    /**
+     * Atomically increments the value of a cell, interpreted as a big-endian 64-bit integer.
+     * <p/>
+     * If the cell doesn't exist, it's treated as holding zero.
+     *
+     * @param key       the key of the row to increment.
+     * @param family    the family of the cell to increment.
+     * @param qualifier the qualifier of the cell to increment.
+     * @param amount    the amount to increment the value by.
+     * @param timestamp the timestamp to write the new value with.
+     *
+     * @return the value of the cell after the increment.
+     *
+     * @throws IllegalArgumentException if the cell holds a value that isn't 8 bytes long.
+     */
+    long increment(final byte[] key,
+                   final byte[] family,
+                   final byte[] qualifier,
+                   final long amount,
+                   final long timestamp) {
+        InMemoryRow current;
+        long result;
+        do {
+            current = rows.get(key);
+            final KeyValue cell = current == null ? null : current.cell(family, qualifier);
+            if (cell != null && cell.value().length != 8) {
+                throw new IllegalArgumentException(
+                        "Attempted to increment a value that isn't a 64-bit integer: " + cell);
+            }
+            result = (cell == null ? 0 : Bytes.getLong(cell.value())) + amount;
+        } while (!swap(key, current, row(key, current).put(
+                family,
+                new byte[][] { qualifier },
+                new byte[][] { Bytes.fromLong(result) },
+                timestamp)));
+        return result;
+    }
+
+    /**
+     * Deletes cells from a row.
+     *
+     * @param key        the key of the row to delete from.
+     * @param family     the family to delete cells from, or null to delete from all families.
+     * @param qualifiers the qualifiers of the cells to delete, or null to delete all cells in the
+     *                   family.
+     * @param timestamp  the maximum timestamp (inclusive) of the cells to delete.
+     */
+    void delete(final byte[] key,
+                final byte[] family,
+                final byte[][] qualifiers,
+                final long timestamp) {
+        InMemoryRow current;
+        do {
+            current = rows.get(key);
+            if (current == null) {
+                return;
+            }
+        } while (!swap(key, current, current.delete(family, qualifiers, timestamp)));
+    }
+
+    /**
+     * Atomically replaces the snapshot of a row.
+     *
+     * @param key      the key of the row to replace.
+     * @param expected the snapshot the row is expected to currently have, or null if the row is
+     *                 expected to not exist.
+     * @param update   the new snapshot for the row, or null to remove the row.
+     *
+     * @return true if the row was replaced; false if it was concurrently modified.
+     */
+    private boolean swap(final byte[] key, final InMemoryRow expected, final InMemoryRow update) {
+        if (expected == null) {
+            return update == null || rows.putIfAbsent(key, update) == null;
+        } else if (update == null) {
+            return rows.remove(key, expected);
+        } else {
+            return rows.replace(key, expected, update);
+        }
+    }
+
+    private static InMemoryRow row(final byte[] key, final InMemoryRow current) {
+        return current == null ? new InMemoryRow(key) : current;
+    }
+}
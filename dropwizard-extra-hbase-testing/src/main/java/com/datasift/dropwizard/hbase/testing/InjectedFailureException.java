@@ -0,0 +1,18 @@
+package com.datasift.dropwizard.hbase.testing;
+
+/**
+ * The error that requests to an {@link InMemoryHBaseClient} fail with when a failure is injected.
+ *
+ * @see InMemoryHBaseClient#InMemoryHBaseClient(io.dropwizard.util.Duration, double, java.util.Random)
+ */
+public class InjectedFailureException extends RuntimeException {
+
+    /**
+     * Creates a new {@link InjectedFailureException} for a failed request.
+     *
+     * @param request a description of the request that failed.
+     */
+    public InjectedFailureException(final String request) {
+        super("Injected failure for request: " + request);
+    }
+}
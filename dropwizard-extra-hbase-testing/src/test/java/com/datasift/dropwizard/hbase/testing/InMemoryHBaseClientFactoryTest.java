@@ -0,0 +1,58 @@
+package com.datasift.dropwizard.hbase.testing;
+
+import com.google.common.io.Resources;
+import io.dropwizard.configuration.ConfigurationFactory;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.util.Duration;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@link InMemoryHBaseClientFactory}.
+ */
+public class InMemoryHBaseClientFactoryTest {
+
+    private InMemoryHBaseClientFactory factory;
+
+    @Before
+    public void setUp() throws Exception {
+        final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+        factory = new ConfigurationFactory<>(
+                InMemoryHBaseClientFactory.class, validator, Jackson.newObjectMapper(), "dw")
+                .build(new File(Resources.getResource("yaml/in-memory-hbase.yml").getFile()));
+    }
+
+    @Test
+    public void hasALatency() {
+        assertThat("latency is 5 milliseconds",
+                factory.getLatency(), is(Duration.milliseconds(5)));
+    }
+
+    @Test
+    public void hasAnErrorRate() {
+        assertThat("error rate is 25%", factory.getErrorRate(), is(0.25));
+    }
+
+    @Test
+    public void hasTables() {
+        assertThat("users table has families",
+                factory.getTables().get("users"), is(Arrays.asList("info", "counters")));
+        assertThat("events table accepts any family",
+                factory.getTables().get("events"), is(Collections.<String>emptyList()));
+    }
+
+    @Test
+    public void inheritsClientConfiguration() {
+        assertThat("client is not instrumented with metrics",
+                factory.isInstrumented(), is(false));
+    }
+}
@@ -0,0 +1,222 @@
+package com.datasift.dropwizard.hbase.testing;
+
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
+import com.stumbleupon.async.Deferred;
+import io.dropwizard.util.Duration;
+import org.hbase.async.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@link InMemoryHBaseClient}.
+ */
+public class InMemoryHBaseClientTest {
+
+    private static final long TIMEOUT = 1000;
+
+    private InMemoryHBaseClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        client = new InMemoryHBaseClient();
+        client.createTable("table", "family");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.shutdown().join(TIMEOUT);
+    }
+
+    @Test
+    public void getsPutCells() throws Exception {
+        client.put(new PutRequest("table", "row", "family", "qualifier", "value")).join(TIMEOUT);
+
+        final ArrayList<KeyValue> cells =
+                client.get(new GetRequest("table", "row")).join(TIMEOUT);
+
+        assertThat("gets one cell", cells.size(), is(1));
+        assertThat("gets the put value", new String(cells.get(0).value()), is("value"));
+    }
+
+    @Test
+    public void getsNothingForMissingRows() throws Exception {
+        assertThat("gets no cells",
+                client.get(new GetRequest("table", "missing")).join(TIMEOUT).isEmpty(),
+                is(true));
+    }
+
+    @Test
+    public void alwaysHasSystemTables() throws Exception {
+        client.ensureTableExists(".META.").join(TIMEOUT);
+        client.ensureTableExists("-ROOT-").join(TIMEOUT);
+    }
+
+    @Test(expected = TableNotFoundException.class)
+    public void failsForMissingTables() throws Exception {
+        client.put(new PutRequest("missing", "row", "family", "qualifier", "value")).join(TIMEOUT);
+    }
+
+    @Test(expected = NoSuchColumnFamilyException.class)
+    public void failsForMissingColumnFamilies() throws Exception {
+        client.put(new PutRequest("table", "row", "missing", "qualifier", "value")).join(TIMEOUT);
+    }
+
+    @Test
+    public void incrementsCells() throws Exception {
+        final AtomicIncrementRequest request =
+                new AtomicIncrementRequest("table", "row", "family", "counter", 5);
+
+        assertThat("first increment from zero",
+                client.increment(request).join(TIMEOUT), is(5L));
+        assertThat("second increment accumulates",
+                client.increment(request).join(TIMEOUT), is(10L));
+    }
+
+    @Test
+    public void createsOnlyMissingCells() throws Exception {
+        final PutRequest first = new PutRequest("table", "row", "family", "qualifier", "first");
+        final PutRequest second = new PutRequest("table", "row", "family", "qualifier", "second");
+
+        assertThat("creates missing cell", client.create(first).join(TIMEOUT), is(true));
+        assertThat("doesn't create existing cell", client.create(second).join(TIMEOUT), is(false));
+        assertThat("retains first value",
+                new String(client.get(new GetRequest("table", "row")).join(TIMEOUT)
+                        .get(0).value()),
+                is("first"));
+    }
+
+    @Test
+    public void comparesAndSetsCells() throws Exception {
+        client.put(new PutRequest("table", "row", "family", "qualifier", "a")).join(TIMEOUT);
+        final PutRequest edit = new PutRequest("table", "row", "family", "qualifier", "b");
+
+        assertThat("doesn't set on mismatch",
+                client.compareAndSet(edit, "z").join(TIMEOUT), is(false));
+        assertThat("sets on match",
+                client.compareAndSet(edit, "a").join(TIMEOUT), is(true));
+    }
+
+    @Test
+    public void deletesRows() throws Exception {
+        client.put(new PutRequest("table", "row", "family", "qualifier", "value")).join(TIMEOUT);
+        client.delete(new DeleteRequest("table", "row")).join(TIMEOUT);
+
+        assertThat("row is deleted",
+                client.get(new GetRequest("table", "row")).join(TIMEOUT).isEmpty(),
+                is(true));
+    }
+
+    @Test
+    public void deletesCells() throws Exception {
+        client.put(new PutRequest("table", "row", "family", "a", "1")).join(TIMEOUT);
+        client.put(new PutRequest("table", "row", "family", "b", "2")).join(TIMEOUT);
+        client.delete(new DeleteRequest("table", "row", "family", "a")).join(TIMEOUT);
+
+        final ArrayList<KeyValue> cells =
+                client.get(new GetRequest("table", "row")).join(TIMEOUT);
+        assertThat("one cell remains", cells.size(), is(1));
+        assertThat("other cell remains", new String(cells.get(0).qualifier()), is("b"));
+    }
+
+    @Test
+    public void scansRowsInOrder() throws Exception {
+        for (final String key : new String[] { "c", "a", "d", "b" }) {
+            client.put(new PutRequest("table", key, "family", "qualifier", key)).join(TIMEOUT);
+        }
+
+        final RowScanner scanner = client.scan("table")
+                .setStartKey("b")
+                .setStopKey("d")
+                .setMaxNumRows(1);
+
+        assertThat("scans first row", key(scanner.nextRows().join(TIMEOUT)), is("b"));
+        assertThat("scans second row", key(scanner.nextRows().join(TIMEOUT)), is("c"));
+        assertThat("stops before stop key", scanner.nextRows().join(TIMEOUT), is(nullValue()));
+    }
+
+    @Test
+    public void scansRowsMatchingRegexp() throws Exception {
+        for (final String key : new String[] { "apple", "banana", "avocado" }) {
+            client.put(new PutRequest("table", key, "family", "qualifier", key)).join(TIMEOUT);
+        }
+
+        final ArrayList<ArrayList<KeyValue>> rows =
+                client.scan("table").setKeyRegexp("^a").nextRows().join(TIMEOUT);
+
+        assertThat("scans matching rows", rows.size(), is(2));
+    }
+
+    @Test
+    public void delaysResults() throws Exception {
+        final InMemoryHBaseClient slow =
+                new InMemoryHBaseClient(Duration.milliseconds(50), 0, new Random());
+        try {
+            final long start = System.nanoTime();
+            slow.ensureTableExists(".META.").join(TIMEOUT);
+            assertThat("result is delayed",
+                    System.nanoTime() - start,
+                    is(greaterThanOrEqualTo(Duration.milliseconds(50).toNanoseconds())));
+        } finally {
+            slow.shutdown();
+        }
+    }
+
+    @Test
+    public void injectsFailures() throws Exception {
+        final InMemoryHBaseClient failing =
+                new InMemoryHBaseClient(Duration.milliseconds(0), 1, new Random());
+        failing.createTable("table");
+        try {
+            failing.put(new PutRequest("table", "row", "family", "qualifier", "value"))
+                    .join(TIMEOUT);
+            throw new AssertionError("request should have failed");
+        } catch (final InjectedFailureException e) {
+            assertThat("failed request isn't applied",
+                    failing.table("table".getBytes()).rows().isEmpty(), is(true));
+        } finally {
+            failing.shutdown();
+        }
+    }
+
+    @Test
+    public void deliversPendingResultsOnShutdown() throws Exception {
+        final InMemoryHBaseClient slow =
+                new InMemoryHBaseClient(Duration.days(1), 0, new Random());
+        final Deferred<Object> result = slow.ensureTableExists(".META.");
+
+        slow.shutdown();
+
+        assertThat("pending result is delivered", result.join(TIMEOUT), is(nullValue()));
+    }
+
+    @Test
+    public void countsRequests() throws Exception {
+        client.put(new PutRequest("table", "row", "family", "qualifier", "value")).join(TIMEOUT);
+        client.get(new GetRequest("table", "row")).join(TIMEOUT);
+        client.get(new GetRequest("table", "row")).join(TIMEOUT);
+
+        final ClientStats stats = client.stats();
+        assertThat("counts puts", stats.puts(), is(1L));
+        assertThat("counts gets", stats.gets(), is(2L));
+        assertThat("counts no deletes", stats.deletes(), is(0L));
+    }
+
+    @Test
+    public void grantsRowLocks() throws Exception {
+        assertThat("grants a row lock",
+                client.lockRow(new RowLockRequest("table", "row")).join(TIMEOUT),
+                is(notNullValue()));
+    }
+
+    private static String key(final ArrayList<ArrayList<KeyValue>> rows) {
+        assertThat("scans one row", rows.size(), is(1));
+        return new String(rows.get(0).get(0).key());
+    }
+}
@@ -42,8 +42,15 @@ public class HBaseClientFactory {
 
     protected boolean instrumented = true;
 
+    @NotNull
+    protected Duration requestDeadline = Duration.seconds(1);
+
     /**
      * Returns the ZooKeeper quorum co-ordinating the HBase cluster.
+     * <p/>
+     * The {@link org.hbase.async.HBaseClient} manages its own ZooKeeper session, which it only
+     * holds while locating regions, so it never {@link ZooKeeperFactory#isShareSession() shares}
+     * its session.
      *
      * @return the factory for connecting to the ZooKeeper quorum co-ordinating the HBase cluster.
      */
@@ -194,6 +201,34 @@ public class HBaseClientFactory {
         this.instrumented = isInstrumented;
     }
 
+    /**
+     * Returns the time after which an instrumented request is considered to be overdue.
+     * <p/>
+     * Overdue requests are not cancelled; they're counted by a {@link com.codahale.metrics.Meter}.
+     *
+     * @return the time after which a request is considered to be overdue.
+     *
+     * @see TrackingHBaseClient
+     */
+    @JsonProperty
+    public Duration getRequestDeadline() {
+        return requestDeadline;
+    }
+
+    /**
+     * Sets the time after which an instrumented request is considered to be overdue.
+     * <p/>
+     * Overdue requests are not cancelled; they're counted by a {@link com.codahale.metrics.Meter}.
+     *
+     * @param requestDeadline the time after which a request is considered to be overdue.
+     *
+     * @see TrackingHBaseClient
+     */
+    @JsonProperty
+    public void setRequestDeadline(final Duration requestDeadline) {
+        this.requestDeadline = requestDeadline;
+    }
+
     /**
      * Builds a default {@link HBaseClient} instance from the specified {@link
      * HBaseClientFactory}.
@@ -216,13 +251,9 @@ public class HBaseClientFactory {
      *         configuration}.
      */
     public HBaseClient build(final Environment environment, final String name) {
-        final ZooKeeperFactory zkFactory = getZookeeper();
-
-        final HBaseClient proxy = new HBaseClientProxy(
-                new org.hbase.async.HBaseClient(zkFactory.getQuorumSpec(), zkFactory.getNamespace()));
-
         // optionally instrument and bound requests for the client
-        final HBaseClient client = instrument(boundRequests(proxy), environment.metrics(), name);
+        final HBaseClient client = instrument(
+                buildClient(environment, name), environment.metrics(), name);
 
         // configure client
         client.setFlushInterval(getFlushInterval());
@@ -239,14 +270,34 @@ public class HBaseClientFactory {
         return client;
     }
 
+    /**
+     * Builds the underlying {@link HBaseClient} that requests will be dispatched to.
+     * <p/>
+     * By default, this connects to the HBase cluster described by the {@link #getZookeeper()
+     * ZooKeeper quorum}. Sub-classes may override this to provide an alternative implementation,
+     * e.g. an in-memory {@link HBaseClient} for testing; the result will still be instrumented,
+     * bounded, health-checked and managed according to this configuration.
+     *
+     * @param environment the {@link Environment} the {@link HBaseClient} is being built for.
+     * @param name the name for the {@link HBaseClient}.
+     *
+     * @return the underlying {@link HBaseClient} to dispatch requests to.
+     */
+    protected HBaseClient buildClient(final Environment environment, final String name) {
+        final ZooKeeperFactory zkFactory = getZookeeper();
+        return new HBaseClientProxy(new org.hbase.async.HBaseClient(
+                zkFactory.getSelectedQuorumSpec(), zkFactory.getNamespace()));
+    }
+
     /**
      * Builds a new {@link HBaseClient} according to the given {@link HBaseClientFactory}.
      * <p/>
      * If instrumentation {@link #instrumented is enabled} in the
-     * configuration, this will build an {@link InstrumentedHBaseClient} wrapping the given {@link
-     * HBaseClient}.
+     * configuration, this will build a {@link TrackingHBaseClient} wrapping the given {@link
+     * HBaseClient}, which both instruments and bounds requests.
      * <p/>
-     * If instrumentation is not enabled, the given {@link HBaseClient} will be returned verbatim.
+     * If instrumentation is not enabled, the given {@link HBaseClient} will only be {@link
+     * #boundRequests(HBaseClient) bounded}.
      *
      * @param client an underlying {@link HBaseClient} implementation.
      * @param registry the {@link MetricRegistry} to register metrics with.
@@ -257,8 +308,9 @@ public class HBaseClientFactory {
                                    final MetricRegistry registry,
                                    final String name) {
         return isInstrumented()
-                ? new InstrumentedHBaseClient(client, registry, name)
-                : client;
+                ? new TrackingHBaseClient(
+                        client, registry, name, getMaxConcurrentRequests(), getRequestDeadline())
+                : boundRequests(client);
     }
 
     /**
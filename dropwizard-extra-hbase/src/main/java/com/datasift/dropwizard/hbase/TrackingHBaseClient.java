@@ -0,0 +1,505 @@
+package com.datasift.dropwizard.hbase;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.datasift.dropwizard.hbase.metrics.HBaseInstrumentation;
+import com.datasift.dropwizard.hbase.scanner.BoundedRowScanner;
+import com.datasift.dropwizard.hbase.scanner.InstrumentedRowScanner;
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
+import com.datasift.dropwizard.hbase.util.RequestTrackingCallback;
+import com.stumbleupon.async.Deferred;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+import org.hbase.async.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.Semaphore;
+
+/**
+ * An {@link HBaseClient} that is instrumented with {@link Metric}s, optionally constrains the
+ * maximum number of concurrent asynchronous requests and tracks requests that overrun a deadline.
+ * <p/>
+ * This is functionally equivalent to an {@link InstrumentedHBaseClient} wrapping a {@link
+ * BoundedHBaseClient}, but does all of its book-keeping in a single {@link
+ * RequestTrackingCallback} per-request, instead of a {@link Timer.Context}, a {@link
+ * com.datasift.dropwizard.hbase.util.TimerStoppingCallback} and a {@link
+ * com.datasift.dropwizard.hbase.util.PermitReleasingCallback}. This substantially reduces the
+ * garbage generated by each request.
+ * <p/>
+ * For each asynchronous request method, a {@link Timer} tracks the time taken for the request,
+ * including any time spent waiting for a permit. Requests that take longer than the configured
+ * deadline are counted by a {@link Meter}; they are not cancelled.
+ *
+ * @see HBaseInstrumentation
+ * @see BoundedHBaseClient
+ * @see InstrumentedHBaseClient
+ */
+public class TrackingHBaseClient implements HBaseClient {
+
+    /**
+     * The underlying {@link HBaseClient} to dispatch requests.
+     */
+    private final HBaseClient client;
+
+    /**
+     * The instrumentation for this {@link HBaseClient}.
+     */
+    private final HBaseInstrumentation metrics;
+
+    /**
+     * The {@link Semaphore} constraining the maximum number of concurrent asynchronous requests,
+     * or null if the number of concurrent requests is unbounded.
+     */
+    private final Semaphore semaphore;
+
+    /**
+     * The {@link Meter} marked for each request that overruns its deadline.
+     */
+    private final Meter overdue;
+
+    /**
+     * The deadline for each request, in nanoseconds.
+     */
+    private final long deadline;
+
+    /**
+     * Creates a new {@link TrackingHBaseClient} for the given underlying client.
+     * <p/>
+     * A new {@link HBaseInstrumentation} container will be created for this {@link HBaseClient}
+     * with the given {@link MetricRegistry}, along with a {@link Meter} for requests that overrun
+     * their deadline.
+     *
+     * @param client      the underlying {@link HBaseClient} implementation to dispatch requests.
+     * @param registry    the {@link MetricRegistry} to register {@link Metric}s with.
+     * @param name        the name of the client to register metrics under.
+     * @param maxRequests the maximum number of concurrent requests, or zero for no limit.
+     * @param deadline    the time after which a request is considered to be overdue.
+     */
+    public TrackingHBaseClient(final HBaseClient client,
+                               final MetricRegistry registry,
+                               final String name,
+                               final int maxRequests,
+                               final Duration deadline) {
+        this(client,
+             new HBaseInstrumentation(client, registry, name),
+             maxRequests > 0 ? new Semaphore(maxRequests) : null,
+             registry.meter(MetricRegistry.name(name, "overdue")),
+             deadline);
+    }
+
+    /**
+     * Creates a new {@link TrackingHBaseClient} for the given underlying client.
+     *
+     * @param client    the underlying {@link HBaseClient} implementation to dispatch requests.
+     * @param metrics   the {@link HBaseInstrumentation} containing the {@link Metric}s to use.
+     * @param semaphore the {@link Semaphore} to track concurrent asynchronous requests with, or
+     *                  null if the number of concurrent requests is unbounded.
+     * @param overdue   the {@link Meter} to mark for each request that overruns its deadline.
+     * @param deadline  the time after which a request is considered to be overdue.
+     */
+    public TrackingHBaseClient(final HBaseClient client,
+                               final HBaseInstrumentation metrics,
+                               final Semaphore semaphore,
+                               final Meter overdue,
+                               final Duration deadline) {
+        this.client = client;
+        this.metrics = metrics;
+        this.semaphore = semaphore;
+        this.overdue = overdue;
+        this.deadline = deadline.toNanoseconds();
+    }
+
+    /**
+     * Get the maximum time for which edits may be buffered before being flushed.
+     *
+     * @return the maximum time for which edits may be buffered.
+     *
+     * @see HBaseClient#getFlushInterval()
+     */
+    public Duration getFlushInterval() {
+        return client.getFlushInterval();
+    }
+
+    /**
+     * Get the capacity of the increment buffer.
+     *
+     * @return the capacity of the increment buffer.
+     *
+     * @see HBaseClient#getIncrementBufferSize()
+     */
+    public Size getIncrementBufferSize() {
+        return client.getIncrementBufferSize();
+    }
+
+    /**
+     * Sets the maximum time for which edits may be buffered before being flushed.
+     *
+     * @param flushInterval the maximum time for which edits may be buffered.
+     *
+     * @return the previous flush interval.
+     *
+     * @see HBaseClient#setFlushInterval(Duration)
+     */
+    public Duration setFlushInterval(final Duration flushInterval) {
+        return client.setFlushInterval(flushInterval);
+    }
+
+    /**
+     * Sets the capacity of the increment buffer.
+     *
+     * @param incrementBufferSize the capacity of the increment buffer.
+     *
+     * @return the previous increment buffer capacity.
+     *
+     * @see HBaseClient#setIncrementBufferSize(Size)
+     */
+    public Size setIncrementBufferSize(final Size incrementBufferSize) {
+        return client.setIncrementBufferSize(incrementBufferSize);
+    }
+
+    /**
+     * Atomically creates a cell if, and only if, it doesn't already exist.
+     *
+     * @param edit the new cell to create.
+     *
+     * @return true if the cell was created, false if the cell already exists.
+     *
+     * @see HBaseClient#create(PutRequest)
+     */
+    public Deferred<Boolean> create(final PutRequest edit) {
+        final long start = acquire();
+        return client.create(edit).addBoth(this.<Boolean>track(metrics.getCreates(), start));
+    }
+
+    /**
+     * Buffer a durable increment for coalescing.
+     *
+     * @param request the increment to buffer.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#bufferIncrement(AtomicIncrementRequest) 
+     */
+    public Deferred<Long> bufferIncrement(final AtomicIncrementRequest request) {
+        final long start = acquire();
+        return client.bufferIncrement(request)
+                .addBoth(this.<Long>track(metrics.getIncrements(), start));
+    }
+
+    /**
+     * Atomically and durably increment a cell value.
+     *
+     * @param request the increment to make.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request) {
+        final long start = acquire();
+        return client.increment(request).addBoth(this.<Long>track(metrics.getIncrements(), start));
+    }
+
+    /**
+     * Atomically increment a cell value, with optional durability.
+     *
+     * @param request the increment to make.
+     * @param durable whether to guarantee this increment succeeded durably.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest, Boolean)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request, final Boolean durable) {
+        final long start = acquire();
+        return client.increment(request, durable)
+                .addBoth(this.<Long>track(metrics.getIncrements(), start));
+    }
+
+    /**
+     * Atomically compares and sets (CAS) a single cell
+     *
+     * @param edit the cell to set.
+     * @param expected the expected current value.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, byte[])
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final byte[] expected) {
+        final long start = acquire();
+        return client.compareAndSet(edit, expected)
+                .addBoth(this.<Boolean>track(metrics.getCompareAndSets(), start));
+    }
+
+    /**
+     * Atomically compares and sets (CAS) a single cell.
+     *
+     * @param edit the cell to set.
+     * @param expected the expected current value.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, String)
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final String expected) {
+        final long start = acquire();
+        return client.compareAndSet(edit, expected)
+                .addBoth(this.<Boolean>track(metrics.getCompareAndSets(), start));
+    }
+
+    /**
+     * Deletes the specified cells.
+     *
+     * @param request the cell(s) to delete.
+     *
+     * @return a {@link Deferred} indicating when the deletion completes.
+     *
+     * @see HBaseClient#delete(DeleteRequest)
+     */
+    public Deferred<Object> delete(final DeleteRequest request) {
+        final long start = acquire();
+        return client.delete(request).addBoth(this.<Object>track(metrics.getDeletes(), start));
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     *
+     * @see HBaseClient#ensureTableExists(byte[])
+     */
+    public Deferred<Object> ensureTableExists(final byte[] table) {
+        final long start = acquire();
+        return client.ensureTableExists(table)
+                .addBoth(this.<Object>track(metrics.getAssertions(), start));
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     *
+     * @see HBaseClient#ensureTableExists(String)
+     */
+    public Deferred<Object> ensureTableExists(final String table) {
+        final long start = acquire();
+        return client.ensureTableExists(table)
+                .addBoth(this.<Object>track(metrics.getAssertions(), start));
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     * @throws NoSuchColumnFamilyException (Deferred) if the family doesn't exist.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(byte[], byte[])
+     */
+    public Deferred<Object> ensureTableFamilyExists(final byte[] table, final byte[] family) {
+        final long start = acquire();
+        return client.ensureTableFamilyExists(table, family)
+                .addBoth(this.<Object>track(metrics.getAssertions(), start));
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     * @throws NoSuchColumnFamilyException (Deferred) if the family doesn't exist.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(String, String)
+     */
+    public Deferred<Object> ensureTableFamilyExists(final String table, final String family) {
+        final long start = acquire();
+        return client.ensureTableFamilyExists(table, family)
+                .addBoth(this.<Object>track(metrics.getAssertions(), start));
+    }
+
+    /**
+     * Flushes all requests buffered on the client-side.
+     *
+     * @return a {@link Deferred} indicating the completion of the flush.
+     *
+     * @see HBaseClient#flush()
+     */
+    public Deferred<Object> flush() {
+        final long start = acquire();
+        return client.flush().addBoth(this.<Object>track(metrics.getFlushes(), start));
+    }
+
+    /**
+     * Retrieves the specified cells.
+     *
+     * @param request the cells to get.
+     *
+     * @return the requested cells.
+     *
+     * @see HBaseClient#get(GetRequest)
+     */
+    public Deferred<ArrayList<KeyValue>> get(final GetRequest request) {
+        final long start = acquire();
+        return client.get(request)
+                .addBoth(this.<ArrayList<KeyValue>>track(metrics.getGets(), start));
+    }
+
+    /**
+     * Aqcuire an explicit row lock.
+     *
+     * @param request the row(s) to lock.
+     *
+     * @return the row lock.
+     *
+     * @see HBaseClient#lockRow(RowLockRequest)
+     */
+    public Deferred<RowLock> lockRow(final RowLockRequest request) {
+        final long start = acquire();
+        return client.lockRow(request).addBoth(this.<RowLock>track(metrics.getLocks(), start));
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link RowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(byte[])
+     */
+    public RowScanner scan(final byte[] table) {
+        return instrument(client.scan(table));
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link RowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(String)
+     */
+    public RowScanner scan(final String table) {
+        return instrument(client.scan(table));
+    }
+
+    /**
+     * Store the specified cell(s).
+     *
+     * @param request the cell(s) to store.
+     *
+     * @return a {@link Deferred} indicating the completion of the put operation.
+     *
+     * @see HBaseClient#put(PutRequest)
+     */
+    public Deferred<Object> put(final PutRequest request) {
+        final long start = acquire();
+        return client.put(request).addBoth(this.<Object>track(metrics.getPuts(), start));
+    }
+
+    /**
+     * Performs a graceful shutdown of this client, flushing any pending requests.
+     *
+     * @return a {@link Deferred} indicating the completion of the shutdown operation.
+     *
+     * @see HBaseClient#shutdown()
+     */
+    public Deferred<Object> shutdown() {
+        return client.shutdown();
+    }
+
+    /**
+     * Get an immutable snapshot of client usage statistics.
+     *
+     * @return an immutable snapshot of client usage statistics.
+     *
+     * @see HBaseClient#stats()
+     */
+    public ClientStats stats() {
+        return client.stats();
+    }
+
+    /**
+     * Get the underlying {@link org.jboss.netty.util.Timer} used by the client.
+     *
+     * @return the underlying {@link org.jboss.netty.util.Timer} used by the async client.
+     *
+     * @see HBaseClient#getTimer()
+     */
+    public org.jboss.netty.util.Timer getTimer() {
+        return client.getTimer();
+    }
+
+    /**
+     * Release an explicit row lock.
+     *
+     * @param lock the lock to release.
+     *
+     * @return a {@link Deferred} indicating the completion of the unlock operation.
+     *
+     * @see HBaseClient#unlockRow(RowLock)
+     */
+    public Deferred<Object> unlockRow(final RowLock lock) {
+        final long start = acquire();
+        return client.unlockRow(lock).addBoth(this.<Object>track(metrics.getUnlocks(), start));
+    }
+
+    /**
+     * Marks the start of a request, acquiring a permit for it if the number of concurrent
+     * requests is bounded.
+     *
+     * @return the {@link System#nanoTime()} at which the request started.
+     */
+    private long acquire() {
+        final long start = System.nanoTime();
+        if (semaphore != null) {
+            semaphore.acquireUninterruptibly();
+        }
+        return start;
+    }
+
+    /**
+     * Creates the {@link RequestTrackingCallback} to complete a request with.
+     *
+     * @param timer the {@link Timer} to record the duration of the request with.
+     * @param start the {@link System#nanoTime()} at which the request started.
+     * @param <T>   the type of the result of the request.
+     *
+     * @return a {@link RequestTrackingCallback} to complete the request with.
+     */
+    private <T> RequestTrackingCallback<T> track(final Timer timer, final long start) {
+        return new RequestTrackingCallback<T>(timer, semaphore, overdue, deadline, start);
+    }
+
+    /**
+     * Instruments, and optionally bounds, the given {@link RowScanner}.
+     *
+     * @param scanner the {@link RowScanner} to wrap.
+     *
+     * @return a {@link RowScanner} that satisfies the configuration of this client.
+     */
+    private RowScanner instrument(final RowScanner scanner) {
+        final RowScanner bounded = semaphore == null
+                ? scanner
+                : new BoundedRowScanner(scanner, semaphore);
+        return new InstrumentedRowScanner(bounded, metrics.instrument(scanner));
+    }
+}
@@ -0,0 +1,126 @@
+package com.datasift.dropwizard.hbase.metrics;
+
+import com.codahale.metrics.Clock;
+import com.datasift.dropwizard.hbase.HBaseClient;
+import io.dropwizard.util.Duration;
+import org.hbase.async.ClientStats;
+
+/**
+ * A lazily refreshed snapshot of the {@link ClientStats} for an {@link HBaseClient}.
+ * <p/>
+ * Obtaining {@link ClientStats} from an {@link HBaseClient} builds a new snapshot of every counter
+ * maintained by the client. When many {@link com.codahale.metrics.Gauge}s are derived from these
+ * statistics, requesting a new snapshot for each of them is both wasteful and yields values that
+ * are inconsistent with each other.
+ * <p/>
+ * Instead, a single snapshot is captured and shared by all readers until it is older than the
+ * configured time-to-live, at which point the next reader captures a fresh snapshot. Reads of a
+ * fresh snapshot are lock-free.
+ *
+ * @see HBaseInstrumentation
+ */
+public class CachedClientStats {
+
+    /**
+     * The default maximum age of a snapshot.
+     * <p/>
+     * This is short enough to guarantee a fresh snapshot for every metrics report, while still
+     * being long enough for all {@link com.codahale.metrics.Gauge}s of a single report to be
+     * derived from the same snapshot.
+     */
+    public static final Duration DEFAULT_TTL = Duration.seconds(1);
+
+    private final HBaseClient client;
+    private final long ttl;
+    private final Clock clock;
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * Creates a cache of {@link ClientStats} for the given {@link HBaseClient}, using the {@link
+     * #DEFAULT_TTL default time-to-live}.
+     *
+     * @param client the client to capture {@link ClientStats} from.
+     */
+    public CachedClientStats(final HBaseClient client) {
+        this(client, DEFAULT_TTL, Clock.defaultClock());
+    }
+
+    /**
+     * Creates a cache of {@link ClientStats} for the given {@link HBaseClient}.
+     *
+     * @param client the client to capture {@link ClientStats} from.
+     * @param ttl    the maximum age of a snapshot before it's refreshed.
+     * @param clock  the {@link Clock} used to determine the age of a snapshot.
+     */
+    public CachedClientStats(final HBaseClient client, final Duration ttl, final Clock clock) {
+        this.client = client;
+        this.ttl = ttl.toNanoseconds();
+        this.clock = clock;
+    }
+
+    /**
+     * Gets the current snapshot of {@link ClientStats}, capturing a new snapshot if the current
+     * one has expired.
+     *
+     * @return a snapshot of the {@link ClientStats} for the client, no older than the configured
+     *         time-to-live.
+     */
+    public ClientStats get() {
+        final Snapshot current = snapshot;
+        if (current != null && !current.isExpired(clock.getTick())) {
+            return current.stats;
+        }
+        return refresh();
+    }
+
+    /**
+     * Captures a new snapshot of {@link ClientStats}, unless another thread did so while we were
+     * waiting.
+     *
+     * @return the fresh snapshot of {@link ClientStats}.
+     */
+    private synchronized ClientStats refresh() {
+        final long now = clock.getTick();
+        final Snapshot previous = snapshot;
+        if (previous != null && !previous.isExpired(now)) {
+            return previous.stats;
+        }
+
+        final Snapshot next = new Snapshot(client.stats(), now);
+        snapshot = next;
+        onRefresh(previous == null ? null : previous.stats, next.stats);
+        return next.stats;
+    }
+
+    /**
+     * Called every time a new snapshot is captured.
+     * <p/>
+     * Sub-classes may override this to derive rates from the change in monotonic counters between
+     * successive snapshots. The default implementation does nothing.
+     *
+     * @param previous the snapshot that has been replaced, or null if this is the first snapshot.
+     * @param current  the newly captured snapshot.
+     */
+    protected void onRefresh(final ClientStats previous, final ClientStats current) {
+        // nothing to do by default
+    }
+
+    /**
+     * A {@link ClientStats} snapshot and the time at which it was captured.
+     */
+    private class Snapshot {
+
+        private final ClientStats stats;
+        private final long timestamp;
+
+        private Snapshot(final ClientStats stats, final long timestamp) {
+            this.stats = stats;
+            this.timestamp = timestamp;
+        }
+
+        private boolean isExpired(final long now) {
+            return now - timestamp >= ttl;
+        }
+    }
+}
@@ -1,13 +1,23 @@
 package com.datasift.dropwizard.hbase.metrics;
 
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Meter;
 import com.datasift.dropwizard.hbase.HBaseClient;
 import com.datasift.dropwizard.hbase.scanner.RowScanner;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import io.dropwizard.util.Duration;
+import org.hbase.async.ClientStats;
 
 /**
  * A container for {@link Timer}s used to time {@link HBaseClient} requests.
+ * <p/>
+ * The {@link ClientStats} of the {@link HBaseClient} are also exposed as {@link Gauge}s. All of
+ * these are derived from a single {@link CachedClientStats snapshot}, so that the values reported
+ * together are consistent with each other. The rates of the most significant monotonic counters
+ * are tracked by {@link Meter}s, which are marked with the change in each counter whenever a new
+ * snapshot is captured.
  *
  * @see com.datasift.dropwizard.hbase.InstrumentedHBaseClient
  */
@@ -25,12 +35,25 @@ public class HBaseInstrumentation {
     private final Timer puts;
     private final Timer unlocks;
 
+    // client stats rates
+    private final Meter atomicIncrementRate;
+    private final Meter deleteRate;
+    private final Meter getRate;
+    private final Meter putRate;
+    private final Meter scanRate;
+    private final Meter noSuchRegionRate;
+
+    private final CachedClientStats stats;
+
     private final String name;
     private final MetricRegistry registry;
 
     /**
      * Initialises instrumentation for the given {@link HBaseClient} using the given {@link
      * MetricsRegistry}.
+     * <p/>
+     * {@link ClientStats} snapshots are cached for the {@link CachedClientStats#DEFAULT_TTL
+     * default time-to-live}.
      *
      * @param client   the client to create metrics for.
      * @param registry the registry to register the metrics with.
@@ -39,9 +62,26 @@ public class HBaseInstrumentation {
     public HBaseInstrumentation(final HBaseClient client,
                                 final MetricRegistry registry,
                                 final String name) {
+        this(client, registry, name, CachedClientStats.DEFAULT_TTL);
+    }
+
+    /**
+     * Initialises instrumentation for the given {@link HBaseClient} using the given {@link
+     * MetricsRegistry}.
+     *
+     * @param client   the client to create metrics for.
+     * @param registry the registry to register the metrics with.
+     * @param name     the name of the client/scanner to register metrics under.
+     * @param statsTtl the maximum age of the {@link ClientStats} snapshot the client stats are
+     *                 derived from.
+     */
+    public HBaseInstrumentation(final HBaseClient client,
+                                final MetricRegistry registry,
+                                final String name,
+                                final Duration statsTtl) {
         this.name = name;
         this.registry = registry;
-        
+
         // timers
         creates        = registry.timer(MetricRegistry.name(name, "create"));
         increments     = registry.timer(MetricRegistry.name(name, "increment"));
@@ -54,95 +94,121 @@ public class HBaseInstrumentation {
         puts           = registry.timer(MetricRegistry.name(name, "put"));
         unlocks        = registry.timer(MetricRegistry.name(name, "unlock"));
 
+        // client stats rates
+        final String rates = MetricRegistry.name(name, "rates");
+        atomicIncrementRate = registry.meter(MetricRegistry.name(rates, "atomicIncrements"));
+        deleteRate          = registry.meter(MetricRegistry.name(rates, "deletes"));
+        getRate             = registry.meter(MetricRegistry.name(rates, "gets"));
+        putRate             = registry.meter(MetricRegistry.name(rates, "puts"));
+        scanRate            = registry.meter(MetricRegistry.name(rates, "scans"));
+        noSuchRegionRate    = registry.meter(MetricRegistry.name(rates, "noSuchRegionExceptions"));
+
+        // client stats snapshot, marking the rates with the change in each counter
+        stats = new CachedClientStats(client, statsTtl, Clock.defaultClock()) {
+            @Override
+            protected void onRefresh(final ClientStats previous, final ClientStats current) {
+                if (previous != null) {
+                    mark(atomicIncrementRate,
+                            previous.atomicIncrements(), current.atomicIncrements());
+                    mark(deleteRate, previous.deletes(), current.deletes());
+                    mark(getRate, previous.gets(), current.gets());
+                    mark(putRate, previous.puts(), current.puts());
+                    mark(scanRate, previous.scans(), current.scans());
+                    mark(noSuchRegionRate,
+                            previous.noSuchRegionExceptions(), current.noSuchRegionExceptions());
+                }
+            }
+        };
+
         // client stats
         registry.register(MetricRegistry.name(name, "totals", "atomicIncrements"),
                 new Gauge<Long>() {
                     @Override public Long getValue() {
-                        return client.stats().atomicIncrements();
+                        return stats.get().atomicIncrements();
                     }
                 });
         registry.register(MetricRegistry.name(name, "totals", "connectionsCreated"),
                 new Gauge<Long>() {
                     @Override public Long getValue() {
-                        return client.stats().connectionsCreated();
+                        return stats.get().connectionsCreated();
                     }
                 });
         registry.register(MetricRegistry.name(name, "totals", "contendedMetaLookups"),
                 new Gauge<Long>() {
                     @Override public Long getValue() {
-                        return client.stats().contendedMetaLookups();
+                        return stats.get().contendedMetaLookups();
                     }
                 });
         registry.register(MetricRegistry.name(name, "totals", "deletes"),
                 new Gauge<Long>() {
                     @Override public Long getValue() {
-                        return client.stats().deletes();
+                        return stats.get().deletes();
                     }
                 });
         registry.register(MetricRegistry.name(name, "totals", "flushes"),
                 new Gauge<Long>() {
                     @Override public Long getValue() {
-                        return client.stats().flushes();
+                        return stats.get().flushes();
                     }
                 });
         registry.register(MetricRegistry.name(name, "totals", "gets"),
                 new Gauge<Long>() {
                     @Override public Long getValue() {
-                        return client.stats().gets();
+                        return stats.get().gets();
                     }
                 });
         registry.register(MetricRegistry.name(name, "totals", "noSuchRegionExceptions"),
                 new Gauge<Long>() {
                     @Override public Long getValue() {
-                        return client.stats().noSuchRegionExceptions();
+                        return stats.get().noSuchRegionExceptions();
                     }
                 });
         registry.register(MetricRegistry.name(name, "totals", "numBatchedRpcSent"),
                 new Gauge<Long>() {
                     @Override public Long getValue() {
-                        return client.stats().numBatchedRpcSent();
+                        return stats.get().numBatchedRpcSent();
                     }
                 });
         registry.register(MetricRegistry.name(name, "totals", "numRpcDelayedDueToNSRE"),
                 new Gauge<Long>() {
                     @Override public Long getValue() {
-                        return client.stats().numRpcDelayedDueToNSRE();
+                        return stats.get().numRpcDelayedDueToNSRE();
                     }
                 });
         registry.register(MetricRegistry.name(name, "totals", "puts"),
                 new Gauge<Long>() {
                     @Override public Long getValue() {
-                        return client.stats().puts();
+                        return stats.get().puts();
                     }
                 });
         registry.register(MetricRegistry.name(name, "totals", "rootLookups"),
                 new Gauge<Long>() {
                     @Override public Long getValue() {
-                        return client.stats().rootLookups();
+                        return stats.get().rootLookups();
                     }
                 });
         registry.register(MetricRegistry.name(name, "totals", "rowLocks"),
                 new Gauge<Long>() {
                     @Override public Long getValue() {
-                        return client.stats().rowLocks();
+                        return stats.get().rowLocks();
                     }
                 });
         registry.register(MetricRegistry.name(name, "totals", "scannersOpened"),
                 new Gauge<Long>() {
                     @Override public Long getValue() {
-                        return client.stats().scannersOpened();
+                        return stats.get().scannersOpened();
                     }
                 });
         registry.register(MetricRegistry.name(name, "totals", "scans"),
                 new Gauge<Long>() {
                     @Override public Long getValue() {
-                        return client.stats().scans();
+                        return stats.get().scans();
                     }
                 });
         registry.register(MetricRegistry.name(name, "totals", "uncontendedMetaLookups"),
                 new Gauge<Long>() {
                     @Override public Long getValue() {
-                        return client.stats().uncontendedMetaLookups();
+                        return stats.get().uncontendedMetaLookups();
                     }
                 });
 
@@ -150,87 +216,100 @@ public class HBaseInstrumentation {
         registry.register(MetricRegistry.name(name, "incrementBuffer", "averageLoadPenalty"),
                 new Gauge<Double>() {
                     @Override public Double getValue() {
-                        return client.stats().incrementBufferStats()
+                        return stats.get().incrementBufferStats()
                                 .averageLoadPenalty();
                     }
                 });
         registry.register(MetricRegistry.name(name, "incrementBuffer", "evictionCount"),
                 new Gauge<Long>() {
                     @Override public Long getValue() {
-                        return client.stats().incrementBufferStats()
+                        return stats.get().incrementBufferStats()
                                 .evictionCount();
                     }
                 });
         registry.register(MetricRegistry.name(name, "incrementBuffer", "hitCount"),
                 new Gauge<Long>() {
                     @Override public Long getValue() {
-                        return client.stats().incrementBufferStats().hitCount();
+                        return stats.get().incrementBufferStats().hitCount();
                     }
                 });
         registry.register(MetricRegistry.name(name, "incrementBuffer", "hitRate"),
                 new Gauge<Double>() {
                     @Override public Double getValue() {
-                        return client.stats().incrementBufferStats().hitRate();
+                        return stats.get().incrementBufferStats().hitRate();
                     }
                 });
         registry.register(MetricRegistry.name(name, "incrementBuffer", "loadCount"),
                 new Gauge<Long>() {
                     @Override public Long getValue() {
-                        return client.stats().incrementBufferStats()
+                        return stats.get().incrementBufferStats()
                                 .loadCount();
                     }
                 });
         registry.register(MetricRegistry.name(name, "incrementBuffer", "loadExceptionCount"),
                 new Gauge<Long>() {
                     @Override public Long getValue() {
-                        return client.stats().incrementBufferStats()
+                        return stats.get().incrementBufferStats()
                                 .loadExceptionCount();
                     }
                 });
         registry.register(MetricRegistry.name(name, "incrementBuffer", "loadExceptionRate"),
                 new Gauge<Double>() {
                     @Override public Double getValue() {
-                        return client.stats().incrementBufferStats()
+                        return stats.get().incrementBufferStats()
                                 .loadExceptionRate();
                     }
                 });
         registry.register(MetricRegistry.name(name, "incrementBuffer", "loadSuccessCount"),
                 new Gauge<Long>() {
                     @Override public Long getValue() {
-                        return client.stats().incrementBufferStats()
+                        return stats.get().incrementBufferStats()
                                 .loadSuccessCount();
                     }
                 });
         registry.register(MetricRegistry.name(name, "incrementBuffer", "missCount"),
                 new Gauge<Long>() {
                     @Override public Long getValue() {
-                        return client.stats().incrementBufferStats()
+                        return stats.get().incrementBufferStats()
                                 .missCount();
                     }
                 });
         registry.register(MetricRegistry.name(name, "incrementBuffer", "missRate"),
                 new Gauge<Double>() {
                     @Override public Double getValue() {
-                        return client.stats().incrementBufferStats()
+                        return stats.get().incrementBufferStats()
                                 .missRate();
                     }
                 });
         registry.register(MetricRegistry.name(name, "incrementBuffer", "requestCount"),
                 new Gauge<Long>() {
                     @Override public Long getValue() {
-                        return client.stats().incrementBufferStats()
+                        return stats.get().incrementBufferStats()
                                 .requestCount();
                     }
                 });
         registry.register(MetricRegistry.name(name, "incrementBuffer", "totalLoadTime"),
                 new Gauge<Long>() {
                     @Override public Long getValue() {
-                        return client.stats().incrementBufferStats()
+                        return stats.get().incrementBufferStats()
                                 .totalLoadTime();
                     }
                 });
     }
 
+    /**
+     * Marks the given {@link Meter} with the change in a monotonic counter.
+     *
+     * @param meter    the {@link Meter} to mark.
+     * @param previous the previous value of the counter.
+     * @param current  the current value of the counter.
+     */
+    private static void mark(final Meter meter, final long previous, final long current) {
+        if (current > previous) {
+            meter.mark(current - previous);
+        }
+    }
+
     /**
      * Gets the {@link Timer} for create requests.
      *
@@ -321,6 +400,15 @@ public class HBaseInstrumentation {
         return unlocks;
     }
 
+    /**
+     * Gets the cached {@link ClientStats} that the client stats {@link Gauge}s are derived from.
+     *
+     * @return the cached {@link ClientStats} for the client.
+     */
+    public CachedClientStats getStats() {
+        return stats;
+    }
+
     /**
      * Creates the instrumentation for a {@link RowScanner}.
      *
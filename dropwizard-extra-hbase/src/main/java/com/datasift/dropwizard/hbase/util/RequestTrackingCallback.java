@@ -0,0 +1,88 @@
+package com.datasift.dropwizard.hbase.util;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import com.stumbleupon.async.Callback;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Callback} that completes the book-keeping for a request on completion.
+ * <p/>
+ * This combines the work of a {@link TimerStoppingCallback} and a {@link PermitReleasingCallback}
+ * in a single {@link Callback}, and additionally tracks requests that overrun their deadline.
+ * Rather than holding a {@link Timer.Context}, the {@link System#nanoTime()} at which the request
+ * started is carried directly, so only this {@link Callback} is allocated per-request.
+ */
+public class RequestTrackingCallback<T> implements Callback<T, T> {
+
+    /**
+     * The {@link Timer} to record the duration of the request with.
+     */
+    private final Timer timer;
+
+    /**
+     * The {@link Semaphore} to release the permit to, or null if the request holds no permit.
+     */
+    private final Semaphore semaphore;
+
+    /**
+     * The {@link Meter} to mark when the request overruns its deadline.
+     */
+    private final Meter overdue;
+
+    /**
+     * The deadline for the request, in nanoseconds.
+     */
+    private final long deadline;
+
+    /**
+     * The {@link System#nanoTime()} at which the request started.
+     */
+    private final long start;
+
+    /**
+     * Creates a new {@link Callback} that tracks the completion of a request.
+     *
+     * @param timer     the {@link Timer} to record the duration of the request with.
+     * @param semaphore the {@link Semaphore} to release a permit to on completion, or null if the
+     *                  request doesn't hold a permit.
+     * @param overdue   the {@link Meter} to mark if the request overruns its deadline.
+     * @param deadline  the deadline for the request, in nanoseconds.
+     * @param start     the {@link System#nanoTime()} at which the request started.
+     */
+    public RequestTrackingCallback(final Timer timer,
+                                   final Semaphore semaphore,
+                                   final Meter overdue,
+                                   final long deadline,
+                                   final long start) {
+        this.timer = timer;
+        this.semaphore = semaphore;
+        this.overdue = overdue;
+        this.deadline = deadline;
+        this.start = start;
+    }
+
+    /**
+     * Records the duration of the request, releases its permit (if any), marks it as overdue if it
+     * overran its deadline and proxies any argument through verbatim.
+     *
+     * @param arg the argument (if any) to pass-through.
+     *
+     * @return the argument (if any), proxied verbatim.
+     *
+     * @throws Exception if an error occurs completing the request.
+     */
+    public T call(final T arg) throws Exception {
+        final long elapsed = System.nanoTime() - start;
+        if (semaphore != null) {
+            semaphore.release();
+        }
+        timer.update(elapsed, TimeUnit.NANOSECONDS);
+        if (elapsed > deadline) {
+            overdue.mark();
+        }
+        return arg;
+    }
+}
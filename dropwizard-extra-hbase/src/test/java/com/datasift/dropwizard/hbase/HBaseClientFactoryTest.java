@@ -58,4 +58,10 @@ public class HBaseClientFactoryTest {
         assertThat("client is not instrumented with metrics",
                 factory.isInstrumented(), is(false));
     }
+
+    @Test
+    public void hasARequestDeadline() {
+        assertThat("request deadline is 500 milliseconds",
+                factory.getRequestDeadline(), is(Duration.milliseconds(500)));
+    }
 }
@@ -0,0 +1,170 @@
+package com.datasift.dropwizard.hbase;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.datasift.dropwizard.hbase.metrics.HBaseInstrumentation;
+import com.datasift.dropwizard.hbase.scanner.InstrumentedRowScanner;
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
+import com.stumbleupon.async.Deferred;
+import io.dropwizard.util.Duration;
+import org.hbase.async.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.concurrent.Semaphore;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests {@link TrackingHBaseClient}.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({
+        PutRequest.class,
+        GetRequest.class,
+        AtomicIncrementRequest.class,
+        DeleteRequest.class,
+        RowLockRequest.class,
+        RowLock.class,
+        ClientStats.class
+})
+public class TrackingHBaseClientTest {
+
+    private final MetricRegistry registry = new MetricRegistry();
+    private HBaseClient underlying;
+    private HBaseInstrumentation metrics;
+    private Semaphore semaphore;
+    private Meter overdue;
+    private Timer timer;
+
+    @Before
+    public void setup() {
+        underlying = mock(HBaseClient.class);
+        metrics = mock(HBaseInstrumentation.class);
+        semaphore = new Semaphore(1);
+        overdue = registry.meter("overdue");
+        timer = registry.timer("test");
+    }
+
+    @Test
+    public void proxiesPuts() {
+        final PutRequest req = mock(PutRequest.class);
+        final Deferred<Object> resp = new Deferred<>();
+        when(underlying.put(req)).thenReturn(resp);
+
+        assertThat("puts via proxy",
+                new TrackingHBaseClient(underlying, registry, "test", 0, Duration.seconds(1))
+                        .put(req),
+                is(resp));
+    }
+
+    @Test
+    public void timesPuts() {
+        final PutRequest req = mock(PutRequest.class);
+        final Deferred<Object> resp = new Deferred<>();
+        when(underlying.put(req)).thenReturn(resp);
+        when(metrics.getPuts()).thenReturn(timer);
+
+        client(null, Duration.seconds(1)).put(req).callback(new Object());
+
+        assertThat("times put(s)", timer.getCount(), is(1L));
+    }
+
+    @Test
+    public void timesGets() {
+        final GetRequest req = mock(GetRequest.class);
+        final Deferred<ArrayList<KeyValue>> resp = new Deferred<>();
+        when(underlying.get(req)).thenReturn(resp);
+        when(metrics.getGets()).thenReturn(timer);
+
+        client(null, Duration.seconds(1)).get(req).callback(new ArrayList<KeyValue>());
+
+        assertThat("times get(s)", timer.getCount(), is(1L));
+    }
+
+    @Test
+    public void timesIncrements() {
+        final AtomicIncrementRequest req = mock(AtomicIncrementRequest.class);
+        final Deferred<Long> resp = new Deferred<>();
+        when(underlying.increment(req)).thenReturn(resp);
+        when(metrics.getIncrements()).thenReturn(timer);
+
+        client(null, Duration.seconds(1)).increment(req).callback(1L);
+
+        assertThat("times increment(s)", timer.getCount(), is(1L));
+    }
+
+    @Test
+    public void holdsPermitUntilCompletion() {
+        final PutRequest req = mock(PutRequest.class);
+        final Deferred<Object> resp = new Deferred<>();
+        when(underlying.put(req)).thenReturn(resp);
+        when(metrics.getPuts()).thenReturn(timer);
+
+        final Deferred<Object> result = client(semaphore, Duration.seconds(1)).put(req);
+
+        assertThat("request holds a permit", semaphore.availablePermits(), is(0));
+        result.callback(new Object());
+        assertThat("completion releases the permit", semaphore.availablePermits(), is(1));
+    }
+
+    @Test(expected = BlockedException.class)
+    public void blocksWithNoPermit() {
+        final Semaphore semaphore = mock(Semaphore.class);
+        doThrow(new BlockedException()).when(semaphore).acquireUninterruptibly();
+
+        client(semaphore, Duration.seconds(1)).put(mock(PutRequest.class));
+    }
+
+    @Test
+    public void marksOverdueRequests() {
+        final DeleteRequest req = mock(DeleteRequest.class);
+        final Deferred<Object> resp = new Deferred<>();
+        when(underlying.delete(req)).thenReturn(resp);
+        when(metrics.getDeletes()).thenReturn(timer);
+
+        client(null, Duration.nanoseconds(0)).delete(req).callback(new Object());
+
+        assertThat("overdue request is marked", overdue.getCount(), is(1L));
+    }
+
+    @Test
+    public void doesNotMarkTimelyRequests() {
+        final DeleteRequest req = mock(DeleteRequest.class);
+        final Deferred<Object> resp = new Deferred<>();
+        when(underlying.delete(req)).thenReturn(resp);
+        when(metrics.getDeletes()).thenReturn(timer);
+
+        client(null, Duration.days(1)).delete(req).callback(new Object());
+
+        assertThat("timely request is not marked", overdue.getCount(), is(0L));
+    }
+
+    @Test
+    public void instrumentsScanners() {
+        final RowScanner scanner = mock(RowScanner.class);
+        when(underlying.scan("table")).thenReturn(scanner);
+
+        assertThat("scanner is instrumented",
+                new TrackingHBaseClient(underlying, registry, "test", 1, Duration.seconds(1))
+                        .scan("table"),
+                is(instanceOf(InstrumentedRowScanner.class)));
+    }
+
+    private HBaseClient client(final Semaphore semaphore, final Duration deadline) {
+        return new TrackingHBaseClient(underlying, metrics, semaphore, overdue, deadline);
+    }
+
+    class BlockedException extends RuntimeException {
+        public BlockedException() {
+            super("Blocked on semaphore");
+        }
+    }
+}
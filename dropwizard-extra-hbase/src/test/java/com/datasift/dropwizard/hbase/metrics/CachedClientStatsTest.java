@@ -0,0 +1,99 @@
+package com.datasift.dropwizard.hbase.metrics;
+
+import com.codahale.metrics.Clock;
+import com.datasift.dropwizard.hbase.HBaseClient;
+import io.dropwizard.util.Duration;
+import org.hbase.async.ClientStats;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests {@link CachedClientStats}.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(ClientStats.class)
+public class CachedClientStatsTest {
+
+    private HBaseClient client;
+    private ClientStats first;
+    private ClientStats second;
+    private final ManualClock clock = new ManualClock();
+
+    @Before
+    public void setup() {
+        client = mock(HBaseClient.class);
+        first = mock(ClientStats.class);
+        second = mock(ClientStats.class);
+        when(client.stats()).thenReturn(first, second);
+    }
+
+    @Test
+    public void capturesSnapshotLazily() {
+        new CachedClientStats(client, Duration.seconds(1), clock);
+        verify(client, never()).stats();
+    }
+
+    @Test
+    public void reusesSnapshotWithinTtl() {
+        final CachedClientStats stats = new CachedClientStats(client, Duration.seconds(1), clock);
+
+        assertThat("captures first snapshot", stats.get(), is(sameInstance(first)));
+        clock.advance(500, TimeUnit.MILLISECONDS);
+        assertThat("reuses snapshot before expiry", stats.get(), is(sameInstance(first)));
+        verify(client, times(1)).stats();
+    }
+
+    @Test
+    public void refreshesSnapshotAfterTtl() {
+        final CachedClientStats stats = new CachedClientStats(client, Duration.seconds(1), clock);
+
+        stats.get();
+        clock.advance(1, TimeUnit.SECONDS);
+        assertThat("captures new snapshot after expiry", stats.get(), is(sameInstance(second)));
+        verify(client, times(2)).stats();
+    }
+
+    @Test
+    public void notifiesOfRefresh() {
+        final ClientStats[] notified = new ClientStats[2];
+        final CachedClientStats stats = new CachedClientStats(client, Duration.seconds(1), clock) {
+            @Override
+            protected void onRefresh(final ClientStats previous, final ClientStats current) {
+                notified[0] = previous;
+                notified[1] = current;
+            }
+        };
+
+        stats.get();
+        assertThat("no previous snapshot on first refresh", notified[0], is(nullValue()));
+        assertThat("current snapshot on first refresh", notified[1], is(sameInstance(first)));
+
+        clock.advance(1, TimeUnit.SECONDS);
+        stats.get();
+        assertThat("previous snapshot on refresh", notified[0], is(sameInstance(first)));
+        assertThat("current snapshot on refresh", notified[1], is(sameInstance(second)));
+    }
+
+    private static class ManualClock extends Clock {
+
+        private long tick = 0;
+
+        @Override
+        public long getTick() {
+            return tick;
+        }
+
+        void advance(final long duration, final TimeUnit unit) {
+            tick += unit.toNanos(duration);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.datasift.dropwizard.hbase.util;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@link RequestTrackingCallback}.
+ */
+public class RequestTrackingCallbackTest {
+
+    private Timer timer;
+    private Meter overdue;
+    private Semaphore semaphore;
+
+    @Before
+    public void setUp() throws Exception {
+        final MetricRegistry registry = new MetricRegistry();
+        timer = registry.timer("test");
+        overdue = registry.meter("overdue");
+        semaphore = new Semaphore(1);
+    }
+
+    @Test
+    public void returnsArg() throws Exception {
+        final String arg = "test";
+        assertThat("callback returns argument",
+                new RequestTrackingCallback<String>(
+                        timer, null, overdue, Long.MAX_VALUE, System.nanoTime()).call(arg),
+                is(arg));
+    }
+
+    @Test
+    public void recordsDuration() throws Exception {
+        final long start = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(50);
+
+        new RequestTrackingCallback<>(timer, null, overdue, Long.MAX_VALUE, start)
+                .call(new Object());
+
+        assertThat("timer has 1 timed value", timer.getCount(), is(1L));
+        assertThat("timer recorded duration of call",
+                timer.getSnapshot().getMax(),
+                is(greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50))));
+    }
+
+    @Test
+    public void releasesPermit() throws Exception {
+        semaphore.acquire(1);
+        assertThat("semaphore has no available permits",
+                semaphore.availablePermits(), is(0));
+
+        new RequestTrackingCallback<>(timer, semaphore, overdue, Long.MAX_VALUE, System.nanoTime())
+                .call(new Object());
+
+        assertThat("callback releases a permit",
+                semaphore.availablePermits(), is(1));
+    }
+
+    @Test
+    public void marksOverdueRequests() throws Exception {
+        final long start = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(50);
+
+        new RequestTrackingCallback<>(timer, null, overdue, TimeUnit.MILLISECONDS.toNanos(10), start)
+                .call(new Object());
+
+        assertThat("overdue request is marked", overdue.getCount(), is(1L));
+    }
+
+    @Test
+    public void doesNotMarkTimelyRequests() throws Exception {
+        new RequestTrackingCallback<>(timer, null, overdue, Long.MAX_VALUE, System.nanoTime())
+                .call(new Object());
+
+        assertThat("timely request is not marked", overdue.getCount(), is(0L));
+    }
+}
@@ -0,0 +1,256 @@
+package com.datasift.dropwizard.kafka.testing;
+
+import com.datasift.dropwizard.kafka.KafkaConsumerFactory;
+import com.datasift.dropwizard.kafka.KafkaProducerFactory;
+import com.google.common.collect.ImmutableSet;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.util.Duration;
+import kafka.admin.AdminUtils;
+import kafka.javaapi.PartitionMetadata;
+import kafka.javaapi.TopicMetadata;
+import kafka.javaapi.TopicMetadataRequest;
+import kafka.javaapi.consumer.SimpleConsumer;
+import kafka.server.KafkaConfig;
+import kafka.server.KafkaServerStartable;
+import kafka.utils.ZKStringSerializer$;
+import org.I0Itec.zkclient.ZkClient;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A cluster of Kafka brokers, running in-process on local ports.
+ * <p/>
+ * The brokers are co-ordinated by an {@link EmbeddedZooKeeper}, which must be started before the
+ * cluster and stopped after it. Each broker stores its logs in a temporary directory that is
+ * deleted when the cluster is stopped, so each run starts with no topics.
+ * <p/>
+ * Factories for producers and consumers of the cluster are provided, so tests and benchmarks
+ * exercise exactly the same code paths as applications configured from YAML.
+ */
+public class EmbeddedKafkaCluster implements Managed {
+
+    private static final String HOST = "localhost";
+    private static final Duration ZOOKEEPER_TIMEOUT = Duration.seconds(10);
+    private static final Duration METADATA_POLL_INTERVAL = Duration.milliseconds(50);
+
+    private final EmbeddedZooKeeper zookeeper;
+    private final int size;
+    private final Properties overrides;
+
+    private final List<KafkaServerStartable> brokers = new ArrayList<>();
+    private final List<InetSocketAddress> addresses = new ArrayList<>();
+    private final List<File> logDirs = new ArrayList<>();
+
+    /**
+     * Creates a new {@link EmbeddedKafkaCluster} with a single broker.
+     *
+     * @param zookeeper the {@link EmbeddedZooKeeper} to co-ordinate the brokers with.
+     */
+    public EmbeddedKafkaCluster(final EmbeddedZooKeeper zookeeper) {
+        this(zookeeper, 1, new Properties());
+    }
+
+    /**
+     * Creates a new {@link EmbeddedKafkaCluster}.
+     *
+     * @param zookeeper the {@link EmbeddedZooKeeper} to co-ordinate the brokers with.
+     * @param size      the number of brokers in the cluster.
+     * @param overrides broker configuration to use in place of the defaults.
+     */
+    public EmbeddedKafkaCluster(final EmbeddedZooKeeper zookeeper,
+                                final int size,
+                                final Properties overrides) {
+        if (size < 1) {
+            throw new IllegalArgumentException("A cluster must have at least one broker: " + size);
+        }
+        this.zookeeper = zookeeper;
+        this.size = size;
+        this.overrides = overrides;
+    }
+
+    /**
+     * Starts every broker in the cluster, each on a free local port.
+     *
+     * @throws Exception if a broker could not be started.
+     */
+    @Override
+    public synchronized void start() throws Exception {
+        if (!brokers.isEmpty()) {
+            return;
+        }
+
+        for (int id = 0; id < size; id++) {
+            final int port = LocalResources.freePort();
+            final File logDir = LocalResources.tempDir("kafka-" + id);
+
+            final Properties props = new Properties();
+            props.setProperty("broker.id", Integer.toString(id));
+            props.setProperty("host.name", HOST);
+            props.setProperty("port", Integer.toString(port));
+            props.setProperty("log.dir", logDir.getAbsolutePath());
+            props.setProperty("zookeeper.connect", zookeeper.getConnectString());
+            props.setProperty("num.partitions", "1");
+            props.setProperty("auto.create.topics.enable", "false");
+            props.setProperty("controlled.shutdown.enable", "false");
+            props.setProperty("log.flush.interval.messages", "10000");
+            props.setProperty("replica.socket.timeout.ms", "1500");
+            props.putAll(overrides);
+
+            final KafkaServerStartable broker = new KafkaServerStartable(new KafkaConfig(props));
+            broker.startup();
+
+            brokers.add(broker);
+            addresses.add(InetSocketAddress.createUnresolved(HOST, port));
+            logDirs.add(logDir);
+        }
+    }
+
+    /**
+     * Stops every broker in the cluster and deletes all of their logs.
+     *
+     * @throws Exception if a broker could not be stopped.
+     */
+    @Override
+    public synchronized void stop() throws Exception {
+        for (final KafkaServerStartable broker : brokers) {
+            broker.shutdown();
+            broker.awaitShutdown();
+        }
+        for (final File logDir : logDirs) {
+            LocalResources.delete(logDir);
+        }
+        brokers.clear();
+        addresses.clear();
+        logDirs.clear();
+    }
+
+    /**
+     * Returns the addresses of the brokers in the cluster.
+     *
+     * @return the addresses of every broker in the cluster.
+     */
+    public synchronized ImmutableSet<InetSocketAddress> getBrokers() {
+        return ImmutableSet.copyOf(addresses);
+    }
+
+    /**
+     * Creates a topic and waits for a leader to be elected for each of its partitions.
+     *
+     * @param topic             the name of the topic to create.
+     * @param partitions        the number of partitions of the topic.
+     * @param replicationFactor the number of brokers to replicate each partition to.
+     * @param timeout           the maximum time to wait for the topic to become available.
+     *
+     * @throws TimeoutException if a leader isn't elected for every partition within the timeout.
+     * @throws InterruptedException if interrupted while waiting for the topic.
+     */
+    public void createTopic(final String topic,
+                            final int partitions,
+                            final int replicationFactor,
+                            final Duration timeout)
+            throws TimeoutException, InterruptedException {
+        final int zkTimeout = (int) ZOOKEEPER_TIMEOUT.toMilliseconds();
+        final ZkClient zkClient = new ZkClient(
+                zookeeper.getConnectString(), zkTimeout, zkTimeout, ZKStringSerializer$.MODULE$);
+        try {
+            AdminUtils.createTopic(zkClient, topic, partitions, replicationFactor, new Properties());
+        } finally {
+            zkClient.close();
+        }
+        awaitLeaders(topic, partitions, timeout);
+    }
+
+    /**
+     * Creates a {@link KafkaProducerFactory} configured to produce to the cluster.
+     * <p/>
+     * Producers are synchronous and wait for all in-sync replicas to acknowledge each message, by
+     * default; the returned factory may be re-configured before use.
+     *
+     * @return a new {@link KafkaProducerFactory} for the cluster.
+     */
+    public KafkaProducerFactory newProducerFactory() {
+        final KafkaProducerFactory factory = new KafkaProducerFactory();
+        factory.setBrokers(getBrokers());
+        return factory;
+    }
+
+    /**
+     * Creates a {@link KafkaConsumerFactory} configured to consume from the cluster.
+     * <p/>
+     * Consumers start immediately, from the beginning of each partition; the returned factory may
+     * be re-configured before use.
+     *
+     * @param group      the consumer group to consume with.
+     * @param partitions the number of streams to consume each topic with.
+     *
+     * @return a new {@link KafkaConsumerFactory} for the cluster.
+     */
+    public KafkaConsumerFactory newConsumerFactory(final String group,
+                                                   final Map<String, Integer> partitions) {
+        final KafkaConsumerFactory factory = new KafkaConsumerFactory();
+        factory.setZookeeper(zookeeper.newZooKeeperFactory());
+        factory.setGroup(group);
+        factory.setPartitions(partitions);
+        factory.setInitialOffset(KafkaConsumerFactory.InitialOffset.SMALLEST);
+        factory.setBackOffIncrement(Duration.milliseconds(100));
+        factory.setStartDelay(Duration.milliseconds(0));
+        return factory;
+    }
+
+    /**
+     * Waits for every broker to report a leader for every partition of a topic.
+     */
+    private void awaitLeaders(final String topic, final int partitions, final Duration timeout)
+            throws TimeoutException, InterruptedException {
+        final long deadline = System.nanoTime() + timeout.toNanoseconds();
+        for (final InetSocketAddress broker : getBrokers()) {
+            while (!hasLeaders(broker, topic, partitions)) {
+                if (System.nanoTime() > deadline) {
+                    throw new TimeoutException(String.format(
+                            "Partitions of topic '%s' had no leader after %s", topic, timeout));
+                }
+                Thread.sleep(METADATA_POLL_INTERVAL.toMilliseconds());
+            }
+        }
+    }
+
+    /**
+     * Determines whether a broker has a leader for every partition of a topic.
+     */
+    private boolean hasLeaders(final InetSocketAddress broker,
+                               final String topic,
+                               final int partitions) {
+        final SimpleConsumer consumer = new SimpleConsumer(
+                broker.getHostString(), broker.getPort(), 1000, 64 * 1024, "embedded-kafka");
+        try {
+            final List<TopicMetadata> metadata = consumer
+                    .send(new TopicMetadataRequest(Collections.singletonList(topic)))
+                    .topicsMetadata();
+            if (metadata.isEmpty() || metadata.get(0).errorCode() != 0) {
+                return false;
+            }
+
+            final List<PartitionMetadata> partitionMetadata = metadata.get(0).partitionsMetadata();
+            if (partitionMetadata.size() != partitions) {
+                return false;
+            }
+            for (final PartitionMetadata partition : partitionMetadata) {
+                if (partition.leader() == null || partition.errorCode() != 0) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (final RuntimeException e) {
+            return false;
+        } finally {
+            consumer.close();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.datasift.dropwizard.kafka.testing;
+
+import com.datasift.dropwizard.zookeeper.ZooKeeperFactory;
+
+/**
+ * A single-node ZooKeeper server, running in-process on a local port, to co-ordinate an {@link
+ * EmbeddedKafkaCluster}.
+ * <p/>
+ * The server stores its data in a temporary directory that is deleted when it's stopped, so each
+ * run starts from an empty tree.
+ */
+public class EmbeddedZooKeeper
+        extends com.datasift.dropwizard.zookeeper.testing.EmbeddedZooKeeper {
+
+    /**
+     * Creates a {@link ZooKeeperFactory} configured to connect to the server.
+     *
+     * @return a new {@link ZooKeeperFactory} for the server.
+     *
+     * @throws IllegalStateException if the server isn't running.
+     */
+    public ZooKeeperFactory newZooKeeperFactory() {
+        final ZooKeeperFactory factory = new ZooKeeperFactory();
+        factory.setHosts(new String[] { HOST });
+        factory.setPort(getPort());
+        return factory;
+    }
+}
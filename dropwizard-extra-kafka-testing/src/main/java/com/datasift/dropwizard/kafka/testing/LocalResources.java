@@ -0,0 +1,64 @@
+package com.datasift.dropwizard.kafka.testing;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * Utilities for allocating local resources for in-process servers.
+ */
+final class LocalResources {
+
+    private LocalResources() {
+        // utility class
+    }
+
+    /**
+     * Finds a local port that is currently free.
+     * <p/>
+     * The port is released before this method returns, so it's possible, though unlikely, for it
+     * to be taken by another process before it's used.
+     *
+     * @return a local port that is currently free.
+     *
+     * @throws IOException if no port could be allocated.
+     */
+    static int freePort() throws IOException {
+        try (final ServerSocket socket = new ServerSocket(0)) {
+            socket.setReuseAddress(true);
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Creates a new, empty temporary directory.
+     *
+     * @param prefix the prefix of the name of the directory.
+     *
+     * @return the new directory.
+     *
+     * @throws IOException if the directory could not be created.
+     */
+    static File tempDir(final String prefix) throws IOException {
+        final File dir = File.createTempFile(prefix, "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Unable to create temporary directory: " + dir);
+        }
+        return dir;
+    }
+
+    /**
+     * Deletes a file or directory, and all of its contents.
+     *
+     * @param file the file or directory to delete.
+     */
+    static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,98 @@
+package com.datasift.dropwizard.kafka.testing;
+
+import com.datasift.dropwizard.kafka.consumer.MessageProcessor;
+import com.datasift.dropwizard.kafka.consumer.SynchronousConsumer;
+import com.datasift.dropwizard.kafka.producer.KafkaProducer;
+import com.google.common.collect.ImmutableMap;
+import io.dropwizard.util.Duration;
+import kafka.producer.Partitioner;
+import kafka.serializer.StringDecoder;
+import kafka.serializer.StringEncoder;
+import kafka.utils.VerifiableProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@link EmbeddedKafkaCluster}.
+ */
+public class EmbeddedKafkaClusterTest {
+
+    private static final String TOPIC = "test";
+    private static final int MESSAGES = 10;
+    private static final Class<? extends Partitioner> NO_PARTITIONER = null;
+
+    private EmbeddedZooKeeper zookeeper;
+    private EmbeddedKafkaCluster kafka;
+
+    @Before
+    public void setUp() throws Exception {
+        zookeeper = new EmbeddedZooKeeper();
+        zookeeper.start();
+        kafka = new EmbeddedKafkaCluster(zookeeper);
+        kafka.start();
+        kafka.createTopic(TOPIC, 2, 1, Duration.seconds(30));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        kafka.stop();
+        zookeeper.stop();
+    }
+
+    @Test
+    public void hasBrokers() {
+        assertThat("cluster has one broker", kafka.getBrokers().size(), is(1));
+    }
+
+    @Test
+    public void deliversProducedMessagesToConsumers() throws Exception {
+        final CountDownLatch received = new CountDownLatch(MESSAGES);
+        final List<String> messages = new CopyOnWriteArrayList<>();
+        final StringDecoder decoder = new StringDecoder(new VerifiableProperties());
+        final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+
+        final SynchronousConsumer<String, String> consumer = kafka
+                .newConsumerFactory("test-group", ImmutableMap.of(TOPIC, 2))
+                .processWith(decoder, decoder, new MessageProcessor<String, String>() {
+                    @Override
+                    public void process(final String key,
+                                        final String message,
+                                        final String topic,
+                                        final int partition,
+                                        final long offset) {
+                        messages.add(message);
+                        received.countDown();
+                    }
+                })
+                .build(executor);
+
+        final KafkaProducer<String, String> producer = kafka.newProducerFactory()
+                .build(StringEncoder.class, StringEncoder.class, NO_PARTITIONER, "test-producer");
+        try {
+            consumer.start();
+            for (int i = 0; i < MESSAGES; i++) {
+                producer.send(TOPIC, Integer.toString(i), "message-" + i);
+            }
+
+            assertThat("consumer receives every message",
+                    received.await(30, TimeUnit.SECONDS), is(true));
+            assertThat("consumer receives the produced messages",
+                    messages, hasItems("message-0", "message-" + (MESSAGES - 1)));
+        } finally {
+            producer.close();
+            consumer.stop();
+            executor.shutdownNow();
+        }
+    }
+}
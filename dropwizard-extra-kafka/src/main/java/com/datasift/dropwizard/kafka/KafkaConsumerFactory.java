@@ -1,30 +1,58 @@
 package com.datasift.dropwizard.kafka;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.health.HealthCheck;
 import io.dropwizard.util.Duration;
 import io.dropwizard.util.Size;
+import com.datasift.dropwizard.kafka.consumer.DeduplicatingStreamProcessor;
+import com.datasift.dropwizard.kafka.consumer.HealthBasedPauser;
 import com.datasift.dropwizard.kafka.consumer.KafkaConsumer;
 import com.datasift.dropwizard.kafka.consumer.KafkaConsumerHealthCheck;
+import com.datasift.dropwizard.kafka.consumer.KeyOrderedMessageProcessor;
+import com.datasift.dropwizard.kafka.consumer.PartitionOwnershipWatcher;
+import com.datasift.dropwizard.kafka.consumer.PauseConsumerTask;
+import com.datasift.dropwizard.kafka.consumer.RebalanceListener;
+import com.datasift.dropwizard.kafka.consumer.ResumeConsumerTask;
+import com.datasift.dropwizard.kafka.consumer.ScaleStreamsTask;
 import com.datasift.dropwizard.kafka.consumer.StreamProcessor;
 import com.datasift.dropwizard.kafka.consumer.SynchronousConsumer;
+import com.datasift.dropwizard.kafka.consumer.ThrottleConsumerTask;
+import com.datasift.dropwizard.kafka.consumer.TopicScheduler;
+import com.datasift.dropwizard.kafka.consumer.WatermarkCommitter;
+import com.datasift.dropwizard.kafka.consumer.WindowCommitter;
+import com.datasift.dropwizard.kafka.consumer.WindowedAggregator;
+import com.datasift.dropwizard.kafka.util.VirtualThreads;
 import io.dropwizard.setup.Environment;
 import com.datasift.dropwizard.zookeeper.ZooKeeperFactory;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableMap;
 import kafka.consumer.Consumer;
 import kafka.consumer.ConsumerConfig;
+import kafka.javaapi.consumer.ConsumerConnector;
 import kafka.message.Message;
 import kafka.serializer.Decoder;
 import kafka.serializer.DefaultDecoder;
 import kafka.utils.VerifiableProperties;
+import io.dropwizard.lifecycle.setup.ExecutorServiceBuilder;
+import io.dropwizard.lifecycle.setup.ScheduledExecutorServiceBuilder;
+import org.apache.zookeeper.ZooKeeper;
 import org.hibernate.validator.constraints.NotEmpty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.validation.Valid;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * A factory for creating and managing {@link KafkaConsumer} instances.
@@ -37,6 +65,8 @@ import java.util.concurrent.ScheduledExecutorService;
  */
 public class KafkaConsumerFactory extends KafkaClientFactory {
 
+    private static final Logger LOG = LoggerFactory.getLogger(KafkaConsumerFactory.class);
+
     private static final Decoder<byte[]> DefaultDecoder = new DefaultDecoder(new VerifiableProperties());
 
     /**
@@ -52,6 +82,244 @@ public class KafkaConsumerFactory extends KafkaClientFactory {
      */
     public enum InitialOffset { SMALLEST, LARGEST }
 
+    /**
+     * The maximum rate at which messages are consumed.
+     */
+    public static class Throttle {
+
+        @Min(0)
+        protected double messagesPerSecond = 0;
+
+        @NotNull
+        protected Size bytesPerSecond = Size.bytes(0);
+
+        /**
+         * Returns the maximum number of messages to consume per-second.
+         *
+         * @return the maximum number of messages to consume per-second; or 0 for no limit.
+         */
+        @JsonProperty
+        public double getMessagesPerSecond() {
+            return messagesPerSecond;
+        }
+
+        /**
+         * Sets the maximum number of messages to consume per-second.
+         *
+         * @param messagesPerSecond the maximum number of messages to consume per-second; or 0 for
+         *                          no limit.
+         */
+        @JsonProperty
+        public void setMessagesPerSecond(final double messagesPerSecond) {
+            this.messagesPerSecond = messagesPerSecond;
+        }
+
+        /**
+         * Returns the maximum size of the messages to consume per-second.
+         *
+         * @return the maximum size of the messages to consume per-second; or 0 for no limit.
+         */
+        @JsonProperty
+        public Size getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+
+        /**
+         * Sets the maximum size of the messages to consume per-second.
+         *
+         * @param bytesPerSecond the maximum size of the messages to consume per-second; or 0 for
+         *                       no limit.
+         */
+        @JsonProperty
+        public void setBytesPerSecond(final Size bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+    }
+
+    /**
+     * Configuration for skipping messages that have recently been processed.
+     *
+     * @see DeduplicatingStreamProcessor
+     */
+    public static class Dedup {
+
+        protected boolean enabled = false;
+
+        @Min(1)
+        protected int capacity = 100000;
+
+        @NotNull
+        protected DeduplicatingStreamProcessor.Identity identity =
+                DeduplicatingStreamProcessor.Identity.OFFSET;
+
+        /**
+         * Returns whether to skip messages that have recently been processed.
+         *
+         * @return true to skip recently processed messages; otherwise, false.
+         */
+        @JsonProperty
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Sets whether to skip messages that have recently been processed.
+         *
+         * @param enabled true to skip recently processed messages; otherwise, false.
+         */
+        @JsonProperty
+        public void setEnabled(final boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Returns the maximum number of recently processed messages to remember.
+         *
+         * @return the maximum number of messages to remember.
+         */
+        @JsonProperty
+        public int getCapacity() {
+            return capacity;
+        }
+
+        /**
+         * Sets the maximum number of recently processed messages to remember.
+         *
+         * @param capacity the maximum number of messages to remember.
+         */
+        @JsonProperty
+        public void setCapacity(final int capacity) {
+            this.capacity = capacity;
+        }
+
+        /**
+         * Returns how messages are identified.
+         *
+         * @return how messages are identified.
+         */
+        @JsonProperty
+        public DeduplicatingStreamProcessor.Identity getIdentity() {
+            return identity;
+        }
+
+        /**
+         * Sets how messages are identified.
+         *
+         * @param identity how messages are identified.
+         */
+        @JsonProperty
+        public void setIdentity(final DeduplicatingStreamProcessor.Identity identity) {
+            this.identity = identity;
+        }
+    }
+
+    /**
+     * Configuration for scheduling the processing of messages across topics.
+     *
+     * @see TopicScheduler
+     */
+    public static class Scheduling {
+
+        protected boolean enabled = false;
+
+        @NotNull
+        protected TopicScheduler.Policy policy = TopicScheduler.Policy.WEIGHTED;
+
+        @Min(1)
+        protected int slots = Runtime.getRuntime().availableProcessors();
+
+        @NotNull
+        protected Map<String, Integer> weights = ImmutableMap.of();
+
+        /**
+         * Returns whether to schedule the processing of messages across topics.
+         *
+         * @return true to schedule processing across topics; otherwise, false.
+         */
+        @JsonProperty
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Sets whether to schedule the processing of messages across topics.
+         *
+         * @param enabled true to schedule processing across topics; otherwise, false.
+         */
+        @JsonProperty
+        public void setEnabled(final boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Returns the policy for choosing which topic processes a message next.
+         *
+         * @return the policy for choosing which topic processes a message next.
+         */
+        @JsonProperty
+        public TopicScheduler.Policy getPolicy() {
+            return policy;
+        }
+
+        /**
+         * Sets the policy for choosing which topic processes a message next.
+         *
+         * @param policy the policy for choosing which topic processes a message next.
+         */
+        @JsonProperty
+        public void setPolicy(final TopicScheduler.Policy policy) {
+            this.policy = policy;
+        }
+
+        /**
+         * Returns the maximum number of messages to process at once, across all topics.
+         * <p/>
+         * Defaults to the number of available processors.
+         *
+         * @return the maximum number of messages to process at once.
+         */
+        @JsonProperty
+        public int getSlots() {
+            return slots;
+        }
+
+        /**
+         * Sets the maximum number of messages to process at once, across all topics.
+         *
+         * @param slots the maximum number of messages to process at once.
+         */
+        @JsonProperty
+        public void setSlots(final int slots) {
+            this.slots = slots;
+        }
+
+        /**
+         * Returns the weight of each topic: its share of processing, or its priority, according
+         * to the {@link #getPolicy() policy}.
+         * <p/>
+         * Topics not referenced have a weight of 1.
+         *
+         * @return a Map of topics to their weight.
+         */
+        @JsonProperty
+        public Map<String, Integer> getWeights() {
+            return weights;
+        }
+
+        /**
+         * Sets the weight of each topic: its share of processing, or its priority, according to
+         * the {@link #getPolicy() policy}.
+         * <p/>
+         * Topics not referenced have a weight of 1.
+         *
+         * @param weights a Map of topics to their weight.
+         */
+        @JsonProperty
+        public void setWeights(final Map<String, Integer> weights) {
+            this.weights = weights;
+        }
+    }
+
     @Valid
     @NotNull
     protected ZooKeeperFactory zookeeper = new ZooKeeperFactory();
@@ -108,8 +376,29 @@ public class KafkaConsumerFactory extends KafkaClientFactory {
     @NotNull
     protected Duration startDelay = Duration.seconds(2);
 
+    protected boolean virtualThreads = false;
+
+    @Valid
+    @NotNull
+    protected Dedup dedup = new Dedup();
+
+    @Valid
+    @NotNull
+    protected Throttle throttle = new Throttle();
+
+    @Valid
+    @NotNull
+    protected Map<String, Throttle> topicThrottles = ImmutableMap.of();
+
+    @Valid
+    @NotNull
+    protected Scheduling scheduling = new Scheduling();
+
     /**
      * Returns the {@link ZooKeeperFactory} of the ZooKeeper quorum to use.
+     * <p/>
+     * The Kafka consumer creates its own ZooKeeper session, which can't be injected, so it never
+     * {@link ZooKeeperFactory#isShareSession() shares} its session.
      *
      * @return the ZooKeeper quorum to use.
      */
@@ -478,6 +767,161 @@ public class KafkaConsumerFactory extends KafkaClientFactory {
         this.startDelay = startDelay;
     }
 
+    /**
+     * Returns whether to process streams on virtual threads, if the JDK supports them.
+     * <p/>
+     * Each stream occupies a thread for as long as it's consumed; virtual threads make it cheap to
+     * consume many streams with processors that spend most of their time blocked on I/O. On JDKs
+     * that don't support virtual threads, platform threads are used.
+     *
+     * @return true to process streams on virtual threads, when supported; otherwise, false.
+     */
+    @JsonProperty
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Sets whether to process streams on virtual threads, if the JDK supports them.
+     *
+     * @param virtualThreads true to process streams on virtual threads, when supported;
+     *                       otherwise, false.
+     */
+    @JsonProperty
+    public void setVirtualThreads(final boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Returns the configuration for skipping messages that have recently been processed, such as
+     * those redelivered after a rebalance.
+     *
+     * @return the configuration for skipping recently processed messages.
+     */
+    @JsonProperty
+    public Dedup getDedup() {
+        return dedup;
+    }
+
+    /**
+     * Sets the configuration for skipping messages that have recently been processed.
+     *
+     * @param dedup the configuration for skipping recently processed messages.
+     */
+    @JsonProperty
+    public void setDedup(final Dedup dedup) {
+        this.dedup = dedup;
+    }
+
+    /**
+     * Returns the maximum rate at which the {@link KafkaConsumer} consumes messages, across all
+     * topics.
+     *
+     * @return the maximum rate of the consumer as a whole.
+     */
+    @JsonProperty
+    public Throttle getThrottle() {
+        return throttle;
+    }
+
+    /**
+     * Sets the maximum rate at which the {@link KafkaConsumer} consumes messages, across all
+     * topics.
+     *
+     * @param throttle the maximum rate of the consumer as a whole.
+     */
+    @JsonProperty
+    public void setThrottle(final Throttle throttle) {
+        this.throttle = throttle;
+    }
+
+    /**
+     * Returns the maximum rate at which the {@link KafkaConsumer} consumes messages from each
+     * topic.
+     * <p/>
+     * Topics not referenced are limited only by the {@link #getThrottle() consumer's rate}.
+     *
+     * @return a Map of topics to the maximum rate to consume from them.
+     */
+    @JsonProperty
+    public Map<String, Throttle> getTopicThrottles() {
+        return topicThrottles;
+    }
+
+    /**
+     * Sets the maximum rate at which the {@link KafkaConsumer} consumes messages from each topic.
+     * <p/>
+     * Topics not referenced are limited only by the {@link #getThrottle() consumer's rate}.
+     *
+     * @param topicThrottles a Map of topics to the maximum rate to consume from them.
+     */
+    @JsonProperty
+    public void setTopicThrottles(final Map<String, Throttle> topicThrottles) {
+        this.topicThrottles = topicThrottles;
+    }
+
+    /**
+     * Returns the configuration for scheduling the processing of messages across topics, so that
+     * a flood of messages on one topic can't slow the processing of more important topics.
+     *
+     * @return the configuration for scheduling processing across topics.
+     */
+    @JsonProperty
+    public Scheduling getScheduling() {
+        return scheduling;
+    }
+
+    /**
+     * Sets the configuration for scheduling the processing of messages across topics.
+     *
+     * @param scheduling the configuration for scheduling processing across topics.
+     */
+    @JsonProperty
+    public void setScheduling(final Scheduling scheduling) {
+        this.scheduling = scheduling;
+    }
+
+    /**
+     * Builds an {@link ExecutorService} that processes each task on a new thread, for processing
+     * the messages of a stream concurrently with a {@link
+     * com.datasift.dropwizard.kafka.consumer.FanOutMessageProcessor}.
+     * <p/>
+     * If {@link #isVirtualThreads() configured} and supported, each task is processed on a new
+     * virtual thread; otherwise, idle platform threads are reused for new tasks.
+     *
+     * @param environment the {@link Environment} to manage the {@link ExecutorService} with.
+     * @param name the name of the {@link ExecutorService}, to name its threads with.
+     *
+     * @return a managed {@link ExecutorService} to process messages with.
+     */
+    public ExecutorService buildFanOutExecutor(final Environment environment, final String name) {
+        final ExecutorServiceBuilder builder = environment.lifecycle()
+                .executorService(name + "-%d")
+                    .minThreads(0)
+                    .maxThreads(Integer.MAX_VALUE)
+                    .workQueue(new SynchronousQueue<Runnable>())
+                    .shutdownTime(getShutdownGracePeriod());
+
+        final Optional<ThreadFactory> threads = virtualThreadFactory(name);
+        if (threads.isPresent()) {
+            // virtual threads are cheap to create, so are never kept alive to be reused
+            builder.keepAliveTime(Duration.seconds(0)).threadFactory(threads.get());
+        }
+        return builder.build();
+    }
+
+    private Optional<ThreadFactory> virtualThreadFactory(final String name) {
+        if (!isVirtualThreads()) {
+            return Optional.absent();
+        }
+        final Optional<ThreadFactory> factory = VirtualThreads.factory(name + "-");
+        if (!factory.isPresent()) {
+            LOG.warn("Virtual threads are not supported by this JDK, using platform threads for {}",
+                    name);
+        }
+        return factory;
+    }
+
     /**
      * Prepares a {@link KafkaConsumerBuilder} for a given {@link StreamProcessor}.
      *
@@ -524,6 +968,12 @@ public class KafkaConsumerFactory extends KafkaClientFactory {
         private final StreamProcessor<K, V> processor;
         private static final String DEFAULT_NAME = "kafka-consumer-default";
 
+        private Supplier<ZooKeeper> rebalanceClient = null;
+        private HealthCheck downstream = null;
+        private Duration downstreamCheckInterval = null;
+        private Supplier<ZooKeeper> seedClient = null;
+        private DeduplicatingStreamProcessor.ProcessedOffsets processedOffsets = null;
+
         private KafkaConsumerBuilder(final Decoder<K> keyDecoder,
                                      final Decoder<V> valueDecoder,
                                      final StreamProcessor<K, V> processor) {
@@ -532,6 +982,70 @@ public class KafkaConsumerFactory extends KafkaClientFactory {
             this.processor = processor;
         }
 
+        /**
+         * Watches the partitions owned by the built {@link KafkaConsumer} as its group is
+         * rebalanced, using the given {@link ZooKeeper} client.
+         * <p/>
+         * If the processor is a {@link RebalanceListener}, it's notified as partitions are
+         * assigned to, and revoked from, the consumer. Metrics of the rebalances are registered
+         * as <i>name</i>.partitions. The client must be connected to the same ensemble, and
+         * chroot, as the consumer.
+         *
+         * @param client a {@link Supplier} of the {@link ZooKeeper} client to watch with.
+         *
+         * @return this builder.
+         *
+         * @see PartitionOwnershipWatcher
+         */
+        public KafkaConsumerBuilder<K, V> watchRebalances(final Supplier<ZooKeeper> client) {
+            this.rebalanceClient = client;
+            return this;
+        }
+
+        /**
+         * Pauses the built {@link KafkaConsumer} while a downstream service is unhealthy, and
+         * resumes it once the service is healthy again.
+         * <p/>
+         * The downstream health is only checked for consumers built for an {@link Environment}.
+         *
+         * @param downstream the {@link HealthCheck} of the downstream service.
+         * @param interval the time between checks of the downstream health.
+         *
+         * @return this builder.
+         *
+         * @see HealthBasedPauser
+         */
+        public KafkaConsumerBuilder<K, V> pauseWhenUnhealthy(final HealthCheck downstream,
+                                                             final Duration interval) {
+            this.downstream = downstream;
+            this.downstreamCheckInterval = interval;
+            return this;
+        }
+
+        /**
+         * Seeds the {@link #getDedup() deduplication} of the built {@link KafkaConsumer} with
+         * the offsets known to have been processed beyond those committed by its group, using
+         * the given {@link ZooKeeper} client to read the committed offsets.
+         * <p/>
+         * Each topic is seeded when it's first processed; this has no effect unless
+         * deduplication is enabled, and messages are identified by their offset.
+         *
+         * @param client a {@link Supplier} of the {@link ZooKeeper} client to read offsets with.
+         * @param processed the record of the offsets that have been processed.
+         *
+         * @return this builder.
+         *
+         * @see DeduplicatingStreamProcessor#seedFromCommitted(Supplier, String,
+         *      DeduplicatingStreamProcessor.ProcessedOffsets)
+         */
+        public KafkaConsumerBuilder<K, V> seedDedup(
+                final Supplier<ZooKeeper> client,
+                final DeduplicatingStreamProcessor.ProcessedOffsets processed) {
+            this.seedClient = client;
+            this.processedOffsets = processed;
+            return this;
+        }
+
         /**
          * Builds a {@link KafkaConsumer} instance for the given {@link Environment}.
          *
@@ -552,7 +1066,8 @@ public class KafkaConsumerFactory extends KafkaClientFactory {
          * <p/>
          * This implementation creates a new {@link ExecutorService} with a fixed-size thread-pool,
          * configured for one thread per-partition the {@link KafkaConsumer} is being configured to
-         * consume.
+         * consume. The thread-pool is grown if the consumer is rescaled to consume more partitions.
+         * If {@link #isVirtualThreads() configured} and supported, the threads are virtual.
          *
          * @param environment the {@link Environment} to build {@link KafkaConsumer} instances for.
          * @param name the name of the {@link KafkaConsumer}.
@@ -566,11 +1081,16 @@ public class KafkaConsumerFactory extends KafkaClientFactory {
                 threads = threads + p;
             }
 
-            final ScheduledExecutorService executor = environment.lifecycle()
+            final ScheduledExecutorServiceBuilder builder = environment.lifecycle()
                     .scheduledExecutorService(name + "-%d")
                         .threads(threads)
-                        .shutdownTime(getShutdownGracePeriod())
-                        .build();
+                        .shutdownTime(getShutdownGracePeriod());
+
+            final Optional<ThreadFactory> factory = virtualThreadFactory(name);
+            if (factory.isPresent()) {
+                builder.threadFactory(factory.get());
+            }
+            final ScheduledExecutorService executor = builder.build();
 
             return build(environment, executor, name);
         }
@@ -580,7 +1100,21 @@ public class KafkaConsumerFactory extends KafkaClientFactory {
          * for the given {@link Environment}.
          * <p/>
          * The name is used to identify the returned {@link KafkaConsumer} instance, for example, as
-         * the name of its {@link com.codahale.metrics.health.HealthCheck}s, etc.
+         * the name of its {@link com.codahale.metrics.health.HealthCheck}s, etc. A {@link
+         * ScaleStreamsTask} named <i>name</i>-streams is registered to change the number of streams
+         * consumed from each topic at runtime, along with tasks named <i>name</i>-pause,
+         * <i>name</i>-resume and <i>name</i>-throttle to control the rate of consumption.
+         * <p/>
+         * If the processor is a {@link WindowedAggregator}, a {@link WindowCommitter} is managed to
+         * commit offsets as its windows close; {@link KafkaConsumerFactory#getAutoCommit()
+         * automatic commits} should be disabled. Likewise, if the processor is a {@link
+         * KeyOrderedMessageProcessor} and automatic commits are disabled, a {@link
+         * WatermarkCommitter} is managed to commit offsets at the {@link
+         * KafkaConsumerFactory#getAutoCommitInterval() auto-commit interval}, once its lanes
+         * have processed every consumed message.
+         * <p/>
+         * If the consumer should {@link #pauseWhenUnhealthy(HealthCheck, Duration) pause when a
+         * downstream service is unhealthy}, a {@link HealthBasedPauser} is managed to do so.
          *
          * @param environment the {@link Environment} to build {@link KafkaConsumer} instances for.
          * @param executor the {@link ExecutorService} to process messages with.
@@ -592,7 +1126,8 @@ public class KafkaConsumerFactory extends KafkaClientFactory {
                                    final ScheduledExecutorService executor,
                                    final String name) {
 
-            final SynchronousConsumer<K, V> consumer = build(executor);
+            final SynchronousConsumer<K, V> consumer =
+                    build(executor, environment.metrics(), name);
 
             // manage the consumer
             environment.lifecycle().manage(consumer);
@@ -601,6 +1136,55 @@ public class KafkaConsumerFactory extends KafkaClientFactory {
             // add health checks
             environment.healthChecks().register(name, new KafkaConsumerHealthCheck(consumer));
 
+            // allow the number of streams to be changed at runtime
+            environment.admin().addTask(new ScaleStreamsTask(name + "-streams", consumer));
+
+            // allow consumption to be paused and throttled at runtime
+            environment.admin().addTask(new PauseConsumerTask(name + "-pause", consumer));
+            environment.admin().addTask(new ResumeConsumerTask(name + "-resume", consumer));
+            environment.admin().addTask(new ThrottleConsumerTask(name + "-throttle", consumer));
+
+            // commit offsets as windows close, once their aggregates have been written
+            if (processor instanceof WindowedAggregator) {
+                if (getAutoCommit()) {
+                    LOG.warn("Consumer '{}' aggregates messages, but commits offsets automatically;"
+                            + " aggregates may be lost if it fails", name);
+                }
+                environment.lifecycle().manage(new WindowCommitter(
+                        (WindowedAggregator<?, ?, ?>) processor,
+                        consumer,
+                        environment.lifecycle()
+                                .scheduledExecutorService(name + "-window-committer-%d")
+                                .build()));
+            }
+
+            // commit offsets once the lanes have processed every consumed message
+            if (processor instanceof KeyOrderedMessageProcessor) {
+                if (getAutoCommit()) {
+                    LOG.warn("Consumer '{}' processes messages in lanes, but commits offsets"
+                            + " automatically; queued messages may be lost if it fails", name);
+                } else {
+                    environment.lifecycle().manage(new WatermarkCommitter(
+                            (KeyOrderedMessageProcessor<?, ?>) processor,
+                            consumer,
+                            environment.lifecycle()
+                                    .scheduledExecutorService(name + "-watermark-committer-%d")
+                                    .build(),
+                            getAutoCommitInterval()));
+                }
+            }
+
+            // pause consumption while the downstream is unhealthy
+            if (downstream != null) {
+                environment.lifecycle().manage(new HealthBasedPauser(
+                        consumer,
+                        downstream,
+                        environment.lifecycle()
+                                .scheduledExecutorService(name + "-pauser-%d")
+                                .build(),
+                        downstreamCheckInterval));
+            }
+
             return consumer;
         }
 
@@ -617,8 +1201,54 @@ public class KafkaConsumerFactory extends KafkaClientFactory {
          * @return a configured {@link KafkaConsumer}.
          */
         public SynchronousConsumer<K, V> build(final ScheduledExecutorService executor) {
-            return new SynchronousConsumer<>(
-                    Consumer.createJavaConsumerConnector(toConsumerConfig(KafkaConsumerFactory.this)),
+            return build(executor, new MetricRegistry(), DEFAULT_NAME);
+        }
+
+        /**
+         * Builds a {@link SynchronousConsumer} instance with this builders' configuration using the
+         * given {@link ExecutorService}, registering its metrics with the given {@link
+         * MetricRegistry}.
+         *
+         * @param executor The {@link ExecutorService} to process messages with.
+         * @param registry the {@link MetricRegistry} to register metrics with.
+         * @param name the name of the {@link KafkaConsumer}, to prefix its metrics with.
+         *
+         * @return a configured {@link KafkaConsumer}.
+         */
+        public SynchronousConsumer<K, V> build(final ScheduledExecutorService executor,
+                                               final MetricRegistry registry,
+                                               final String name) {
+            // partition ownership is identified by the consumer's id, so it must be known
+            final Optional<String> consumerId = rebalanceClient == null
+                    ? Optional.<String>absent()
+                    : Optional.of(name + "-" + UUID.randomUUID().toString().substring(0, 8));
+
+            final Supplier<ConsumerConnector> connectors = new Supplier<ConsumerConnector>() {
+                @Override
+                public ConsumerConnector get() {
+                    return Consumer.createJavaConsumerConnector(
+                            toConsumerConfig(KafkaConsumerFactory.this, consumerId));
+                }
+            };
+
+            // skip recently processed messages, if configured
+            final Dedup dedup = getDedup();
+            final StreamProcessor<K, V> processor;
+            if (dedup.isEnabled()) {
+                final DeduplicatingStreamProcessor<K, V> deduplicator =
+                        new DeduplicatingStreamProcessor<>(this.processor,
+                                dedup.getCapacity(), dedup.getIdentity(),
+                                registry, MetricRegistry.name(name, "dedup"));
+                if (processedOffsets != null) {
+                    deduplicator.seedFromCommitted(seedClient, getGroup(), processedOffsets);
+                }
+                processor = deduplicator;
+            } else {
+                processor = this.processor;
+            }
+
+            final SynchronousConsumer<K, V> consumer = new SynchronousConsumer<>(
+                    connectors,
                     getPartitions(),
                     keyDecoder,
                     valueDecoder,
@@ -629,16 +1259,81 @@ public class KafkaConsumerFactory extends KafkaClientFactory {
                     getRetryResetDelay(),
                     getMaxRecoveryAttempts(),
                     isShutdownOnFatal(),
-                    getStartDelay());
+                    getStartDelay(),
+                    registry,
+                    name);
+
+            final Throttle throttle = getThrottle();
+            consumer.setRate(null,
+                    throttle.getMessagesPerSecond(),
+                    throttle.getBytesPerSecond().toBytes());
+            for (final Map.Entry<String, Throttle> e : getTopicThrottles().entrySet()) {
+                consumer.setRate(e.getKey(),
+                        e.getValue().getMessagesPerSecond(),
+                        e.getValue().getBytesPerSecond().toBytes());
+            }
+
+            final Scheduling scheduling = getScheduling();
+            if (scheduling.isEnabled()) {
+                final TopicScheduler scheduler = new TopicScheduler(
+                        scheduling.getSlots(),
+                        scheduling.getPolicy(),
+                        registry,
+                        MetricRegistry.name(name, "scheduler"));
+                for (final Map.Entry<String, Integer> e : scheduling.getWeights().entrySet()) {
+                    scheduler.setWeight(e.getKey(), e.getValue());
+                }
+                consumer.setScheduler(scheduler);
+            }
+
+            if (consumerId.isPresent()) {
+                final Supplier<Set<String>> topics = new Supplier<Set<String>>() {
+                    @Override
+                    public Set<String> get() {
+                        return consumer.getPartitions().keySet();
+                    }
+                };
+                consumer.setPartitionWatcher(new PartitionOwnershipWatcher(
+                        rebalanceClient,
+                        consumer,
+                        topics,
+                        getGroup(),
+                        consumerId.get(),
+                        listener(),
+                        registry,
+                        MetricRegistry.name(name, "partitions")));
+            }
+            return consumer;
+        }
+
+        private RebalanceListener listener() {
+            if (processor instanceof RebalanceListener) {
+                return (RebalanceListener) processor;
+            }
+            // still watch the partitions, to record metrics of the rebalances
+            return new RebalanceListener() {
+                @Override
+                public void onPartitionsRevoked(final Map<String, Set<Integer>> partitions) {
+                }
+
+                @Override
+                public void onPartitionsAssigned(final Map<String, Set<Integer>> partitions) {
+                }
+            };
         }
     }
 
     static ConsumerConfig toConsumerConfig(final KafkaConsumerFactory factory) {
+        return toConsumerConfig(factory, Optional.<String>absent());
+    }
+
+    static ConsumerConfig toConsumerConfig(final KafkaConsumerFactory factory,
+                                           final Optional<String> consumerId) {
         final ZooKeeperFactory zookeeper = factory.getZookeeper();
         final Properties props = new Properties();
 
         props.setProperty("zookeeper.connect",
-                zookeeper.getQuorumSpec() + zookeeper.getNamespace());
+                zookeeper.getSelectedQuorumSpec() + zookeeper.getNamespace());
         props.setProperty("zookeeper.connection.timeout.ms",
                 String.valueOf(zookeeper.getConnectionTimeout().toMilliseconds()));
         props.setProperty("zookeeper.session.timeout.ms",
@@ -666,6 +1361,10 @@ public class KafkaConsumerFactory extends KafkaClientFactory {
         props.setProperty("rebalance.max.retries",
                 String.valueOf(factory.getRebalanceRetries()));
 
+        if (consumerId.isPresent()) {
+            props.setProperty("consumer.id", consumerId.get());
+        }
+
         return new ConsumerConfig(props);
     }
 }
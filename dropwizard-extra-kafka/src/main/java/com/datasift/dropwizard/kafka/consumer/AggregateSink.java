@@ -0,0 +1,33 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+/**
+ * A destination for the aggregates of a {@link WindowedAggregator}, such as a store of counters.
+ * <p/>
+ * The aggregate of a key in a window may be written more than once, as partial aggregates are
+ * written when the aggregator is flushed before its window closes, so writes should be additive,
+ * e.g. increments of a counter, rather than overwrites.
+ * <p/>
+ * <i>Note: since consumers may use multiple threads, it is important that implementations are
+ * thread-safe.</i>
+ *
+ * @param <A> the type of the aggregation keys.
+ */
+public interface AggregateSink<A> {
+
+    /**
+     * Writes the aggregate of a key in a window.
+     *
+     * @param key the key of the aggregate.
+     * @param start the start of the window, in milliseconds since the epoch, inclusive.
+     * @param end the end of the window, in milliseconds since the epoch, exclusive.
+     * @param count the number of messages aggregated for the key.
+     * @param sum the sum of the values of the messages aggregated for the key.
+     */
+    public void write(A key, long start, long end, long count, long sum);
+
+    /**
+     * Flushes any buffered writes, so that they're durable before the offsets of the aggregated
+     * messages are committed.
+     */
+    public void flush();
+}
@@ -0,0 +1,327 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.google.common.base.Supplier;
+import kafka.message.MessageAndMetadata;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooKeeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A {@link StreamProcessor} that skips messages that have recently been processed, before
+ * passing the stream on to another {@link StreamProcessor}.
+ * <p/>
+ * Kafka delivers messages at-least-once, so messages are redelivered after a rebalance or restart
+ * from the last committed offset. Recently processed messages are remembered by their fingerprint
+ * in a bounded {@link RecentlySeenSet}, and skipped when they're redelivered. Messages may be
+ * identified either by their partition and offset, or by the hash of their key.
+ * <p/>
+ * A message is only remembered once the processor asks for the message after it, i.e. once it has
+ * been processed, so a message whose processing failed is not skipped when it's redelivered.
+ * Processors that hand messages off to other threads, such as a {@link FanOutMessageProcessor},
+ * may have a message remembered before it has completed.
+ * <p/>
+ * Messages processed beyond the committed offset before a restart aren't remembered by a new
+ * processor, so they can be {@link #seed(String, int, long, long) seeded} from a record of the
+ * processed offsets, e.g. one kept alongside the output of the processor. If {@link
+ * #seedFromCommitted(Supplier, String, ProcessedOffsets) configured}, each topic is seeded when
+ * it's first processed, with the offsets between those committed by the group and those recorded
+ * as processed.
+ * <p/>
+ * Fingerprints are 64-bit hashes, so there's a negligible chance of a new message being mistaken
+ * for one recently processed. The following metrics are registered:
+ * <ul>
+ *     <li><i>name</i>.checked: the rate at which messages are checked,</li>
+ *     <li><i>name</i>.duplicates: the rate at which messages are skipped as duplicates,</li>
+ *     <li><i>name</i>.hitRate: the ratio of duplicates to checked messages over the last
+ *     minute,</li>
+ *     <li><i>name</i>.size: the number of fingerprints remembered.</li>
+ * </ul>
+ *
+ * @param <K> the decoded type of the key for each message being processed
+ * @param <V> the decoded type of the message to process
+ */
+public class DeduplicatingStreamProcessor<K, V> implements StreamProcessor<K, V> {
+
+    /**
+     * How messages are identified.
+     */
+    public enum Identity {
+
+        /**
+         * By the topic, partition and offset of the message; this identifies redelivered
+         * messages exactly.
+         */
+        OFFSET,
+
+        /**
+         * By the topic and the hash of the key of the message; this also identifies messages
+         * that were published more than once. Messages without a key are identified by their
+         * offset.
+         */
+        KEY
+    }
+
+    /**
+     * A record of the offsets that have been processed, which may be ahead of the offsets
+     * committed by the consumer.
+     */
+    public interface ProcessedOffsets {
+
+        /**
+         * Returns the offset after the last message of a partition known to have been processed.
+         *
+         * @param topic the topic of the partition.
+         * @param partition the partition of the topic.
+         *
+         * @return the offset of the next message to process, or -1 if it's not known.
+         */
+        public long getProcessedOffset(String topic, int partition);
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(DeduplicatingStreamProcessor.class);
+
+    private static final long PRIME = 0x9e3779b97f4a7c15L;
+
+    private final StreamProcessor<K, V> processor;
+    private final RecentlySeenSet seen;
+    private final Identity identity;
+    private final Meter checked;
+    private final Meter duplicates;
+    private final Set<String> seeded = new HashSet<>();
+
+    private Supplier<ZooKeeper> client = null;
+    private String group = null;
+    private ProcessedOffsets processed = null;
+
+    /**
+     * Creates a processor that skips recently processed messages.
+     *
+     * @param processor the {@link StreamProcessor} to process new messages with.
+     * @param capacity the maximum number of messages to remember.
+     * @param identity how messages are identified.
+     * @param registry the {@link MetricRegistry} to register metrics with.
+     * @param name the name of the processor, to prefix its metrics with.
+     */
+    public DeduplicatingStreamProcessor(final StreamProcessor<K, V> processor,
+                                        final int capacity,
+                                        final Identity identity,
+                                        final MetricRegistry registry,
+                                        final String name) {
+        this.processor = processor;
+        this.seen = new RecentlySeenSet(capacity);
+        this.identity = identity;
+        this.checked = registry.meter(MetricRegistry.name(name, "checked"));
+        this.duplicates = registry.meter(MetricRegistry.name(name, "duplicates"));
+        registry.register(MetricRegistry.name(name, "hitRate"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(duplicates.getOneMinuteRate(), checked.getOneMinuteRate());
+            }
+        });
+        registry.register(MetricRegistry.name(name, "size"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return seen.size();
+            }
+        });
+    }
+
+    /**
+     * Remembers a range of offsets of a partition as processed, e.g. those known to have been
+     * processed beyond the committed offset when the consumer starts.
+     * <p/>
+     * Only offsets are remembered, so this has no effect unless messages are identified by
+     * {@link Identity#OFFSET offset}. If the range is larger than the capacity, only the most
+     * recent offsets are remembered.
+     *
+     * @param topic the topic of the partition.
+     * @param partition the partition of the topic.
+     * @param from the first offset of the range, inclusive.
+     * @param to the last offset of the range, exclusive.
+     *
+     * @throws IllegalArgumentException if the range is negative.
+     */
+    public void seed(final String topic, final int partition, final long from, final long to) {
+        checkArgument(from <= to, "range must not be negative");
+        for (long offset = Math.max(from, to - seen.getCapacity()); offset < to; offset++) {
+            seen.add(fingerprint(topic, partition, offset));
+        }
+    }
+
+    /**
+     * Seeds each topic when it's first processed with the offsets of each partition that are
+     * known to have been processed beyond those committed by the consumer's group.
+     * <p/>
+     * The committed offsets are read from <i>/consumers/group/offsets/topic/partition</i>, so the
+     * {@link ZooKeeper} client must be connected to the same ensemble, and chroot, as the
+     * consumer. If the committed offsets can't be read, the topic is seeded when it's next
+     * processed.
+     *
+     * @param client a {@link Supplier} of the {@link ZooKeeper} client to read offsets with.
+     * @param group the group of the consumer.
+     * @param processed the record of the offsets that have been processed.
+     *
+     * @see #seed(String, int, long, long)
+     */
+    public synchronized void seedFromCommitted(final Supplier<ZooKeeper> client,
+                                               final String group,
+                                               final ProcessedOffsets processed) {
+        this.client = client;
+        this.group = group;
+        this.processed = processed;
+        this.seeded.clear();
+    }
+
+    @Override
+    public void process(final Iterable<MessageAndMetadata<K, V>> stream, final String topic) {
+        seedFromCommitted(topic);
+        processor.process(new Iterable<MessageAndMetadata<K, V>>() {
+            @Override
+            public Iterator<MessageAndMetadata<K, V>> iterator() {
+                return new Deduplicator(stream.iterator(), topic);
+            }
+        }, topic);
+    }
+
+    private synchronized void seedFromCommitted(final String topic) {
+        if (processed == null || seeded.contains(topic)) {
+            return;
+        }
+
+        final String path = "/consumers/" + group + "/offsets/" + topic;
+        try {
+            final ZooKeeper zookeeper = client.get();
+            if (zookeeper == null) {
+                throw new KeeperException.ConnectionLossException();
+            }
+            for (final String child : children(zookeeper, path)) {
+                final int partition = Integer.parseInt(child);
+                final long committed = Long.parseLong(new String(
+                        zookeeper.getData(path + "/" + child, false, null),
+                        StandardCharsets.UTF_8).trim());
+                final long to = processed.getProcessedOffset(topic, partition);
+                if (to > committed) {
+                    LOG.info("Seeding offsets {} to {} of {}-{} as processed",
+                            committed, to, topic, partition);
+                    seed(topic, partition, committed, to);
+                }
+            }
+            seeded.add(topic);
+        } catch (final KeeperException | NumberFormatException e) {
+            LOG.warn("Failed to seed processed offsets of {}", topic, e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Iterable<String> children(final ZooKeeper zookeeper, final String path)
+            throws KeeperException, InterruptedException {
+        try {
+            return zookeeper.getChildren(path, false);
+        } catch (final KeeperException.NoNodeException e) {
+            // nothing has been committed yet
+            return new HashSet<>();
+        }
+    }
+
+    /**
+     * Calculates the fingerprint of a message.
+     *
+     * @param message the message to fingerprint.
+     * @param topic the topic of the message.
+     *
+     * @return the 64-bit fingerprint of the message.
+     */
+    protected long fingerprint(final MessageAndMetadata<K, V> message, final String topic) {
+        final K key = identity == Identity.KEY ? message.key() : null;
+        if (key == null) {
+            return fingerprint(topic, message.partition(), message.offset());
+        }
+
+        long h = topic.hashCode();
+        if (key instanceof byte[]) {
+            for (final byte b : (byte[]) key) {
+                h = (h ^ (b & 0xff)) * PRIME;
+            }
+        } else {
+            h = h * PRIME + key.hashCode();
+        }
+        // distinguish keys from offsets
+        return RecentlySeenSet.mix(~h);
+    }
+
+    private static long fingerprint(final String topic, final int partition, final long offset) {
+        return RecentlySeenSet.mix((topic.hashCode() * PRIME + partition) * PRIME + offset);
+    }
+
+    /**
+     * Iterates a stream, skipping recently processed messages.
+     */
+    private class Deduplicator implements Iterator<MessageAndMetadata<K, V>> {
+
+        private final Iterator<MessageAndMetadata<K, V>> it;
+        private final String topic;
+
+        private MessageAndMetadata<K, V> next = null;
+        private long nextFingerprint;
+        private long processing;
+        private boolean isProcessing = false;
+
+        Deduplicator(final Iterator<MessageAndMetadata<K, V>> it, final String topic) {
+            this.it = it;
+            this.topic = topic;
+        }
+
+        @Override
+        public boolean hasNext() {
+            // asking for another message means the last one has been processed
+            if (isProcessing) {
+                seen.add(processing);
+                isProcessing = false;
+            }
+
+            while (next == null && it.hasNext()) {
+                final MessageAndMetadata<K, V> message = it.next();
+                final long fingerprint = fingerprint(message, topic);
+                checked.mark();
+                if (seen.contains(fingerprint)) {
+                    duplicates.mark();
+                } else {
+                    next = message;
+                    nextFingerprint = fingerprint;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public MessageAndMetadata<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final MessageAndMetadata<K, V> message = next;
+            next = null;
+            processing = nextFingerprint;
+            isProcessing = true;
+            return message;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import com.google.common.base.Throwables;
+import kafka.message.MessageAndMetadata;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A {@link MessageProcessor} that processes the messages of a stream concurrently, completing
+ * them in the order they were consumed.
+ * <p/>
+ * Each message is processed by a separate task on an {@link ExecutorService}, such as one that
+ * creates a virtual thread per-task, so that a stream may have many messages blocked on I/O at
+ * once. No more than the configured number of messages are in flight at once; once that many are
+ * in flight, the stream waits for the oldest to complete before consuming another.
+ * <p/>
+ * Messages are {@link #completed(Object, Object, String, int, long) completed} on the stream's
+ * thread strictly in order, regardless of the order in which their processing finishes, so the
+ * stream never advances more than the maximum number of messages beyond the oldest incomplete
+ * message. If processing a message fails, the messages in flight after it are cancelled, and the
+ * failure is thrown by the stream, as it would be by a {@link MessageProcessor}.
+ * <p/>
+ * When the consumer revokes its partitions, e.g. when it's stopped or rescaled, the messages of
+ * the revoked partitions still in flight are processed before their offsets are committed. They're
+ * completed once their stream next asks for a message, and finds it has ended.
+ * <p/>
+ * <i>Note: as messages of the same stream are processed concurrently, implementations that
+ * require messages with the same key to be processed in order should not use this
+ * processor.</i>
+ *
+ * @param <K> the decoded type of the key for each message being processed
+ * @param <V> the decoded type of the message to process
+ */
+public abstract class FanOutMessageProcessor<K, V> extends MessageProcessor<K, V>
+        implements RebalanceListener {
+
+    private final ExecutorService executor;
+    private final int maxInFlight;
+
+    // the messages in flight across all streams
+    private final Set<InFlight> outstanding =
+            Collections.newSetFromMap(new ConcurrentHashMap<InFlight, Boolean>());
+
+    /**
+     * Creates a processor that processes messages with the given {@link ExecutorService}.
+     *
+     * @param executor the {@link ExecutorService} to process each message with.
+     * @param maxInFlight the maximum number of messages of each stream to process at once.
+     *
+     * @throws IllegalArgumentException if the maximum number of messages is less than 1.
+     */
+    protected FanOutMessageProcessor(final ExecutorService executor, final int maxInFlight) {
+        checkArgument(maxInFlight >= 1, "maxInFlight must be at least 1");
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Called, on the stream's thread, once a message has been processed and all messages before it
+     * in the stream have been completed.
+     * <p/>
+     * By default, does nothing.
+     *
+     * @param key the key of the processed message.
+     * @param message the processed message.
+     * @param topic the topic the message belongs to.
+     * @param partition the partition of the topic the message is contained in.
+     * @param offset the offset of the message within the partition of the topic.
+     */
+    protected void completed(final K key,
+                             final V message,
+                             final String topic,
+                             final int partition,
+                             final long offset) {
+    }
+
+    /**
+     * Waits for the messages of the revoked partitions in flight to be processed, so that their
+     * offsets aren't committed before they're processed.
+     */
+    @Override
+    public void onPartitionsRevoked(final Map<String, Set<Integer>> partitions) {
+        for (final InFlight message : outstanding) {
+            final Set<Integer> revoked = partitions.get(message.topic);
+            if (revoked != null && revoked.contains(message.entry.partition())) {
+                try {
+                    message.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onPartitionsAssigned(final Map<String, Set<Integer>> partitions) {
+    }
+
+    /**
+     * Processes a stream by processing each message concurrently, and completing them in order.
+     *
+     * @param stream the stream of messages to process.
+     * @param topic the topic the {@code stream} belongs to.
+     *
+     * @see StreamProcessor#process(Iterable, String)
+     */
+    @Override
+    public void process(final Iterable<MessageAndMetadata<K, V>> stream, final String topic) {
+        final Deque<InFlight> inFlight = new ArrayDeque<>(maxInFlight);
+        try {
+            try {
+                for (final MessageAndMetadata<K, V> entry : stream) {
+                    if (inFlight.size() >= maxInFlight) {
+                        inFlight.removeFirst().complete();
+                    }
+                    inFlight.addLast(new InFlight(entry, topic));
+                }
+            } catch (final ConsumptionException e) {
+                throw e;
+            } catch (final RuntimeException e) {
+                // the stream failed; complete the messages already consumed before failing
+                while (!inFlight.isEmpty()) {
+                    inFlight.removeFirst().complete();
+                }
+                throw e;
+            }
+
+            while (!inFlight.isEmpty()) {
+                inFlight.removeFirst().complete();
+            }
+        } catch (final ConsumptionException e) {
+            for (final InFlight message : inFlight) {
+                message.cancel();
+            }
+            if (e.getCause() != null) {
+                throw Throwables.propagate(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Signals that a message in flight failed, or the stream was interrupted, and so the messages
+     * after it may be abandoned.
+     */
+    private static class ConsumptionException extends RuntimeException {
+
+        ConsumptionException(final Throwable cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * A message being processed.
+     * <p/>
+     * The key and value of a message are decoded each time they're accessed, so they're decoded
+     * once, by the worker that processes the message, and retained to complete it.
+     */
+    private class InFlight {
+
+        private final MessageAndMetadata<K, V> entry;
+        private final String topic;
+        private final Future<?> future;
+
+        // written by the worker; visible to the stream once the future has completed
+        private K key;
+        private V message;
+
+        InFlight(final MessageAndMetadata<K, V> entry, final String topic) {
+            this.entry = entry;
+            this.topic = topic;
+            this.future = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    key = entry.key();
+                    message = entry.message();
+                    process(key, message, topic, entry.partition(), entry.offset());
+                }
+            });
+            outstanding.add(this);
+        }
+
+        /**
+         * Waits for the message to be processed, or to fail, without completing it.
+         */
+        void await() throws InterruptedException {
+            try {
+                future.get();
+            } catch (final ExecutionException | CancellationException e) {
+                // the failure is thrown by the stream
+            }
+        }
+
+        /**
+         * Abandons the message.
+         */
+        void cancel() {
+            future.cancel(true);
+            outstanding.remove(this);
+        }
+
+        /**
+         * Waits for the message to be processed, and completes it.
+         */
+        void complete() {
+            try {
+                future.get();
+            } catch (final InterruptedException e) {
+                // the stream is being shut down; abandon the messages in flight
+                Thread.currentThread().interrupt();
+                throw new ConsumptionException(null);
+            } catch (final ExecutionException e) {
+                throw new ConsumptionException(e.getCause());
+            } finally {
+                outstanding.remove(this);
+            }
+            completed(key, message, topic, entry.partition(), entry.offset());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import com.codahale.metrics.health.HealthCheck;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.util.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Periodically pauses or resumes a {@link PausableConsumer} according to the health of a downstream
+ * service, such as the state of a circuit breaker guarding it.
+ * <p/>
+ * While the downstream {@link HealthCheck} is unhealthy, the consumer is paused, applying
+ * backpressure rather than letting its processors fail and exhaust their recovery attempts; once
+ * it's healthy again, the consumer is resumed.
+ * <p/>
+ * Only a pause made by this pauser is resumed by it, so a consumer that was paused by other means,
+ * e.g. a {@link PauseConsumerTask}, remains paused.
+ */
+public class HealthBasedPauser implements Managed {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HealthBasedPauser.class);
+
+    private final PausableConsumer consumer;
+    private final HealthCheck downstream;
+    private final ScheduledExecutorService executor;
+    private final Duration interval;
+
+    private volatile boolean pausedByHealth = false;
+    private volatile ScheduledFuture<?> schedule = null;
+
+    /**
+     * Creates a pauser for a consumer that depends on a downstream service.
+     *
+     * @param consumer   the consumer to pause and resume.
+     * @param downstream the {@link HealthCheck} of the downstream service.
+     * @param executor   the {@link ScheduledExecutorService} to check the downstream health on.
+     * @param interval   the time between checks of the downstream health.
+     */
+    public HealthBasedPauser(final PausableConsumer consumer,
+                             final HealthCheck downstream,
+                             final ScheduledExecutorService executor,
+                             final Duration interval) {
+        this.consumer = consumer;
+        this.downstream = downstream;
+        this.executor = executor;
+        this.interval = interval;
+    }
+
+    /**
+     * Begins periodically checking the health of the downstream service.
+     */
+    @Override
+    public void start() {
+        schedule = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    check();
+                } catch (final RuntimeException e) {
+                    LOG.warn("Failed to check downstream health", e);
+                }
+            }
+        }, interval.getQuantity(), interval.getQuantity(), interval.getUnit());
+    }
+
+    /**
+     * Stops checking the health of the downstream service, resuming the consumer if it was paused
+     * because of it.
+     */
+    @Override
+    public void stop() {
+        final ScheduledFuture<?> schedule = this.schedule;
+        if (schedule != null) {
+            schedule.cancel(false);
+        }
+        this.schedule = null;
+        if (pausedByHealth) {
+            pausedByHealth = false;
+            consumer.resume();
+        }
+    }
+
+    /**
+     * Checks the health of the downstream service, and pauses or resumes the consumer if
+     * necessary.
+     *
+     * @return true if the consumer is paused after the check; otherwise, false.
+     */
+    boolean check() {
+        final HealthCheck.Result result = downstream.execute();
+        if (!result.isHealthy() && !pausedByHealth && !consumer.isPaused()) {
+            LOG.warn("Pausing consumer, downstream is unhealthy: {}", result.getMessage());
+            pausedByHealth = true;
+            consumer.pause();
+        } else if (result.isHealthy() && pausedByHealth) {
+            LOG.info("Resuming consumer, downstream is healthy");
+            pausedByHealth = false;
+            consumer.resume();
+        }
+        return consumer.isPaused();
+    }
+}
@@ -0,0 +1,499 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import com.google.common.base.Throwables;
+import io.dropwizard.util.Duration;
+import kafka.message.MessageAndMetadata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A {@link MessageProcessor} that processes the messages of a stream in parallel, while
+ * preserving the order of messages with the same key.
+ * <p/>
+ * Each stream is split in to a fixed number of lanes by the hash of each message's key; each lane
+ * is a bounded queue, processed in order by its own worker. Messages with the same key are always
+ * in the same lane, so are processed in the order they were consumed; messages without a key are
+ * laned by their partition. When a lane is full, the stream waits for it to drain before consuming
+ * another message.
+ * <p/>
+ * As lanes progress independently, the messages of a partition may complete out of order. The
+ * {@link #getWatermark(String, int) watermark} of each partition tracks the offset before which
+ * every message has been processed, advancing only once all lanes have passed an offset; it's the
+ * offset that's safe to commit.
+ * <p/>
+ * The consumer commits the offsets its streams have read, not the watermark, so offsets committed
+ * {@link com.datasift.dropwizard.kafka.KafkaConsumerFactory#getAutoCommit() automatically} run
+ * ahead of the lanes, and messages still queued are lost if the consumer fails. Instead, a {@link
+ * WatermarkCommitter} should {@link #checkpoint(KafkaConsumer, Duration) checkpoint} the processor,
+ * which blocks the streams, waits for the lanes to drain, so that the watermark has caught up with
+ * the streams, and then commits the offsets.
+ * <p/>
+ * Likewise, when the consumer revokes its partitions, e.g. when it's stopped or rescaled, the
+ * lanes of the revoked partitions are drained before their offsets are committed.
+ * <p/>
+ * The lane workers of each stream are run on the given {@link ExecutorService}, which must be able
+ * to run all the lanes of all streams at once, e.g. one built by {@link
+ * com.datasift.dropwizard.kafka.KafkaConsumerFactory#buildFanOutExecutor}.
+ * <p/>
+ * If processing a message fails, or the stream is interrupted, the remaining messages are
+ * abandoned, and the failure is thrown by the stream, as it would be by a {@link
+ * MessageProcessor}. Abandoned messages are never processed, and hold back the watermark, and
+ * checkpoints, until the stream is restarted. As the restarted stream continues from the message
+ * after those it consumed, the abandoned messages are then released, so the processor may be
+ * checkpointed again once the restarted stream's lanes drain.
+ *
+ * @param <K> the decoded type of the key for each message being processed
+ * @param <V> the decoded type of the message to process
+ */
+public abstract class KeyOrderedMessageProcessor<K, V> extends MessageProcessor<K, V>
+        implements RebalanceListener {
+
+    private final ExecutorService executor;
+    private final int lanes;
+    private final int laneCapacity;
+
+    private final ConcurrentMap<String, ConcurrentMap<Integer, Progress>> progress =
+            new ConcurrentHashMap<>();
+
+    // held by streams from reading a message until it's dispatched, and exclusively to checkpoint
+    private final ReadWriteLock checkpoint = new ReentrantReadWriteLock();
+
+    // signalled as each partition's lanes drain
+    private final Lock drainLock = new ReentrantLock();
+    private final Condition drained = drainLock.newCondition();
+
+    /**
+     * Creates a processor that processes each stream in the given number of lanes.
+     *
+     * @param executor the {@link ExecutorService} to run the workers of each lane on.
+     * @param lanes the number of lanes to process each stream in.
+     * @param laneCapacity the maximum number of messages queued in each lane.
+     *
+     * @throws IllegalArgumentException if the number of lanes or their capacity is less than 1.
+     */
+    protected KeyOrderedMessageProcessor(final ExecutorService executor,
+                                         final int lanes,
+                                         final int laneCapacity) {
+        checkArgument(lanes >= 1, "lanes must be at least 1");
+        checkArgument(laneCapacity >= 1, "laneCapacity must be at least 1");
+        this.executor = executor;
+        this.lanes = lanes;
+        this.laneCapacity = laneCapacity;
+    }
+
+    /**
+     * Returns the offset of a partition before which every consumed message has been processed.
+     *
+     * @param topic the topic of the partition.
+     * @param partition the partition of the topic.
+     *
+     * @return the offset of the next message to process, which is safe to commit; or -1 if no
+     *         messages have been consumed from the partition.
+     */
+    public long getWatermark(final String topic, final int partition) {
+        final ConcurrentMap<Integer, Progress> partitions = progress.get(topic);
+        final Progress p = partitions == null ? null : partitions.get(partition);
+        return p == null ? -1 : p.watermark();
+    }
+
+    /**
+     * Waits for all dispatched messages to be processed, then commits the offsets consumed by a
+     * consumer, such that no message is committed before it has been processed.
+     * <p/>
+     * Streams are blocked from dispatching messages while the processor is checkpointed. If the
+     * lanes don't drain within the timeout, e.g. because a message is slow to process, no offsets
+     * are committed.
+     *
+     * @param consumer the consumer to commit the offsets of.
+     * @param timeout the maximum time to wait for streams to dispatch their current message and
+     *                for the lanes to drain.
+     *
+     * @return true if the offsets were committed; otherwise, false.
+     *
+     * @throws InterruptedException if interrupted while waiting for the lanes to drain.
+     */
+    public boolean checkpoint(final KafkaConsumer consumer, final Duration timeout)
+            throws InterruptedException {
+        final long deadline = System.nanoTime() + timeout.toNanoseconds();
+        final Lock lock = checkpoint.writeLock();
+        if (!lock.tryLock(timeout.getQuantity(), timeout.getUnit())) {
+            return false;
+        }
+        try {
+            drainLock.lockInterruptibly();
+            try {
+                while (!isDrained()) {
+                    final long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    drained.awaitNanos(remaining);
+                }
+            } finally {
+                drainLock.unlock();
+            }
+            consumer.commitOffsets();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for the messages of the revoked partitions that have been dispatched to be processed,
+     * so that their offsets aren't committed before they're processed.
+     * <p/>
+     * Like a {@link #checkpoint(KafkaConsumer, Duration) checkpoint}, streams are blocked from
+     * dispatching messages while the lanes drain. Messages abandoned by a failed stream aren't
+     * waited for.
+     */
+    @Override
+    public void onPartitionsRevoked(final Map<String, Set<Integer>> partitions) {
+        final Lock lock = checkpoint.writeLock();
+        lock.lock();
+        try {
+            drainLock.lockInterruptibly();
+            try {
+                while (!isSettled(partitions)) {
+                    drained.await();
+                }
+            } finally {
+                drainLock.unlock();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onPartitionsAssigned(final Map<String, Set<Integer>> partitions) {
+    }
+
+    /**
+     * Calculates the hash of a message key, to choose its lane.
+     * <p/>
+     * By default, byte array keys are hashed by their contents, and all other keys by their
+     * {@link Object#hashCode()}.
+     *
+     * @param key the key of the message; never null.
+     *
+     * @return the hash of the key.
+     */
+    protected int hash(final K key) {
+        return key instanceof byte[] ? Arrays.hashCode((byte[]) key) : key.hashCode();
+    }
+
+    /**
+     * Processes a stream by dispatching each message to the lane for its key, holding the
+     * checkpoint lock from reading each message until it has been dispatched.
+     * <p/>
+     * Messages of the topic abandoned by a stream that failed are released first, as this stream
+     * replaces it.
+     *
+     * @param stream the stream of messages to process.
+     * @param topic the topic the {@code stream} belongs to.
+     *
+     * @see StreamProcessor#process(Iterable, String)
+     */
+    @Override
+    public void process(final Iterable<MessageAndMetadata<K, V>> stream, final String topic) {
+        release(topic);
+
+        final List<Lane> lanes = new ArrayList<>(this.lanes);
+        for (int i = 0; i < this.lanes; i++) {
+            lanes.add(new Lane(topic));
+        }
+
+        final Iterator<MessageAndMetadata<K, V>> it = stream.iterator();
+        final Lock lock = checkpoint.readLock();
+        try {
+            while (it.hasNext()) {
+                final Throwable failure = failure(lanes);
+                if (failure != null) {
+                    throw failure;
+                }
+
+                lock.lockInterruptibly();
+                try {
+                    final MessageAndMetadata<K, V> entry = it.next();
+                    final K key = entry.key();
+                    final int hash = key == null ? entry.partition() : hash(key);
+                    final Lane lane = lanes.get((hash & Integer.MAX_VALUE) % this.lanes);
+
+                    final Progress p = progress(topic, entry.partition());
+                    p.dispatch(entry.offset());
+                    lane.queue.put(entry);
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            for (final Lane lane : lanes) {
+                lane.queue.put(lane.end);
+            }
+            for (final Lane lane : lanes) {
+                lane.worker.get();
+            }
+        } catch (final InterruptedException e) {
+            // the stream is being shut down; abandon the queued messages
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(e);
+        } catch (final ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } catch (final Throwable e) {
+            throw Throwables.propagate(e);
+        } finally {
+            for (final Lane lane : lanes) {
+                lane.worker.cancel(true);
+                lane.abandonQueued();
+            }
+        }
+    }
+
+    /**
+     * Completes the messages of a topic abandoned by a failed stream, so they no longer hold back
+     * the watermark of their partitions.
+     */
+    private void release(final String topic) {
+        final ConcurrentMap<Integer, Progress> partitions = progress.get(topic);
+        if (partitions == null) {
+            return;
+        }
+        for (final Progress p : partitions.values()) {
+            p.release();
+        }
+        signalDrained();
+    }
+
+    private boolean isDrained() {
+        for (final ConcurrentMap<Integer, Progress> partitions : progress.values()) {
+            for (final Progress p : partitions.values()) {
+                if (!p.isDrained()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean isSettled(final Map<String, Set<Integer>> partitions) {
+        for (final Map.Entry<String, Set<Integer>> e : partitions.entrySet()) {
+            final ConcurrentMap<Integer, Progress> progress = this.progress.get(e.getKey());
+            if (progress == null) {
+                continue;
+            }
+            for (final Integer partition : e.getValue()) {
+                final Progress p = progress.get(partition);
+                if (p != null && !p.isSettled()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void complete(final String topic, final int partition, final long offset) {
+        if (progress(topic, partition).complete(offset)) {
+            signalDrained();
+        }
+    }
+
+    private void abandon(final String topic, final int partition, final long offset) {
+        if (progress(topic, partition).abandon(offset)) {
+            signalDrained();
+        }
+    }
+
+    private void signalDrained() {
+        drainLock.lock();
+        try {
+            drained.signalAll();
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    private Throwable failure(final List<Lane> lanes) {
+        for (final Lane lane : lanes) {
+            if (lane.failure != null) {
+                return lane.failure;
+            }
+        }
+        return null;
+    }
+
+    private Progress progress(final String topic, final int partition) {
+        ConcurrentMap<Integer, Progress> partitions = progress.get(topic);
+        if (partitions == null) {
+            final ConcurrentMap<Integer, Progress> created = new ConcurrentHashMap<>();
+            partitions = progress.putIfAbsent(topic, created);
+            if (partitions == null) {
+                partitions = created;
+            }
+        }
+
+        Progress p = partitions.get(partition);
+        if (p == null) {
+            final Progress created = new Progress();
+            p = partitions.putIfAbsent(partition, created);
+            if (p == null) {
+                p = created;
+            }
+        }
+        return p;
+    }
+
+    /**
+     * The progress of processing a partition.
+     */
+    private static class Progress {
+
+        private final ConcurrentSkipListSet<Long> pending = new ConcurrentSkipListSet<>();
+        private final ConcurrentSkipListSet<Long> abandoned = new ConcurrentSkipListSet<>();
+        private volatile long dispatched = -1;
+
+        void dispatch(final long offset) {
+            // pending before dispatched, so a watermark never skips a pending offset
+            pending.add(offset);
+            dispatched = offset;
+        }
+
+        /**
+         * Completes an offset.
+         *
+         * @return true if every offset that remains pending has been abandoned; otherwise, false.
+         */
+        boolean complete(final long offset) {
+            pending.remove(offset);
+            abandoned.remove(offset);
+            return isSettled();
+        }
+
+        /**
+         * Abandons a pending offset, which remains pending until it's released.
+         *
+         * @return true if every offset that remains pending has been abandoned; otherwise, false.
+         */
+        boolean abandon(final long offset) {
+            abandoned.add(offset);
+            return isSettled();
+        }
+
+        /**
+         * Completes the abandoned offsets.
+         */
+        void release() {
+            for (final Long offset : abandoned) {
+                complete(offset);
+            }
+        }
+
+        boolean isDrained() {
+            return pending.isEmpty();
+        }
+
+        /**
+         * Determines whether every pending offset has been abandoned, i.e. no message of the
+         * partition remains in a lane.
+         */
+        boolean isSettled() {
+            return abandoned.containsAll(pending);
+        }
+
+        long watermark() {
+            final long next = dispatched + 1;
+            if (next == 0) {
+                return -1;
+            }
+            try {
+                return Math.min(pending.first(), next);
+            } catch (final NoSuchElementException e) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * A bounded queue of messages processed in order by its own worker.
+     */
+    private class Lane implements Runnable {
+
+        private final String topic;
+        private final BlockingQueue<MessageAndMetadata<K, V>> queue;
+        private final Future<?> worker;
+
+        // marks the end of the stream
+        private final MessageAndMetadata<K, V> end =
+                new MessageAndMetadata<K, V>(null, -1, null, -1, null, null);
+
+        private volatile Throwable failure = null;
+
+        Lane(final String topic) {
+            this.topic = topic;
+            this.queue = new ArrayBlockingQueue<>(laneCapacity);
+            this.worker = executor.submit(this);
+        }
+
+        /**
+         * Abandons the messages left in the lane once its worker has been cancelled.
+         */
+        void abandonQueued() {
+            final List<MessageAndMetadata<K, V>> entries = new ArrayList<>();
+            queue.drainTo(entries);
+            for (final MessageAndMetadata<K, V> entry : entries) {
+                if (entry != end) {
+                    abandon(topic, entry.partition(), entry.offset());
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                MessageAndMetadata<K, V> entry;
+                while ((entry = queue.take()) != end) {
+                    // once failed, keep draining the lane so the stream is never blocked on it
+                    if (failure == null) {
+                        try {
+                            process(entry.key(), entry.message(), topic, entry.partition(),
+                                    entry.offset());
+                            complete(topic, entry.partition(), entry.offset());
+                            continue;
+                        } catch (final Throwable e) {
+                            failure = e;
+                        }
+                    }
+                    abandon(topic, entry.partition(), entry.offset());
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                Throwables.propagate(failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import com.codahale.metrics.Gauge;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.util.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Periodically scales the number of streams a {@link SynchronousConsumer} consumes from a topic,
+ * according to how far the consumer lags behind the topic.
+ * <p/>
+ * When the lag exceeds the scale-up threshold, a stream is added, up to the maximum number of
+ * streams; when it falls below the scale-down threshold, a stream is removed, down to the minimum.
+ * Each change rebalances the consumer group, so at most one change is made per interval.
+ * <p/>
+ * The lag may be measured in any unit, e.g. messages or milliseconds, so long as the thresholds
+ * use the same unit.
+ *
+ * @see SynchronousConsumer#setStreams(String, int)
+ */
+public class LagBasedStreamScaler implements Managed {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LagBasedStreamScaler.class);
+
+    private final SynchronousConsumer<?, ?> consumer;
+    private final String topic;
+    private final Gauge<Long> lag;
+    private final int minStreams;
+    private final int maxStreams;
+    private final long scaleUpLag;
+    private final long scaleDownLag;
+    private final ScheduledExecutorService executor;
+    private final Duration interval;
+
+    private volatile ScheduledFuture<?> schedule = null;
+
+    /**
+     * Creates a scaler for the streams of a topic.
+     *
+     * @param consumer     the consumer to scale the streams of.
+     * @param topic        the topic to scale the streams of.
+     * @param lag          a {@link Gauge} of the lag of the consumer behind the topic.
+     * @param minStreams   the minimum number of streams to consume from the topic.
+     * @param maxStreams   the maximum number of streams to consume from the topic.
+     * @param scaleUpLag   the lag above which a stream is added.
+     * @param scaleDownLag the lag below which a stream is removed.
+     * @param executor     the {@link ScheduledExecutorService} to check the lag on.
+     * @param interval     the time between checks of the lag.
+     *
+     * @throws IllegalArgumentException if the bounds or thresholds are inconsistent.
+     */
+    public LagBasedStreamScaler(final SynchronousConsumer<?, ?> consumer,
+                                final String topic,
+                                final Gauge<Long> lag,
+                                final int minStreams,
+                                final int maxStreams,
+                                final long scaleUpLag,
+                                final long scaleDownLag,
+                                final ScheduledExecutorService executor,
+                                final Duration interval) {
+        checkArgument(minStreams >= 1, "minStreams must be at least 1");
+        checkArgument(maxStreams >= minStreams, "maxStreams must be at least minStreams");
+        checkArgument(scaleUpLag > scaleDownLag, "scaleUpLag must be greater than scaleDownLag");
+
+        this.consumer = consumer;
+        this.topic = topic;
+        this.lag = lag;
+        this.minStreams = minStreams;
+        this.maxStreams = maxStreams;
+        this.scaleUpLag = scaleUpLag;
+        this.scaleDownLag = scaleDownLag;
+        this.executor = executor;
+        this.interval = interval;
+    }
+
+    /**
+     * Begins periodically checking the lag of the consumer.
+     */
+    @Override
+    public void start() {
+        schedule = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    scale();
+                } catch (final RuntimeException e) {
+                    LOG.warn("Failed to scale streams of topic '{}'", topic, e);
+                }
+            }
+        }, interval.getQuantity(), interval.getQuantity(), interval.getUnit());
+    }
+
+    /**
+     * Stops checking the lag of the consumer.
+     */
+    @Override
+    public void stop() {
+        final ScheduledFuture<?> schedule = this.schedule;
+        if (schedule != null) {
+            schedule.cancel(false);
+        }
+        this.schedule = null;
+    }
+
+    /**
+     * Checks the lag of the consumer, and adds or removes a stream if necessary.
+     *
+     * @return the number of streams consumed from the topic after scaling.
+     */
+    int scale() {
+        final Integer current = consumer.getPartitions().get(topic);
+        final int streams = current == null ? 0 : current;
+        final Long value = lag.getValue();
+        if (value == null || !consumer.isRunning()) {
+            return streams;
+        }
+
+        final int target;
+        if (streams < minStreams) {
+            target = minStreams;
+        } else if (streams > maxStreams) {
+            target = maxStreams;
+        } else if (value > scaleUpLag && streams < maxStreams) {
+            target = streams + 1;
+        } else if (value < scaleDownLag && streams > minStreams) {
+            target = streams - 1;
+        } else {
+            return streams;
+        }
+
+        LOG.info("Scaling topic '{}' from {} to {} streams with lag of {}",
+                topic, streams, target, value);
+        consumer.setStreams(topic, target);
+        return target;
+    }
+}
@@ -0,0 +1,323 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.lifecycle.Managed;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the partitions of a consumer group owned by a consumer, notifying a {@link
+ * RebalanceListener} as partitions are assigned to, and revoked from, the consumer.
+ * <p/>
+ * The Kafka consumer doesn't expose its rebalances, so ownership is read from the registry the
+ * group keeps in ZooKeeper: each partition of each consumed topic is owned by the consumer whose
+ * id is recorded in <i>/consumers/group/owners/topic/partition</i>. These ZNodes are watched, and
+ * the partitions owned by the consumer are compared each time they change. The {@link ZooKeeper}
+ * client must be connected to the same ensemble, and chroot, as the consumer.
+ * <p/>
+ * A rebalance begins when a partition of a consumed topic becomes unowned, or one of the
+ * consumer's partitions is revoked, and ends once all partitions are owned again. The following
+ * metrics are registered:
+ * <ul>
+ *     <li><i>name</i>.rebalances: the duration and frequency of rebalances,</li>
+ *     <li><i>name</i>.revoked: the number of partitions revoked from the consumer,</li>
+ *     <li><i>name</i>.assigned: the number of partitions assigned to the consumer,</li>
+ *     <li><i>name</i>.owned: the number of partitions currently owned by the consumer.</li>
+ * </ul>
+ *
+ * @see SynchronousConsumer#setPartitionWatcher(PartitionOwnershipWatcher)
+ */
+public class PartitionOwnershipWatcher implements Managed {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PartitionOwnershipWatcher.class);
+
+    private static final long RETRY_DELAY_MS = 1000;
+
+    private final Supplier<ZooKeeper> client;
+    private final KafkaConsumer consumer;
+    private final Supplier<? extends Collection<String>> topics;
+    private final String group;
+    private final String owner;
+    private final RebalanceListener listener;
+
+    private final Timer rebalances;
+    private final Counter revoked;
+    private final Counter assigned;
+
+    private final Watcher watcher = new OwnershipWatcher();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                    .setNameFormat("kafka-partition-watcher-%d")
+                    .setDaemon(true)
+                    .build());
+
+    private Map<String, Set<Integer>> owned = ImmutableMap.of();
+    private long rebalanceStart = 0;
+    private volatile boolean running = false;
+
+    /**
+     * Creates a watcher of the partitions owned by a consumer.
+     *
+     * @param client     a {@link Supplier} of the {@link ZooKeeper} client to read the group's
+     *                   registry with.
+     * @param consumer   the consumer to commit offsets of, once it has revoked its own partitions.
+     * @param topics     a {@link Supplier} of the topics consumed by the consumer.
+     * @param group      the group the consumer belongs to.
+     * @param consumerId the id of the consumer, as configured by <i>consumer.id</i>.
+     * @param listener   the {@link RebalanceListener} to notify of changes in ownership.
+     * @param registry   the {@link MetricRegistry} to register metrics with.
+     * @param name       the name of the watcher, to prefix its metrics with.
+     */
+    public PartitionOwnershipWatcher(final Supplier<ZooKeeper> client,
+                                     final KafkaConsumer consumer,
+                                     final Supplier<? extends Collection<String>> topics,
+                                     final String group,
+                                     final String consumerId,
+                                     final RebalanceListener listener,
+                                     final MetricRegistry registry,
+                                     final String name) {
+        this.client = client;
+        this.consumer = consumer;
+        this.topics = topics;
+        this.group = group;
+        // each stream of the consumer owns partitions as <group>_<consumer id>-<stream>
+        this.owner = group + "_" + consumerId + "-";
+        this.listener = listener;
+
+        this.rebalances = registry.timer(MetricRegistry.name(name, "rebalances"));
+        this.revoked = registry.counter(MetricRegistry.name(name, "revoked"));
+        this.assigned = registry.counter(MetricRegistry.name(name, "assigned"));
+        registry.register(MetricRegistry.name(name, "owned"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return count(getOwned());
+            }
+        });
+    }
+
+    /**
+     * Begins watching the partitions owned by the consumer.
+     */
+    @Override
+    public void start() {
+        running = true;
+        refreshLater(0);
+    }
+
+    /**
+     * Stops watching the partitions owned by the consumer.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns the partitions currently owned by the consumer.
+     *
+     * @return a mapping of each topic to the partitions of it owned by the consumer.
+     */
+    public synchronized Map<String, Set<Integer>> getOwned() {
+        return owned;
+    }
+
+    /**
+     * Revokes all partitions owned by the consumer, before the consumer releases them, and then
+     * commits the consumer's offsets.
+     * <p/>
+     * The consumer's streams should be drained first, so no message is processed once its
+     * partition has been revoked. The partitions will be assigned again once the consumer claims
+     * them.
+     *
+     * @see SynchronousConsumer#stop()
+     */
+    public synchronized void revokeAll() {
+        if (owned.isEmpty()) {
+            return;
+        }
+        final Map<String, Set<Integer>> revoking = owned;
+        owned = ImmutableMap.of();
+        revoked(revoking);
+        consumer.commitOffsets();
+    }
+
+    /**
+     * Reads the partitions owned by the consumer, and notifies the listener of any changes.
+     *
+     * @throws KeeperException if the group's registry can't be read.
+     * @throws InterruptedException if interrupted while reading the group's registry.
+     */
+    synchronized void refresh() throws KeeperException, InterruptedException {
+        final ZooKeeper zookeeper = client.get();
+        if (zookeeper == null) {
+            throw new KeeperException.ConnectionLossException();
+        }
+
+        final Map<String, Set<Integer>> current = new HashMap<>();
+        boolean unowned = false;
+        for (final String topic : topics.get()) {
+            final Set<Integer> partitions = new HashSet<>();
+            for (final String partition : children(zookeeper, "/brokers/topics/" + topic
+                    + "/partitions")) {
+                final String path = "/consumers/" + group + "/owners/" + topic + "/" + partition;
+                try {
+                    final String id = new String(zookeeper.getData(path, watcher, null),
+                            StandardCharsets.UTF_8);
+                    if (isOwner(id)) {
+                        partitions.add(Integer.valueOf(partition));
+                    }
+                } catch (final KeeperException.NoNodeException e) {
+                    // watch for the partition to be claimed
+                    unowned = true;
+                    zookeeper.exists(path, watcher);
+                }
+            }
+            if (!partitions.isEmpty()) {
+                current.put(topic, ImmutableSet.copyOf(partitions));
+            }
+        }
+        update(ImmutableMap.copyOf(current), unowned);
+    }
+
+    private boolean isOwner(final String id) {
+        if (!id.startsWith(owner) || id.length() == owner.length()) {
+            return false;
+        }
+        for (int i = owner.length(); i < id.length(); i++) {
+            if (!Character.isDigit(id.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void update(final Map<String, Set<Integer>> current, final boolean unowned) {
+        final Map<String, Set<Integer>> revoking = difference(owned, current);
+        final Map<String, Set<Integer>> assigning = difference(current, owned);
+        owned = current;
+
+        final long now = System.nanoTime();
+        if (rebalanceStart == 0 && (unowned || !revoking.isEmpty())) {
+            rebalanceStart = now;
+        }
+        if (!revoking.isEmpty()) {
+            revoked(revoking);
+        }
+        if (!assigning.isEmpty()) {
+            LOG.info("Partitions assigned: {}", assigning);
+            assigned.inc(count(assigning));
+            try {
+                listener.onPartitionsAssigned(assigning);
+            } catch (final RuntimeException e) {
+                LOG.warn("Error handling assigned partitions: {}", assigning, e);
+            }
+        }
+        if (rebalanceStart != 0 && !unowned) {
+            rebalances.update(now - rebalanceStart, TimeUnit.NANOSECONDS);
+            rebalanceStart = 0;
+        }
+    }
+
+    private void revoked(final Map<String, Set<Integer>> revoking) {
+        LOG.info("Partitions revoked: {}", revoking);
+        revoked.inc(count(revoking));
+        try {
+            listener.onPartitionsRevoked(revoking);
+        } catch (final RuntimeException e) {
+            LOG.warn("Error handling revoked partitions: {}", revoking, e);
+        }
+    }
+
+    private Collection<String> children(final ZooKeeper zookeeper, final String path)
+            throws KeeperException, InterruptedException {
+        try {
+            return zookeeper.getChildren(path, watcher);
+        } catch (final KeeperException.NoNodeException e) {
+            zookeeper.exists(path, watcher);
+            return ImmutableSet.of();
+        }
+    }
+
+    private void refreshLater(final long delay) {
+        if (!running) {
+            return;
+        }
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (!running) {
+                    return;
+                }
+                try {
+                    refresh();
+                } catch (final KeeperException e) {
+                    LOG.warn("Failed to read partition ownership, retrying: {}", e.toString());
+                    refreshLater(RETRY_DELAY_MS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static Map<String, Set<Integer>> difference(final Map<String, Set<Integer>> a,
+                                                        final Map<String, Set<Integer>> b) {
+        final ImmutableMap.Builder<String, Set<Integer>> difference = ImmutableMap.builder();
+        for (final Map.Entry<String, Set<Integer>> e : a.entrySet()) {
+            final Set<Integer> other = b.get(e.getKey());
+            final Set<Integer> partitions = other == null
+                    ? e.getValue()
+                    : Sets.difference(e.getValue(), other).immutableCopy();
+            if (!partitions.isEmpty()) {
+                difference.put(e.getKey(), partitions);
+            }
+        }
+        return difference.build();
+    }
+
+    private static int count(final Map<String, Set<Integer>> partitions) {
+        int count = 0;
+        for (final Set<Integer> p : partitions.values()) {
+            count += p.size();
+        }
+        return count;
+    }
+
+    /**
+     * Re-reads ownership when the group's registry changes, or the client reconnects.
+     */
+    private class OwnershipWatcher implements Watcher {
+
+        @Override
+        public void process(final WatchedEvent event) {
+            if (event.getType() != Event.EventType.None
+                    || event.getState() == Event.KeeperState.SyncConnected
+                    || event.getState() == Event.KeeperState.Expired) {
+                refreshLater(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+/**
+ * A {@link KafkaConsumer} whose consumption may be paused and resumed, without releasing any
+ * partitions.
+ *
+ * @see PauseConsumerTask
+ * @see ResumeConsumerTask
+ * @see HealthBasedPauser
+ */
+public interface PausableConsumer extends KafkaConsumer {
+
+    /**
+     * Pauses consumption, without releasing any partitions.
+     * <p/>
+     * Each stream stops before reading its next message, until the consumer is {@link #resume()
+     * resumed}, so that a degraded downstream may apply backpressure without the consumer failing.
+     */
+    public void pause();
+
+    /**
+     * Resumes consumption after it has been {@link #pause() paused}.
+     */
+    public void resume();
+
+    /**
+     * Determines if this {@link PausableConsumer} is currently paused.
+     *
+     * @return true if this {@link PausableConsumer} is paused; otherwise, false.
+     */
+    public boolean isPaused();
+}
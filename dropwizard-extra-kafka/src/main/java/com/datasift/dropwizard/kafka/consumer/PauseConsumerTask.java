@@ -0,0 +1,36 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import com.google.common.collect.ImmutableMultimap;
+import io.dropwizard.servlets.tasks.Task;
+
+import java.io.PrintWriter;
+
+/**
+ * A {@link Task} to pause a {@link PausableConsumer}, e.g. while a downstream service is degraded.
+ * <p/>
+ * The consumer keeps its partitions while paused, and is resumed by a {@link ResumeConsumerTask}.
+ *
+ * @see PausableConsumer#pause()
+ */
+public class PauseConsumerTask extends Task {
+
+    private final PausableConsumer consumer;
+
+    /**
+     * Creates a {@link Task} to pause the given consumer.
+     *
+     * @param name the name of the task.
+     * @param consumer the consumer to pause.
+     */
+    public PauseConsumerTask(final String name, final PausableConsumer consumer) {
+        super(name);
+        this.consumer = consumer;
+    }
+
+    @Override
+    public void execute(final ImmutableMultimap<String, String> parameters,
+                        final PrintWriter output) throws Exception {
+        consumer.pause();
+        output.println("Paused");
+    }
+}
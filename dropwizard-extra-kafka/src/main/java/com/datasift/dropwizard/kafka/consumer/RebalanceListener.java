@@ -0,0 +1,39 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A callback for the partitions assigned to, and revoked from, a consumer as its group is
+ * rebalanced.
+ * <p/>
+ * A {@link StreamProcessor} that keeps state for each partition, such as caches or aggregates, may
+ * implement this interface to flush the state of partitions before they're revoked, and to keep
+ * the state of partitions that remain assigned across a rebalance, rather than starting cold.
+ * <p/>
+ * <i>Note: callbacks may be made concurrently with the processing of streams.</i>
+ *
+ * @see PartitionOwnershipWatcher
+ */
+public interface RebalanceListener {
+
+    /**
+     * Called when partitions are revoked from the consumer.
+     * <p/>
+     * When the consumer revokes its own partitions, e.g. when it's stopped or rescaled, this is
+     * called before the partitions are released, and the consumed offsets are committed once it
+     * returns, so any state flushed by it is consistent with the committed offsets. When the
+     * group is rebalanced by another consumer, this is called once the partitions have been
+     * released.
+     *
+     * @param partitions a mapping of each topic to its revoked partitions.
+     */
+    public void onPartitionsRevoked(Map<String, Set<Integer>> partitions);
+
+    /**
+     * Called when partitions are assigned to the consumer.
+     *
+     * @param partitions a mapping of each topic to its assigned partitions.
+     */
+    public void onPartitionsAssigned(Map<String, Set<Integer>> partitions);
+}
@@ -0,0 +1,159 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A bounded set of the most recently seen 64-bit fingerprints.
+ * <p/>
+ * Fingerprints are held in primitive arrays: an open-addressed hash table for membership, and a
+ * ring recording the order they were added in. Once full, adding a fingerprint evicts the oldest,
+ * so the set uses a fixed amount of memory, roughly 24 bytes per fingerprint, without allocating
+ * per fingerprint.
+ * <p/>
+ * This class is thread-safe.
+ */
+public class RecentlySeenSet {
+
+    private static final long EMPTY = 0;
+
+    private final long[] ring;
+    private final long[] table;
+    private final int mask;
+
+    private int head = 0;
+    private int size = 0;
+    private boolean containsEmpty = false;
+
+    /**
+     * Creates a set that holds up to the given number of fingerprints.
+     *
+     * @param capacity the maximum number of fingerprints to hold.
+     *
+     * @throws IllegalArgumentException if the capacity is less than 1, or too large.
+     */
+    public RecentlySeenSet(final int capacity) {
+        checkArgument(capacity >= 1, "capacity must be at least 1");
+        checkArgument(capacity <= 1 << 29, "capacity must be at most 2^29");
+        this.ring = new long[capacity];
+        // keep the table at most half full, so probes stay short
+        this.table = new long[Integer.highestOneBit(capacity * 2 - 1) << 1];
+        this.mask = table.length - 1;
+    }
+
+    /**
+     * Returns the maximum number of fingerprints held by this set.
+     *
+     * @return the capacity of this set.
+     */
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    /**
+     * Returns the number of fingerprints held by this set.
+     *
+     * @return the size of this set.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Determines whether a fingerprint has been recently seen.
+     *
+     * @param fingerprint the fingerprint to check.
+     *
+     * @return true if the fingerprint is in this set; otherwise, false.
+     */
+    public synchronized boolean contains(final long fingerprint) {
+        return fingerprint == EMPTY ? containsEmpty : find(fingerprint) >= 0;
+    }
+
+    /**
+     * Adds a fingerprint to this set, evicting the oldest fingerprint if it's full.
+     *
+     * @param fingerprint the fingerprint to add.
+     *
+     * @return true if the fingerprint was added; false if it was already in this set.
+     */
+    public synchronized boolean add(final long fingerprint) {
+        if (contains(fingerprint)) {
+            return false;
+        }
+        if (size == ring.length) {
+            remove(ring[head]);
+        } else {
+            size++;
+        }
+        ring[head] = fingerprint;
+        head = (head + 1) % ring.length;
+
+        if (fingerprint == EMPTY) {
+            containsEmpty = true;
+        } else {
+            int i = slot(fingerprint);
+            while (table[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            table[i] = fingerprint;
+        }
+        return true;
+    }
+
+    private int find(final long fingerprint) {
+        int i = slot(fingerprint);
+        while (table[i] != EMPTY) {
+            if (table[i] == fingerprint) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void remove(final long fingerprint) {
+        if (fingerprint == EMPTY) {
+            containsEmpty = false;
+            return;
+        }
+
+        int i = find(fingerprint);
+        table[i] = EMPTY;
+
+        // shift back any following entries that can no longer be reached from their slot
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (table[j] == EMPTY) {
+                return;
+            }
+            final int k = slot(table[j]);
+            if (i <= j ? (k <= i || k > j) : (k <= i && k > j)) {
+                table[i] = table[j];
+                table[j] = EMPTY;
+                i = j;
+            }
+        }
+    }
+
+    private int slot(final long fingerprint) {
+        return (int) (mix(fingerprint) & mask);
+    }
+
+    /**
+     * Mixes the bits of a 64-bit value, so that similar values are spread evenly.
+     *
+     * @param value the value to mix.
+     *
+     * @return the mixed value.
+     */
+    static long mix(final long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
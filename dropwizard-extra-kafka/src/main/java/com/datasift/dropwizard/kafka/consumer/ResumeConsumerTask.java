@@ -0,0 +1,35 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import com.google.common.collect.ImmutableMultimap;
+import io.dropwizard.servlets.tasks.Task;
+
+import java.io.PrintWriter;
+
+/**
+ * A {@link Task} to resume a {@link PausableConsumer} after it has been paused.
+ *
+ * @see PausableConsumer#resume()
+ * @see PauseConsumerTask
+ */
+public class ResumeConsumerTask extends Task {
+
+    private final PausableConsumer consumer;
+
+    /**
+     * Creates a {@link Task} to resume the given consumer.
+     *
+     * @param name the name of the task.
+     * @param consumer the consumer to resume.
+     */
+    public ResumeConsumerTask(final String name, final PausableConsumer consumer) {
+        super(name);
+        this.consumer = consumer;
+    }
+
+    @Override
+    public void execute(final ImmutableMultimap<String, String> parameters,
+                        final PrintWriter output) throws Exception {
+        consumer.resume();
+        output.println("Resumed");
+    }
+}
@@ -0,0 +1,66 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import com.google.common.collect.ImmutableCollection;
+import com.google.common.collect.ImmutableMultimap;
+import io.dropwizard.servlets.tasks.Task;
+
+import java.io.PrintWriter;
+import java.util.Map;
+
+/**
+ * A {@link Task} to change the number of streams a {@link SynchronousConsumer} consumes from a
+ * topic, while it's running.
+ * <p/>
+ * The task takes a {@code topic} and the number of {@code streams} to consume from it, e.g.
+ * {@code POST /tasks/<name>?topic=events&streams=8}. Without parameters, the current number of
+ * streams consumed from each topic is reported, without changing them.
+ *
+ * @see SynchronousConsumer#setStreams(String, int)
+ */
+public class ScaleStreamsTask extends Task {
+
+    private final SynchronousConsumer<?, ?> consumer;
+
+    /**
+     * Creates a {@link Task} to change the number of streams of the given consumer.
+     *
+     * @param name the name of the task.
+     * @param consumer the consumer to change the number of streams of.
+     */
+    public ScaleStreamsTask(final String name, final SynchronousConsumer<?, ?> consumer) {
+        super(name);
+        this.consumer = consumer;
+    }
+
+    @Override
+    public void execute(final ImmutableMultimap<String, String> parameters,
+                        final PrintWriter output) throws Exception {
+        final ImmutableCollection<String> topics = parameters.get("topic");
+        final ImmutableCollection<String> streams = parameters.get("streams");
+
+        if (!topics.isEmpty() || !streams.isEmpty()) {
+            if (topics.size() != 1 || streams.size() != 1) {
+                output.println("Specify exactly one topic and number of streams");
+                return;
+            }
+
+            final int count;
+            try {
+                count = Integer.parseInt(streams.iterator().next());
+            } catch (final NumberFormatException e) {
+                output.println("Invalid number of streams: " + streams.iterator().next());
+                return;
+            }
+            if (count < 0) {
+                output.println("Number of streams must not be negative: " + count);
+                return;
+            }
+
+            consumer.setStreams(topics.iterator().next(), count);
+        }
+
+        for (final Map.Entry<String, Integer> e : consumer.getPartitions().entrySet()) {
+            output.println(e.getKey() + ": " + e.getValue());
+        }
+    }
+}
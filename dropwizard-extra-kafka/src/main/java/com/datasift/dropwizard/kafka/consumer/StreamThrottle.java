@@ -0,0 +1,303 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import com.codahale.metrics.Timer;
+import kafka.message.Message;
+import kafka.message.MessageAndMetadata;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Controls the rate at which the streams of a consumer are iterated.
+ * <p/>
+ * Streams are gated by wrapping them in an {@link Iterable} that blocks while the throttle is
+ * paused, and waits on {@link TokenBucket}s limiting the rate of messages and bytes, both for the
+ * consumer as a whole and for each topic. Streams wait once their next message is available, but
+ * before it's read. Messages are only counted against the rate of bytes once they've been read,
+ * as their size isn't known until then, so a message in excess of the rate is processed, and the
+ * next message waits until the excess has been repaid.
+ * <p/>
+ * The size of a message is the size of its raw, encoded form, including its key and headers.
+ * <p/>
+ * Waiting threads are parked, rather than spinning, and are released when the throttle is
+ * resumed or closed, or its rates are changed.
+ */
+public class StreamThrottle {
+
+    // the index of the raw message among the fields of a MessageAndMetadata
+    private static final int RAW_MESSAGE = 2;
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition resumed = lock.newCondition();
+
+    private final TokenBucket messages = new TokenBucket(0);
+    private final TokenBucket bytes = new TokenBucket(0);
+    private final ConcurrentMap<String, TokenBucket> topicMessages = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, TokenBucket> topicBytes = new ConcurrentHashMap<>();
+
+    private final Timer throttled;
+
+    private volatile boolean paused = false;
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a throttle that doesn't limit its streams until paused or given a rate.
+     *
+     * @param throttled a {@link Timer} to record the time streams spend waiting with.
+     */
+    public StreamThrottle(final Timer throttled) {
+        this.throttled = throttled;
+    }
+
+    /**
+     * Pauses all gated streams, before they read their next message.
+     */
+    public void pause() {
+        paused = true;
+    }
+
+    /**
+     * Resumes all paused streams.
+     */
+    public void resume() {
+        lock.lock();
+        try {
+            paused = false;
+            resumed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Determines whether the streams are paused.
+     *
+     * @return true if the streams are paused; otherwise, false.
+     */
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Sets the maximum rate at which messages are consumed.
+     *
+     * @param topic the topic to limit; or null to limit the consumer as a whole.
+     * @param messagesPerSecond the maximum number of messages per-second; or 0 for no limit.
+     * @param bytesPerSecond the maximum number of bytes per-second; or 0 for no limit.
+     *
+     * @throws IllegalArgumentException if either rate is negative.
+     */
+    public void setRate(final String topic,
+                        final double messagesPerSecond,
+                        final long bytesPerSecond) {
+        if (messagesPerSecond < 0 || bytesPerSecond < 0) {
+            throw new IllegalArgumentException("Rates must not be negative");
+        }
+        if (topic == null) {
+            messages.setRate(messagesPerSecond);
+            bytes.setRate(bytesPerSecond);
+        } else {
+            bucket(topicMessages, topic).setRate(messagesPerSecond);
+            bucket(topicBytes, topic).setRate(bytesPerSecond);
+        }
+    }
+
+    /**
+     * Returns the maximum rate at which messages are consumed.
+     *
+     * @param topic the topic to get the rate of; or null for the consumer as a whole.
+     *
+     * @return the maximum number of messages per-second; or 0 if there is no limit.
+     */
+    public double getMessageRate(final String topic) {
+        return topic == null ? messages.getRate() : bucket(topicMessages, topic).getRate();
+    }
+
+    /**
+     * Returns the maximum rate at which bytes are consumed.
+     *
+     * @param topic the topic to get the rate of; or null for the consumer as a whole.
+     *
+     * @return the maximum number of bytes per-second; or 0 if there is no limit.
+     */
+    public long getByteRate(final String topic) {
+        final TokenBucket bucket = topic == null ? bytes : bucket(topicBytes, topic);
+        return (long) bucket.getRate();
+    }
+
+    /**
+     * Closes this throttle, releasing all waiting streams and no longer limiting them.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            resumed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        messages.close();
+        bytes.close();
+        for (final TokenBucket bucket : topicMessages.values()) {
+            bucket.close();
+        }
+        for (final TokenBucket bucket : topicBytes.values()) {
+            bucket.close();
+        }
+    }
+
+    /**
+     * Reopens a closed throttle, so that streams gated by it are paused and limited again, at the
+     * rates set before it was closed.
+     */
+    public void open() {
+        lock.lock();
+        try {
+            closed = false;
+            messages.open();
+            bytes.open();
+            for (final TokenBucket bucket : topicMessages.values()) {
+                bucket.open();
+            }
+            for (final TokenBucket bucket : topicBytes.values()) {
+                bucket.open();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gates a stream of messages from a topic.
+     *
+     * @param stream the stream to gate.
+     * @param topic the topic the stream consumes from.
+     * @param <K> the type of the message keys.
+     * @param <V> the type of the messages.
+     *
+     * @return an {@link Iterable} of the stream that waits while paused or throttled.
+     */
+    public <K, V> Iterable<MessageAndMetadata<K, V>> gate(
+            final Iterable<MessageAndMetadata<K, V>> stream,
+            final String topic) {
+        final TokenBucket topicMessages = bucket(this.topicMessages, topic);
+        final TokenBucket topicBytes = bucket(this.topicBytes, topic);
+        return new Iterable<MessageAndMetadata<K, V>>() {
+            @Override
+            public Iterator<MessageAndMetadata<K, V>> iterator() {
+                final Iterator<MessageAndMetadata<K, V>> it = stream.iterator();
+                return new Iterator<MessageAndMetadata<K, V>>() {
+
+                    private boolean admitted = false;
+                    private long waited = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        if (!it.hasNext()) {
+                            return false;
+                        }
+                        admit();
+                        return true;
+                    }
+
+                    @Override
+                    public MessageAndMetadata<K, V> next() {
+                        admit();
+                        admitted = false;
+
+                        final MessageAndMetadata<K, V> message = it.next();
+                        final long size = size(message);
+
+                        try {
+                            waited += bytes.acquire(size);
+                            waited += topicBytes.acquire(size);
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+
+                        if (waited > 0) {
+                            throttled.update(waited, TimeUnit.NANOSECONDS);
+                        }
+                        waited = 0;
+                        return message;
+                    }
+
+                    /**
+                     * Waits while paused, or while the rate of messages is exceeded. This is done
+                     * once the next message is available, but before it's read, so any lock the
+                     * processor holds while reading a message isn't held while waiting.
+                     */
+                    private void admit() {
+                        if (admitted) {
+                            return;
+                        }
+                        admitted = true;
+                        try {
+                            waited += awaitResumed();
+                            waited += messages.acquire(1);
+                            waited += topicMessages.acquire(1);
+                        } catch (final InterruptedException e) {
+                            // the stream is being shut down; stop waiting and let it end
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+
+                    @Override
+                    public void remove() {
+                        it.remove();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Returns the size of a raw message.
+     * <p/>
+     * The key and value of a message are only decoded when they're accessed, so the size of the
+     * message is read from the raw message. The Java API doesn't otherwise expose it, so it's read
+     * as the {@link #RAW_MESSAGE third field} of the {@link MessageAndMetadata} case class.
+     */
+    private static long size(final MessageAndMetadata<?, ?> message) {
+        final Object raw = message.productElement(RAW_MESSAGE);
+        return raw instanceof Message ? ((Message) raw).size() : 0;
+    }
+
+    private long awaitResumed() throws InterruptedException {
+        if (!paused || closed) {
+            return 0;
+        }
+        final long start = System.nanoTime();
+        lock.lock();
+        try {
+            while (paused && !closed) {
+                resumed.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private TokenBucket bucket(final ConcurrentMap<String, TokenBucket> buckets,
+                               final String topic) {
+        final TokenBucket bucket = buckets.get(topic);
+        if (bucket != null) {
+            return bucket;
+        }
+        final TokenBucket created = new TokenBucket(0);
+        final TokenBucket existing = buckets.putIfAbsent(topic, created);
+        if (existing != null) {
+            return existing;
+        }
+        if (closed) {
+            created.close();
+        }
+        return created;
+    }
+}
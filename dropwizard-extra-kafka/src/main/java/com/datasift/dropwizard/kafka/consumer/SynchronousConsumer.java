@@ -1,31 +1,108 @@
 package com.datasift.dropwizard.kafka.consumer;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableMap;
 import io.dropwizard.lifecycle.Managed;
 import io.dropwizard.lifecycle.ServerLifecycleListener;
 import io.dropwizard.util.Duration;
 import kafka.consumer.KafkaStream;
 import kafka.javaapi.consumer.ConsumerConnector;
+import kafka.message.MessageAndMetadata;
 import kafka.serializer.Decoder;
 import org.eclipse.jetty.server.Server;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
 
 /**
  * A {@link KafkaConsumer} that processes messages synchronously using an {@link ExecutorService}.
+ * <p/>
+ * When processing of a stream fails with a recoverable error, the stream is rescheduled on the
+ * executor after an exponentially increasing, jittered delay; no thread is held while the stream
+ * backs off, so one failing stream can't starve the others of threads. The following metrics are
+ * registered for each stream, named <i>name</i>.<i>topic</i>.<i>stream</i>:
+ * <ul>
+ *     <li><i>restarts</i>: the number of times the stream has been restarted after an error,</li>
+ *     <li><i>attempts</i>: the number of consecutive recovery attempts made for the stream,</li>
+ *     <li><i>backoff</i>: the time, in milliseconds, until the stream is restarted; or 0, if it's
+ *     not backing off.</li>
+ * </ul>
+ * Additionally, <i>name</i>.backingOff reports the number of streams that are backing off, and
+ * <i>name</i>.fatalErrors the number of unrecoverable errors that have stopped the consumer.
+ * <p/>
+ * Consumption may be {@link #pause() paused} and {@link #resume() resumed}, and the rate of
+ * messages and bytes consumed may be {@link #setRate(String, double, long) limited}, for the
+ * consumer as a whole or for each topic, by a {@link StreamThrottle}; <i>name</i>.paused reports
+ * whether the consumer is paused, and <i>name</i>.throttled the time streams spend waiting.
+ * <p/>
+ * If a {@link TopicScheduler} is {@link #setScheduler(TopicScheduler) set}, streams of all topics
+ * share its slots to process messages, so that a flood of messages on one topic can't slow the
+ * processing of more important topics. A stream only queues for a slot once its throttle has let
+ * its next message through, so a paused or throttled topic doesn't hold slots.
+ * <p/>
+ * An unrecoverable error immediately marks the consumer as no longer running, failing its health
+ * check, and shuts it down, releasing its partitions so they may be rebalanced to healthy
+ * consumers in the group.
+ * <p/>
+ * The number of streams consumed from each topic may be changed while the consumer is running,
+ * by {@link #rescale(Map) rescaling} it, e.g. with a {@link ScaleStreamsTask} or a {@link
+ * LagBasedStreamScaler}.
+ * <p/>
+ * If a {@link PartitionOwnershipWatcher} is {@link #setPartitionWatcher(PartitionOwnershipWatcher)
+ * set}, it's started and stopped with the consumer, and all partitions are revoked from it, and
+ * the consumed offsets committed, before the consumer releases them when it's stopped or
+ * rescaled.
+ * <p/>
+ * Before the consumer is stopped or rescaled, its streams are drained: each stream holds a lock
+ * from reading a message until it asks for the next, so the consumer waits for the messages being
+ * processed to complete, and the streams end before reading another message. Only then are the
+ * partitions revoked, the offsets committed and the streams shut down, so no message is processed
+ * once its partition has been revoked. Processors that hand messages off to other threads must
+ * complete them before returning from {@link RebalanceListener#onPartitionsRevoked(Map)}.
  */
-public class SynchronousConsumer<K, V> implements KafkaConsumer, Managed, ServerLifecycleListener {
+public class SynchronousConsumer<K, V> implements PausableConsumer, Managed,
+        ServerLifecycleListener {
 
     private final Logger LOG = LoggerFactory.getLogger(getClass());
 
-    private final ConsumerConnector connector;
-    private final Map<String, Integer> partitions;
+    // a single thread, shared by all consumers, to handle unrecoverable errors in stream consumers;
+    // the thread is only alive while handling an error
+    private static final ExecutorService SUPERVISOR = new ThreadPoolExecutor(
+            0, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactoryBuilder()
+                    .setNameFormat("kafka-unrecoverable-error-handler-%d")
+                    .setDaemon(true)
+                    .build());
+
+    private final Supplier<ConsumerConnector> connectors;
     private final ScheduledExecutorService executor;
     private final Decoder<K> keyDecoder;
     private final Decoder<V> valueDecoder;
@@ -36,36 +113,25 @@ public class SynchronousConsumer<K, V> implements KafkaConsumer, Managed, Server
     private final int maxRecoveryAttempts;
     private final boolean shutdownOnFatal;
     private final Duration startDelay;
+    private final MetricRegistry registry;
+    private final String name;
+    private final AtomicInteger backingOff = new AtomicInteger();
+    private final StreamThrottle throttle;
 
-    private Server server = null;
-    private boolean fatalErrorOccurred = false;
+    private final Counter fatalErrors;
+    private final AtomicBoolean fatalErrorOccurred = new AtomicBoolean(false);
 
-    // a thread to asynchronously handle unrecoverable errors in the stream consumer
-    private final Thread shutdownThread = new Thread("kafka-unrecoverable-error-handler"){
-        public void run() {
-            while (true) {
-                try {
-                    Thread.sleep(10000);
-                } catch (final InterruptedException e) {
-                    // stop sleeping
-                }
-                if (fatalErrorOccurred) {
-                    try {
-                        if (shutdownOnFatal && server != null) {
-                            // shutdown the full service
-                            // note: shuts down the consumer as it's Managed by the Environment
-                            server.stop();
-                        } else {
-                            // just shutdown the consumer
-                            SynchronousConsumer.this.stop();
-                        }
-                    } catch (Exception e) {
-                        LOG.error("Error occurred while attempting emergency shut down.", e);
-                    }
-                }
-            }
-        }
-    };
+    private final Set<String> streamMetrics = new HashSet<>();
+    private final ReadWriteLock draining = new ReentrantReadWriteLock();
+
+    private volatile ConsumerConnector connector;
+    private volatile Map<String, Integer> partitions;
+    private volatile int generation = 0;
+    private volatile boolean stopped = false;
+    private volatile Server server = null;
+    private volatile PartitionOwnershipWatcher partitionWatcher = null;
+    private volatile TopicScheduler scheduler = null;
+    private volatile Throwable fatalError = null;
 
     /**
      * Creates a {@link SynchronousConsumer} to process a stream.
@@ -89,7 +155,46 @@ public class SynchronousConsumer<K, V> implements KafkaConsumer, Managed, Server
                                final int maxRecoveryAttempts,
                                final boolean shutdownOnFatal,
                                final Duration startDelay) {
-        this.connector = connector;
+        this(Suppliers.ofInstance(connector), partitions, keyDecoder, valueDecoder, processor,
+                executor, initialRecoveryDelay, maxRecoveryDelay, retryResetDelay,
+                maxRecoveryAttempts, shutdownOnFatal, startDelay, new MetricRegistry(),
+                "kafka-consumer");
+    }
+
+    /**
+     * Creates a {@link SynchronousConsumer} to process a stream, registering metrics for each
+     * stream with the given {@link MetricRegistry}.
+     * <p/>
+     * A {@link ConsumerConnector} is obtained from the given {@link Supplier} immediately, and
+     * again each time the consumer is {@link #rescale(Map) rescaled}, or restarted, as the streams
+     * of a {@link ConsumerConnector} may only be created once.
+     *
+     * @param connectors a {@link Supplier} of {@link ConsumerConnector}s for the underlying
+     *                   consumer.
+     * @param partitions a mapping of the topic -> partitions to consume.
+     * @param keyDecoder a {@link Decoder} for decoding the key of each message before being processed.
+     * @param valueDecoder a {@link Decoder} for decoding each message before being processed.
+     * @param processor a {@link StreamProcessor} for processing messages.
+     * @param executor the {@link ExecutorService} to process the stream with.
+     * @param registry the {@link MetricRegistry} to register metrics for each stream with.
+     * @param name the name of the consumer, to prefix its metrics with.
+     */
+    public SynchronousConsumer(final Supplier<ConsumerConnector> connectors,
+                               final Map<String, Integer> partitions,
+                               final Decoder<K> keyDecoder,
+                               final Decoder<V> valueDecoder,
+                               final StreamProcessor<K, V> processor,
+                               final ScheduledExecutorService executor,
+                               final Duration initialRecoveryDelay,
+                               final Duration maxRecoveryDelay,
+                               final Duration retryResetDelay,
+                               final int maxRecoveryAttempts,
+                               final boolean shutdownOnFatal,
+                               final Duration startDelay,
+                               final MetricRegistry registry,
+                               final String name) {
+        this.connectors = connectors;
+        this.connector = connectors.get();
         this.partitions = partitions;
         this.keyDecoder = keyDecoder;
         this.valueDecoder = valueDecoder;
@@ -101,9 +206,27 @@ public class SynchronousConsumer<K, V> implements KafkaConsumer, Managed, Server
         this.maxRecoveryAttempts = maxRecoveryAttempts;
         this.shutdownOnFatal = shutdownOnFatal;
         this.startDelay = startDelay;
+        this.registry = registry;
+        this.name = name;
 
-        shutdownThread.setDaemon(true);
-        shutdownThread.start();
+        this.fatalErrors = new Counter();
+        register(MetricRegistry.name(name, "fatalErrors"), fatalErrors);
+        register(MetricRegistry.name(name, "backingOff"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return backingOff.get();
+            }
+        });
+
+        final Timer throttled = new Timer();
+        register(MetricRegistry.name(name, "throttled"), throttled);
+        register(MetricRegistry.name(name, "paused"), new Gauge<Boolean>() {
+            @Override
+            public Boolean getValue() {
+                return isPaused();
+            }
+        });
+        this.throttle = new StreamThrottle(throttled);
     }
 
     /**
@@ -113,6 +236,86 @@ public class SynchronousConsumer<K, V> implements KafkaConsumer, Managed, Server
         connector.commitOffsets();
     }
 
+    /**
+     * Pauses consumption; each stream stops before reading its next message.
+     */
+    @Override
+    public void pause() {
+        LOG.info("Pausing consumer");
+        throttle.pause();
+    }
+
+    /**
+     * Resumes consumption after it has been paused.
+     */
+    @Override
+    public void resume() {
+        LOG.info("Resuming consumer");
+        throttle.resume();
+    }
+
+    @Override
+    public boolean isPaused() {
+        return throttle.isPaused();
+    }
+
+    /**
+     * Limits the rate at which messages are consumed.
+     *
+     * @param topic the topic to limit; or null to limit the consumer as a whole.
+     * @param messagesPerSecond the maximum number of messages per-second; or 0 for no limit.
+     * @param bytesPerSecond the maximum number of bytes per-second; or 0 for no limit.
+     *
+     * @throws IllegalArgumentException if either rate is negative.
+     */
+    public void setRate(final String topic,
+                        final double messagesPerSecond,
+                        final long bytesPerSecond) {
+        LOG.info("Limiting {} to {} messages/s and {} bytes/s",
+                topic == null ? "consumer" : "topic '" + topic + "'",
+                messagesPerSecond, bytesPerSecond);
+        throttle.setRate(topic, messagesPerSecond, bytesPerSecond);
+    }
+
+    /**
+     * Returns the {@link StreamThrottle} that controls the rate of consumption.
+     *
+     * @return the throttle of the consumer's streams.
+     */
+    public StreamThrottle getThrottle() {
+        return throttle;
+    }
+
+    /**
+     * Sets the {@link PartitionOwnershipWatcher} that notifies the processor of the partitions
+     * assigned to, and revoked from, this consumer.
+     *
+     * @param partitionWatcher the watcher of the partitions owned by this consumer.
+     */
+    public void setPartitionWatcher(final PartitionOwnershipWatcher partitionWatcher) {
+        this.partitionWatcher = partitionWatcher;
+    }
+
+    /**
+     * Sets the {@link TopicScheduler} that schedules the processing of messages across topics.
+     * <p/>
+     * The scheduler applies to streams started after it has been set.
+     *
+     * @param scheduler the scheduler of the processing of messages across topics.
+     */
+    public void setScheduler(final TopicScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Returns the {@link TopicScheduler} that schedules the processing of messages across topics.
+     *
+     * @return the scheduler of the consumer's streams; or null, if they're not scheduled.
+     */
+    public TopicScheduler getScheduler() {
+        return scheduler;
+    }
+
     @Override
     public void serverStarted(final Server server) {
         this.server = server;
@@ -126,11 +329,130 @@ public class SynchronousConsumer<K, V> implements KafkaConsumer, Managed, Server
      * messages.
      * <p/>
      * Each partition will be consumed using a separate thread.
+     * <p/>
+     * If the consumer has been {@link #stop() stopped}, it's restarted with a new {@link
+     * ConsumerConnector}, and its throttle and scheduler are reopened, so the pauses, rates and
+     * weights set before it was stopped apply again.
      *
      * @throws Exception if an error occurs starting the consumer
      */
     @Override
-    public void start() throws Exception {
+    public synchronized void start() throws Exception {
+        if (stopped) {
+            // the connector was shut down, and the streams released, when the consumer stopped
+            connector = connectors.get();
+            throttle.open();
+            final TopicScheduler scheduler = this.scheduler;
+            if (scheduler != null) {
+                scheduler.open();
+            }
+        }
+        stopped = false;
+        startStreams();
+        final PartitionOwnershipWatcher partitionWatcher = this.partitionWatcher;
+        if (partitionWatcher != null) {
+            partitionWatcher.start();
+        }
+    }
+
+    /**
+     * Returns the number of streams consumed from each topic.
+     *
+     * @return a mapping of each topic to the number of streams consumed from it.
+     */
+    public Map<String, Integer> getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * Changes the number of streams consumed from a topic.
+     *
+     * @param topic the topic to change the number of streams of.
+     * @param streams the number of streams to consume from the topic; or 0 to stop consuming it.
+     *
+     * @throws IllegalArgumentException if the number of streams is negative.
+     * @throws IllegalStateException if the consumer can't be rescaled.
+     *
+     * @see #rescale(Map)
+     */
+    public synchronized void setStreams(final String topic, final int streams) {
+        final Map<String, Integer> partitions = new HashMap<>(this.partitions);
+        partitions.put(topic, streams);
+        rescale(partitions);
+    }
+
+    /**
+     * Changes the number of streams consumed from each topic, while the consumer is running.
+     * <p/>
+     * The streams of a {@link ConsumerConnector} can't be changed once created, so the current
+     * connector is shut down, releasing its partitions, and a new connector is created with the
+     * new streams, which triggers a rebalance of the consumer group. Offsets are committed when
+     * the current connector is shut down if, and only if, they're committed automatically, or a
+     * {@link PartitionOwnershipWatcher} is set.
+     * <p/>
+     * If the executor is a {@link ThreadPoolExecutor} with fewer threads than there are streams,
+     * it's grown to one thread per stream.
+     * <p/>
+     * Once the consumer has been {@link #stop() stopped}, it's no longer rescaled, so a scaler
+     * that races with the consumer being stopped can't restart its streams.
+     *
+     * @param partitions a mapping of each topic to the number of streams to consume from it;
+     *                   topics mapped to no streams are not consumed.
+     *
+     * @throws IllegalArgumentException if the number of streams for a topic is negative.
+     * @throws IllegalStateException if the consumer has failed, or it can't create a new
+     *                               {@link ConsumerConnector}.
+     */
+    public synchronized void rescale(final Map<String, Integer> partitions) {
+        final ImmutableMap.Builder<String, Integer> streams = ImmutableMap.builder();
+        for (final Map.Entry<String, Integer> e : partitions.entrySet()) {
+            checkArgument(e.getValue() >= 0,
+                    "Number of streams for topic '%s' must not be negative", e.getKey());
+            if (e.getValue() > 0) {
+                streams.put(e.getKey(), e.getValue());
+            }
+        }
+        checkState(!fatalErrorOccurred.get(), "Consumer has failed and can't be rescaled");
+        if (stopped) {
+            LOG.info("Consumer has been stopped; not rescaling to {}", streams.build());
+            return;
+        }
+
+        final ConsumerConnector next = connectors.get();
+        checkState(next != connector, "Consumer can't create a new connector to rescale with");
+
+        LOG.info("Rescaling consumer from {} to {} streams", this.partitions, streams.build());
+        shutdownStreams();
+        for (final String metric : streamMetrics) {
+            registry.remove(metric);
+        }
+        streamMetrics.clear();
+
+        this.connector = next;
+        this.partitions = streams.build();
+        startStreams();
+    }
+
+    /**
+     * Creates the streams of the current connector, and schedules them to be processed.
+     * <p/>
+     * Streams belong to a generation, so that streams of a previous connector that are still
+     * backing off are abandoned.
+     */
+    private void startStreams() {
+        final int generation = ++this.generation;
+
+        int threads = 0;
+        for (final Integer p : partitions.values()) {
+            threads = threads + p;
+        }
+        if (executor instanceof ThreadPoolExecutor) {
+            final ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+            if (pool.getCorePoolSize() < threads) {
+                pool.setCorePoolSize(threads);
+            }
+        }
+
         final Set<Map.Entry<String, List<KafkaStream<K, V>>>> streams =
                 connector.createMessageStreams(partitions, keyDecoder, valueDecoder).entrySet();
 
@@ -140,9 +462,10 @@ public class SynchronousConsumer<K, V> implements KafkaConsumer, Managed, Server
 
             LOG.info("Consuming from topic '{}' with {} threads", topic, messageStreams.size());
 
+            int id = 0;
             for (final KafkaStream<K, V> stream : messageStreams) {
                 executor.schedule(
-                        new StreamProcessorRunnable(topic, stream),
+                        new StreamProcessorRunnable(generation, topic, id++, stream),
                         startDelay.getQuantity(),
                         startDelay.getUnit());
             }
@@ -151,14 +474,58 @@ public class SynchronousConsumer<K, V> implements KafkaConsumer, Managed, Server
 
     /**
      * Stops this {@link SynchronousConsumer} immediately.
+     * <p/>
+     * The consumer is stopped under the same lock as it's rescaled, so it may not be rescaled
+     * while, or after, it's stopped.
      *
      * @throws Exception
      */
     @Override
-    public void stop() throws Exception {
-        LOG.trace("Shutting down Connector");
-        connector.shutdown();
-        LOG.trace("Connector shut down");
+    public synchronized void stop() throws Exception {
+        stopped = true;
+        // release any paused or throttled streams, so they may see the end of their stream
+        throttle.close();
+        final TopicScheduler scheduler = this.scheduler;
+        if (scheduler != null) {
+            scheduler.close();
+        }
+        shutdownStreams();
+        final PartitionOwnershipWatcher partitionWatcher = this.partitionWatcher;
+        if (partitionWatcher != null) {
+            partitionWatcher.stop();
+        }
+    }
+
+    /**
+     * Drains the streams of the current connector, then revokes all partitions and commits the
+     * consumed offsets, before shutting the connector down.
+     * <p/>
+     * Streams of a previous generation end before reading their next message, so no message is
+     * read once its partition has been revoked.
+     */
+    private void shutdownStreams() {
+        final Lock lock = draining.writeLock();
+        lock.lock();
+        try {
+            generation++;
+            revokeAll();
+            LOG.trace("Shutting down Connector");
+            connector.shutdown();
+            LOG.trace("Connector shut down");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Revokes all partitions before they're released, so the processor may flush its state for
+     * them, and commits the consumed offsets.
+     */
+    private void revokeAll() {
+        final PartitionOwnershipWatcher partitionWatcher = this.partitionWatcher;
+        if (partitionWatcher != null) {
+            partitionWatcher.revokeAll();
+        }
     }
 
     /**
@@ -168,12 +535,68 @@ public class SynchronousConsumer<K, V> implements KafkaConsumer, Managed, Server
      *         partition; otherwise, false.
      */
     public boolean isRunning() {
-        return !executor.isShutdown() && !executor.isTerminated() && !fatalErrorOccurred;
+        return !executor.isShutdown() && !executor.isTerminated() && !fatalErrorOccurred.get();
+    }
+
+    /**
+     * Registers a metric, replacing any metric previously registered with the same name, such as
+     * by a previous run of the consumer.
+     */
+    private void register(final String metricName, final Metric metric) {
+        registry.remove(metricName);
+        registry.register(metricName, metric);
+    }
+
+    /**
+     * Registers a metric for a stream, to be removed when the stream is replaced.
+     */
+    private synchronized void registerStream(final String metricName, final Metric metric) {
+        register(metricName, metric);
+        streamMetrics.add(metricName);
+    }
+
+    /**
+     * Returns the unrecoverable error that stopped this consumer, if any.
+     *
+     * @return the error that stopped this consumer; or null, if it has not failed.
+     */
+    public Throwable getFatalError() {
+        return fatalError;
     }
 
-    private void fatalError() {
-        this.fatalErrorOccurred = true;
-        this.shutdownThread.interrupt();
+    /**
+     * Handles an unrecoverable error in a stream consumer.
+     * <p/>
+     * The consumer is immediately marked as no longer running, and is shut down, releasing its
+     * partitions to the other consumers in the group, on the shared supervisor thread, as the
+     * stream's own thread may be stopped by the shutdown. If configured to, the whole server is
+     * shut down instead. Only the first error is handled.
+     */
+    private void fatalError(final Throwable e) {
+        if (!fatalErrorOccurred.compareAndSet(false, true)) {
+            return;
+        }
+        fatalError = e;
+        fatalErrors.inc();
+
+        SUPERVISOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final Server server = SynchronousConsumer.this.server;
+                    if (shutdownOnFatal && server != null) {
+                        // shutdown the full service
+                        // note: shuts down the consumer as it's Managed by the Environment
+                        server.stop();
+                    } else {
+                        // just shutdown the consumer
+                        SynchronousConsumer.this.stop();
+                    }
+                } catch (final Exception e) {
+                    LOG.error("Error occurred while attempting emergency shut down.", e);
+                }
+            }
+        });
     }
 
     /**
@@ -183,20 +606,45 @@ public class SynchronousConsumer<K, V> implements KafkaConsumer, Managed, Server
      */
     private class StreamProcessorRunnable implements Runnable {
 
+        private final int generation;
         private final KafkaStream<K, V> stream;
         private final String topic;
-        private int attempts = 0;
-        private long lastErrorTimestamp = 0;
+        private final Counter restarts;
+        private volatile int attempts = 0;
+        private volatile long restartTimestamp = 0;
+        private volatile long lastRestartTimestamp = 0;
 
         /**
          * Creates a {@link StreamProcessorRunnable} for the given topic and stream.
          *
+         * @param generation the generation of the streams the stream belongs to.
          * @param topic the topic the {@link KafkaStream} belongs to.
+         * @param id the index of the stream within the topic.
          * @param stream a stream of {@link kafka.message.Message}s in the topic.
          */
-        public StreamProcessorRunnable(final String topic, final KafkaStream<K, V> stream) {
+        public StreamProcessorRunnable(final int generation,
+                                       final String topic,
+                                       final int id,
+                                       final KafkaStream<K, V> stream) {
+            this.generation = generation;
             this.topic = topic;
             this.stream = stream;
+
+            final String prefix = MetricRegistry.name(name, topic, String.valueOf(id));
+            this.restarts = new Counter();
+            registerStream(MetricRegistry.name(prefix, "restarts"), restarts);
+            registerStream(MetricRegistry.name(prefix, "attempts"), new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    return attempts;
+                }
+            });
+            registerStream(MetricRegistry.name(prefix, "backoff"), new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return Math.max(0, restartTimestamp - System.currentTimeMillis());
+                }
+            });
         }
 
         /**
@@ -209,23 +657,56 @@ public class SynchronousConsumer<K, V> implements KafkaConsumer, Managed, Server
          */
         @Override
         public void run() {
+            if (restartTimestamp > 0) {
+                restartTimestamp = 0;
+                lastRestartTimestamp = System.currentTimeMillis();
+                backingOff.decrementAndGet();
+                restarts.inc();
+            }
+
+            // the stream has been replaced by rescaling the consumer
+            if (!isCurrent()) {
+                return;
+            }
+
+            // the throttle lets a message through before a slot is taken for it, so a stream
+            // waiting on its throttle doesn't hold a slot other topics could use
+            final Iterable<MessageAndMetadata<K, V>> gated = throttle.gate(stream, topic);
+            final TopicScheduler scheduler = SynchronousConsumer.this.scheduler;
+            final TopicScheduler.ScheduledStream<K, V> scheduled = scheduler == null
+                    ? null
+                    : scheduler.schedule(gated, topic);
+            final DrainableStream drainable =
+                    new DrainableStream(scheduled == null ? gated : scheduled, generation);
             try {
-                processor.process(stream, topic);
+                processor.process(drainable, topic);
             } catch (final IllegalStateException e) {
                 error(e);
             } catch (final Exception e) {
                 recoverableError(e);
             } catch (final Throwable e) {
                 error(e);
+            } finally {
+                // don't block the consumer from draining, or hold a slot, while the stream backs
+                // off, or once it has ended
+                drainable.release();
+                if (scheduled != null) {
+                    scheduled.release();
+                }
             }
         }
 
+        private boolean isCurrent() {
+            return generation == SynchronousConsumer.this.generation;
+        }
+
         private void recoverableError(final Exception e) {
             LOG.warn("Error processing stream, restarting stream consumer ({} attempts remaining): {}",
                     maxRecoveryAttempts - attempts, e.toString());
 
-            // reset attempts if there hasn't been a failure in a while
-            if (System.currentTimeMillis() - lastErrorTimestamp >= retryResetDelay.toMilliseconds()) {
+            // reset attempts if the stream has been running for a while since it was last restarted
+            final long running = System.currentTimeMillis() - lastRestartTimestamp;
+            if (running >= retryResetDelay.toMilliseconds()) {
                 attempts = 0;
             }
 
@@ -234,26 +715,105 @@ public class SynchronousConsumer<K, V> implements KafkaConsumer, Managed, Server
             if (maxRecoveryAttempts > -1 && attempts >= maxRecoveryAttempts) {
                 LOG.warn("Failed to restart consumer after {} retries", maxRecoveryAttempts);
                 error(e);
-            } else {
-                try {
-                    final long sleepTime = Math.min(
-                            maxRecoveryDelay.toMilliseconds(),
-                            (long) (initialRecoveryDelay.toMilliseconds() * Math.pow( 2, attempts)));
-
-                    Thread.sleep(sleepTime);
-                } catch(final InterruptedException ie){
-                    LOG.warn("Error recovery grace period interrupted.", ie);
-                }
-                lastErrorTimestamp = System.currentTimeMillis();
-                if (!executor.isShutdown()) {
-                    executor.execute(this);
-                }
+            } else if (!executor.isShutdown() && isCurrent()) {
+                // reschedule, rather than sleep, so the thread is free for other streams to use
+                final long delay = backOff(attempts);
+                restartTimestamp = System.currentTimeMillis() + delay;
+                backingOff.incrementAndGet();
+                executor.schedule(this, delay, TimeUnit.MILLISECONDS);
             }
         }
 
+        /**
+         * Calculates the delay before the next recovery attempt: an exponentially increasing delay,
+         * capped at the maximum recovery delay, of which a random half is applied, so that streams
+         * that failed together don't all restart together.
+         */
+        private long backOff(final int attempts) {
+            final long delay = Math.min(
+                    maxRecoveryDelay.toMilliseconds(),
+                    (long) (initialRecoveryDelay.toMilliseconds() * Math.pow(2, attempts)));
+            final long half = delay / 2;
+            return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+        }
+
         private void error(final Throwable e) {
             LOG.error("Unrecoverable error processing stream, shutting down", e);
-            fatalError();
+            fatalError(e);
+        }
+    }
+
+    /**
+     * A stream that holds the drain lock of the consumer from reading each message until it asks
+     * for the next, and ends before reading a message once the consumer has moved on to a new
+     * generation of streams.
+     * <p/>
+     * The lock is taken once the next message is available, but before it's read, so a stream
+     * waiting for messages, or waiting to be resumed, doesn't block the consumer from draining.
+     * The stream must only be iterated by the thread that processes it.
+     */
+    private class DrainableStream implements Iterable<MessageAndMetadata<K, V>> {
+
+        private final Iterable<MessageAndMetadata<K, V>> stream;
+        private final int generation;
+
+        private boolean held = false;
+        private boolean ready = false;
+
+        DrainableStream(final Iterable<MessageAndMetadata<K, V>> stream, final int generation) {
+            this.stream = stream;
+            this.generation = generation;
+        }
+
+        /**
+         * Releases the drain lock, if it's held by this stream.
+         */
+        void release() {
+            ready = false;
+            if (held) {
+                held = false;
+                draining.readLock().unlock();
+            }
+        }
+
+        @Override
+        public Iterator<MessageAndMetadata<K, V>> iterator() {
+            final Iterator<MessageAndMetadata<K, V>> it = stream.iterator();
+            return new Iterator<MessageAndMetadata<K, V>>() {
+                @Override
+                public boolean hasNext() {
+                    if (ready) {
+                        return true;
+                    }
+                    // the previous message has been processed
+                    release();
+                    if (!it.hasNext()) {
+                        return false;
+                    }
+                    draining.readLock().lock();
+                    held = true;
+                    if (generation != SynchronousConsumer.this.generation) {
+                        release();
+                        return false;
+                    }
+                    ready = true;
+                    return true;
+                }
+
+                @Override
+                public MessageAndMetadata<K, V> next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    ready = false;
+                    return it.next();
+                }
+
+                @Override
+                public void remove() {
+                    it.remove();
+                }
+            };
         }
     }
 }
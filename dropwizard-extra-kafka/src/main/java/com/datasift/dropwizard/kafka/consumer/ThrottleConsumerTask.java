@@ -0,0 +1,82 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import com.google.common.collect.ImmutableCollection;
+import com.google.common.collect.ImmutableMultimap;
+import io.dropwizard.servlets.tasks.Task;
+import io.dropwizard.util.Size;
+
+import java.io.PrintWriter;
+
+/**
+ * A {@link Task} to limit the rate at which a {@link SynchronousConsumer} consumes messages,
+ * while it's running.
+ * <p/>
+ * The task takes the maximum {@code messages} and {@code bytes} to consume per-second, either of
+ * which may be 0 for no limit, and an optional {@code topic} to limit, e.g.
+ * {@code POST /tasks/<name>?topic=events&messages=1000&bytes=1MB}. Bytes may be given as a number
+ * or a size. Without a topic, the consumer as a whole is limited. Rates that aren't given are left
+ * unchanged.
+ *
+ * @see SynchronousConsumer#setRate(String, double, long)
+ */
+public class ThrottleConsumerTask extends Task {
+
+    private final SynchronousConsumer<?, ?> consumer;
+
+    /**
+     * Creates a {@link Task} to limit the rate of the given consumer.
+     *
+     * @param name the name of the task.
+     * @param consumer the consumer to limit the rate of.
+     */
+    public ThrottleConsumerTask(final String name, final SynchronousConsumer<?, ?> consumer) {
+        super(name);
+        this.consumer = consumer;
+    }
+
+    @Override
+    public void execute(final ImmutableMultimap<String, String> parameters,
+                        final PrintWriter output) throws Exception {
+        final ImmutableCollection<String> topics = parameters.get("topic");
+        final ImmutableCollection<String> messages = parameters.get("messages");
+        final ImmutableCollection<String> bytes = parameters.get("bytes");
+
+        if (topics.size() > 1 || messages.size() > 1 || bytes.size() > 1) {
+            output.println("Specify at most one topic, message rate and byte rate");
+            return;
+        }
+
+        final String topic = topics.isEmpty() ? null : topics.iterator().next();
+        final StreamThrottle throttle = consumer.getThrottle();
+
+        double messageRate = throttle.getMessageRate(topic);
+        long byteRate = throttle.getByteRate(topic);
+        try {
+            if (!messages.isEmpty()) {
+                messageRate = Double.parseDouble(messages.iterator().next());
+            }
+            if (!bytes.isEmpty()) {
+                byteRate = parseBytes(bytes.iterator().next());
+            }
+        } catch (final IllegalArgumentException e) {
+            output.println("Invalid rate: " + e.getMessage());
+            return;
+        }
+        if (messageRate < 0 || byteRate < 0) {
+            output.println("Rates must not be negative");
+            return;
+        }
+
+        consumer.setRate(topic, messageRate, byteRate);
+        output.println((topic == null ? "consumer" : topic) + ": "
+                + messageRate + " messages/s, " + byteRate + " bytes/s");
+    }
+
+    private static long parseBytes(final String bytes) {
+        try {
+            return Long.parseLong(bytes);
+        } catch (final NumberFormatException e) {
+            return Size.parse(bytes).toBytes();
+        }
+    }
+}
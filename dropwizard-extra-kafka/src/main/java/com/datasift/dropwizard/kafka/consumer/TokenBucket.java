@@ -0,0 +1,144 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A token bucket that limits the rate at which permits may be acquired.
+ * <p/>
+ * The bucket holds up to one second's worth of permits, so short bursts are permitted. Permits may
+ * be acquired in excess of those available, putting the bucket in to debt, which must be repaid
+ * before any more permits are acquired; this allows permits to be acquired after the fact, e.g.
+ * for the size of a message once it has been read.
+ * <p/>
+ * Waiting for permits blocks the calling thread, without spinning, until enough permits have
+ * accumulated, the rate is changed, or the bucket is closed. Threads wait on a {@link Condition},
+ * rather than an object monitor, so a waiting virtual thread doesn't pin its carrier thread.
+ */
+public class TokenBucket {
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    private double rate;
+    private double capacity;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+    private boolean closed = false;
+
+    /**
+     * Creates a bucket that permits the given rate.
+     *
+     * @param rate the number of permits per second; or 0 for an unlimited rate.
+     */
+    public TokenBucket(final double rate) {
+        setRate(rate);
+        this.tokens = capacity;
+    }
+
+    /**
+     * Returns the rate permitted by this bucket.
+     *
+     * @return the number of permits per second; or 0 if the rate is unlimited.
+     */
+    public double getRate() {
+        lock.lock();
+        try {
+            return rate;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Changes the rate permitted by this bucket, waking any threads waiting for permits.
+     *
+     * @param rate the number of permits per second; or 0 for an unlimited rate.
+     *
+     * @throws IllegalArgumentException if the rate is negative.
+     */
+    public void setRate(final double rate) {
+        if (rate < 0) {
+            throw new IllegalArgumentException("Rate must not be negative: " + rate);
+        }
+        lock.lock();
+        try {
+            refill();
+            this.rate = rate;
+            this.capacity = Math.max(rate, 1);
+            this.tokens = Math.min(tokens, capacity);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Acquires the given number of permits, waiting for any debt to be repaid first.
+     *
+     * @param permits the number of permits to acquire.
+     *
+     * @return the time spent waiting, in nanoseconds; or 0 if the permits were acquired
+     *         immediately.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public long acquire(final long permits) throws InterruptedException {
+        final long start = System.nanoTime();
+        boolean waited = false;
+        lock.lockInterruptibly();
+        try {
+            while (!closed && rate > 0) {
+                refill();
+                if (tokens >= 0) {
+                    tokens -= permits;
+                    break;
+                }
+                changed.awaitNanos((long) Math.ceil(-tokens / rate * TimeUnit.SECONDS.toNanos(1)));
+                waited = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return waited ? System.nanoTime() - start : 0;
+    }
+
+    /**
+     * Closes this bucket, permitting all waiting and future acquisitions immediately.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reopens a closed bucket, so that acquisitions are limited to its rate again.
+     */
+    public void open() {
+        lock.lock();
+        try {
+            refill();
+            closed = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refill() {
+        final long now = System.nanoTime();
+        if (rate > 0) {
+            final double elapsed = (double) (now - lastRefill) / TimeUnit.SECONDS.toNanos(1);
+            tokens = Math.min(capacity, tokens + elapsed * rate);
+        } else {
+            tokens = capacity;
+        }
+        lastRefill = now;
+    }
+}
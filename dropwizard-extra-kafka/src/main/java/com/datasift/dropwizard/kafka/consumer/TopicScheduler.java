@@ -0,0 +1,394 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import kafka.message.MessageAndMetadata;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Schedules the processing of messages from the streams of several topics, so that a flood of
+ * messages on one topic can't slow the processing of the others.
+ * <p/>
+ * A fixed number of slots are shared by all streams; a stream must hold a slot to process a
+ * message, from the time it reads the message until it asks for the next. When every slot is in
+ * use, streams queue for the next free slot, which is granted to a waiting topic according to the
+ * {@link Policy}:
+ * <dl>
+ *     <dt>WEIGHTED</dt><dd>Slots are shared between waiting topics in proportion to their weight,
+ *                          by stride scheduling; a topic that has been idle accrues no credit.
+ *                          </dd>
+ *     <dt>PRIORITY</dt><dd>Slots are always granted to the waiting topic with the greatest
+ *                          weight; topics of equal weight share slots equally.</dd>
+ * </dl>
+ * In either case, a slot is never left idle while a stream is waiting for one, so a topic may use
+ * every slot while the others have nothing to process.
+ * <p/>
+ * Topics have a weight of 1 until {@link #setWeight(String, int) given another}. The time
+ * streams spend queueing for a slot is recorded, for each topic, by the <i>name</i>.<i>topic</i>
+ * .queueing {@link Timer}; <i>name</i>.waiting reports the number of streams that are queueing.
+ */
+public class TopicScheduler {
+
+    /**
+     * The policy for choosing which waiting topic is granted the next free slot.
+     */
+    public enum Policy { WEIGHTED, PRIORITY }
+
+    private final Lock lock = new ReentrantLock();
+    private final Map<String, Topic> topics = new HashMap<>();
+    private final Policy policy;
+    private final MetricRegistry registry;
+    private final String name;
+
+    // guarded by lock
+    private int available;
+    private int waiting = 0;
+    private double virtualTime = 0;
+    private boolean closed = false;
+
+    /**
+     * Creates a scheduler with the given number of slots.
+     *
+     * @param slots the maximum number of messages to process at once, across all topics.
+     * @param policy the {@link Policy} for choosing which topic is granted a free slot.
+     * @param registry the {@link MetricRegistry} to register metrics for the scheduler with.
+     * @param name the name of the scheduler, to prefix its metrics with.
+     *
+     * @throws IllegalArgumentException if there are no slots.
+     */
+    public TopicScheduler(final int slots,
+                          final Policy policy,
+                          final MetricRegistry registry,
+                          final String name) {
+        checkArgument(slots >= 1, "slots must be at least 1");
+        this.available = slots;
+        this.policy = policy;
+        this.registry = registry;
+        this.name = name;
+
+        registry.remove(MetricRegistry.name(name, "waiting"));
+        registry.register(MetricRegistry.name(name, "waiting"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getWaiting();
+            }
+        });
+    }
+
+    /**
+     * Sets the weight of a topic.
+     * <p/>
+     * Under the {@link Policy#WEIGHTED WEIGHTED} policy, the weight is the topic's share of the
+     * slots; under the {@link Policy#PRIORITY PRIORITY} policy, it's the topic's priority.
+     *
+     * @param topic the topic to set the weight of.
+     * @param weight the weight of the topic.
+     *
+     * @throws IllegalArgumentException if the weight is less than 1.
+     */
+    public void setWeight(final String topic, final int weight) {
+        checkArgument(weight >= 1, "weight must be at least 1");
+        lock.lock();
+        try {
+            topic(topic).weight = weight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the weight of a topic.
+     *
+     * @param topic the topic to get the weight of.
+     *
+     * @return the weight of the topic.
+     */
+    public int getWeight(final String topic) {
+        lock.lock();
+        try {
+            return topic(topic).weight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of streams waiting for a slot.
+     *
+     * @return the number of streams queueing for a slot, across all topics.
+     */
+    public int getWaiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes this scheduler, releasing all waiting streams and no longer limiting them.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            for (final Topic topic : topics.values()) {
+                for (final Waiter waiter : topic.waiters) {
+                    waiter.condition.signal();
+                }
+                topic.waiters.clear();
+            }
+            waiting = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reopens a closed scheduler, so that streams scheduled by it are limited again, with the
+     * weights set before it was closed.
+     * <p/>
+     * Slots held by streams when the scheduler was closed become free as those streams release
+     * them.
+     */
+    public void open() {
+        lock.lock();
+        try {
+            closed = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Schedules the processing of a stream of messages from a topic.
+     * <p/>
+     * The slot held by the stream must be {@link ScheduledStream#release() released} when the
+     * stream stops being processed, such as when its processor fails.
+     *
+     * @param stream the stream to schedule.
+     * @param topic the topic the stream consumes from.
+     * @param <K> the type of the message keys.
+     * @param <V> the type of the messages.
+     *
+     * @return an {@link Iterable} of the stream that waits for a slot before reading each message.
+     */
+    public <K, V> ScheduledStream<K, V> schedule(
+            final Iterable<MessageAndMetadata<K, V>> stream,
+            final String topic) {
+        lock.lock();
+        try {
+            return new ScheduledStream<>(stream, topic(topic));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A stream of messages that holds a slot of the scheduler while each message is processed.
+     *
+     * @param <K> the type of the message keys.
+     * @param <V> the type of the messages.
+     */
+    public class ScheduledStream<K, V> implements Iterable<MessageAndMetadata<K, V>> {
+
+        private final Iterable<MessageAndMetadata<K, V>> stream;
+        private final Topic topic;
+        private final AtomicBoolean held = new AtomicBoolean(false);
+
+        private ScheduledStream(final Iterable<MessageAndMetadata<K, V>> stream,
+                                final Topic topic) {
+            this.stream = stream;
+            this.topic = topic;
+        }
+
+        /**
+         * Releases the slot held by this stream, if any.
+         */
+        public void release() {
+            if (held.compareAndSet(true, false)) {
+                TopicScheduler.this.release();
+            }
+        }
+
+        @Override
+        public Iterator<MessageAndMetadata<K, V>> iterator() {
+            final Iterator<MessageAndMetadata<K, V>> it = stream.iterator();
+            return new Iterator<MessageAndMetadata<K, V>>() {
+
+                private boolean ready = false;
+
+                @Override
+                public boolean hasNext() {
+                    if (ready) {
+                        return true;
+                    }
+                    // the previous message has been processed, so don't hold a slot while the
+                    // stream waits for the next
+                    release();
+                    if (!it.hasNext()) {
+                        return false;
+                    }
+                    // wait for a slot before the message is read, so no locks the processor
+                    // holds to read it are held while waiting
+                    ready = hold();
+                    return true;
+                }
+
+                @Override
+                public MessageAndMetadata<K, V> next() {
+                    if (!ready) {
+                        hold();
+                    }
+                    ready = false;
+                    return it.next();
+                }
+
+                private boolean hold() {
+                    if (!held.get() && acquire(topic)) {
+                        held.set(true);
+                    }
+                    return held.get();
+                }
+
+                @Override
+                public void remove() {
+                    it.remove();
+                }
+            };
+        }
+    }
+
+    /**
+     * Waits for a free slot for a topic.
+     *
+     * @return true if a slot was acquired; false if the scheduler was closed, or the thread
+     *         interrupted, before one was free.
+     */
+    private boolean acquire(final Topic topic) {
+        final long start = System.nanoTime();
+        lock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            if (waiting == 0 && available > 0) {
+                grant(topic);
+                return true;
+            }
+
+            // an idle topic joins at the current virtual time, so it can't bank its idle time
+            if (topic.waiters.isEmpty()) {
+                topic.pass = Math.max(topic.pass, virtualTime);
+            }
+            final Waiter waiter = new Waiter(lock.newCondition());
+            topic.waiters.add(waiter);
+            waiting++;
+            try {
+                while (!waiter.granted && !closed) {
+                    waiter.condition.await();
+                }
+            } catch (final InterruptedException e) {
+                // the stream is being shut down; stop waiting and let it end
+                Thread.currentThread().interrupt();
+                if (!waiter.granted && topic.waiters.remove(waiter)) {
+                    waiting--;
+                }
+            }
+            return waiter.granted;
+        } finally {
+            lock.unlock();
+            topic.queueing.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void release() {
+        lock.lock();
+        try {
+            available++;
+            while (available > 0 && waiting > 0) {
+                final Topic topic = next();
+                final Waiter waiter = topic.waiters.remove();
+                waiting--;
+                grant(topic);
+                waiter.granted = true;
+                waiter.condition.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the waiting topic to grant the next free slot to.
+     */
+    private Topic next() {
+        Topic next = null;
+        for (final Topic topic : topics.values()) {
+            if (topic.waiters.isEmpty()) {
+                continue;
+            }
+            if (next == null
+                    || (policy == Policy.PRIORITY && topic.weight > next.weight)
+                    || ((policy == Policy.WEIGHTED || topic.weight == next.weight)
+                            && topic.pass < next.pass)) {
+                next = topic;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Grants a slot to a topic, advancing it by its stride.
+     */
+    private void grant(final Topic topic) {
+        available--;
+        virtualTime = Math.max(topic.pass, virtualTime);
+        topic.pass = virtualTime + 1.0 / topic.weight;
+    }
+
+    private Topic topic(final String name) {
+        Topic topic = topics.get(name);
+        if (topic == null) {
+            topic = new Topic(registry.timer(MetricRegistry.name(this.name, name, "queueing")));
+            topics.put(name, topic);
+        }
+        return topic;
+    }
+
+    private static class Topic {
+
+        private final Queue<Waiter> waiters = new ArrayDeque<>();
+        private final Timer queueing;
+        private int weight = 1;
+        private double pass = 0;
+
+        private Topic(final Timer queueing) {
+            this.queueing = queueing;
+        }
+    }
+
+    private static class Waiter {
+
+        private final Condition condition;
+        private boolean granted = false;
+
+        private Waiter(final Condition condition) {
+            this.condition = condition;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.util.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Periodically commits the offsets of a consumer whose messages are processed by a {@link
+ * KeyOrderedMessageProcessor}, once every message it has consumed has been processed.
+ * <p/>
+ * The processor is {@link KeyOrderedMessageProcessor#checkpoint(KafkaConsumer, Duration)
+ * checkpointed} at a fixed interval, and once more when the committer is stopped. If the lanes of
+ * the processor don't drain in time, e.g. because a message is slow to process, the checkpoint is
+ * skipped, and no offsets are committed until the next one succeeds.
+ */
+public class WatermarkCommitter implements Managed {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WatermarkCommitter.class);
+
+    private static final Duration TIMEOUT = Duration.seconds(5);
+
+    private final KeyOrderedMessageProcessor<?, ?> processor;
+    private final KafkaConsumer consumer;
+    private final ScheduledExecutorService executor;
+    private final Duration interval;
+
+    private volatile ScheduledFuture<?> schedule = null;
+
+    /**
+     * Creates a committer for the offsets of a consumer that processes messages with a
+     * key-ordered processor.
+     *
+     * @param processor the processor to checkpoint.
+     * @param consumer  the consumer to commit the offsets of.
+     * @param executor  the {@link ScheduledExecutorService} to checkpoint the processor on.
+     * @param interval  the time between checkpoints.
+     */
+    public WatermarkCommitter(final KeyOrderedMessageProcessor<?, ?> processor,
+                              final KafkaConsumer consumer,
+                              final ScheduledExecutorService executor,
+                              final Duration interval) {
+        this.processor = processor;
+        this.consumer = consumer;
+        this.executor = executor;
+        this.interval = interval;
+    }
+
+    /**
+     * Begins periodically checkpointing the processor.
+     */
+    @Override
+    public void start() {
+        schedule = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    commit();
+                } catch (final RuntimeException e) {
+                    LOG.warn("Failed to checkpoint processor", e);
+                }
+            }
+        }, interval.getQuantity(), interval.getQuantity(), interval.getUnit());
+    }
+
+    /**
+     * Stops checkpointing the processor, after checkpointing it a final time.
+     */
+    @Override
+    public void stop() {
+        final ScheduledFuture<?> schedule = this.schedule;
+        if (schedule != null) {
+            schedule.cancel(false);
+        }
+        this.schedule = null;
+        commit();
+    }
+
+    /**
+     * Checkpoints the processor.
+     *
+     * @return true if the offsets were committed; otherwise, false.
+     */
+    boolean commit() {
+        try {
+            if (processor.checkpoint(consumer, TIMEOUT)) {
+                return true;
+            }
+            LOG.warn("Messages are still being processed; not committing offsets");
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,115 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.util.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Commits the offsets of a consumer as the windows of a {@link WindowedAggregator} close, once
+ * their aggregates have been written.
+ * <p/>
+ * The aggregator is {@link WindowedAggregator#checkpoint(KafkaConsumer, Duration) checkpointed}
+ * at each multiple of its slide, when its oldest windows close, and once more when the committer
+ * is stopped. If the streams can't be blocked to checkpoint, e.g. because the consumer is paused,
+ * the checkpoint is retried shortly after.
+ */
+public class WindowCommitter implements Managed {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WindowCommitter.class);
+
+    private static final Duration TIMEOUT = Duration.seconds(5);
+    private static final Duration RETRY_DELAY = Duration.seconds(1);
+
+    private final WindowedAggregator<?, ?, ?> aggregator;
+    private final KafkaConsumer consumer;
+    private final ScheduledExecutorService executor;
+
+    private volatile ScheduledFuture<?> schedule = null;
+    private volatile boolean stopped = true;
+
+    /**
+     * Creates a committer for the offsets of a consumer that processes messages with an
+     * aggregator.
+     *
+     * @param aggregator the aggregator to checkpoint.
+     * @param consumer   the consumer to commit the offsets of.
+     * @param executor   the {@link ScheduledExecutorService} to checkpoint the aggregator on.
+     */
+    public WindowCommitter(final WindowedAggregator<?, ?, ?> aggregator,
+                           final KafkaConsumer consumer,
+                           final ScheduledExecutorService executor) {
+        this.aggregator = aggregator;
+        this.consumer = consumer;
+        this.executor = executor;
+    }
+
+    /**
+     * Begins checkpointing the aggregator as its windows close.
+     */
+    @Override
+    public synchronized void start() {
+        stopped = false;
+        scheduleNext(untilNextClose());
+    }
+
+    /**
+     * Stops checkpointing the aggregator, after checkpointing it a final time.
+     *
+     * @throws Exception if interrupted while checkpointing the aggregator.
+     */
+    @Override
+    public synchronized void stop() throws Exception {
+        stopped = true;
+        final ScheduledFuture<?> schedule = this.schedule;
+        if (schedule != null) {
+            schedule.cancel(false);
+        }
+        this.schedule = null;
+        if (!aggregator.checkpoint(consumer, TIMEOUT)) {
+            LOG.warn("Failed to checkpoint aggregates before stopping");
+        }
+    }
+
+    /**
+     * Checkpoints the aggregator.
+     *
+     * @return true if the aggregates were written and the offsets committed; otherwise, false.
+     */
+    boolean commit() {
+        try {
+            return aggregator.checkpoint(consumer, TIMEOUT);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private synchronized void scheduleNext(final long delay) {
+        if (stopped) {
+            return;
+        }
+        schedule = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                long delay;
+                try {
+                    delay = commit() ? untilNextClose() : RETRY_DELAY.toMilliseconds();
+                } catch (final RuntimeException e) {
+                    LOG.warn("Failed to checkpoint aggregates", e);
+                    delay = RETRY_DELAY.toMilliseconds();
+                }
+                scheduleNext(delay);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private long untilNextClose() {
+        final long slide = aggregator.getSlide();
+        return slide - (aggregator.now() % slide);
+    }
+}
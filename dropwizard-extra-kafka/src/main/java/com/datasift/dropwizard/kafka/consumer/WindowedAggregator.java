@@ -0,0 +1,409 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.dropwizard.util.Duration;
+import kafka.message.MessageAndMetadata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Aggregates the messages of a stream by key, counting and summing them over tumbling or sliding
+ * windows of time, and writes the aggregates to an {@link AggregateSink}.
+ * <p/>
+ * Windows are aligned to multiples of their slide; for tumbling windows, the slide is the size of
+ * the window. Each message is added to every window that covers its {@link #timestamp(Object,
+ * Object) timestamp}, and a window is written to the sink once it has closed, either when a
+ * message later than its end is processed, or when the aggregator is {@link
+ * #checkpoint(KafkaConsumer, Duration) checkpointed}.
+ * <p/>
+ * The count and sum of each key are accumulated in primitive arrays, so aggregating a message
+ * allocates nothing unless it has a new key. The number of keys held is bounded; when it's
+ * exceeded, the oldest windows are written early, as partial aggregates.
+ * <p/>
+ * The offsets of aggregated messages must not be committed before their aggregates have been
+ * written, or the aggregates would be lost if the consumer failed. A {@link WindowCommitter}
+ * {@link #checkpoint(KafkaConsumer, Duration) checkpoints} the aggregator as each window closes,
+ * writing all aggregates, including the partial aggregates of windows that remain open, then
+ * committing the consumed offsets; consumers should not also commit offsets automatically.
+ * Aggregates are written at least once: if the consumer fails, messages consumed since the last
+ * checkpoint are redelivered, and may be aggregated again.
+ * <p/>
+ * The following metrics are registered for each aggregator:
+ * <ul>
+ *     <li><i>aggregated</i>: the rate at which messages are aggregated,</li>
+ *     <li><i>written</i>: the rate at which aggregates are written to the sink,</li>
+ *     <li><i>evicted</i>: the rate at which windows are written early to bound the number of
+ *     keys,</li>
+ *     <li><i>keys</i>: the number of keys held, across all open windows,</li>
+ *     <li><i>checkpoints</i>: the time taken to write all aggregates and commit offsets.</li>
+ * </ul>
+ *
+ * @param <K> the decoded type of the key for each message being processed
+ * @param <V> the decoded type of the message to process
+ * @param <A> the type of the aggregation keys
+ */
+public abstract class WindowedAggregator<K, V, A> extends MessageProcessor<K, V>
+        implements RebalanceListener {
+
+    private final AggregateSink<A> sink;
+    private final long size;
+    private final long slide;
+    private final int maxKeys;
+
+    // held by streams from reading a message until it's aggregated, and exclusively to checkpoint
+    private final ReadWriteLock checkpoint = new ReentrantReadWriteLock();
+
+    // guarded by this
+    private final TreeMap<Long, Window<A>> windows = new TreeMap<>();
+    private int keys = 0;
+
+    private final Meter aggregated;
+    private final Meter written;
+    private final Meter evicted;
+    private final Timer checkpoints;
+
+    /**
+     * Creates an aggregator over tumbling windows.
+     *
+     * @param sink the {@link AggregateSink} to write aggregates to.
+     * @param size the size of each window.
+     * @param maxKeys the maximum number of keys to hold, across all open windows.
+     * @param registry the {@link MetricRegistry} to register metrics for the aggregator with.
+     * @param name the name of the aggregator, to prefix its metrics with.
+     *
+     * @throws IllegalArgumentException if the size is less than 1 millisecond, or there may be no
+     *                                  keys.
+     */
+    protected WindowedAggregator(final AggregateSink<A> sink,
+                                 final Duration size,
+                                 final int maxKeys,
+                                 final MetricRegistry registry,
+                                 final String name) {
+        this(sink, size, size, maxKeys, registry, name);
+    }
+
+    /**
+     * Creates an aggregator over sliding windows.
+     *
+     * @param sink the {@link AggregateSink} to write aggregates to.
+     * @param size the size of each window.
+     * @param slide the time between the start of each window; a multiple of which must be the
+     *              size.
+     * @param maxKeys the maximum number of keys to hold, across all open windows.
+     * @param registry the {@link MetricRegistry} to register metrics for the aggregator with.
+     * @param name the name of the aggregator, to prefix its metrics with.
+     *
+     * @throws IllegalArgumentException if the slide is less than 1 millisecond, the size is not a
+     *                                  multiple of the slide, or there may be no keys.
+     */
+    protected WindowedAggregator(final AggregateSink<A> sink,
+                                 final Duration size,
+                                 final Duration slide,
+                                 final int maxKeys,
+                                 final MetricRegistry registry,
+                                 final String name) {
+        checkArgument(slide.toMilliseconds() >= 1, "slide must be at least 1ms");
+        checkArgument(size.toMilliseconds() % slide.toMilliseconds() == 0,
+                "size must be a multiple of slide");
+        checkArgument(maxKeys >= 1, "maxKeys must be at least 1");
+
+        this.sink = sink;
+        this.size = size.toMilliseconds();
+        this.slide = slide.toMilliseconds();
+        this.maxKeys = maxKeys;
+
+        this.aggregated = registry.meter(MetricRegistry.name(name, "aggregated"));
+        this.written = registry.meter(MetricRegistry.name(name, "written"));
+        this.evicted = registry.meter(MetricRegistry.name(name, "evicted"));
+        this.checkpoints = registry.timer(MetricRegistry.name(name, "checkpoints"));
+        registry.remove(MetricRegistry.name(name, "keys"));
+        registry.register(MetricRegistry.name(name, "keys"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getKeys();
+            }
+        });
+    }
+
+    /**
+     * Returns the key to aggregate a message by.
+     *
+     * @param key the key of the message.
+     * @param message the message.
+     * @param topic the topic the message belongs to.
+     * @param partition the partition of the topic the message is contained in.
+     *
+     * @return the key to aggregate the message by; or null to skip the message.
+     */
+    protected abstract A key(K key, V message, String topic, int partition);
+
+    /**
+     * Returns the value of a message, to add to the sum of its key.
+     * <p/>
+     * Defaults to 1, such that the sum is the count of messages.
+     *
+     * @param key the key of the message.
+     * @param message the message.
+     *
+     * @return the value of the message.
+     */
+    protected long value(final K key, final V message) {
+        return 1;
+    }
+
+    /**
+     * Returns the time of a message, to determine the windows it belongs to.
+     * <p/>
+     * Defaults to the {@link #now() current time}. Messages that are timestamped when they were
+     * produced may be later than windows that have already closed; they're aggregated in a new
+     * instance of the window, written as a further partial aggregate.
+     *
+     * @param key the key of the message.
+     * @param message the message.
+     *
+     * @return the time of the message, in milliseconds since the epoch.
+     */
+    protected long timestamp(final K key, final V message) {
+        return now();
+    }
+
+    /**
+     * Returns the current time, to close windows with.
+     *
+     * @return the current time, in milliseconds since the epoch.
+     */
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the time between the start of each window.
+     *
+     * @return the slide of the windows, in milliseconds.
+     */
+    public long getSlide() {
+        return slide;
+    }
+
+    /**
+     * Returns the number of keys held, across all open windows.
+     *
+     * @return the number of keys held.
+     */
+    public synchronized int getKeys() {
+        return keys;
+    }
+
+    /**
+     * Processes a stream, holding the checkpoint lock from reading each message until it has
+     * been aggregated, so that the offset of a message is never committed before it's aggregated.
+     *
+     * @param stream the stream of messages to process.
+     * @param topic the topic the {@code stream} belongs to.
+     */
+    @Override
+    public void process(final Iterable<MessageAndMetadata<K, V>> stream, final String topic) {
+        final Iterator<MessageAndMetadata<K, V>> it = stream.iterator();
+        final Lock lock = checkpoint.readLock();
+        while (it.hasNext()) {
+            lock.lock();
+            try {
+                final MessageAndMetadata<K, V> entry = it.next();
+                process(entry.key(), entry.message(), topic, entry.partition(), entry.offset());
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public final void process(final K key,
+                              final V message,
+                              final String topic,
+                              final int partition,
+                              final long offset) {
+        final A aggregate = key(key, message, topic, partition);
+        if (aggregate == null) {
+            return;
+        }
+        final long value = value(key, message);
+        final long timestamp = timestamp(key, message);
+
+        synchronized (this) {
+            close(timestamp);
+            final long latest = timestamp - (timestamp % slide);
+            for (long start = latest; start > timestamp - size; start -= slide) {
+                Window<A> window = windows.get(start);
+                if (window == null) {
+                    window = new Window<>(start);
+                    windows.put(start, window);
+                }
+                if (window.add(aggregate, value)) {
+                    keys++;
+                }
+            }
+
+            // write the oldest windows early, rather than hold more keys than allowed
+            while (keys > maxKeys && !windows.isEmpty()) {
+                evicted.mark();
+                write(windows.firstEntry().getValue());
+            }
+        }
+        aggregated.mark();
+    }
+
+    /**
+     * Writes the windows that have closed by the {@link #now() current time} to the sink.
+     */
+    public synchronized void closeWindows() {
+        close(now());
+    }
+
+    /**
+     * Writes all aggregates, including the partial aggregates of open windows, to the sink, and
+     * flushes it.
+     */
+    public void flush() {
+        synchronized (this) {
+            while (!windows.isEmpty()) {
+                write(windows.firstEntry().getValue());
+            }
+        }
+        sink.flush();
+    }
+
+    /**
+     * Writes all aggregates to the sink, then commits the offsets consumed by a consumer, such
+     * that no message is committed before its aggregates have been written.
+     * <p/>
+     * Streams are blocked while the aggregator is checkpointed. If a stream doesn't finish
+     * aggregating its current message within the timeout, e.g. because the consumer is paused,
+     * no aggregates are written and no offsets are committed.
+     *
+     * @param consumer the consumer to commit the offsets of.
+     * @param timeout the maximum time to wait for streams to finish aggregating.
+     *
+     * @return true if the aggregates were written and the offsets committed; otherwise, false.
+     *
+     * @throws InterruptedException if interrupted while waiting for streams to finish aggregating.
+     */
+    public boolean checkpoint(final KafkaConsumer consumer, final Duration timeout)
+            throws InterruptedException {
+        final Lock lock = checkpoint.writeLock();
+        if (!lock.tryLock(timeout.getQuantity(), timeout.getUnit())) {
+            return false;
+        }
+        final Timer.Context context = checkpoints.time();
+        try {
+            flush();
+            consumer.commitOffsets();
+            return true;
+        } finally {
+            context.stop();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes all aggregates before partitions are revoked; aggregates may span partitions, so the
+     * aggregates of partitions that remain assigned are also written.
+     * <p/>
+     * Like a {@link #checkpoint(KafkaConsumer, Duration) checkpoint}, streams are blocked while
+     * the aggregates are written, so a message that has been read, but not yet aggregated, is
+     * aggregated before they're written, rather than after its offset has been committed.
+     */
+    @Override
+    public void onPartitionsRevoked(final Map<String, Set<Integer>> partitions) {
+        final Lock lock = checkpoint.writeLock();
+        lock.lock();
+        try {
+            flush();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onPartitionsAssigned(final Map<String, Set<Integer>> partitions) {
+    }
+
+    /**
+     * Writes the windows that end at, or before, the given time.
+     */
+    private void close(final long now) {
+        while (!windows.isEmpty() && windows.firstKey() + size <= now) {
+            write(windows.firstEntry().getValue());
+        }
+    }
+
+    /**
+     * Writes a window to the sink, and discards it.
+     * <p/>
+     * If the sink fails, the window is kept, to be written again in full.
+     */
+    private void write(final Window<A> window) {
+        final long end = window.start + size;
+        for (int i = 0; i < window.keys.size(); i++) {
+            sink.write(window.keys.get(i), window.start, end, window.counts[i], window.sums[i]);
+        }
+        written.mark(window.keys.size());
+        windows.remove(window.start);
+        keys -= window.keys.size();
+    }
+
+    /**
+     * The accumulators of the keys of a window.
+     */
+    private static class Window<A> {
+
+        private final long start;
+        private final Map<A, Integer> index = new HashMap<>();
+        private final List<A> keys = new ArrayList<>();
+        private long[] counts = new long[16];
+        private long[] sums = new long[16];
+
+        private Window(final long start) {
+            this.start = start;
+        }
+
+        /**
+         * Adds a value to the accumulator of a key.
+         *
+         * @return true if the key is new to the window; otherwise, false.
+         */
+        private boolean add(final A key, final long value) {
+            final Integer i = index.get(key);
+            if (i != null) {
+                counts[i]++;
+                sums[i] += value;
+                return false;
+            }
+
+            final int n = keys.size();
+            if (n == counts.length) {
+                counts = Arrays.copyOf(counts, n * 2);
+                sums = Arrays.copyOf(sums, n * 2);
+            }
+            index.put(key, n);
+            keys.add(key);
+            counts[n] = 1;
+            sums[n] = value;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.datasift.dropwizard.kafka.util;
+
+import com.google.common.base.Optional;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A utility for creating virtual threads, on JDKs that support them.
+ * <p/>
+ * Virtual threads are created reflectively, so that this library may still be built for, and run
+ * on, JDKs that don't support them, in which case no {@link ThreadFactory} is available.
+ * <p/>
+ * Virtual threads are cheap to create and to block, making them suitable for streams and messages
+ * that spend most of their time blocked on I/O, such as calls to HBase or HTTP services.
+ */
+public class VirtualThreads {
+
+    private static final Method OF_VIRTUAL = method(Thread.class, "ofVirtual");
+    private static final Method NAME = method("java.lang.Thread$Builder", "name",
+            String.class, long.class);
+    private static final Method FACTORY = method("java.lang.Thread$Builder", "factory");
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Determines whether the running JDK supports virtual threads.
+     *
+     * @return true if virtual threads are supported; otherwise, false.
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null && NAME != null && FACTORY != null;
+    }
+
+    /**
+     * Creates a {@link ThreadFactory} for virtual threads, named with the given prefix followed by
+     * a sequence number.
+     *
+     * @param prefix the prefix of the names of the created threads.
+     *
+     * @return a {@link ThreadFactory} for virtual threads; or absent, if they're not supported.
+     */
+    public static Optional<ThreadFactory> factory(final String prefix) {
+        if (!isSupported()) {
+            return Optional.absent();
+        }
+        try {
+            final Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 0L);
+            return Optional.of((ThreadFactory) FACTORY.invoke(builder));
+        } catch (final ReflectiveOperationException e) {
+            return Optional.absent();
+        }
+    }
+
+    private static Method method(final String className,
+                                 final String name,
+                                 final Class<?>... parameters) {
+        try {
+            return method(Class.forName(className), name, parameters);
+        } catch (final ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static Method method(final Class<?> type,
+                                 final String name,
+                                 final Class<?>... parameters) {
+        try {
+            return type.getMethod(name, parameters);
+        } catch (final NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import kafka.message.MessageAndMetadata;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests {@link DeduplicatingStreamProcessor}.
+ */
+public class DeduplicatingStreamProcessorTest {
+
+    private final List<Long> processed = new ArrayList<>();
+    private boolean failed = false;
+    private MetricRegistry registry;
+
+    @Before
+    public void setUp() {
+        registry = new MetricRegistry();
+    }
+
+    @Test
+    public void skipsRedeliveredOffsets() {
+        final DeduplicatingStreamProcessor<byte[], String> dedup =
+                dedup(DeduplicatingStreamProcessor.Identity.OFFSET, null);
+
+        dedup.process(ImmutableList.of(message("a", 0, 1), message("b", 0, 2)), "events");
+        dedup.process(ImmutableList.of(
+                message("a", 0, 1), message("b", 0, 2), message("c", 0, 3)), "events");
+
+        assertThat("redelivered messages are skipped", processed, is(Arrays.asList(1L, 2L, 3L)));
+        assertThat("records duplicates",
+                registry.meter("consumer.dedup.duplicates").getCount(),
+                is(2L));
+        assertThat("records checked messages",
+                registry.meter("consumer.dedup.checked").getCount(),
+                is(5L));
+    }
+
+    @Test
+    public void skipsRepeatedKeys() {
+        final DeduplicatingStreamProcessor<byte[], String> dedup =
+                dedup(DeduplicatingStreamProcessor.Identity.KEY, null);
+
+        dedup.process(ImmutableList.of(
+                message("a", 0, 1), message("a", 1, 2), message("b", 0, 3)), "events");
+
+        assertThat("messages with a seen key are skipped", processed, is(Arrays.asList(1L, 3L)));
+    }
+
+    @Test
+    public void doesNotRememberFailedMessages() {
+        final DeduplicatingStreamProcessor<byte[], String> dedup =
+                dedup(DeduplicatingStreamProcessor.Identity.OFFSET, 2L);
+
+        try {
+            dedup.process(ImmutableList.of(message("a", 0, 1), message("b", 0, 2)), "events");
+            fail("failure was not thrown");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+        dedup.process(ImmutableList.of(message("b", 0, 2)), "events");
+
+        assertThat("failed message is processed again", processed, is(Arrays.asList(1L, 2L)));
+    }
+
+    @Test
+    public void skipsSeededOffsets() {
+        final DeduplicatingStreamProcessor<byte[], String> dedup =
+                dedup(DeduplicatingStreamProcessor.Identity.OFFSET, null);
+        dedup.seed("events", 0, 10, 20);
+
+        dedup.process(ImmutableList.of(
+                message("a", 0, 19), message("b", 0, 20), message("c", 1, 15)), "events");
+
+        assertThat("seeded offsets are skipped", processed, is(Arrays.asList(20L, 15L)));
+    }
+
+    @Test
+    public void seedsOffsetsProcessedBeyondCommitted() throws Exception {
+        final ZooKeeper zookeeper = mock(ZooKeeper.class);
+        when(zookeeper.getChildren("/consumers/group/offsets/events", false))
+                .thenReturn(Arrays.asList("0", "1"));
+        when(zookeeper.getData("/consumers/group/offsets/events/0", false, null))
+                .thenReturn("10".getBytes(StandardCharsets.UTF_8));
+        when(zookeeper.getData("/consumers/group/offsets/events/1", false, null))
+                .thenReturn("5".getBytes(StandardCharsets.UTF_8));
+
+        final DeduplicatingStreamProcessor<byte[], String> dedup =
+                dedup(DeduplicatingStreamProcessor.Identity.OFFSET, null);
+        dedup.seedFromCommitted(Suppliers.ofInstance(zookeeper), "group",
+                new DeduplicatingStreamProcessor.ProcessedOffsets() {
+                    @Override
+                    public long getProcessedOffset(final String topic, final int partition) {
+                        return partition == 0 ? 20 : -1;
+                    }
+                });
+
+        dedup.process(ImmutableList.of(message("a", 0, 15), message("b", 0, 20)), "events");
+        dedup.process(ImmutableList.of(message("c", 1, 7)), "events");
+
+        assertThat("offsets processed beyond committed are skipped",
+                processed,
+                is(Arrays.asList(20L, 7L)));
+        verify(zookeeper, times(1)).getChildren("/consumers/group/offsets/events", false);
+    }
+
+    private DeduplicatingStreamProcessor<byte[], String> dedup(
+            final DeduplicatingStreamProcessor.Identity identity,
+            final Long failAt) {
+        final MessageProcessor<byte[], String> processor = new MessageProcessor<byte[], String>() {
+            @Override
+            public void process(final byte[] key,
+                                final String message,
+                                final String topic,
+                                final int partition,
+                                final long offset) {
+                // only fail the first attempt
+                if (failAt != null && failAt == offset && !failed) {
+                    failed = true;
+                    throw new IllegalArgumentException("failed at " + offset);
+                }
+                processed.add(offset);
+            }
+        };
+        return new DeduplicatingStreamProcessor<>(
+                processor, 100, identity, registry, "consumer.dedup");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MessageAndMetadata<byte[], String> message(final String key,
+                                                              final int partition,
+                                                              final long offset) {
+        final MessageAndMetadata<byte[], String> message = mock(MessageAndMetadata.class);
+        // a new array each time, so keys are compared by their contents
+        when(message.key()).thenReturn(key.getBytes());
+        when(message.partition()).thenReturn(partition);
+        when(message.offset()).thenReturn(offset);
+        return message;
+    }
+}
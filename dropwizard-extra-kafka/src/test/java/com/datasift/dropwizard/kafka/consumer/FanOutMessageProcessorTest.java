@@ -0,0 +1,267 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import kafka.message.MessageAndMetadata;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests {@link FanOutMessageProcessor}.
+ */
+public class FanOutMessageProcessorTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void completesMessagesInOrder() {
+        final List<Long> processed = Collections.synchronizedList(new ArrayList<Long>());
+        final List<Long> completed = new ArrayList<>();
+        final FanOutMessageProcessor<String, String> processor =
+                new FanOutMessageProcessor<String, String>(executor, 4) {
+                    @Override
+                    public void process(final String key,
+                                        final String message,
+                                        final String topic,
+                                        final int partition,
+                                        final long offset) {
+                        // earlier messages take longer, so they finish last
+                        sleep(50 - offset * 10);
+                        processed.add(offset);
+                    }
+
+                    @Override
+                    protected void completed(final String key,
+                                             final String message,
+                                             final String topic,
+                                             final int partition,
+                                             final long offset) {
+                        completed.add(offset);
+                    }
+                };
+
+        processor.process(messages(5), "events");
+
+        assertThat("messages finish out of order", processed.get(0), is(not(0L)));
+        assertThat("messages complete in order",
+                completed,
+                is(Arrays.asList(0L, 1L, 2L, 3L, 4L)));
+    }
+
+    @Test
+    public void limitsMessagesInFlight() {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final FanOutMessageProcessor<String, String> processor =
+                new FanOutMessageProcessor<String, String>(executor, 3) {
+                    @Override
+                    public void process(final String key,
+                                        final String message,
+                                        final String topic,
+                                        final int partition,
+                                        final long offset) {
+                        final int current = inFlight.incrementAndGet();
+                        synchronized (maxInFlight) {
+                            maxInFlight.set(Math.max(maxInFlight.get(), current));
+                        }
+                        sleep(10);
+                        inFlight.decrementAndGet();
+                    }
+                };
+
+        processor.process(messages(20), "events");
+
+        assertThat("messages are processed concurrently", maxInFlight.get(), greaterThan(1));
+        assertThat("no more than 3 messages are in flight",
+                maxInFlight.get(),
+                lessThanOrEqualTo(3));
+    }
+
+    @Test
+    public void throwsFailureOfMessage() {
+        final List<Long> completed = new ArrayList<>();
+        final FanOutMessageProcessor<String, String> processor =
+                new FanOutMessageProcessor<String, String>(executor, 2) {
+                    @Override
+                    public void process(final String key,
+                                        final String message,
+                                        final String topic,
+                                        final int partition,
+                                        final long offset) {
+                        if (offset == 2) {
+                            throw new IllegalArgumentException("bad message");
+                        }
+                    }
+
+                    @Override
+                    protected void completed(final String key,
+                                             final String message,
+                                             final String topic,
+                                             final int partition,
+                                             final long offset) {
+                        completed.add(offset);
+                    }
+                };
+
+        try {
+            processor.process(messages(10), "events");
+            fail("failure was not thrown");
+        } catch (final IllegalArgumentException e) {
+            assertThat("throws the original failure", e.getMessage(), is("bad message"));
+        }
+        assertThat("messages before the failure are completed",
+                completed,
+                is(Arrays.asList(0L, 1L)));
+    }
+
+    @Test
+    public void decodesEachMessageOnce() {
+        final List<String> completed = new ArrayList<>();
+        final FanOutMessageProcessor<String, String> processor =
+                new FanOutMessageProcessor<String, String>(executor, 4) {
+                    @Override
+                    public void process(final String key,
+                                        final String message,
+                                        final String topic,
+                                        final int partition,
+                                        final long offset) {
+                    }
+
+                    @Override
+                    protected void completed(final String key,
+                                             final String message,
+                                             final String topic,
+                                             final int partition,
+                                             final long offset) {
+                        completed.add(key + "=" + message);
+                    }
+                };
+
+        final Iterable<MessageAndMetadata<String, String>> messages = messages(3);
+        int i = 0;
+        for (final MessageAndMetadata<String, String> message : messages) {
+            when(message.key()).thenReturn("key-" + i);
+            when(message.message()).thenReturn("value-" + i++);
+        }
+        processor.process(messages, "events");
+
+        assertThat("completes decoded messages",
+                completed,
+                is(Arrays.asList("key-0=value-0", "key-1=value-1", "key-2=value-2")));
+        for (final MessageAndMetadata<String, String> message : messages) {
+            verify(message, times(1)).key();
+            verify(message, times(1)).message();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void revokingPartitionsWaitsForMessagesInFlight() throws Exception {
+        final List<Long> processed = Collections.synchronizedList(new ArrayList<Long>());
+        final FanOutMessageProcessor<String, String> processor =
+                new FanOutMessageProcessor<String, String>(executor, 4) {
+                    @Override
+                    public void process(final String key,
+                                        final String message,
+                                        final String topic,
+                                        final int partition,
+                                        final long offset) {
+                        sleep(50);
+                        processed.add(offset);
+                    }
+                };
+
+        // the stream waits for more messages once it has consumed those available
+        final CountDownLatch waiting = new CountDownLatch(1);
+        final CountDownLatch end = new CountDownLatch(1);
+        final Iterator<MessageAndMetadata<String, String>> available = messages(3).iterator();
+        final Iterable<MessageAndMetadata<String, String>> stream =
+                new Iterable<MessageAndMetadata<String, String>>() {
+                    @Override
+                    public Iterator<MessageAndMetadata<String, String>> iterator() {
+                        return new AbstractIterator<MessageAndMetadata<String, String>>() {
+                            @Override
+                            protected MessageAndMetadata<String, String> computeNext() {
+                                if (available.hasNext()) {
+                                    return available.next();
+                                }
+                                waiting.countDown();
+                                await(end);
+                                return endOfData();
+                            }
+                        };
+                    }
+                };
+        final Thread consuming = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                processor.process(stream, "events");
+            }
+        });
+        consuming.start();
+
+        assertThat("consumes available messages", waiting.await(5, TimeUnit.SECONDS), is(true));
+        processor.onPartitionsRevoked(Collections.singletonMap("events", Collections.singleton(0)));
+        assertThat("processes messages in flight", processed.size(), is(3));
+
+        end.countDown();
+        consuming.join(5000);
+    }
+
+    private static Iterable<MessageAndMetadata<String, String>> messages(final int count) {
+        final ImmutableList.Builder<MessageAndMetadata<String, String>> messages =
+                ImmutableList.builder();
+        for (int i = 0; i < count; i++) {
+            final MessageAndMetadata<String, String> message = mock(MessageAndMetadata.class);
+            when(message.offset()).thenReturn((long) i);
+            messages.add(message);
+        }
+        return messages.build();
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(Math.max(0, millis));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import com.codahale.metrics.health.HealthCheck;
+import io.dropwizard.util.Duration;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests {@link HealthBasedPauser}.
+ */
+public class HealthBasedPauserTest {
+
+    private volatile boolean healthy = true;
+    private volatile boolean paused = false;
+    private PausableConsumer consumer;
+    private ScheduledExecutorService executor;
+    private HealthBasedPauser pauser;
+
+    @Before
+    public void setUp() {
+        consumer = new PausableConsumer() {
+            @Override
+            public void pause() {
+                paused = true;
+            }
+
+            @Override
+            public void resume() {
+                paused = false;
+            }
+
+            @Override
+            public boolean isPaused() {
+                return paused;
+            }
+
+            @Override
+            public void commitOffsets() {
+            }
+
+            @Override
+            public boolean isRunning() {
+                return true;
+            }
+        };
+
+        executor = mock(ScheduledExecutorService.class);
+        pauser = new HealthBasedPauser(consumer, new HealthCheck() {
+            @Override
+            protected Result check() {
+                return healthy ? Result.healthy() : Result.unhealthy("circuit open");
+            }
+        }, executor, Duration.seconds(5));
+    }
+
+    @Test
+    public void checksHealthPeriodically() {
+        pauser.start();
+        verify(executor).scheduleWithFixedDelay(
+                any(Runnable.class), eq(5L), eq(5L), eq(TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void pausesWhileDownstreamIsUnhealthy() {
+        assertThat("runs while healthy", pauser.check(), is(false));
+
+        healthy = false;
+        assertThat("pauses when unhealthy", pauser.check(), is(true));
+        assertThat("stays paused while unhealthy", pauser.check(), is(true));
+
+        healthy = true;
+        assertThat("resumes when healthy", pauser.check(), is(false));
+    }
+
+    @Test
+    public void doesNotResumeConsumerPausedByOthers() {
+        consumer.pause();
+
+        healthy = false;
+        pauser.check();
+        healthy = true;
+
+        assertThat("remains paused", pauser.check(), is(true));
+    }
+
+    @Test
+    public void resumesWhenStopped() {
+        healthy = false;
+        pauser.check();
+
+        pauser.stop();
+
+        assertThat("resumed", consumer.isPaused(), is(false));
+    }
+}
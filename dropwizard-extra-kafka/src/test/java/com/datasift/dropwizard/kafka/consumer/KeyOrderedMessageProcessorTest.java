@@ -0,0 +1,346 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import com.google.common.collect.ImmutableList;
+import io.dropwizard.util.Duration;
+import kafka.message.MessageAndMetadata;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests {@link KeyOrderedMessageProcessor}.
+ */
+public class KeyOrderedMessageProcessorTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void preservesOrderOfEachKey() {
+        final Map<String, List<Long>> processed = new ConcurrentHashMap<>();
+        final Set<Thread> threads =
+                Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+        final KeyOrderedMessageProcessor<String, String> processor =
+                new KeyOrderedMessageProcessor<String, String>(executor, 4, 2) {
+                    @Override
+                    public void process(final String key,
+                                        final String message,
+                                        final String topic,
+                                        final int partition,
+                                        final long offset) {
+                        sleep(ThreadLocalRandom.current().nextInt(3));
+                        threads.add(Thread.currentThread());
+                        List<Long> offsets = processed.get(key);
+                        if (offsets == null) {
+                            offsets = Collections.synchronizedList(new ArrayList<Long>());
+                            processed.put(key, offsets);
+                        }
+                        offsets.add(offset);
+                    }
+                };
+
+        final ImmutableList.Builder<MessageAndMetadata<String, String>> messages =
+                ImmutableList.builder();
+        final Map<String, List<Long>> expected = new HashMap<>();
+        for (int i = 0; i < 200; i++) {
+            final String key = "key-" + (i % 10);
+            messages.add(message(key, 0, i));
+            if (!expected.containsKey(key)) {
+                expected.put(key, new ArrayList<Long>());
+            }
+            expected.get(key).add((long) i);
+        }
+
+        processor.process(messages.build(), "events");
+
+        assertThat("messages of each key are processed in order", processed, is(expected));
+        assertThat("messages are processed by several lanes", threads.size(), greaterThan(1));
+        assertThat("watermark passes all messages", processor.getWatermark("events", 0), is(200L));
+    }
+
+    @Test
+    public void watermarkWaitsForSlowestLane() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch others = new CountDownLatch(2);
+        final KeyOrderedMessageProcessor<String, String> processor =
+                new KeyOrderedMessageProcessor<String, String>(executor, 2, 10) {
+                    @Override
+                    protected int hash(final String key) {
+                        return key.equals("slow") ? 0 : 1;
+                    }
+
+                    @Override
+                    public void process(final String key,
+                                        final String message,
+                                        final String topic,
+                                        final int partition,
+                                        final long offset) {
+                        if (key.equals("slow")) {
+                            blocked.countDown();
+                            await(release);
+                        } else {
+                            others.countDown();
+                        }
+                    }
+                };
+
+        final Thread stream = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                processor.process(ImmutableList.of(
+                        message("fast", 0, 10),
+                        message("slow", 0, 11),
+                        message("fast", 0, 12),
+                        message("fast", 0, 13)), "events");
+            }
+        });
+        stream.start();
+
+        assertThat("slow lane is blocked", blocked.await(5, TimeUnit.SECONDS), is(true));
+        assertThat("fast lane passes the slow message",
+                others.await(5, TimeUnit.SECONDS),
+                is(true));
+        assertThat("watermark stops at the slow message",
+                processor.getWatermark("events", 0),
+                is(11L));
+
+        release.countDown();
+        stream.join(5000);
+        assertThat("watermark passes all messages", processor.getWatermark("events", 0), is(14L));
+        assertThat("unknown partitions have no watermark",
+                processor.getWatermark("events", 1),
+                is(-1L));
+    }
+
+    @Test
+    public void throwsFailureOfMessage() {
+        final KeyOrderedMessageProcessor<String, String> processor =
+                new KeyOrderedMessageProcessor<String, String>(executor, 2, 1) {
+                    @Override
+                    public void process(final String key,
+                                        final String message,
+                                        final String topic,
+                                        final int partition,
+                                        final long offset) {
+                        if (offset == 3) {
+                            throw new IllegalArgumentException("bad message");
+                        }
+                    }
+                };
+
+        final ImmutableList.Builder<MessageAndMetadata<String, String>> messages =
+                ImmutableList.builder();
+        for (int i = 0; i < 100; i++) {
+            messages.add(message("key-" + (i % 3), 0, i));
+        }
+
+        try {
+            processor.process(messages.build(), "events");
+            fail("failure was not thrown");
+        } catch (final IllegalArgumentException e) {
+            assertThat("throws the original failure", e.getMessage(), is("bad message"));
+        }
+        assertThat("watermark doesn't pass the failed message",
+                processor.getWatermark("events", 0),
+                lessThanOrEqualTo(3L));
+    }
+
+    @Test
+    public void checkpointWaitsForLanesToDrain() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final KeyOrderedMessageProcessor<String, String> processor =
+                new KeyOrderedMessageProcessor<String, String>(executor, 2, 10) {
+                    @Override
+                    public void process(final String key,
+                                        final String message,
+                                        final String topic,
+                                        final int partition,
+                                        final long offset) {
+                        if (key.equals("slow")) {
+                            blocked.countDown();
+                            await(release);
+                        }
+                    }
+                };
+
+        final Thread stream = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                processor.process(ImmutableList.of(
+                        message("fast", 0, 10),
+                        message("slow", 0, 11)), "events");
+            }
+        });
+        stream.start();
+        assertThat("slow lane is blocked", blocked.await(5, TimeUnit.SECONDS), is(true));
+
+        final KafkaConsumer consumer = mock(KafkaConsumer.class);
+        final Future<Boolean> checkpoint = executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return processor.checkpoint(consumer, Duration.seconds(5));
+            }
+        });
+
+        Thread.sleep(100);
+        verify(consumer, never()).commitOffsets();
+
+        release.countDown();
+        assertThat("checkpoints once drained", checkpoint.get(5, TimeUnit.SECONDS), is(true));
+        verify(consumer).commitOffsets();
+        stream.join(5000);
+    }
+
+    @Test
+    public void resumesCommitsAfterLaneFailure() throws Exception {
+        final KeyOrderedMessageProcessor<String, String> processor =
+                new KeyOrderedMessageProcessor<String, String>(executor, 2, 1) {
+                    @Override
+                    public void process(final String key,
+                                        final String message,
+                                        final String topic,
+                                        final int partition,
+                                        final long offset) {
+                        if (offset == 3) {
+                            throw new IllegalArgumentException("bad message");
+                        }
+                    }
+                };
+
+        final ImmutableList.Builder<MessageAndMetadata<String, String>> failing =
+                ImmutableList.builder();
+        for (int i = 0; i < 100; i++) {
+            failing.add(message("key-" + (i % 3), 0, i));
+        }
+        try {
+            processor.process(failing.build(), "events");
+            fail("failure was not thrown");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+
+        final KafkaConsumer consumer = mock(KafkaConsumer.class);
+        assertThat("doesn't checkpoint abandoned messages",
+                processor.checkpoint(consumer, Duration.milliseconds(100)),
+                is(false));
+
+        // the restarted stream continues from the message after those it consumed
+        final ImmutableList.Builder<MessageAndMetadata<String, String>> recovered =
+                ImmutableList.builder();
+        for (int i = 100; i < 200; i++) {
+            recovered.add(message("key-" + (i % 3), 0, i));
+        }
+        processor.process(recovered.build(), "events");
+
+        final WatermarkCommitter committer = new WatermarkCommitter(
+                processor, consumer, mock(ScheduledExecutorService.class), Duration.seconds(1));
+        assertThat("commits", committer.commit(), is(true));
+        verify(consumer).commitOffsets();
+        assertThat("watermark passes the abandoned messages",
+                processor.getWatermark("events", 0),
+                is(200L));
+    }
+
+    @Test
+    public void throwsInterruptionOfStream() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final KeyOrderedMessageProcessor<String, String> processor =
+                new KeyOrderedMessageProcessor<String, String>(executor, 1, 1) {
+                    @Override
+                    public void process(final String key,
+                                        final String message,
+                                        final String topic,
+                                        final int partition,
+                                        final long offset) {
+                        await(release);
+                    }
+                };
+
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Thread stream = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    processor.process(ImmutableList.of(
+                            message("key", 0, 0),
+                            message("key", 0, 1),
+                            message("key", 0, 2)), "events");
+                } catch (final RuntimeException e) {
+                    failure.set(e);
+                }
+            }
+        });
+        stream.start();
+        Thread.sleep(100);
+        stream.interrupt();
+        stream.join(5000);
+        release.countDown();
+
+        assertThat("throws the interruption",
+                failure.get().getCause(),
+                is(instanceOf(InterruptedException.class)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MessageAndMetadata<String, String> message(final String key,
+                                                              final int partition,
+                                                              final long offset) {
+        final MessageAndMetadata<String, String> message = mock(MessageAndMetadata.class);
+        when(message.key()).thenReturn(key);
+        when(message.partition()).thenReturn(partition);
+        when(message.offset()).thenReturn(offset);
+        return message;
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
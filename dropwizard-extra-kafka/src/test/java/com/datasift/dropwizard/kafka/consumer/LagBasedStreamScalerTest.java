@@ -0,0 +1,84 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import com.codahale.metrics.Gauge;
+import com.google.common.collect.ImmutableMap;
+import io.dropwizard.util.Duration;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests {@link LagBasedStreamScaler}.
+ */
+public class LagBasedStreamScalerTest {
+
+    private final AtomicLong lag = new AtomicLong();
+    private SynchronousConsumer<?, ?> consumer;
+    private LagBasedStreamScaler scaler;
+
+    @Before
+    public void setUp() {
+        consumer = mock(SynchronousConsumer.class);
+        when(consumer.isRunning()).thenReturn(true);
+        when(consumer.getPartitions()).thenReturn(ImmutableMap.of("events", 2));
+
+        scaler = new LagBasedStreamScaler(
+                consumer,
+                "events",
+                new Gauge<Long>() {
+                    @Override
+                    public Long getValue() {
+                        return lag.get();
+                    }
+                },
+                1,
+                3,
+                1000,
+                100,
+                mock(ScheduledExecutorService.class),
+                Duration.seconds(30));
+    }
+
+    @Test
+    public void addsStreamWhenLagging() {
+        lag.set(5000);
+        assertThat("adds a stream", scaler.scale(), is(3));
+        verify(consumer).setStreams("events", 3);
+    }
+
+    @Test
+    public void removesStreamWhenIdle() {
+        lag.set(10);
+        assertThat("removes a stream", scaler.scale(), is(1));
+        verify(consumer).setStreams("events", 1);
+    }
+
+    @Test
+    public void keepsStreamsWithinThresholds() {
+        lag.set(500);
+        assertThat("keeps streams", scaler.scale(), is(2));
+        verify(consumer, never()).setStreams(anyString(), anyInt());
+    }
+
+    @Test
+    public void neverExceedsMaximumStreams() {
+        when(consumer.getPartitions()).thenReturn(ImmutableMap.of("events", 3));
+        lag.set(5000);
+        assertThat("keeps maximum streams", scaler.scale(), is(3));
+        verify(consumer, never()).setStreams(anyString(), anyInt());
+    }
+
+    @Test
+    public void doesNotScaleFailedConsumer() {
+        when(consumer.isRunning()).thenReturn(false);
+        lag.set(5000);
+        scaler.scale();
+        verify(consumer, never()).setStreams(anyString(), anyInt());
+    }
+}
@@ -0,0 +1,165 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datasift.dropwizard.zookeeper.testing.EmbeddedZooKeeper;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests {@link PartitionOwnershipWatcher}.
+ */
+public class PartitionOwnershipWatcherTest {
+
+    private static final String OWNERS = "/consumers/group/owners/events";
+
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+    private EmbeddedZooKeeper zookeeper;
+    private ZooKeeper client;
+    private MetricRegistry registry;
+    private KafkaConsumer consumer;
+    private PartitionOwnershipWatcher watcher;
+
+    @Before
+    public void setUp() throws Exception {
+        zookeeper = new EmbeddedZooKeeper();
+        zookeeper.start();
+
+        client = zookeeper.newClient();
+
+        create("/brokers", "/brokers/topics", "/brokers/topics/events",
+                "/brokers/topics/events/partitions", "/brokers/topics/events/partitions/0",
+                "/brokers/topics/events/partitions/1", "/consumers", "/consumers/group",
+                "/consumers/group/owners", OWNERS);
+        own(0, "group_me-0");
+        own(1, "group_other-0");
+
+        registry = new MetricRegistry();
+        consumer = mock(KafkaConsumer.class);
+        watcher = new PartitionOwnershipWatcher(
+                Suppliers.ofInstance(client),
+                consumer,
+                new Supplier<Set<String>>() {
+                    @Override
+                    public Set<String> get() {
+                        return ImmutableSet.of("events");
+                    }
+                },
+                "group",
+                "me",
+                new RebalanceListener() {
+                    @Override
+                    public void onPartitionsRevoked(final Map<String, Set<Integer>> partitions) {
+                        events.add("revoked " + partitions);
+                    }
+
+                    @Override
+                    public void onPartitionsAssigned(final Map<String, Set<Integer>> partitions) {
+                        events.add("assigned " + partitions);
+                    }
+                },
+                registry,
+                "consumer.partitions");
+        watcher.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        watcher.stop();
+        client.close();
+        zookeeper.stop();
+    }
+
+    @Test
+    public void notifiesOfOwnedPartitions() throws Exception {
+        assertThat("assigns owned partitions", next(), is("assigned {events=[0]}"));
+        assertThat("reports owned partitions",
+                watcher.getOwned(),
+                is((Map<String, Set<Integer>>) ImmutableMap.<String, Set<Integer>>of(
+                        "events", ImmutableSet.of(0))));
+        assertThat("records owned partitions",
+                registry.getGauges().get("consumer.partitions.owned").getValue(),
+                is((Object) 1));
+    }
+
+    @Test
+    public void notifiesOfRebalancedPartitions() throws Exception {
+        assertThat("assigns owned partitions", next(), is("assigned {events=[0]}"));
+
+        // the group rebalances, swapping the partitions
+        client.delete(OWNERS + "/0", -1);
+        client.delete(OWNERS + "/1", -1);
+        assertThat("revokes released partition", next(), is("revoked {events=[0]}"));
+
+        own(0, "group_other-0");
+        own(1, "group_me-0");
+        assertThat("assigns claimed partition", next(), is("assigned {events=[1]}"));
+
+        // the rebalance is recorded after the listener is notified, under the watcher's lock
+        watcher.getOwned();
+        assertThat("records rebalance",
+                registry.timer("consumer.partitions.rebalances").getCount(),
+                is(1L));
+        assertThat("records revoked partitions",
+                registry.counter("consumer.partitions.revoked").getCount(),
+                is(1L));
+    }
+
+    @Test
+    public void revokesAllAndCommits() throws Exception {
+        assertThat("assigns owned partitions", next(), is("assigned {events=[0]}"));
+
+        watcher.revokeAll();
+
+        assertThat("revokes owned partitions", next(), is("revoked {events=[0]}"));
+        assertThat("owns no partitions", watcher.getOwned().isEmpty(), is(true));
+        verify(consumer).commitOffsets();
+    }
+
+    @Test
+    public void ignoresConsumersWithSimilarIds() throws Exception {
+        assertThat("assigns owned partitions", next(), is("assigned {events=[0]}"));
+
+        client.delete(OWNERS + "/1", -1);
+        own(1, "group_me-other-0");
+        client.setData(OWNERS + "/0", "group_me-1".getBytes(), -1);
+
+        assertThat("no partitions are reassigned",
+                events.poll(500, TimeUnit.MILLISECONDS),
+                is(nullValue()));
+    }
+
+    private String next() throws InterruptedException {
+        return events.poll(10, TimeUnit.SECONDS);
+    }
+
+    private void own(final int partition, final String owner) throws Exception {
+        client.create(OWNERS + "/" + partition, owner.getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE,
+                CreateMode.PERSISTENT);
+    }
+
+    private void create(final String... paths) throws Exception {
+        for (final String path : paths) {
+            client.create(path, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        }
+    }
+}
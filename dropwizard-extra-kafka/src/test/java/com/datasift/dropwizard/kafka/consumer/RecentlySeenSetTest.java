@@ -0,0 +1,73 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@link RecentlySeenSet}.
+ */
+public class RecentlySeenSetTest {
+
+    @Test
+    public void remembersAddedFingerprints() {
+        final RecentlySeenSet set = new RecentlySeenSet(10);
+
+        assertThat("adds new fingerprint", set.add(42), is(true));
+        assertThat("doesn't add seen fingerprint", set.add(42), is(false));
+        assertThat("contains added fingerprint", set.contains(42), is(true));
+        assertThat("doesn't contain other fingerprint", set.contains(43), is(false));
+        assertThat("remembers zero", set.add(0) && set.contains(0), is(true));
+        assertThat("has size", set.size(), is(2));
+    }
+
+    @Test
+    public void evictsOldestFingerprints() {
+        final RecentlySeenSet set = new RecentlySeenSet(3);
+        set.add(1);
+        set.add(2);
+        set.add(3);
+        set.add(4);
+
+        assertThat("oldest is evicted", set.contains(1), is(false));
+        assertThat("newer are kept",
+                set.contains(2) && set.contains(3) && set.contains(4),
+                is(true));
+        assertThat("size is bounded", set.size(), is(3));
+    }
+
+    @Test
+    public void matchesReferenceImplementation() {
+        final int capacity = 100;
+        final RecentlySeenSet set = new RecentlySeenSet(capacity);
+        final Deque<Long> order = new ArrayDeque<>();
+        final Set<Long> expected = new HashSet<>();
+        final Random random = new Random(1);
+
+        for (int i = 0; i < 100000; i++) {
+            // a small range of values, so there are many collisions and evictions
+            final long fingerprint = random.nextInt(300) - 150;
+            final boolean added = expected.add(fingerprint);
+            if (added) {
+                order.addLast(fingerprint);
+                if (order.size() > capacity) {
+                    expected.remove(order.removeFirst());
+                }
+            }
+            assertThat("adds only unseen fingerprints", set.add(fingerprint), is(added));
+        }
+
+        for (long fingerprint = -150; fingerprint < 150; fingerprint++) {
+            assertThat("contains only recent fingerprints",
+                    set.contains(fingerprint),
+                    is(expected.contains(fingerprint)));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableList;
+import kafka.message.Message;
+import kafka.message.MessageAndMetadata;
+import kafka.serializer.Decoder;
+import kafka.serializer.DefaultDecoder;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests {@link StreamThrottle}.
+ */
+public class StreamThrottleTest {
+
+    private Timer throttled;
+    private StreamThrottle throttle;
+
+    @Before
+    public void setUp() {
+        throttled = new Timer();
+        throttle = new StreamThrottle(throttled);
+    }
+
+    @Test
+    public void passesMessagesThroughWhenUnlimited() {
+        final Iterable<MessageAndMetadata<String, String>> stream =
+                throttle.gate(messages(100), "events");
+
+        assertThat("all messages are read", drain(stream.iterator()), is(100));
+        assertThat("no messages are throttled", throttled.getCount(), is(0L));
+    }
+
+    @Test
+    public void limitsRateOfMessages() {
+        throttle.setRate(null, 100, 0);
+        final Iterator<MessageAndMetadata<String, String>> it =
+                throttle.gate(messages(150), "events").iterator();
+
+        final long start = System.nanoTime();
+        drain(it);
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // a burst of 100, then 50 more at 100/s
+        assertThat("waits for the excess messages", elapsed, greaterThanOrEqualTo(400L));
+        assertThat("records throttled messages", throttled.getCount(), greaterThan(0L));
+    }
+
+    @Test
+    public void limitsRateOfBytesPerTopic() {
+        throttle.setRate("events", 0, 1000);
+        final Decoder<byte[]> decoder = new DefaultDecoder(null);
+        final MessageAndMetadata<byte[], byte[]> message = new MessageAndMetadata<>(
+                "events", 0, new Message(new byte[1000]), 0, decoder, decoder);
+
+        final long start = System.nanoTime();
+        drain(throttle.gate(ImmutableList.of(message, message, message), "events").iterator());
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // the first message uses the burst, the next two each wait for their predecessor
+        assertThat("waits for the excess bytes", elapsed, greaterThanOrEqualTo(900L));
+        assertThat("other topics are not limited", throttle.getByteRate("other"), is(0L));
+    }
+
+    @Test
+    public void blocksWhilePaused() throws Exception {
+        throttle.pause();
+        final Iterator<MessageAndMetadata<String, String>> it =
+                throttle.gate(messages(1), "events").iterator();
+
+        final CountDownLatch read = new CountDownLatch(1);
+        final Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                it.next();
+                read.countDown();
+            }
+        });
+        reader.start();
+
+        assertThat("no message is read while paused",
+                read.await(200, TimeUnit.MILLISECONDS),
+                is(false));
+        assertThat("is paused", throttle.isPaused(), is(true));
+
+        throttle.resume();
+        assertThat("message is read once resumed",
+                read.await(5, TimeUnit.SECONDS),
+                is(true));
+        reader.join();
+    }
+
+    @Test
+    public void releasesPausedStreamsWhenClosed() throws Exception {
+        throttle.pause();
+        final Iterator<MessageAndMetadata<String, String>> it =
+                throttle.gate(messages(1), "events").iterator();
+
+        final CountDownLatch read = new CountDownLatch(1);
+        final Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                it.next();
+                read.countDown();
+            }
+        });
+        reader.start();
+
+        throttle.close();
+        assertThat("message is read once closed",
+                read.await(5, TimeUnit.SECONDS),
+                is(true));
+        reader.join();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Iterable<MessageAndMetadata<String, String>> messages(final int count) {
+        final List<MessageAndMetadata<String, String>> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(mock(MessageAndMetadata.class));
+        }
+        return ImmutableList.copyOf(messages);
+    }
+
+    private static int drain(final Iterator<?> it) {
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        return count;
+    }
+}
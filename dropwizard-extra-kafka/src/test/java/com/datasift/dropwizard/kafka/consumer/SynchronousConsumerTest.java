@@ -1,12 +1,17 @@
 package com.datasift.dropwizard.kafka.consumer;
 
+import com.codahale.metrics.MetricRegistry;
 import com.datasift.dropwizard.kafka.KafkaConsumerFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.io.Resources;
 import io.dropwizard.configuration.ConfigurationFactory;
-import io.dropwizard.jackson.Jackson;
 import io.dropwizard.util.Duration;
+import kafka.consumer.ConsumerIterator;
 import kafka.consumer.KafkaStream;
 import kafka.javaapi.consumer.ConsumerConnector;
+import kafka.message.MessageAndMetadata;
 import kafka.serializer.Decoder;
 import kafka.serializer.DefaultDecoder;
 import kafka.utils.VerifiableProperties;
@@ -15,9 +20,11 @@ import org.eclipse.jetty.util.component.AbstractLifeCycle;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
+import org.mockito.stubbing.Stubber;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
@@ -25,16 +32,32 @@ import org.powermock.modules.junit4.PowerMockRunner;
 
 import javax.validation.Validation;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.when;
 
 @RunWith(PowerMockRunner.class)
@@ -51,7 +74,7 @@ public class SynchronousConsumerTest {
         configuration = new ConfigurationFactory<>(
                 KafkaConsumerFactory.class,
                 Validation.buildDefaultValidatorFactory().getValidator(),
-                Jackson.newObjectMapper(),
+                new ObjectMapper(),
                 "dw").build(new File(Resources.getResource("yaml/consumer.yaml").toURI()));
     }
 
@@ -359,7 +382,6 @@ public class SynchronousConsumerTest {
             @Override
             public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
                 Object[] args = invocationOnMock.getArguments();
-                Thread.sleep(sleepTime);
                 Runnable runnable = (Runnable)args[0];
                 runnable.run();
                 return null;
@@ -369,23 +391,29 @@ public class SynchronousConsumerTest {
             @Override
             public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
                 Object[] args = invocationOnMock.getArguments();
-                Thread.sleep(sleepTime);
                 Runnable runnable = (Runnable)args[0];
                 runnable.run();
                 return null;
             }
         }).when(executor).schedule(Mockito.any(Runnable.class), Mockito.anyLong(), Mockito.any(TimeUnit.class));
-        //Mock the StreamProcessor - Throws Unrecoverable IllegalStateException
+        //Mock the StreamProcessor - Runs for a while before each recoverable Exception, then recovers
         StreamProcessor processor = Mockito.mock(StreamProcessor.class);
         final boolean shutDownServerOnUnrecoverableError = true;
         final int maxRetries = 3;
         final Duration durationForResettingErrorHandlingState = Duration.milliseconds(50);
-        Mockito.doThrow(new RuntimeException()).
-                doThrow(new RuntimeException()).
-                doThrow(new RuntimeException()).
-                doThrow(new RuntimeException()).
-                doThrow(new RuntimeException()).
-                doThrow(new RuntimeException()).
+        final Answer runThenFail = new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                Thread.sleep(sleepTime);
+                throw new RuntimeException();
+            }
+        };
+        Mockito.doAnswer(runThenFail).
+                doAnswer(runThenFail).
+                doAnswer(runThenFail).
+                doAnswer(runThenFail).
+                doAnswer(runThenFail).
+                doAnswer(runThenFail).
                 doNothing().when(processor).process(Mockito.any(Iterable.class), Mockito.anyString());
         final SynchronousConsumer consumer = new SynchronousConsumer(
                 consumerConnector,
@@ -407,5 +435,611 @@ public class SynchronousConsumerTest {
         Mockito.verify(jettyServer, timeout(1000).times(0)).stop();
     }
 
+    @Test
+    public void testRecoveryDelayIsJitteredAndGrowsToMaximum() throws Exception {
+        final List<Long> delays = new ArrayList<>();
+        final ScheduledExecutorService executor = Mockito.mock(ScheduledExecutorService.class);
+        Mockito.doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                final Object[] args = invocationOnMock.getArguments();
+                final long delay = (Long) args[1];
+                if (delay > 0) {
+                    delays.add(delay);
+                }
+                ((Runnable) args[0]).run();
+                return null;
+            }
+        }).when(executor).schedule(Mockito.any(Runnable.class), Mockito.anyLong(), Mockito.any(TimeUnit.class));
+
+        //Mock the StreamProcessor - Throws recoverable Exceptions and then recovers
+        final int failures = 8;
+        final StreamProcessor processor = Mockito.mock(StreamProcessor.class);
+        Stubber stubber = Mockito.doThrow(new RuntimeException());
+        for (int i = 1; i < failures; i++) {
+            stubber = stubber.doThrow(new RuntimeException());
+        }
+        stubber.doNothing().when(processor).process(Mockito.any(Iterable.class), Mockito.anyString());
+
+        final Duration initialDelay = Duration.milliseconds(100);
+        final Duration maxDelay = Duration.milliseconds(1000);
+        final SynchronousConsumer consumer = consumer(connector(1), processor, executor,
+                initialDelay, maxDelay, failures + 1, false, new MetricRegistry());
+        consumer.start();
+
+        assertTrue(consumer.isRunning());
+        assertThat("retries after each failure", delays.size(), is(failures));
+        for (int attempt = 1; attempt <= failures; attempt++) {
+            final long delay = Math.min(maxDelay.toMilliseconds(),
+                    initialDelay.toMilliseconds() << attempt);
+            assertThat("delay of attempt " + attempt + " is at least half its back-off",
+                    delays.get(attempt - 1), is(greaterThanOrEqualTo(delay / 2)));
+            assertThat("delay of attempt " + attempt + " is at most its back-off",
+                    delays.get(attempt - 1), is(lessThanOrEqualTo(delay)));
+        }
+    }
+
+    @Test
+    public void testRecoveryMetrics() throws Exception {
+        //Mock an Executor to start streams immediately, but hold back restarted streams
+        final List<Runnable> restarts = new ArrayList<>();
+        final List<Long> delays = new ArrayList<>();
+        final ScheduledExecutorService executor = Mockito.mock(ScheduledExecutorService.class);
+        Mockito.doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                final Object[] args = invocationOnMock.getArguments();
+                final long delay = (Long) args[1];
+                if (delay > 0) {
+                    delays.add(delay);
+                    restarts.add((Runnable) args[0]);
+                } else {
+                    ((Runnable) args[0]).run();
+                }
+                return null;
+            }
+        }).when(executor).schedule(Mockito.any(Runnable.class), Mockito.anyLong(), Mockito.any(TimeUnit.class));
+
+        final StreamProcessor processor = Mockito.mock(StreamProcessor.class);
+        Mockito.doThrow(new RuntimeException()).doNothing()
+                .when(processor).process(Mockito.any(Iterable.class), Mockito.anyString());
+
+        final MetricRegistry registry = new MetricRegistry();
+        final SynchronousConsumer consumer = consumer(connector(1), processor, executor,
+                Duration.seconds(10), Duration.seconds(60), 5, false, registry);
+        consumer.start();
+
+        assertThat("stream is restarted later", restarts.size(), is(1));
+        assertThat("stream is backing off", gauge(registry, "consumer.backingOff"), is((Object) 1));
+        assertThat("attempt is recorded",
+                gauge(registry, "consumer.TesTopic.0.attempts"),
+                is((Object) 1));
+        assertThat("back-off is reported",
+                (Long) gauge(registry, "consumer.TesTopic.0.backoff"),
+                allOf(greaterThan(0L), lessThanOrEqualTo(delays.get(0))));
+        assertThat("stream hasn't restarted",
+                registry.counter("consumer.TesTopic.0.restarts").getCount(),
+                is(0L));
+
+        restarts.get(0).run();
+
+        assertThat("stream has restarted",
+                registry.counter("consumer.TesTopic.0.restarts").getCount(),
+                is(1L));
+        assertThat("stream is no longer backing off",
+                gauge(registry, "consumer.backingOff"),
+                is((Object) 0));
+        assertThat("back-off is cleared",
+                gauge(registry, "consumer.TesTopic.0.backoff"),
+                is((Object) 0L));
+    }
+
+    @Test
+    public void testUnrecoverableErrorStopsConsumerOnSupervisorThread() throws Exception {
+        final ConsumerConnector consumerConnector = connector(1);
+        final AtomicReference<String> shutdownThread = new AtomicReference<>();
+        final CountDownLatch shuttingDown = new CountDownLatch(1);
+        final CountDownLatch shutdown = new CountDownLatch(1);
+        Mockito.doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                shutdownThread.set(Thread.currentThread().getName());
+                shuttingDown.countDown();
+                shutdown.await();
+                return null;
+            }
+        }).when(consumerConnector).shutdown();
+
+        final IllegalStateException error = new IllegalStateException();
+        final StreamProcessor processor = Mockito.mock(StreamProcessor.class);
+        Mockito.doThrow(error).when(processor).process(Mockito.any(Iterable.class), Mockito.anyString());
+
+        final MetricRegistry registry = new MetricRegistry();
+        final SynchronousConsumer consumer = consumer(consumerConnector, processor,
+                inlineExecutor(), Duration.seconds(1), Duration.seconds(10), 5, false, registry);
+        consumer.start();
+
+        try {
+            assertFalse("not running before shut down", consumer.isRunning());
+            assertThat("records error", consumer.getFatalError(), is((Throwable) error));
+            assertThat("counts error",
+                    registry.counter("consumer.fatalErrors").getCount(),
+                    is(1L));
+
+            assertTrue("shuts down", shuttingDown.await(1, TimeUnit.SECONDS));
+            assertThat("shuts down on supervisor thread",
+                    shutdownThread.get(),
+                    allOf(startsWith("kafka-unrecoverable-error-handler-"),
+                            not(Thread.currentThread().getName())));
+        } finally {
+            shutdown.countDown();
+        }
+    }
+
+    @Test
+    public void testConcurrentUnrecoverableErrorsAreHandledOnce() throws Exception {
+        final int streams = 4;
+        final CyclicBarrier failTogether = new CyclicBarrier(streams);
+        final StreamProcessor processor = Mockito.mock(StreamProcessor.class);
+        Mockito.doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                failTogether.await(1, TimeUnit.SECONDS);
+                throw new IllegalStateException();
+            }
+        }).when(processor).process(Mockito.any(Iterable.class), Mockito.anyString());
+
+        final Server jettyServer = PowerMockito.mock(Server.class);
+        final AtomicReference<String> stopThread = new AtomicReference<>();
+        Mockito.doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                stopThread.set(Thread.currentThread().getName());
+                return null;
+            }
+        }).when(jettyServer).stop();
+
+        final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(streams);
+        try {
+            final MetricRegistry registry = new MetricRegistry();
+            final SynchronousConsumer consumer = consumer(connector(streams), processor,
+                    executor, Duration.seconds(1), Duration.seconds(10), 5, true, registry);
+            consumer.serverStarted(jettyServer);
+            consumer.start();
+
+            Mockito.verify(jettyServer, timeout(1000).times(1)).stop();
+            Thread.sleep(100);
+            Mockito.verify(jettyServer, times(1)).stop();
+            assertThat("shuts down server on supervisor thread",
+                    stopThread.get(),
+                    startsWith("kafka-unrecoverable-error-handler-"));
+            assertThat("counts one error",
+                    registry.counter("consumer.fatalErrors").getCount(),
+                    is(1L));
+            assertFalse(consumer.isRunning());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testIsNotRescaledAfterStop() throws Exception {
+        final ConsumerConnector consumerConnector = connector(1);
+        final SynchronousConsumer consumer = consumer(consumerConnector,
+                Mockito.mock(StreamProcessor.class), inlineExecutor(), Duration.seconds(1),
+                Duration.seconds(10), 5, false, new MetricRegistry());
+        consumer.start();
+        consumer.stop();
+
+        consumer.setStreams("TesTopic", 2);
+
+        Mockito.verify(consumerConnector, times(1)).createMessageStreams(Mockito.anyMap(), Mockito.any(Decoder.class), Mockito.any(Decoder.class));
+        assertThat("streams are unchanged",
+                consumer.getPartitions(),
+                is((Map) Collections.singletonMap("TesTopic", 1)));
+    }
+
+    @Test
+    public void testRateLimitAppliesAfterRestart() throws Exception {
+        final MessageAndMetadata message = message(1);
+        final ConsumerIterator iterator = Mockito.mock(ConsumerIterator.class);
+        when(iterator.hasNext()).thenReturn(true);
+        when(iterator.next()).thenReturn(message);
+        final KafkaStream stream = Mockito.mock(KafkaStream.class);
+        when(stream.iterator()).thenReturn(iterator);
+        final ConsumerConnector consumerConnector = Mockito.mock(ConsumerConnector.class);
+        when(consumerConnector.createMessageStreams(Mockito.anyMap(), Mockito.any(Decoder.class), Mockito.any(Decoder.class)))
+                .thenReturn(Collections.singletonMap("TesTopic", Collections.singletonList(stream)));
+
+        final AtomicInteger processed = new AtomicInteger();
+        final StreamProcessor processor = new StreamProcessor() {
+            @Override
+            public void process(final Iterable stream, final String topic) {
+                for (final Object message : stream) {
+                    processed.incrementAndGet();
+                }
+            }
+        };
+
+        final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1);
+        try {
+            final SynchronousConsumer consumer = consumer(consumerConnector, processor, executor,
+                    Duration.seconds(1), Duration.seconds(10), 5, false, new MetricRegistry());
+            consumer.setRate(null, 10, 0);
+            consumer.start();
+            consumer.stop();
+
+            consumer.start();
+            processed.set(0);
+            Thread.sleep(500);
+            consumer.stop();
+
+            assertThat("limits the rate of the restarted consumer",
+                    processed.get(),
+                    is(lessThanOrEqualTo(20)));
+            assertThat("consumes from the restarted consumer", processed.get(), is(greaterThan(0)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testThrottledTopicDoesNotHoldSchedulerSlot() throws Exception {
+        final MessageAndMetadata message = message(1);
+        final ConsumerIterator iterator = Mockito.mock(ConsumerIterator.class);
+        when(iterator.hasNext()).thenReturn(true);
+        when(iterator.next()).thenReturn(message);
+        final KafkaStream bulk = Mockito.mock(KafkaStream.class);
+        when(bulk.iterator()).thenReturn(iterator);
+        final KafkaStream events = Mockito.mock(KafkaStream.class);
+        when(events.iterator()).thenReturn(iterator);
+        final Map<String, List<KafkaStream>> streams = new HashMap<>();
+        streams.put("bulk", Collections.singletonList(bulk));
+        streams.put("events", Collections.singletonList(events));
+        final ConsumerConnector consumerConnector = Mockito.mock(ConsumerConnector.class);
+        when(consumerConnector.createMessageStreams(Mockito.anyMap(), Mockito.any(Decoder.class), Mockito.any(Decoder.class)))
+                .thenReturn(streams);
+
+        final Map<String, AtomicInteger> processed = new ConcurrentHashMap<>();
+        processed.put("bulk", new AtomicInteger());
+        processed.put("events", new AtomicInteger());
+        final StreamProcessor processor = new StreamProcessor() {
+            @Override
+            public void process(final Iterable stream, final String topic) {
+                for (final Object message : stream) {
+                    processed.get(topic).incrementAndGet();
+                }
+            }
+        };
+
+        final Map<String, Integer> partitions = new HashMap<>();
+        partitions.put("bulk", 1);
+        partitions.put("events", 1);
+        final MetricRegistry registry = new MetricRegistry();
+        final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(2);
+        try {
+            final SynchronousConsumer consumer = new SynchronousConsumer(
+                    Suppliers.ofInstance(consumerConnector),
+                    partitions,
+                    DefaultDecoder,
+                    DefaultDecoder,
+                    processor,
+                    executor,
+                    Duration.seconds(1),
+                    Duration.seconds(10),
+                    configuration.getRetryResetDelay(),
+                    5,
+                    false,
+                    Duration.seconds(0),
+                    registry,
+                    "consumer");
+            final TopicScheduler scheduler =
+                    new TopicScheduler(1, TopicScheduler.Policy.PRIORITY, registry, "scheduler");
+            scheduler.setWeight("bulk", 10);
+            consumer.setScheduler(scheduler);
+            consumer.setRate("bulk", 1, 0);
+            consumer.start();
+
+            Thread.sleep(500);
+            consumer.stop();
+
+            assertThat("limits the rate of the throttled topic",
+                    processed.get("bulk").get(),
+                    is(lessThanOrEqualTo(2)));
+            assertThat("processes the other topic while the prioritised topic is throttled",
+                    processed.get("events").get(),
+                    is(greaterThan(10)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testStreamsAreDrainedBeforePartitionsAreRevoked() throws Exception {
+        final BlockingQueue<MessageAndMetadata> messages = new LinkedBlockingQueue<>();
+        final ConsumerIterator iterator = Mockito.mock(ConsumerIterator.class);
+        when(iterator.hasNext()).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(final InvocationOnMock invocation) throws Throwable {
+                // block until a message is available, like a Kafka stream
+                while (messages.isEmpty()) {
+                    Thread.sleep(1);
+                }
+                return true;
+            }
+        });
+        when(iterator.next()).thenAnswer(new Answer<MessageAndMetadata>() {
+            @Override
+            public MessageAndMetadata answer(final InvocationOnMock invocation) throws Throwable {
+                return messages.take();
+            }
+        });
+        final KafkaStream stream = Mockito.mock(KafkaStream.class);
+        when(stream.iterator()).thenReturn(iterator);
+        final ConsumerConnector consumerConnector = Mockito.mock(ConsumerConnector.class);
+        when(consumerConnector.createMessageStreams(Mockito.anyMap(), Mockito.any(Decoder.class), Mockito.any(Decoder.class)))
+                .thenReturn(Collections.singletonMap("TesTopic", Collections.singletonList(stream)));
+
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch processing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final StreamProcessor processor = new StreamProcessor() {
+            @Override
+            public void process(final Iterable stream, final String topic) {
+                for (final Object message : stream) {
+                    final long offset = ((MessageAndMetadata) message).offset();
+                    processing.countDown();
+                    try {
+                        release.await();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    events.add("processed " + offset);
+                }
+            }
+        };
+
+        final PartitionOwnershipWatcher watcher = Mockito.mock(PartitionOwnershipWatcher.class);
+        Mockito.doAnswer(new Answer() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) throws Throwable {
+                events.add("revoked");
+                return null;
+            }
+        }).when(watcher).revokeAll();
+
+        final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1);
+        try {
+            final SynchronousConsumer consumer = consumer(consumerConnector, processor, executor,
+                    Duration.seconds(1), Duration.seconds(10), 5, false, new MetricRegistry());
+            consumer.setPartitionWatcher(watcher);
+            consumer.start();
+
+            messages.add(message(1));
+            assertTrue("processing a message", processing.await(5, TimeUnit.SECONDS));
+
+            final Thread stopping = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        consumer.stop();
+                    } catch (final Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+            stopping.start();
+            Thread.sleep(100);
+            messages.add(message(2));
+            Thread.sleep(100);
+            assertThat("doesn't revoke while a message is processed", events, is((List) Collections.emptyList()));
+
+            release.countDown();
+            stopping.join(5000);
+            assertFalse("consumer has stopped", stopping.isAlive());
+
+            assertThat("revokes once the message has been processed, and reads no more",
+                    events,
+                    is((List) Arrays.asList("processed 1", "revoked")));
+            final InOrder inOrder = Mockito.inOrder(watcher, consumerConnector);
+            inOrder.verify(watcher).revokeAll();
+            inOrder.verify(consumerConnector).shutdown();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testQueuedLaneMessagesAreProcessedBeforeCommitOnStop() throws Exception {
+        assertQueuedLaneMessagesAreProcessedBeforeCommit(new ConsumerAction() {
+            @Override
+            public void apply(final SynchronousConsumer consumer) throws Exception {
+                consumer.stop();
+            }
+        });
+    }
+
+    @Test
+    public void testQueuedLaneMessagesAreProcessedBeforeCommitOnRescale() throws Exception {
+        assertQueuedLaneMessagesAreProcessedBeforeCommit(new ConsumerAction() {
+            @Override
+            public void apply(final SynchronousConsumer consumer) throws Exception {
+                consumer.setStreams("TesTopic", 2);
+            }
+        });
+    }
+
+    private interface ConsumerAction {
+        void apply(SynchronousConsumer consumer) throws Exception;
+    }
+
+    private void assertQueuedLaneMessagesAreProcessedBeforeCommit(final ConsumerAction action)
+            throws Exception {
+        final BlockingQueue<MessageAndMetadata> messages = new LinkedBlockingQueue<>();
+        final ConsumerIterator iterator = Mockito.mock(ConsumerIterator.class);
+        when(iterator.hasNext()).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(final InvocationOnMock invocation) throws Throwable {
+                // block until a message is available, like a Kafka stream
+                while (messages.isEmpty()) {
+                    Thread.sleep(1);
+                }
+                return true;
+            }
+        });
+        when(iterator.next()).thenAnswer(new Answer<MessageAndMetadata>() {
+            @Override
+            public MessageAndMetadata answer(final InvocationOnMock invocation) throws Throwable {
+                return messages.take();
+            }
+        });
+        final KafkaStream stream = Mockito.mock(KafkaStream.class);
+        when(stream.iterator()).thenReturn(iterator);
+        final ConsumerConnector consumerConnector = Mockito.mock(ConsumerConnector.class);
+        when(consumerConnector.createMessageStreams(Mockito.anyMap(), Mockito.any(Decoder.class), Mockito.any(Decoder.class)))
+                .thenReturn(Collections.singletonMap("TesTopic", Collections.singletonList(stream)));
+
+        // the rescaled connector has nothing to consume
+        final ConsumerIterator empty = Mockito.mock(ConsumerIterator.class);
+        when(empty.hasNext()).thenReturn(false);
+        final KafkaStream emptyStream = Mockito.mock(KafkaStream.class);
+        when(emptyStream.iterator()).thenReturn(empty);
+        final ConsumerConnector rescaledConnector = Mockito.mock(ConsumerConnector.class);
+        when(rescaledConnector.createMessageStreams(Mockito.anyMap(), Mockito.any(Decoder.class), Mockito.any(Decoder.class)))
+                .thenReturn(Collections.singletonMap("TesTopic", Collections.singletonList(emptyStream)));
+
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final ExecutorService lanes = Executors.newCachedThreadPool();
+        final KeyOrderedMessageProcessor<byte[], byte[]> processor =
+                new KeyOrderedMessageProcessor<byte[], byte[]>(lanes, 1, 10) {
+                    @Override
+                    public void process(final byte[] key,
+                                        final byte[] message,
+                                        final String topic,
+                                        final int partition,
+                                        final long offset) {
+                        try {
+                            Thread.sleep(20);
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        events.add("processed " + offset);
+                    }
+                };
+
+        final PartitionOwnershipWatcher watcher = Mockito.mock(PartitionOwnershipWatcher.class);
+        Mockito.doAnswer(new Answer() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) throws Throwable {
+                processor.onPartitionsRevoked(
+                        Collections.singletonMap("TesTopic", Collections.singleton(0)));
+                events.add("committed");
+                return null;
+            }
+        }).when(watcher).revokeAll();
+
+        final Iterator<ConsumerConnector> connectors =
+                Arrays.asList(consumerConnector, rescaledConnector).iterator();
+        final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(2);
+        try {
+            final SynchronousConsumer consumer = new SynchronousConsumer(
+                    new Supplier<ConsumerConnector>() {
+                        @Override
+                        public ConsumerConnector get() {
+                            return connectors.next();
+                        }
+                    },
+                    Collections.singletonMap("TesTopic", 1),
+                    DefaultDecoder,
+                    DefaultDecoder,
+                    processor,
+                    executor,
+                    Duration.seconds(1),
+                    Duration.seconds(10),
+                    configuration.getRetryResetDelay(),
+                    5,
+                    false,
+                    Duration.seconds(0),
+                    new MetricRegistry(),
+                    "consumer");
+            consumer.setPartitionWatcher(watcher);
+            consumer.start();
+
+            for (int i = 0; i < 5; i++) {
+                messages.add(message(i));
+            }
+            while (!messages.isEmpty()) {
+                Thread.sleep(1);
+            }
+
+            action.apply(consumer);
+
+            assertThat("processes queued messages before committing",
+                    events,
+                    is((List) Arrays.asList("processed 0", "processed 1", "processed 2",
+                            "processed 3", "processed 4", "committed")));
+        } finally {
+            executor.shutdownNow();
+            lanes.shutdownNow();
+        }
+    }
 
+    private ConsumerConnector connector(final int streams) {
+        final List<KafkaStream> messageStreams = new ArrayList<>();
+        for (int i = 0; i < streams; i++) {
+            messageStreams.add(Mockito.mock(KafkaStream.class));
+        }
+        final Map<String, List<KafkaStream>> mockedMessageStreams =
+                Collections.singletonMap("TesTopic", messageStreams);
+        final ConsumerConnector consumerConnector = Mockito.mock(ConsumerConnector.class);
+        when(consumerConnector.createMessageStreams(Mockito.anyMap(), Mockito.any(Decoder.class), Mockito.any(Decoder.class))).thenReturn(mockedMessageStreams);
+        return consumerConnector;
+    }
+
+    private static ScheduledExecutorService inlineExecutor() {
+        final ScheduledExecutorService executor = Mockito.mock(ScheduledExecutorService.class);
+        Mockito.doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                ((Runnable) invocationOnMock.getArguments()[0]).run();
+                return null;
+            }
+        }).when(executor).schedule(Mockito.any(Runnable.class), Mockito.anyLong(), Mockito.any(TimeUnit.class));
+        return executor;
+    }
+
+    private SynchronousConsumer consumer(final ConsumerConnector consumerConnector,
+                                         final StreamProcessor processor,
+                                         final ScheduledExecutorService executor,
+                                         final Duration initialRecoveryDelay,
+                                         final Duration maxRecoveryDelay,
+                                         final int maxRecoveryAttempts,
+                                         final boolean shutdownOnFatal,
+                                         final MetricRegistry registry) {
+        return new SynchronousConsumer(
+                Suppliers.ofInstance(consumerConnector),
+                Collections.singletonMap("TesTopic", 1),
+                DefaultDecoder,
+                DefaultDecoder,
+                processor,
+                executor,
+                initialRecoveryDelay,
+                maxRecoveryDelay,
+                configuration.getRetryResetDelay(),
+                maxRecoveryAttempts,
+                shutdownOnFatal,
+                Duration.seconds(0),
+                registry,
+                "consumer");
+    }
+
+    private static MessageAndMetadata message(final long offset) {
+        final MessageAndMetadata message = Mockito.mock(MessageAndMetadata.class);
+        when(message.offset()).thenReturn(offset);
+        return message;
+    }
+
+    private static Object gauge(final MetricRegistry registry, final String name) {
+        return registry.getGauges().get(name).getValue();
+    }
 }
@@ -0,0 +1,162 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import kafka.message.MessageAndMetadata;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests {@link TopicScheduler}.
+ */
+public class TopicSchedulerTest {
+
+    private MetricRegistry registry;
+    private List<String> granted;
+
+    @Before
+    public void setUp() {
+        registry = new MetricRegistry();
+        granted = Collections.synchronizedList(new ArrayList<String>());
+    }
+
+    @Test
+    public void holdsSlotUntilNextMessageIsRequested() throws Exception {
+        final TopicScheduler scheduler = scheduler(1, TopicScheduler.Policy.WEIGHTED);
+        final Iterator<MessageAndMetadata<String, String>> holder =
+                scheduler.schedule(messages(2), "bulk").iterator();
+        holder.hasNext();
+        holder.next();
+
+        final Thread waiter = waiter(scheduler, "critical");
+        awaitWaiting(scheduler, 1);
+        assertThat("no slot is granted while held", granted(), is(ImmutableList.<String>of()));
+
+        holder.hasNext();
+        waiter.join(5000);
+        assertThat("slot is granted once the next message is requested",
+                granted(),
+                is(ImmutableList.of("critical")));
+        assertThat("records queueing delay of topic",
+                registry.timer("scheduler.critical.queueing").getCount(),
+                is(1L));
+    }
+
+    @Test
+    public void grantsFreeSlotToHighestPriorityTopic() throws Exception {
+        final TopicScheduler scheduler = scheduler(1, TopicScheduler.Policy.PRIORITY);
+        scheduler.setWeight("critical", 10);
+        final TopicScheduler.ScheduledStream<String, String> holder =
+                scheduler.schedule(messages(1), "holder");
+        holder.iterator().next();
+
+        final List<Thread> waiters = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            waiters.add(waiter(scheduler, "bulk"));
+        }
+        awaitWaiting(scheduler, 3);
+        waiters.add(waiter(scheduler, "critical"));
+        awaitWaiting(scheduler, 4);
+
+        holder.release();
+        join(waiters);
+        assertThat("critical topic overtakes waiting bulk topic",
+                granted(),
+                is(ImmutableList.of("critical", "bulk", "bulk", "bulk")));
+    }
+
+    @Test
+    public void sharesSlotsInProportionToWeight() throws Exception {
+        final TopicScheduler scheduler = scheduler(1, TopicScheduler.Policy.WEIGHTED);
+        scheduler.setWeight("critical", 3);
+        final TopicScheduler.ScheduledStream<String, String> holder =
+                scheduler.schedule(messages(1), "holder");
+        holder.iterator().next();
+
+        final List<Thread> waiters = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            waiters.add(waiter(scheduler, "bulk"));
+            waiters.add(waiter(scheduler, "critical"));
+        }
+        awaitWaiting(scheduler, 8);
+
+        holder.release();
+        join(waiters);
+        assertThat("critical topic is granted 3 of the first 4 slots",
+                Collections.frequency(granted.subList(0, 4), "critical"),
+                is(3));
+    }
+
+    @Test
+    public void releasesWaitingStreamsWhenClosed() throws Exception {
+        final TopicScheduler scheduler = scheduler(1, TopicScheduler.Policy.WEIGHTED);
+        scheduler.schedule(messages(1), "holder").iterator().next();
+
+        final Thread waiter = waiter(scheduler, "bulk");
+        awaitWaiting(scheduler, 1);
+
+        scheduler.close();
+        waiter.join(5000);
+        assertThat("message is read once closed", granted(), is(ImmutableList.of("bulk")));
+        assertThat("no streams are waiting", scheduler.getWaiting(), is(0));
+    }
+
+    private ImmutableList<String> granted() {
+        return ImmutableList.copyOf(granted);
+    }
+
+    private TopicScheduler scheduler(final int slots, final TopicScheduler.Policy policy) {
+        return new TopicScheduler(slots, policy, registry, "scheduler");
+    }
+
+    /**
+     * Starts a thread that reads a message from a topic, records it, and releases its slot.
+     */
+    private Thread waiter(final TopicScheduler scheduler, final String topic) {
+        final TopicScheduler.ScheduledStream<String, String> stream =
+                scheduler.schedule(messages(1), topic);
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                stream.iterator().next();
+                granted.add(topic);
+                stream.release();
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitWaiting(final TopicScheduler scheduler, final int waiting)
+            throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (scheduler.getWaiting() < waiting && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat("streams are waiting", scheduler.getWaiting(), is(waiting));
+    }
+
+    private static void join(final List<Thread> threads) throws InterruptedException {
+        for (final Thread thread : threads) {
+            thread.join(5000);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Iterable<MessageAndMetadata<String, String>> messages(final int count) {
+        final List<MessageAndMetadata<String, String>> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(mock(MessageAndMetadata.class));
+        }
+        return ImmutableList.copyOf(messages);
+    }
+}
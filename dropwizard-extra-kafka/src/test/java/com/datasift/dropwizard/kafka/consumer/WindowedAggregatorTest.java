@@ -0,0 +1,233 @@
+package com.datasift.dropwizard.kafka.consumer;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import io.dropwizard.util.Duration;
+import kafka.message.MessageAndMetadata;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests {@link WindowedAggregator}.
+ */
+public class WindowedAggregatorTest {
+
+    private RecordingSink sink;
+    private MetricRegistry registry;
+    private long now;
+
+    @Before
+    public void setUp() {
+        sink = new RecordingSink();
+        registry = new MetricRegistry();
+        now = 0;
+    }
+
+    @Test
+    public void writesTumblingWindowOnceClosed() {
+        final Aggregator aggregator = new Aggregator(Duration.seconds(1), Duration.seconds(1), 100);
+
+        at(100, aggregator, "a", 2);
+        at(200, aggregator, "a", 3);
+        at(300, aggregator, "b", 5);
+        assertThat("open window is not written", sink.written(), is(ImmutableList.<String>of()));
+
+        at(1000, aggregator, "a", 1);
+        assertThat("closed window is written once per key",
+                sink.written(),
+                is(ImmutableList.of("a[0,1000)=2/5", "b[0,1000)=1/5")));
+
+        now = 2000;
+        aggregator.closeWindows();
+        assertThat("window is closed by the clock",
+                sink.written().get(2),
+                is("a[1000,2000)=1/1"));
+        assertThat("no keys are held", aggregator.getKeys(), is(0));
+    }
+
+    @Test
+    public void addsMessagesToEverySlidingWindowCoveringThem() {
+        final Aggregator aggregator = new Aggregator(Duration.seconds(2), Duration.seconds(1), 100);
+
+        at(1500, aggregator, "a", 1);
+        assertThat("message is held by both windows", aggregator.getKeys(), is(2));
+
+        now = 3000;
+        aggregator.closeWindows();
+        assertThat("both windows are written",
+                sink.written(),
+                is(ImmutableList.of("a[0,2000)=1/1", "a[1000,3000)=1/1")));
+    }
+
+    @Test
+    public void writesOldestWindowEarlyWhenKeysExceeded() {
+        final Aggregator aggregator = new Aggregator(Duration.seconds(2), Duration.seconds(1), 3);
+
+        at(1000, aggregator, "a", 1);
+        at(1100, aggregator, "b", 1);
+        assertThat("oldest window is written early",
+                sink.written(),
+                is(ImmutableList.of("a[0,2000)=1/1", "b[0,2000)=1/1")));
+        assertThat("keys are bounded", aggregator.getKeys(), is(2));
+        assertThat("records eviction",
+                registry.meter("aggregator.evicted").getCount(),
+                is(1L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void writesAllAggregatesBeforeCommittingOffsets() throws Exception {
+        final Aggregator aggregator = new Aggregator(Duration.seconds(1), Duration.seconds(1), 100);
+        final AggregateSink<String> sink = mock(AggregateSink.class);
+        final Aggregator checkpointed =
+                new Aggregator(sink, Duration.seconds(1), Duration.seconds(1), 100);
+        final KafkaConsumer consumer = mock(KafkaConsumer.class);
+
+        at(100, checkpointed, "a", 1);
+        assertThat("checkpoints",
+                checkpointed.checkpoint(consumer, Duration.seconds(1)),
+                is(true));
+
+        final InOrder order = inOrder(sink, consumer);
+        order.verify(sink).write("a", 0, 1000, 1, 1);
+        order.verify(sink).flush();
+        order.verify(consumer).commitOffsets();
+        assertThat("open window is discarded", checkpointed.getKeys(), is(0));
+
+        at(200, aggregator, "a", 1);
+        final Set<Integer> partitions = ImmutableSet.of(0);
+        aggregator.onPartitionsRevoked(ImmutableMap.of("events", partitions));
+        assertThat("revocation writes open windows",
+                this.sink.written(),
+                is(ImmutableList.of("a[0,1000)=1/1")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void revocationWaitsForMessagesBeingAggregated() throws Exception {
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Aggregator aggregator =
+                new Aggregator(Duration.seconds(1), Duration.seconds(1), 100) {
+                    @Override
+                    protected String key(final String key, final Long message, final String topic,
+                                         final int partition) {
+                        // the message has been read, but not yet aggregated
+                        reading.countDown();
+                        try {
+                            release.await();
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return key;
+                    }
+                };
+
+        final MessageAndMetadata<String, Long> message = mock(MessageAndMetadata.class);
+        when(message.key()).thenReturn("a");
+        when(message.message()).thenReturn(1L);
+        now = 100;
+
+        final Thread stream = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                aggregator.process(ImmutableList.of(message), "events");
+            }
+        });
+        stream.start();
+        assertThat("message is read", reading.await(5, TimeUnit.SECONDS), is(true));
+
+        final Thread revoking = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final Set<Integer> partitions = ImmutableSet.of(0);
+                aggregator.onPartitionsRevoked(ImmutableMap.of("events", partitions));
+            }
+        });
+        revoking.start();
+        revoking.join(100);
+        assertThat("revocation waits for the message", revoking.isAlive(), is(true));
+
+        release.countDown();
+        revoking.join(5000);
+        stream.join(5000);
+        assertThat("revocation writes the message's aggregate",
+                sink.written(),
+                is(ImmutableList.of("a[0,1000)=1/1")));
+    }
+
+    private void at(final long time,
+                    final Aggregator aggregator,
+                    final String key,
+                    final long value) {
+        now = time;
+        aggregator.process(key, value, "events", 0, 0);
+    }
+
+    private class Aggregator extends WindowedAggregator<String, Long, String> {
+
+        Aggregator(final Duration size, final Duration slide, final int maxKeys) {
+            this(sink, size, slide, maxKeys);
+        }
+
+        Aggregator(final AggregateSink<String> sink,
+                   final Duration size,
+                   final Duration slide,
+                   final int maxKeys) {
+            super(sink, size, slide, maxKeys, registry, "aggregator");
+        }
+
+        @Override
+        protected String key(final String key, final Long message, final String topic,
+                             final int partition) {
+            return key;
+        }
+
+        @Override
+        protected long value(final String key, final Long message) {
+            return message;
+        }
+
+        @Override
+        protected long now() {
+            return now;
+        }
+    }
+
+    private static class RecordingSink implements AggregateSink<String> {
+
+        private final List<String> written = new ArrayList<>();
+
+        @Override
+        public synchronized void write(final String key,
+                                       final long start,
+                                       final long end,
+                                       final long count,
+                                       final long sum) {
+            written.add(key + "[" + start + "," + end + ")=" + count + "/" + sum);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        synchronized ImmutableList<String> written() {
+            return ImmutableList.copyOf(written);
+        }
+    }
+}
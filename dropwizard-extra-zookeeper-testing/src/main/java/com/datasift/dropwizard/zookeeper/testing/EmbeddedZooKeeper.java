@@ -0,0 +1,145 @@
+package com.datasift.dropwizard.zookeeper.testing;
+
+import io.dropwizard.lifecycle.Managed;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.server.NIOServerCnxnFactory;
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single-node ZooKeeper server, running in-process on a local port.
+ * <p/>
+ * The server stores its data in a temporary directory that is deleted when it's stopped, so each
+ * run starts from an empty tree.
+ */
+public class EmbeddedZooKeeper implements Managed {
+
+    /**
+     * The host the server listens on.
+     */
+    protected static final String HOST = "localhost";
+    private static final int TICK_TIME = 500;
+    private static final int MAX_CONNECTIONS = 1024;
+    private static final int SESSION_TIMEOUT_MS = 5000;
+    private static final long CONNECT_TIMEOUT_MS = 10000;
+
+    private File dataDir = null;
+    private ZooKeeperServer server = null;
+    private ServerCnxnFactory connections = null;
+
+    /**
+     * Starts the ZooKeeper server on a free local port.
+     *
+     * @throws Exception if the server could not be started.
+     */
+    @Override
+    public synchronized void start() throws Exception {
+        if (server != null) {
+            return;
+        }
+
+        dataDir = tempDir("zookeeper");
+        server = new ZooKeeperServer(dataDir, dataDir, TICK_TIME);
+        connections = new NIOServerCnxnFactory();
+        connections.configure(new InetSocketAddress(HOST, 0), MAX_CONNECTIONS);
+        connections.startup(server);
+    }
+
+    /**
+     * Stops the ZooKeeper server and deletes all of its data.
+     *
+     * @throws Exception if the server could not be stopped.
+     */
+    @Override
+    public synchronized void stop() throws Exception {
+        if (server == null) {
+            return;
+        }
+
+        connections.shutdown();
+        server.shutdown();
+        delete(dataDir);
+
+        connections = null;
+        server = null;
+        dataDir = null;
+    }
+
+    /**
+     * Returns the local port the server is listening on.
+     *
+     * @return the port the server is listening on.
+     *
+     * @throws IllegalStateException if the server isn't running.
+     */
+    public synchronized int getPort() {
+        if (connections == null) {
+            throw new IllegalStateException("ZooKeeper server is not running");
+        }
+        return connections.getLocalPort();
+    }
+
+    /**
+     * Returns the connection string for clients of the server.
+     *
+     * @return the connection string for the server, formatted as: host:port
+     *
+     * @throws IllegalStateException if the server isn't running.
+     */
+    public String getConnectString() {
+        return HOST + ":" + getPort();
+    }
+
+    /**
+     * Creates a {@link ZooKeeper} client of the server, and waits for it to connect.
+     *
+     * @return a new, connected {@link ZooKeeper} client.
+     *
+     * @throws IOException if the client could not be created.
+     * @throws InterruptedException if interrupted while waiting for the client to connect.
+     * @throws IllegalStateException if the server isn't running, or the client didn't connect.
+     */
+    public ZooKeeper newClient() throws IOException, InterruptedException {
+        final CountDownLatch connected = new CountDownLatch(1);
+        final ZooKeeper client = new ZooKeeper(getConnectString(), SESSION_TIMEOUT_MS,
+                new Watcher() {
+                    @Override
+                    public void process(final WatchedEvent event) {
+                        if (event.getState() == Event.KeeperState.SyncConnected) {
+                            connected.countDown();
+                        }
+                    }
+                });
+        if (!connected.await(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            client.close();
+            throw new IllegalStateException("Client did not connect to the ZooKeeper server");
+        }
+        return client;
+    }
+
+    private static File tempDir(final String prefix) throws IOException {
+        final File dir = File.createTempFile(prefix, "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Unable to create temporary directory: " + dir);
+        }
+        return dir;
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
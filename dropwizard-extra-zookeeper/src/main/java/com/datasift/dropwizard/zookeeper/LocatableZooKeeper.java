@@ -0,0 +1,47 @@
+package com.datasift.dropwizard.zookeeper;
+
+import com.google.common.base.Optional;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+/**
+ * A {@link ZooKeeper} client that exposes the address of the server its session is bound to.
+ *
+ * @see ZooKeeperFactory#registerServerMetrics
+ */
+public class LocatableZooKeeper extends ZooKeeper {
+
+    /**
+     * Creates a {@link ZooKeeper} client for the given ensemble.
+     *
+     * @param connectString  the connection string of the ensemble, formatted as:
+     *                       host1:port1,host2:port2[,hostN:portN][/namespace]
+     * @param sessionTimeout the session timeout, in milliseconds.
+     * @param watcher        the watcher to handle all events that occur on the client.
+     * @param canBeReadOnly  whether the client may connect to read-only servers.
+     *
+     * @throws IOException if there is a network failure.
+     */
+    public LocatableZooKeeper(final String connectString,
+                              final int sessionTimeout,
+                              final Watcher watcher,
+                              final boolean canBeReadOnly) throws IOException {
+        super(connectString, sessionTimeout, watcher, canBeReadOnly);
+    }
+
+    /**
+     * Returns the address of the server the client is currently connected to.
+     *
+     * @return the address of the connected server; or absent, if the client is not connected.
+     */
+    public Optional<InetSocketAddress> getServerAddress() {
+        final SocketAddress address = testableRemoteSocketAddress();
+        return address instanceof InetSocketAddress
+                ? Optional.of((InetSocketAddress) address)
+                : Optional.<InetSocketAddress>absent();
+    }
+}
@@ -0,0 +1,34 @@
+package com.datasift.dropwizard.zookeeper;
+
+import io.dropwizard.lifecycle.Managed;
+import org.apache.zookeeper.Watcher;
+
+/**
+ * Manages a reference to a {@link SharedZooKeeper} client, releasing it when stopped.
+ */
+public class ManagedSharedZooKeeper implements Managed {
+
+    private final SharedZooKeeper client;
+    private final Watcher watcher;
+
+    /**
+     * Manage the given reference to a {@link SharedZooKeeper} client.
+     *
+     * @param client the client to manage.
+     * @param watcher the watcher the client was acquired with; may be null.
+     */
+    public ManagedSharedZooKeeper(final SharedZooKeeper client, final Watcher watcher) {
+        this.client = client;
+        this.watcher = watcher;
+    }
+
+    @Override
+    public void start() throws Exception {
+        // already acquired, nothing to do
+    }
+
+    @Override
+    public void stop() throws Exception {
+        client.release(watcher);
+    }
+}
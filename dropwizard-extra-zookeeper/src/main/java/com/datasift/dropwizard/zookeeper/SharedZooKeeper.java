@@ -0,0 +1,198 @@
+package com.datasift.dropwizard.zookeeper;
+
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+
+import com.google.common.collect.Sets;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * A {@link ZooKeeper} client whose session is shared by many holders, acquired from a {@link
+ * ZooKeeperSessionRegistry}.
+ * <p/>
+ * Each holder's {@link Watcher} is notified of every event on the shared session. Since the
+ * session is shared, holders should register explicit {@link Watcher}s for the ZNodes they watch,
+ * rather than relying on their default {@link Watcher}.
+ * <p/>
+ * Each holder is identified by the {@link Watcher} it acquired the client with, and releases its
+ * reference with {@link #release(Watcher)}; releasing the same holder again does nothing. Holders
+ * that acquired the client without a {@link Watcher} can't be told apart, so they release their
+ * reference by closing the client. The session itself is only closed when every holder has
+ * released it.
+ *
+ * @see ZooKeeperSessionRegistry
+ */
+public class SharedZooKeeper extends LocatableZooKeeper {
+
+    /**
+     * Dispatches the events of the shared session to the {@link Watcher} of each holder.
+     */
+    static class Dispatcher implements Watcher {
+
+        private final Set<Watcher> watchers = new CopyOnWriteArraySet<>();
+        private ZooKeeperSessionRegistry registry = null;
+        private SharedZooKeeper client = null;
+
+        @Override
+        public synchronized void process(final WatchedEvent event) {
+            if (event.getType() == Event.EventType.None
+                    && event.getState() == Event.KeeperState.Expired
+                    && client != null) {
+                registry.expire(client);
+            }
+
+            for (final Watcher watcher : watchers) {
+                watcher.process(event);
+            }
+        }
+
+        /**
+         * Notifies a newly registered {@link Watcher} that the session is already connected, so
+         * that it observes the same sequence of events as the holders that created the session.
+         */
+        synchronized void notifyConnected(final Watcher watcher) {
+            if (client == null || !watchers.contains(watcher)) {
+                return;
+            }
+
+            switch (client.getState()) {
+                case CONNECTED:
+                    watcher.process(new WatchedEvent(
+                            Event.EventType.None, Event.KeeperState.SyncConnected, null));
+                    break;
+                case CONNECTEDREADONLY:
+                    watcher.process(new WatchedEvent(
+                            Event.EventType.None, Event.KeeperState.ConnectedReadOnly, null));
+                    break;
+                default:
+                    // the connection will be reported by the event thread when it's established
+                    break;
+            }
+        }
+
+        void bind(final ZooKeeperSessionRegistry registry, final SharedZooKeeper client) {
+            synchronized (this) {
+                this.registry = registry;
+                this.client = client;
+            }
+        }
+
+        void add(final Watcher watcher) {
+            watchers.add(watcher);
+        }
+
+        void remove(final Watcher watcher) {
+            watchers.remove(watcher);
+        }
+    }
+
+    private final ZooKeeperSessionRegistry registry;
+    private final ZooKeeperSessionRegistry.Key key;
+    private final Dispatcher dispatcher;
+    private final Set<Watcher> holders = Sets.newIdentityHashSet();
+    private int anonymous = 0;
+
+    SharedZooKeeper(final ZooKeeperSessionRegistry registry,
+                    final ZooKeeperSessionRegistry.Key key,
+                    final String connectString,
+                    final int sessionTimeout,
+                    final Dispatcher dispatcher,
+                    final boolean canBeReadOnly) throws IOException {
+        super(connectString, sessionTimeout, dispatcher, canBeReadOnly);
+        this.registry = registry;
+        this.key = key;
+        this.dispatcher = dispatcher;
+        dispatcher.bind(registry, this);
+    }
+
+    /**
+     * Returns the number of holders that have not yet released this client.
+     *
+     * @return the number of references to the shared session.
+     */
+    public int getReferenceCount() {
+        synchronized (registry) {
+            return holders.size() + anonymous;
+        }
+    }
+
+    /**
+     * Stops notifying the given {@link Watcher} of events and releases the holder's reference to
+     * the shared session, closing the session if it was the last holder.
+     * <p/>
+     * Does nothing if the holder has already released its reference.
+     *
+     * @param watcher the {@link Watcher} the holder acquired the client with; or null, if it was
+     *                acquired without one.
+     *
+     * @throws InterruptedException if interrupted while closing the session.
+     */
+    public void release(final Watcher watcher) throws InterruptedException {
+        if (watcher != null) {
+            dispatcher.remove(watcher);
+        }
+        registry.release(this, watcher);
+    }
+
+    /**
+     * Releases the reference of a holder that acquired the client without a {@link Watcher},
+     * closing the session if it was the last holder.
+     * <p/>
+     * Holders that acquired the client with a {@link Watcher} must {@link #release(Watcher)} it
+     * instead, so that another holder closing the client can never release their reference.
+     *
+     * @throws InterruptedException if interrupted while closing the session.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        release(null);
+    }
+
+    /**
+     * Ignores the given {@link Watcher}, as the default {@link Watcher} of a shared session
+     * notifies every holder.
+     * <p/>
+     * Holders stop being notified of events when they {@link #release(Watcher)} the client.
+     *
+     * @param watcher the {@link Watcher} to ignore.
+     */
+    @Override
+    public void register(final Watcher watcher) {
+        // replacing the dispatcher would stop every other holder from being notified of events
+    }
+
+    ZooKeeperSessionRegistry.Key getKey() {
+        return key;
+    }
+
+    Dispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    void retain(final Watcher watcher) {
+        if (watcher == null) {
+            anonymous++;
+        } else {
+            holders.add(watcher);
+        }
+    }
+
+    boolean unretain(final Watcher watcher) {
+        if (watcher != null) {
+            return holders.remove(watcher);
+        }
+        if (anonymous > 0) {
+            anonymous--;
+            return true;
+        }
+        return false;
+    }
+
+    void closeSession() throws InterruptedException {
+        super.close();
+    }
+}
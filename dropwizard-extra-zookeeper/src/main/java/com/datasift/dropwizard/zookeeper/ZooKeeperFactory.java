@@ -2,10 +2,22 @@ package com.datasift.dropwizard.zookeeper;
 
 import io.dropwizard.util.Duration;
 import io.dropwizard.validation.ValidationMethod;
+import com.datasift.dropwizard.zookeeper.batch.BatchingZooKeeperWriter;
+import com.datasift.dropwizard.zookeeper.cache.BoundedStalenessClient;
+import com.datasift.dropwizard.zookeeper.cache.ZooKeeperCache;
+import com.datasift.dropwizard.zookeeper.health.BoundedStalenessHealthCheck;
 import com.datasift.dropwizard.zookeeper.health.ZooKeeperHealthCheck;
+import com.datasift.dropwizard.zookeeper.health.ZooKeeperHealthMonitor;
 import io.dropwizard.setup.Environment;
+import io.dropwizard.util.Size;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import org.apache.zookeeper.WatchedEvent;
 import org.apache.zookeeper.Watcher;
 import org.apache.zookeeper.ZooKeeper;
 import org.apache.zookeeper.common.PathUtils;
@@ -13,17 +25,32 @@ import org.hibernate.validator.constraints.NotEmpty;
 import org.hibernate.validator.constraints.Range;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Pattern;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A Factory for creating configured and managed {@link ZooKeeper} client instances.
  * <p/>
  * A {@link ZooKeeperHealthCheck} will be registered for each {@link ZooKeeper} client instance that
- * checks for the existence of the configured {@link #namespace}.
+ * reports connection state and periodically checks for the existence of the configured {@link
+ * #namespace}, in the background.
+ * <p/>
+ * Subtrees that are read frequently may be cached in memory with a {@link ZooKeeperCache}.
+ * <p/>
+ * Clients may {@link #isShareSession() share} a single session with other clients of the same
+ * ensemble, through the {@link ZooKeeperSessionRegistry}.
  *
  * @see ZooKeeperHealthCheck
+ * @see ZooKeeperCache
+ * @see ZooKeeperSessionRegistry
  * @see ManagedZooKeeper
  */
 public class ZooKeeperFactory {
@@ -90,6 +117,115 @@ public class ZooKeeperFactory {
         }
     }
 
+    /**
+     * Configuration for batching writes in to multi transactions.
+     *
+     * @see BatchingZooKeeperWriter
+     */
+    public static class Batch {
+
+        @Min(1)
+        protected int maxOperations = 100;
+
+        @NotNull
+        protected Size maxSize = Size.kilobytes(512);
+
+        @NotNull
+        protected Duration linger = Duration.milliseconds(5);
+
+        /**
+         * Returns the maximum number of writes to commit in a single transaction.
+         *
+         * @return the maximum number of writes in each batch.
+         */
+        @JsonProperty
+        public int getMaxOperations() {
+            return maxOperations;
+        }
+
+        /**
+         * Sets the maximum number of writes to commit in a single transaction.
+         *
+         * @param maxOperations the maximum number of writes in each batch.
+         */
+        @JsonProperty
+        public void setMaxOperations(final int maxOperations) {
+            this.maxOperations = maxOperations;
+        }
+
+        /**
+         * Returns the maximum approximate size of the writes in a single transaction.
+         * <p/>
+         * This must be less than the maximum packet size of the ensemble, which is 1MB by default.
+         *
+         * @return the maximum size of each batch.
+         */
+        @JsonProperty
+        public Size getMaxSize() {
+            return maxSize;
+        }
+
+        /**
+         * Sets the maximum approximate size of the writes in a single transaction.
+         * <p/>
+         * This must be less than the maximum packet size of the ensemble, which is 1MB by default.
+         *
+         * @param maxSize the maximum size of each batch.
+         */
+        @JsonProperty
+        public void setMaxSize(final Size maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        /**
+         * Returns the maximum time to wait for more writes before committing a batch.
+         *
+         * @return the maximum time to wait for more writes.
+         */
+        @JsonProperty
+        public Duration getLinger() {
+            return linger;
+        }
+
+        /**
+         * Sets the maximum time to wait for more writes before committing a batch.
+         *
+         * @param linger the maximum time to wait for more writes.
+         */
+        @JsonProperty
+        public void setLinger(final Duration linger) {
+            this.linger = linger;
+        }
+    }
+
+    /**
+     * Strategies for selecting the servers of the ensemble that clients may connect to.
+     * <p/>
+     * The {@link ZooKeeper} client connects to a random server from those selected, and fails over
+     * to the others, in a random order, if its server becomes unavailable.
+     *
+     * @see #getSelectedQuorumSpec()
+     */
+    public enum ServerSelection {
+
+        /**
+         * Every server in the ensemble may be connected to, with equal probability.
+         */
+        ALL,
+
+        /**
+         * Servers in the {@link #getZone() local zone} are more likely to be connected to, by the
+         * {@link #getLocalZoneWeight() local zone weight}, but every server may be failed over to.
+         */
+        PREFER_LOCAL_ZONE,
+
+        /**
+         * Only servers in the {@link #getZone() local zone} may be connected to, unless no servers
+         * are configured in the local zone.
+         */
+        LOCAL_ZONE_ONLY
+    }
+
     @NotEmpty
     protected String[] hosts = new String[]{ "localhost" };
 
@@ -111,9 +247,37 @@ public class ZooKeeperFactory {
 
     protected boolean readOnly = false;
 
+    protected boolean shareSession = false;
+
+    @NotNull
+    protected Duration healthCheckInterval = Duration.seconds(10);
+
+    @NotNull
+    protected Duration healthCheckTimeout = Duration.seconds(2);
+
+    @NotNull
+    protected Duration maxStaleness = Duration.minutes(1);
+
+    @Valid
+    @NotNull
+    protected Batch batch = new Batch();
+
+    @NotNull
+    protected ServerSelection serverSelection = ServerSelection.ALL;
+
+    protected String zone = null;
+
+    @NotNull
+    protected Map<String, String> zones = Collections.emptyMap();
+
+    @Min(1)
+    protected int localZoneWeight = 3;
 
     /**
      * Returns the hostnames of every node in the ZooKeeper quorum.
+     * <p/>
+     * Each hostname may specify its own port, formatted as: host:port; otherwise, the common
+     * {@link #getPort() port} is used.
      *
      * @return the hostanmes of every node in the ZooKeeper quorum.
      */
@@ -134,6 +298,8 @@ public class ZooKeeperFactory {
 
     /**
      * Returns the port to connect to every ZooKeeper node in the quorum on.
+     * <p/>
+     * This is overridden by any hosts that specify their own port.
      *
      * @return the port to connect to every ZooKeeper node in the quorum on.
      */
@@ -266,6 +432,235 @@ public class ZooKeeperFactory {
         this.readOnly = readOnly;
     }
 
+    /**
+     * Returns whether or not clients built by this factory share their session with other clients
+     * of the same ensemble.
+     * <p/>
+     * Shared sessions are acquired from the {@link ZooKeeperSessionRegistry#getDefault() default
+     * registry}, and are shared by every client in the JVM that connects to the same servers,
+     * with the same namespace, authentication and read-only mode.
+     *
+     * @return true if clients share their session, false if each client has its own session.
+     *
+     * @see ZooKeeperSessionRegistry
+     */
+    @JsonProperty
+    public boolean isShareSession() {
+        return shareSession;
+    }
+
+    /**
+     * Sets whether or not clients built by this factory share their session with other clients
+     * of the same ensemble.
+     *
+     * @param shareSession true if clients share their session, false if each client has its own
+     *                     session.
+     *
+     * @see ZooKeeperSessionRegistry
+     */
+    @JsonProperty
+    public void setShareSession(final boolean shareSession) {
+        this.shareSession = shareSession;
+    }
+
+    /**
+     * Returns the time between periodic probes of the health of the connection to the ensemble.
+     *
+     * @return the time between periodic health probes.
+     *
+     * @see ZooKeeperHealthMonitor
+     */
+    @JsonProperty
+    public Duration getHealthCheckInterval() {
+        return healthCheckInterval;
+    }
+
+    /**
+     * Sets the time between periodic probes of the health of the connection to the ensemble.
+     *
+     * @param interval the time between periodic health probes.
+     *
+     * @see ZooKeeperHealthMonitor
+     */
+    @JsonProperty
+    public void setHealthCheckInterval(final Duration interval) {
+        this.healthCheckInterval = interval;
+    }
+
+    /**
+     * Returns the maximum time to wait for a probe of the health of the connection to complete.
+     * <p/>
+     * Probes that take longer than this are reported as unhealthy.
+     *
+     * @return the maximum time to wait for a health probe to complete.
+     *
+     * @see ZooKeeperHealthMonitor
+     */
+    @JsonProperty
+    public Duration getHealthCheckTimeout() {
+        return healthCheckTimeout;
+    }
+
+    /**
+     * Sets the maximum time to wait for a probe of the health of the connection to complete.
+     * <p/>
+     * Probes that take longer than this are reported as unhealthy.
+     *
+     * @param timeout the maximum time to wait for a health probe to complete.
+     *
+     * @see ZooKeeperHealthMonitor
+     */
+    @JsonProperty
+    public void setHealthCheckTimeout(final Duration timeout) {
+        this.healthCheckTimeout = timeout;
+    }
+
+    /**
+     * Returns the maximum staleness of cached data served by a {@link BoundedStalenessClient}.
+     * <p/>
+     * While the ensemble is unavailable for writes, cached reads are served for up to this long
+     * after the cache was last known to be fresh.
+     *
+     * @return the maximum staleness of cached reads.
+     *
+     * @see #buildBoundedStalenessClient(Environment, ZooKeeper, String, String)
+     */
+    @JsonProperty
+    public Duration getMaxStaleness() {
+        return maxStaleness;
+    }
+
+    /**
+     * Sets the maximum staleness of cached data served by a {@link BoundedStalenessClient}.
+     * <p/>
+     * While the ensemble is unavailable for writes, cached reads are served for up to this long
+     * after the cache was last known to be fresh.
+     *
+     * @param maxStaleness the maximum staleness of cached reads.
+     *
+     * @see #buildBoundedStalenessClient(Environment, ZooKeeper, String, String)
+     */
+    @JsonProperty
+    public void setMaxStaleness(final Duration maxStaleness) {
+        this.maxStaleness = maxStaleness;
+    }
+
+    /**
+     * Returns the configuration for batching writes in to multi transactions.
+     *
+     * @return the configuration for batching writes.
+     *
+     * @see #buildBatchWriter(Environment, ZooKeeper, String)
+     */
+    @JsonProperty
+    public Batch getBatch() {
+        return batch;
+    }
+
+    /**
+     * Sets the configuration for batching writes in to multi transactions.
+     *
+     * @param batch the configuration for batching writes.
+     *
+     * @see #buildBatchWriter(Environment, ZooKeeper, String)
+     */
+    @JsonProperty
+    public void setBatch(final Batch batch) {
+        this.batch = batch;
+    }
+
+    /**
+     * Returns the strategy for selecting the servers that clients may connect to.
+     *
+     * @return the strategy for selecting servers to connect to.
+     *
+     * @see ServerSelection
+     */
+    @JsonProperty
+    public ServerSelection getServerSelection() {
+        return serverSelection;
+    }
+
+    /**
+     * Sets the strategy for selecting the servers that clients may connect to.
+     *
+     * @param selection the strategy for selecting servers to connect to.
+     *
+     * @see ServerSelection
+     */
+    @JsonProperty
+    public void setServerSelection(final ServerSelection selection) {
+        this.serverSelection = selection;
+    }
+
+    /**
+     * Returns the zone (e.g. availability zone or rack) that this application is running in.
+     *
+     * @return the local zone, or null if it's not known.
+     */
+    @JsonProperty
+    public String getZone() {
+        return zone;
+    }
+
+    /**
+     * Sets the zone (e.g. availability zone or rack) that this application is running in.
+     *
+     * @param zone the local zone, or null if it's not known.
+     */
+    @JsonProperty
+    public void setZone(final String zone) {
+        this.zone = zone;
+    }
+
+    /**
+     * Returns the zone of each host in the ZooKeeper quorum.
+     * <p/>
+     * Hosts are identified by hostname, without any port.
+     *
+     * @return a map of hostnames to the zone they're in.
+     */
+    @JsonProperty
+    public Map<String, String> getZones() {
+        return zones;
+    }
+
+    /**
+     * Sets the zone of each host in the ZooKeeper quorum.
+     * <p/>
+     * Hosts are identified by hostname, without any port.
+     *
+     * @param zones a map of hostnames to the zone they're in.
+     */
+    @JsonProperty
+    public void setZones(final Map<String, String> zones) {
+        this.zones = zones;
+    }
+
+    /**
+     * Returns how many times more likely a server in the local zone is to be connected to than a
+     * server in another zone, when {@link ServerSelection#PREFER_LOCAL_ZONE preferring} the local
+     * zone.
+     *
+     * @return the relative weight of servers in the local zone.
+     */
+    @JsonProperty
+    public int getLocalZoneWeight() {
+        return localZoneWeight;
+    }
+
+    /**
+     * Sets how many times more likely a server in the local zone is to be connected to than a
+     * server in another zone, when {@link ServerSelection#PREFER_LOCAL_ZONE preferring} the local
+     * zone.
+     *
+     * @param weight the relative weight of servers in the local zone.
+     */
+    @JsonProperty
+    public void setLocalZoneWeight(final int weight) {
+        this.localZoneWeight = weight;
+    }
+
     /**
      * Retrieves a formatted specification of the ZooKeeper quorum..
      * <p/>
@@ -274,13 +669,119 @@ public class ZooKeeperFactory {
      * @return a specification of the ZooKeeper quorum, formatted as a String
      */
     public String getQuorumSpec() {
-        return Joiner
-                .on(":" + getPort() + ",")
-                .skipNulls()
-                .appendTo(new StringBuilder(), getHosts())
-                .append(':')
-                .append(getPort())
-                .toString();
+        final List<String> servers = new ArrayList<>();
+        for (final String host : getHosts()) {
+            if (host != null) {
+                servers.add(host.indexOf(':') == -1 ? host + ":" + getPort() : host);
+            }
+        }
+        return Joiner.on(',').join(servers);
+    }
+
+    /**
+     * Retrieves a formatted specification of the servers of the ZooKeeper quorum that clients may
+     * connect to, according to the configured {@link ServerSelection}.
+     * <p/>
+     * The {@link ZooKeeper} client chooses servers from its connection string at random, so to
+     * {@link ServerSelection#PREFER_LOCAL_ZONE prefer} servers in the local zone, they're repeated
+     * in the specification according to their {@link #getLocalZoneWeight() weight}.
+     *
+     * @return a specification of the selected servers, formatted as a String.
+     *
+     * @see ServerSelection
+     */
+    public String getSelectedQuorumSpec() {
+        return selectServers(getQuorumSpec());
+    }
+
+    /**
+     * Selects the servers that clients may connect to from a specification of a ZooKeeper quorum,
+     * such as one discovered at runtime, according to the configured {@link ServerSelection}.
+     *
+     * @param quorumSpec a specification of the servers of the quorum, formatted as:
+     *                   host1:port,host2:port[,hostN:port]
+     *
+     * @return a specification of the selected servers, formatted as a String.
+     *
+     * @see #getSelectedQuorumSpec()
+     */
+    public String selectServers(final String quorumSpec) {
+        if (getServerSelection() == ServerSelection.ALL || getZone() == null) {
+            return quorumSpec;
+        }
+
+        final List<String> local = new ArrayList<>();
+        final List<String> remote = new ArrayList<>();
+        for (final String server : quorumSpec.split(",")) {
+            final String host = server.substring(0, server.lastIndexOf(':'));
+            (getZone().equals(getZones().get(host)) ? local : remote).add(server);
+        }
+
+        if (local.isEmpty()) {
+            return quorumSpec;
+        }
+        if (getServerSelection() == ServerSelection.LOCAL_ZONE_ONLY) {
+            return Joiner.on(',').join(local);
+        }
+
+        final List<String> weighted = new ArrayList<>();
+        for (int i = 0; i < getLocalZoneWeight(); i++) {
+            weighted.addAll(local);
+        }
+        weighted.addAll(remote);
+        return Joiner.on(',').join(weighted);
+    }
+
+    /**
+     * Registers metrics for the server that a {@link ZooKeeper} client is connected to.
+     * <p/>
+     * The following metrics are registered:
+     * <ul>
+     *     <li><i>server</i>: the host and port of the connected server, and</li>
+     *     <li><i>localZone</i>: whether the connected server is in the local zone.</li>
+     * </ul>
+     * Only clients built by this factory report the server they're connected to.
+     *
+     * @param registry the registry to register the metrics with.
+     * @param client a {@link Supplier} of the client to report the connected server of.
+     * @param name the name of the client.
+     */
+    public void registerServerMetrics(final MetricRegistry registry,
+                                      final Supplier<ZooKeeper> client,
+                                      final String name) {
+        final Supplier<Optional<InetSocketAddress>> server =
+                new Supplier<Optional<InetSocketAddress>>() {
+                    @Override
+                    public Optional<InetSocketAddress> get() {
+                        final ZooKeeper zookeeper;
+                        try {
+                            zookeeper = client.get();
+                        } catch (final RuntimeException e) {
+                            return Optional.absent();
+                        }
+                        return zookeeper instanceof LocatableZooKeeper
+                                ? ((LocatableZooKeeper) zookeeper).getServerAddress()
+                                : Optional.<InetSocketAddress>absent();
+                    }
+                };
+
+        registry.register(MetricRegistry.name(name, "server"), new Gauge<String>() {
+            @Override
+            public String getValue() {
+                final Optional<InetSocketAddress> address = server.get();
+                return address.isPresent()
+                        ? address.get().getHostString() + ":" + address.get().getPort()
+                        : null;
+            }
+        });
+        registry.register(MetricRegistry.name(name, "localZone"), new Gauge<Boolean>() {
+            @Override
+            public Boolean getValue() {
+                final Optional<InetSocketAddress> address = server.get();
+                return address.isPresent() && getZone() != null
+                        && getZone().equals(getZones().get(address.get().getHostString()));
+            }
+        });
     }
 
     /**
@@ -374,11 +875,61 @@ public class ZooKeeperFactory {
     public ZooKeeper build(final Environment environment, final Watcher watcher, final String name)
             throws IOException {
 
-        final String quorumSpec = getQuorumSpec();
-        final String namespace = getNamespace();
+        // the client is chrooted to the namespace, so its root is probed
+        final AtomicReference<ZooKeeper> reference = new AtomicReference<>();
+        final Supplier<ZooKeeper> supplier = new Supplier<ZooKeeper>() {
+            @Override
+            public ZooKeeper get() {
+                return reference.get();
+            }
+        };
+        final ZooKeeperHealthMonitor monitor =
+                buildHealthMonitor(environment, supplier, "/", name);
+
+        final Watcher chained = new Watcher() {
+            @Override
+            public void process(final WatchedEvent event) {
+                monitor.process(event);
+                if (watcher != null) {
+                    watcher.process(event);
+                }
+            }
+        };
 
-        final ZooKeeper client = new ZooKeeper(
-                quorumSpec + namespace,
+        final ZooKeeper client;
+        if (isShareSession()) {
+            final SharedZooKeeper shared =
+                    ZooKeeperSessionRegistry.getDefault().acquire(this, chained);
+            environment.lifecycle().manage(new ManagedSharedZooKeeper(shared, chained));
+            client = shared;
+        } else {
+            client = buildClient(chained);
+            environment.lifecycle().manage(new ManagedZooKeeper(client));
+        }
+        reference.set(client);
+
+        registerServerMetrics(environment.metrics(), supplier, name);
+        environment.healthChecks().register(name, new ZooKeeperHealthCheck(monitor));
+        environment.lifecycle().manage(monitor);
+
+        return client;
+    }
+
+    /**
+     * Builds an unmanaged {@link ZooKeeper} client.
+     * <p/>
+     * No {@link ZooKeeperHealthCheck} is registered for the client, and its lifecycle must be
+     * managed by the caller.
+     *
+     * @param watcher the watcher to handle all events that occur on the {@link ZooKeeper} client.
+     *
+     * @return a {@link ZooKeeper} client, configured according to this factory.
+     *
+     * @throws IOException if there is a network failure.
+     */
+    public ZooKeeper buildClient(final Watcher watcher) throws IOException {
+        final ZooKeeper client = new LocatableZooKeeper(
+                getSelectedQuorumSpec() + getNamespace(),
                 (int) getSessionTimeout().toMilliseconds(),
                 watcher,
                 isReadOnly());
@@ -388,9 +939,119 @@ public class ZooKeeperFactory {
             client.addAuthInfo(auth.getScheme(), auth.getId().getBytes());
         }
 
-        environment.healthChecks().register(name, new ZooKeeperHealthCheck(client, namespace));
-        environment.lifecycle().manage(new ManagedZooKeeper(client));
-
         return client;
     }
+
+    /**
+     * Builds a {@link ZooKeeperHealthMonitor} for a ZooKeeper client connected to the ensemble
+     * configured by this factory.
+     * <p/>
+     * The periodic probes of the monitor are run on an executor managed by the {@link
+     * Environment}; the monitor itself must be managed by the caller once the client it monitors
+     * is available.
+     *
+     * @param environment the environment to build the {@link ZooKeeperHealthMonitor} for.
+     * @param client a {@link Supplier} of the client to monitor.
+     * @param namespace the path to probe for within the ensemble, as seen by the client.
+     * @param name the name of the client to monitor.
+     *
+     * @return a {@link ZooKeeperHealthMonitor} for the client.
+     */
+    public ZooKeeperHealthMonitor buildHealthMonitor(final Environment environment,
+                                                     final Supplier<ZooKeeper> client,
+                                                     final String namespace,
+                                                     final String name) {
+        return new ZooKeeperHealthMonitor(
+                client,
+                namespace,
+                environment.lifecycle().scheduledExecutorService(name + "-health-%d").build(),
+                getHealthCheckInterval(),
+                getHealthCheckTimeout());
+    }
+
+    /**
+     * Builds a {@link ZooKeeperCache} of a subtree, read by a {@link ZooKeeper} client built by
+     * this factory.
+     * <p/>
+     * The cache is managed by the {@link Environment}, and metrics for it are registered with the
+     * {@link Environment}'s {@link com.codahale.metrics.MetricRegistry}.
+     *
+     * @param environment the environment to build the {@link ZooKeeperCache} for.
+     * @param client the client to read the subtree with.
+     * @param path the path of the root of the subtree to cache, relative to the {@link
+     *             #getNamespace() namespace}.
+     * @param name the name for the {@link ZooKeeperCache}.
+     *
+     * @return a {@link ZooKeeperCache} of the subtree at the path, managed by the environment.
+     */
+    public ZooKeeperCache buildCache(final Environment environment,
+                                     final ZooKeeper client,
+                                     final String path,
+                                     final String name) {
+        final ZooKeeperCache cache = new ZooKeeperCache(
+                Suppliers.ofInstance(client), path, environment.metrics(), name);
+        environment.lifecycle().manage(cache);
+        return cache;
+    }
+
+    /**
+     * Builds a {@link BoundedStalenessClient} of a subtree, which remains readable from a cache
+     * when the ensemble is unavailable for writes.
+     * <p/>
+     * The {@link ZooKeeperCache} of the subtree is managed by the {@link Environment}, metrics for
+     * both are registered with the {@link Environment}'s {@link
+     * com.codahale.metrics.MetricRegistry}, and a {@link BoundedStalenessHealthCheck} is
+     * registered for the subtree, named <i>name</i>-reads.
+     *
+     * @param environment the environment to build the {@link BoundedStalenessClient} for.
+     * @param client the client to read and write the subtree with.
+     * @param path the path of the root of the subtree, relative to the {@link #getNamespace()
+     *             namespace}.
+     * @param name the name for the {@link BoundedStalenessClient}.
+     *
+     * @return a {@link BoundedStalenessClient} of the subtree at the path.
+     */
+    public BoundedStalenessClient buildBoundedStalenessClient(final Environment environment,
+                                                              final ZooKeeper client,
+                                                              final String path,
+                                                              final String name) {
+        final ZooKeeperCache cache = buildCache(environment, client, path, name);
+        final BoundedStalenessClient stalenessClient = new BoundedStalenessClient(
+                Suppliers.ofInstance(client),
+                cache,
+                getMaxStaleness(),
+                environment.metrics(),
+                name);
+        environment.healthChecks().register(
+                name + "-reads", new BoundedStalenessHealthCheck(stalenessClient));
+        return stalenessClient;
+    }
+
+    /**
+     * Builds a {@link BatchingZooKeeperWriter} that coalesces writes made by a {@link ZooKeeper}
+     * client in to multi transactions, according to the {@link #getBatch() batch} configuration.
+     * <p/>
+     * The writer is managed by the {@link Environment}, and metrics for it are registered with the
+     * {@link Environment}'s {@link com.codahale.metrics.MetricRegistry}.
+     *
+     * @param environment the environment to build the {@link BatchingZooKeeperWriter} for.
+     * @param client the client to write with.
+     * @param name the name for the {@link BatchingZooKeeperWriter}.
+     *
+     * @return a {@link BatchingZooKeeperWriter} for the client, managed by the environment.
+     */
+    public BatchingZooKeeperWriter buildBatchWriter(final Environment environment,
+                                                    final ZooKeeper client,
+                                                    final String name) {
+        final Batch batch = getBatch();
+        final BatchingZooKeeperWriter writer = new BatchingZooKeeperWriter(
+                Suppliers.ofInstance(client),
+                batch.getMaxOperations(),
+                batch.getMaxSize(),
+                batch.getLinger(),
+                environment.metrics(),
+                name);
+        environment.lifecycle().manage(writer);
+        return writer;
+    }
 }
@@ -0,0 +1,193 @@
+package com.datasift.dropwizard.zookeeper;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A registry of {@link ZooKeeper} sessions, shared by every client of the same ensemble.
+ * <p/>
+ * Clients are shared by those that connect to the same servers, with the same namespace,
+ * authentication and read-only mode. Each client counts a reference for each of its holders, and
+ * its session is only closed once every holder has released it. Other settings, such as the
+ * session timeout, are taken from the first {@link ZooKeeperFactory} to acquire the session.
+ * <p/>
+ * When a shared session expires, it's removed from the registry, so that holders acquiring a
+ * client in response to the expiry share a new session.
+ *
+ * @see SharedZooKeeper
+ * @see ZooKeeperFactory#isShareSession()
+ */
+public class ZooKeeperSessionRegistry {
+
+    private static final ZooKeeperSessionRegistry DEFAULT = new ZooKeeperSessionRegistry();
+
+    private static final Splitter SERVERS = Splitter.on(',').trimResults().omitEmptyStrings();
+
+    /**
+     * Returns the registry shared by every {@link ZooKeeperFactory} in this JVM.
+     *
+     * @return the default registry.
+     */
+    public static ZooKeeperSessionRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Identifies the sessions that may be shared.
+     */
+    static class Key {
+
+        private final ImmutableSortedSet<String> servers;
+        private final String namespace;
+        private final String authScheme;
+        private final String authId;
+        private final boolean readOnly;
+
+        Key(final ZooKeeperFactory factory) {
+            final ZooKeeperFactory.Auth auth = factory.getAuth();
+            this.servers =
+                    ImmutableSortedSet.copyOf(SERVERS.split(factory.getSelectedQuorumSpec()));
+            this.namespace = factory.getNamespace();
+            this.authScheme = auth == null ? null : auth.getScheme();
+            this.authId = auth == null ? null : auth.getId();
+            this.readOnly = factory.isReadOnly();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            final Key key = (Key) o;
+            return readOnly == key.readOnly
+                    && servers.equals(key.servers)
+                    && namespace.equals(key.namespace)
+                    && Objects.equal(authScheme, key.authScheme)
+                    && Objects.equal(authId, key.authId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(servers, namespace, authScheme, authId, readOnly);
+        }
+    }
+
+    private final Map<Key, SharedZooKeeper> sessions = new HashMap<>();
+    private final ExecutorService notifier = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder()
+                    .setNameFormat("zookeeper-session-registry-%d")
+                    .setDaemon(true)
+                    .build());
+
+    /**
+     * Acquires a reference to a {@link SharedZooKeeper} client for the ensemble configured by the
+     * given {@link ZooKeeperFactory}, creating a new session if there's no live session to share.
+     * <p/>
+     * The given {@link Watcher} is notified of every event on the shared session. If the session
+     * is already connected, the {@link Watcher} is notified that it's connected, as it would be
+     * for a new session. A {@link Watcher} is only ever registered with one session at a time, so
+     * re-acquiring a client with the same {@link Watcher}, e.g. after the session expires, stops
+     * its notification of events on the previous session, and holds at most one reference to the
+     * same session.
+     *
+     * @param factory the factory configuring the ensemble to connect to.
+     * @param watcher the watcher to handle all events that occur on the session; may be null.
+     *
+     * @return a shared {@link ZooKeeper} client, which must be released by the caller with {@link
+     *         SharedZooKeeper#release(Watcher)} when it's no longer required.
+     *
+     * @throws IOException if there is a network failure.
+     */
+    public synchronized SharedZooKeeper acquire(final ZooKeeperFactory factory,
+                                                final Watcher watcher) throws IOException {
+        final Key key = new Key(factory);
+        SharedZooKeeper client = sessions.get(key);
+
+        if (watcher != null) {
+            for (final SharedZooKeeper session : sessions.values()) {
+                session.getDispatcher().remove(watcher);
+            }
+        }
+
+        if (client == null || !client.getState().isAlive()) {
+            final SharedZooKeeper.Dispatcher dispatcher = new SharedZooKeeper.Dispatcher();
+            if (watcher != null) {
+                dispatcher.add(watcher);
+            }
+            client = new SharedZooKeeper(
+                    this,
+                    key,
+                    factory.getSelectedQuorumSpec() + factory.getNamespace(),
+                    (int) factory.getSessionTimeout().toMilliseconds(),
+                    dispatcher,
+                    factory.isReadOnly());
+
+            final ZooKeeperFactory.Auth auth = factory.getAuth();
+            if (auth != null) {
+                client.addAuthInfo(auth.getScheme(), auth.getId().getBytes());
+            }
+            sessions.put(key, client);
+        } else if (watcher != null) {
+            final SharedZooKeeper.Dispatcher dispatcher = client.getDispatcher();
+            dispatcher.add(watcher);
+            notifier.execute(new Runnable() {
+                @Override
+                public void run() {
+                    dispatcher.notifyConnected(watcher);
+                }
+            });
+        }
+
+        client.retain(watcher);
+        return client;
+    }
+
+    /**
+     * Returns the number of live sessions in this registry.
+     *
+     * @return the number of sessions that may be shared.
+     */
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Releases the reference of a holder of a {@link SharedZooKeeper}, closing its session if it
+     * has no more references.
+     */
+    void release(final SharedZooKeeper client, final Watcher watcher)
+            throws InterruptedException {
+        synchronized (this) {
+            if (!client.unretain(watcher) || client.getReferenceCount() > 0) {
+                return;
+            }
+            if (sessions.get(client.getKey()) == client) {
+                sessions.remove(client.getKey());
+            }
+        }
+        client.closeSession();
+    }
+
+    /**
+     * Removes a {@link SharedZooKeeper} whose session has expired, so that it's no longer shared.
+     */
+    synchronized void expire(final SharedZooKeeper client) {
+        if (sessions.get(client.getKey()) == client) {
+            sessions.remove(client.getKey());
+        }
+    }
+}
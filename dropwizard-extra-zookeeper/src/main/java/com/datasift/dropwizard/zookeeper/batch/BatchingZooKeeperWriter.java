@@ -0,0 +1,436 @@
+package com.datasift.dropwizard.zookeeper.batch;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.OpResult;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.common.PathUtils;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces writes to ZNodes in to {@link ZooKeeper#multi(Iterable) multi} transactions, so that
+ * many writes take a handful of round-trips to the ensemble, rather than one each.
+ * <p/>
+ * Writes are queued, and a future for the result of each is returned immediately. A background
+ * thread takes the queued writes in batches, waiting up to the linger time for more writes to
+ * arrive, until the batch reaches its maximum number of operations or its maximum size.
+ * <p/>
+ * A multi transaction is atomic, so a single failed write would fail every write in its batch.
+ * Instead, only the failed write is failed, and the rest of its batch is retried in the next
+ * batch. If the transaction fails for any other reason, such as a loss of connection, every write
+ * in the batch is failed with the cause.
+ * <p/>
+ * The following metrics are registered for each writer:
+ * <ul>
+ *     <li><i>batches</i>: the time taken to commit each batch,</li>
+ *     <li><i>batchOperations</i>: the number of writes in each batch,</li>
+ *     <li><i>batchBytes</i>: the approximate size, in bytes, of each batch,</li>
+ *     <li><i>writes</i>: the rate at which writes are committed,</li>
+ *     <li><i>failures</i>: the rate at which writes fail,</li>
+ *     <li><i>retries</i>: the rate at which writes are retried after another write in their batch
+ *     failed,</li>
+ *     <li><i>pending</i>: the number of writes waiting to be batched.</li>
+ * </ul>
+ */
+public class BatchingZooKeeperWriter implements Managed {
+
+    /**
+     * A queued write, and the future for its result.
+     */
+    private abstract static class Pending<T> {
+
+        private final Op op;
+        private final int size;
+        private final SettableFuture<T> future = SettableFuture.create();
+
+        Pending(final Op op, final byte[] data) {
+            this.op = op;
+            this.size = op.getPath().length() + (data == null ? 0 : data.length);
+        }
+
+        abstract T result(OpResult result);
+
+        void complete(final OpResult result) {
+            future.set(result(result));
+        }
+
+        void fail(final Throwable cause) {
+            future.setException(cause);
+        }
+    }
+
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final Supplier<ZooKeeper> client;
+    private final int maxOperations;
+    private final long maxBytes;
+    private final long lingerNanos;
+    private final String name;
+
+    private final BlockingQueue<Pending<?>> queue = new LinkedBlockingQueue<>();
+
+    private final Timer batches;
+    private final Histogram batchOperations;
+    private final Histogram batchBytes;
+    private final Meter writes;
+    private final Meter failures;
+    private final Meter retries;
+
+    private volatile boolean stopped = false;
+    private volatile Thread worker = null;
+
+    /**
+     * Creates a writer that batches writes made by a {@link ZooKeeper} client.
+     * <p/>
+     * The {@link ZooKeeper} client is obtained from the given {@link Supplier} for each batch, so
+     * that clients that replace their {@link ZooKeeper} instance when a session expires may be
+     * used.
+     *
+     * @param client        a {@link Supplier} of the {@link ZooKeeper} client to write with.
+     * @param maxOperations the maximum number of writes in each batch.
+     * @param maxSize       the maximum approximate size of each batch.
+     * @param linger        the maximum time to wait for more writes before committing a batch.
+     * @param registry      the {@link MetricRegistry} to register metrics for the writer with.
+     * @param name          the name of the writer.
+     */
+    public BatchingZooKeeperWriter(final Supplier<ZooKeeper> client,
+                                   final int maxOperations,
+                                   final Size maxSize,
+                                   final Duration linger,
+                                   final MetricRegistry registry,
+                                   final String name) {
+        this.client = client;
+        this.maxOperations = maxOperations;
+        this.maxBytes = maxSize.toBytes();
+        this.lingerNanos = linger.toNanoseconds();
+        this.name = name;
+
+        this.batches = registry.timer(MetricRegistry.name(name, "batches"));
+        this.batchOperations = registry.histogram(MetricRegistry.name(name, "batchOperations"));
+        this.batchBytes = registry.histogram(MetricRegistry.name(name, "batchBytes"));
+        this.writes = registry.meter(MetricRegistry.name(name, "writes"));
+        this.failures = registry.meter(MetricRegistry.name(name, "failures"));
+        this.retries = registry.meter(MetricRegistry.name(name, "retries"));
+        registry.register(MetricRegistry.name(name, "pending"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return queue.size();
+            }
+        });
+    }
+
+    /**
+     * Begins committing queued writes in the background.
+     */
+    @Override
+    public void start() {
+        stopped = false;
+        final Thread thread = new ThreadFactoryBuilder()
+                .setNameFormat(name + "-writer-%d")
+                .setDaemon(true)
+                .build()
+                .newThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        drain();
+                    }
+                });
+        worker = thread;
+        thread.start();
+    }
+
+    /**
+     * Stops accepting writes, and waits for those already queued to be committed.
+     *
+     * @throws InterruptedException if interrupted while waiting for queued writes.
+     */
+    @Override
+    public void stop() throws InterruptedException {
+        stopped = true;
+        final Thread thread = worker;
+        if (thread != null) {
+            thread.join();
+        }
+        worker = null;
+
+        // fail anything queued after the worker had finished draining
+        final List<Pending<?>> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (final Pending<?> pending : remaining) {
+            pending.fail(new IllegalStateException("Writer stopped: " + name));
+        }
+    }
+
+    /**
+     * Queues the creation of a ZNode.
+     *
+     * @param path the path of the ZNode to create.
+     * @param data the initial data of the ZNode.
+     * @param acl the ACL of the ZNode.
+     * @param mode the {@link CreateMode} of the ZNode.
+     *
+     * @return a future for the actual path of the created ZNode.
+     *
+     * @throws IllegalArgumentException if the path is not valid.
+     */
+    public ListenableFuture<String> create(final String path,
+                                           final byte[] data,
+                                           final List<ACL> acl,
+                                           final CreateMode mode) {
+        PathUtils.validatePath(path, mode.isSequential());
+        return submit(new Pending<String>(Op.create(path, data, acl, mode), data) {
+            @Override
+            String result(final OpResult result) {
+                return ((OpResult.CreateResult) result).getPath();
+            }
+        });
+    }
+
+    /**
+     * Queues an update of the data of a ZNode.
+     *
+     * @param path the path of the ZNode to update.
+     * @param data the new data of the ZNode.
+     * @param version the expected version of the ZNode; or -1 to match any version.
+     *
+     * @return a future for the {@link Stat} of the ZNode after it has been updated.
+     *
+     * @throws IllegalArgumentException if the path is not valid.
+     */
+    public ListenableFuture<Stat> setData(final String path,
+                                          final byte[] data,
+                                          final int version) {
+        PathUtils.validatePath(path);
+        return submit(new Pending<Stat>(Op.setData(path, data, version), data) {
+            @Override
+            Stat result(final OpResult result) {
+                return ((OpResult.SetDataResult) result).getStat();
+            }
+        });
+    }
+
+    /**
+     * Queues the deletion of a ZNode.
+     *
+     * @param path the path of the ZNode to delete.
+     * @param version the expected version of the ZNode; or -1 to match any version.
+     *
+     * @return a future that completes when the ZNode has been deleted.
+     *
+     * @throws IllegalArgumentException if the path is not valid.
+     */
+    public ListenableFuture<Void> delete(final String path, final int version) {
+        PathUtils.validatePath(path);
+        return submit(new Pending<Void>(Op.delete(path, version), null) {
+            @Override
+            Void result(final OpResult result) {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Returns the number of writes waiting to be batched.
+     *
+     * @return the number of queued writes.
+     */
+    public int getPending() {
+        return queue.size();
+    }
+
+    private <T> ListenableFuture<T> submit(final Pending<T> pending) {
+        if (stopped) {
+            pending.fail(new IllegalStateException("Writer stopped: " + name));
+        } else {
+            queue.add(pending);
+        }
+        return pending.future;
+    }
+
+    private void drain() {
+        final Deque<Pending<?>> retry = new ArrayDeque<>();
+        try {
+            while (!stopped || !queue.isEmpty() || !retry.isEmpty()) {
+                final List<Pending<?>> batch = nextBatch(retry);
+                if (!batch.isEmpty()) {
+                    commit(batch, retry);
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (final Pending<?> pending : retry) {
+                pending.fail(new IllegalStateException("Writer stopped: " + name));
+            }
+        }
+    }
+
+    private List<Pending<?>> nextBatch(final Deque<Pending<?>> retry) throws InterruptedException {
+        final List<Pending<?>> batch = new ArrayList<>();
+        long bytes = 0;
+
+        // writes to retry are always batched first, to preserve their order
+        while (!retry.isEmpty() && batch.size() < maxOperations) {
+            final Pending<?> pending = retry.peekFirst();
+            if (!batch.isEmpty() && bytes + pending.size > maxBytes) {
+                return batch;
+            }
+            batch.add(retry.pollFirst());
+            bytes += pending.size;
+        }
+
+        if (batch.isEmpty()) {
+            final Pending<?> first = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            if (first == null) {
+                return batch;
+            }
+            batch.add(first);
+            bytes += first.size;
+        }
+
+        final long deadline = System.nanoTime() + lingerNanos;
+        while (batch.size() < maxOperations && bytes < maxBytes) {
+            final Pending<?> next = queue.peek();
+            if (next == null) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || stopped) {
+                    break;
+                }
+                final Pending<?> arrived = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (arrived == null) {
+                    break;
+                }
+                if (bytes + arrived.size > maxBytes) {
+                    retry.addLast(arrived);
+                    break;
+                }
+                batch.add(arrived);
+                bytes += arrived.size;
+            } else {
+                if (bytes + next.size > maxBytes) {
+                    break;
+                }
+                batch.add(queue.poll());
+                bytes += next.size;
+            }
+        }
+
+        return batch;
+    }
+
+    private void commit(final List<Pending<?>> batch, final Deque<Pending<?>> retry) {
+        final List<Op> ops = new ArrayList<>(batch.size());
+        long bytes = 0;
+        for (final Pending<?> pending : batch) {
+            ops.add(pending.op);
+            bytes += pending.size;
+        }
+        batchOperations.update(batch.size());
+        batchBytes.update(bytes);
+
+        final ZooKeeper zookeeper = client.get();
+        if (zookeeper == null) {
+            fail(batch, new KeeperException.ConnectionLossException());
+            return;
+        }
+
+        final List<OpResult> results;
+        final Timer.Context timer = batches.time();
+        try {
+            results = zookeeper.multi(ops);
+        } catch (final KeeperException e) {
+            timer.stop();
+            failFirst(batch, e, retry);
+            return;
+        } catch (final InterruptedException e) {
+            timer.stop();
+            fail(batch, e);
+            Thread.currentThread().interrupt();
+            return;
+        } catch (final RuntimeException e) {
+            timer.stop();
+            fail(batch, e);
+            return;
+        }
+        timer.stop();
+
+        writes.mark(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).complete(results.get(i));
+        }
+    }
+
+    /**
+     * Fails the writes that caused a transaction to fail, and queues the rest of the batch to be
+     * retried, ahead of any writes queued since.
+     */
+    private void failFirst(final List<Pending<?>> batch,
+                           final KeeperException e,
+                           final Deque<Pending<?>> retry) {
+        final List<OpResult> results = e.getResults();
+        if (results == null || results.size() != batch.size()) {
+            fail(batch, e);
+            return;
+        }
+
+        final List<Pending<?>> rolledBack = new ArrayList<>();
+        boolean identified = false;
+        for (int i = 0; i < batch.size(); i++) {
+            final Pending<?> pending = batch.get(i);
+            final KeeperException.Code code = code(results.get(i));
+            if (code == KeeperException.Code.OK
+                    || code == KeeperException.Code.RUNTIMEINCONSISTENCY) {
+                rolledBack.add(pending);
+            } else {
+                identified = true;
+                failures.mark();
+                pending.fail(KeeperException.create(code, pending.op.getPath()));
+            }
+        }
+
+        if (!identified) {
+            fail(rolledBack, e);
+            return;
+        }
+
+        retries.mark(rolledBack.size());
+        for (int i = rolledBack.size() - 1; i >= 0; i--) {
+            retry.addFirst(rolledBack.get(i));
+        }
+    }
+
+    private void fail(final List<Pending<?>> batch, final Throwable cause) {
+        failures.mark(batch.size());
+        for (final Pending<?> pending : batch) {
+            pending.fail(cause);
+        }
+    }
+
+    private static KeeperException.Code code(final OpResult result) {
+        return result instanceof OpResult.ErrorResult
+                ? KeeperException.Code.get(((OpResult.ErrorResult) result).getErr())
+                : KeeperException.Code.OK;
+    }
+}
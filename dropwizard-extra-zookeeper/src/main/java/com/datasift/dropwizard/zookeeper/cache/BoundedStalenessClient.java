@@ -0,0 +1,332 @@
+package com.datasift.dropwizard.zookeeper.cache;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.health.HealthCheck;
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableSortedSet;
+import io.dropwizard.util.Duration;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A client for a subtree of ZNodes that remains readable, with bounded staleness, when the
+ * ensemble loses its quorum.
+ * <p/>
+ * Reads are served from a {@link ZooKeeperCache} of the subtree for as long as it is no more
+ * stale than the configured maximum staleness. Once the cache is too stale, reads are made
+ * directly by the session, which succeeds if the client is connected to a server, even a
+ * read-only one; otherwise, reads fail immediately with a {@link
+ * KeeperException.ConnectionLossException}.
+ * <p/>
+ * Writes are only made while the client is connected to a read-write server; otherwise, they fail
+ * immediately, rather than waiting for the client to reconnect.
+ * <p/>
+ * The cache is considered fresh while the client is connected to a read-write server and the
+ * cache is {@link ZooKeeperCache#isFresh() fresh}: initialized, and not awaiting or performing a
+ * re-synchronization. Its staleness is the time since it was last fresh, which the cache tracks
+ * from the connection events it receives, so it's accurate regardless of how often the client is
+ * used.
+ * <p/>
+ * The following metrics are registered for each client:
+ * <ul>
+ *     <li><i>staleness</i>: the staleness of the cache, in milliseconds,</li>
+ *     <li><i>cacheReads</i>: the rate at which reads are served by the cache,</li>
+ *     <li><i>sessionReads</i>: the rate at which reads are made directly by the session,</li>
+ *     <li><i>rejectedReads</i>: the rate at which reads fail because no data is available,</li>
+ *     <li><i>rejectedWrites</i>: the rate at which writes fail because the ensemble is not
+ *     writable.</li>
+ * </ul>
+ * <p/>
+ * All paths are relative to the root of the cache, such that "/" refers to the root itself.
+ */
+public class BoundedStalenessClient {
+
+    /**
+     * The availability of the subtree.
+     */
+    public enum Status {
+
+        /**
+         * The subtree may be read and written.
+         */
+        HEALTHY,
+
+        /**
+         * The subtree may be read, but not written.
+         */
+        DEGRADED,
+
+        /**
+         * The subtree may be neither read nor written.
+         */
+        UNAVAILABLE
+    }
+
+    private static final long NEVER = -1;
+
+    private final Supplier<ZooKeeper> client;
+    private final ZooKeeperCache cache;
+    private final long maxStaleness;
+
+    private final Meter cacheReads;
+    private final Meter sessionReads;
+    private final Meter rejectedReads;
+    private final Meter rejectedWrites;
+
+    /**
+     * Creates a client for the subtree cached by the given {@link ZooKeeperCache}.
+     * <p/>
+     * The {@link ZooKeeper} client is obtained from the given {@link Supplier} for each request, so
+     * that clients that replace their {@link ZooKeeper} instance when a session expires may be
+     * used; it should be the same client that populates the cache.
+     *
+     * @param client       a {@link Supplier} of the {@link ZooKeeper} client to read and write
+     *                     ZNodes with.
+     * @param cache        the cache of the subtree to serve reads from.
+     * @param maxStaleness the maximum staleness of the cache to serve reads from.
+     * @param registry     the {@link MetricRegistry} to register metrics for the client with.
+     * @param name         the name of the client.
+     */
+    public BoundedStalenessClient(final Supplier<ZooKeeper> client,
+                                  final ZooKeeperCache cache,
+                                  final Duration maxStaleness,
+                                  final MetricRegistry registry,
+                                  final String name) {
+        this.client = client;
+        this.cache = cache;
+        this.maxStaleness = maxStaleness.toNanoseconds();
+
+        this.cacheReads = registry.meter(MetricRegistry.name(name, "cacheReads"));
+        this.sessionReads = registry.meter(MetricRegistry.name(name, "sessionReads"));
+        this.rejectedReads = registry.meter(MetricRegistry.name(name, "rejectedReads"));
+        this.rejectedWrites = registry.meter(MetricRegistry.name(name, "rejectedWrites"));
+        registry.register(MetricRegistry.name(name, "staleness"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                final long staleness = getStaleness();
+                return staleness == NEVER
+                        ? NEVER
+                        : TimeUnit.NANOSECONDS.toMillis(staleness);
+            }
+        });
+    }
+
+    /**
+     * Returns the {@link ZooKeeperCache} that reads are served from.
+     *
+     * @return the cache of the subtree.
+     */
+    public ZooKeeperCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Returns the current availability of the subtree.
+     *
+     * @return {@link Status#HEALTHY} if the client is connected to a read-write server; {@link
+     *         Status#DEGRADED} if the subtree may only be read, either from the cache or from a
+     *         read-only server; otherwise, {@link Status#UNAVAILABLE}.
+     */
+    public Status getStatus() {
+        final boolean cacheReadable = isCacheReadable();
+        final ZooKeeper.States state = getState();
+        if (state == ZooKeeper.States.CONNECTED) {
+            return Status.HEALTHY;
+        }
+        return cacheReadable || state == ZooKeeper.States.CONNECTEDREADONLY
+                ? Status.DEGRADED
+                : Status.UNAVAILABLE;
+    }
+
+    /**
+     * Returns the current availability of the subtree as the result of a health check.
+     * <p/>
+     * A degraded subtree is reported as healthy, with a message noting that it's degraded, so
+     * that a loss of quorum doesn't fail the health of a service that only needs to read.
+     *
+     * @return {@link HealthCheck.Result#unhealthy(String)} if the subtree is {@link
+     *         Status#UNAVAILABLE unavailable}; otherwise, {@link HealthCheck.Result#healthy()}.
+     */
+    public HealthCheck.Result getResult() {
+        final Status status = getStatus();
+        final long staleness = getStaleness();
+        final String age = staleness == NEVER
+                ? "never loaded"
+                : TimeUnit.NANOSECONDS.toMillis(staleness) + "ms stale";
+        switch (status) {
+            case HEALTHY:
+                return HealthCheck.Result.healthy();
+            case DEGRADED:
+                return HealthCheck.Result.healthy(
+                        "Degraded: read-only, cache is %s (state: %s)", age, getState());
+            default:
+                return HealthCheck.Result.unhealthy(
+                        "Unavailable: cache is %s (state: %s)", age, getState());
+        }
+    }
+
+    /**
+     * Returns the data of the ZNode at the given path.
+     *
+     * @param path the path of the ZNode, relative to the root of the cache.
+     *
+     * @return the data of the ZNode at the path; or absent if there is no such ZNode.
+     *
+     * @throws KeeperException if the cache is too stale and the ZNode can't be read directly.
+     * @throws InterruptedException if interrupted while reading the ZNode directly.
+     */
+    public Optional<byte[]> getData(final String path)
+            throws KeeperException, InterruptedException {
+        if (isCacheReadable()) {
+            cacheReads.mark();
+            return cache.getData(path);
+        }
+
+        final ZooKeeper zookeeper = readable();
+        try {
+            return Optional.of(zookeeper.getData(resolve(path), false, null));
+        } catch (final KeeperException.NoNodeException e) {
+            return Optional.absent();
+        }
+    }
+
+    /**
+     * Returns the names of the children of the ZNode at the given path.
+     *
+     * @param path the path of the ZNode, relative to the root of the cache.
+     *
+     * @return the children of the ZNode at the path; or an empty set if there is no such ZNode.
+     *
+     * @throws KeeperException if the cache is too stale and the ZNode can't be read directly.
+     * @throws InterruptedException if interrupted while reading the ZNode directly.
+     */
+    public ImmutableSortedSet<String> getChildren(final String path)
+            throws KeeperException, InterruptedException {
+        if (isCacheReadable()) {
+            cacheReads.mark();
+            return cache.getChildren(path);
+        }
+
+        final ZooKeeper zookeeper = readable();
+        try {
+            return ImmutableSortedSet.copyOf(zookeeper.getChildren(resolve(path), false));
+        } catch (final KeeperException.NoNodeException e) {
+            return ImmutableSortedSet.of();
+        }
+    }
+
+    /**
+     * Creates a ZNode at the given path.
+     *
+     * @param path the path of the ZNode, relative to the root of the cache.
+     * @param data the initial data of the ZNode.
+     * @param acl the ACL of the ZNode.
+     * @param mode the {@link CreateMode} of the ZNode.
+     *
+     * @return the actual path of the ZNode, relative to the root of the {@link ZooKeeper} client.
+     *
+     * @throws KeeperException if the ensemble is not writable, or the ZNode can't be created.
+     * @throws InterruptedException if interrupted while creating the ZNode.
+     */
+    public String create(final String path,
+                         final byte[] data,
+                         final List<ACL> acl,
+                         final CreateMode mode) throws KeeperException, InterruptedException {
+        return writable(path).create(resolve(path), data, acl, mode);
+    }
+
+    /**
+     * Sets the data of the ZNode at the given path.
+     *
+     * @param path the path of the ZNode, relative to the root of the cache.
+     * @param data the new data of the ZNode.
+     * @param version the expected version of the ZNode; or -1 to match any version.
+     *
+     * @return the {@link Stat} of the ZNode after it has been updated.
+     *
+     * @throws KeeperException if the ensemble is not writable, or the ZNode can't be updated.
+     * @throws InterruptedException if interrupted while updating the ZNode.
+     */
+    public Stat setData(final String path, final byte[] data, final int version)
+            throws KeeperException, InterruptedException {
+        return writable(path).setData(resolve(path), data, version);
+    }
+
+    /**
+     * Deletes the ZNode at the given path.
+     *
+     * @param path the path of the ZNode, relative to the root of the cache.
+     * @param version the expected version of the ZNode; or -1 to match any version.
+     *
+     * @throws KeeperException if the ensemble is not writable, or the ZNode can't be deleted.
+     * @throws InterruptedException if interrupted while deleting the ZNode.
+     */
+    public void delete(final String path, final int version)
+            throws KeeperException, InterruptedException {
+        writable(path).delete(resolve(path), version);
+    }
+
+    /**
+     * Returns the time since the cache was last fresh.
+     * <p/>
+     * If the client has disconnected, but the cache hasn't yet received the event, the cache has
+     * only just become stale, so it's still reported as fresh.
+     *
+     * @return the staleness of the cache, in nanoseconds; or -1 if it has never been fresh.
+     */
+    long getStaleness() {
+        return cache.getStaleness();
+    }
+
+    private boolean isCacheReadable() {
+        final long staleness = getStaleness();
+        return staleness != NEVER && staleness <= maxStaleness;
+    }
+
+    private ZooKeeper.States getState() {
+        final ZooKeeper zookeeper = client.get();
+        return zookeeper == null ? ZooKeeper.States.CLOSED : zookeeper.getState();
+    }
+
+    private ZooKeeper readable() throws KeeperException {
+        final ZooKeeper zookeeper = client.get();
+        if (zookeeper == null || !zookeeper.getState().isConnected()) {
+            rejectedReads.mark();
+            throw new KeeperException.ConnectionLossException();
+        }
+        sessionReads.mark();
+        return zookeeper;
+    }
+
+    private ZooKeeper writable(final String path) throws KeeperException {
+        final ZooKeeper zookeeper = client.get();
+        final ZooKeeper.States state = zookeeper == null ? null : zookeeper.getState();
+        if (state == ZooKeeper.States.CONNECTED) {
+            return zookeeper;
+        }
+
+        rejectedWrites.mark();
+        throw KeeperException.create(
+                state == ZooKeeper.States.CONNECTEDREADONLY
+                        ? KeeperException.Code.NOTREADONLY
+                        : KeeperException.Code.CONNECTIONLOSS,
+                resolve(path));
+    }
+
+    private String resolve(final String path) {
+        final String root = cache.getRoot();
+        if ("/".equals(path)) {
+            return root;
+        }
+        return "/".equals(root) ? path : root + path;
+    }
+}
@@ -0,0 +1,91 @@
+package com.datasift.dropwizard.zookeeper.cache;
+
+import com.google.common.collect.ImmutableSortedSet;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.Arrays;
+
+/**
+ * An immutable snapshot of a ZNode held by a {@link ZooKeeperCache}.
+ * <p/>
+ * Each update to a ZNode replaces its snapshot, so a snapshot never changes once it has been
+ * read, even if the ZNode is subsequently modified.
+ */
+public class CachedZNode {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final String path;
+    private final byte[] data;
+    private final Stat stat;
+    private final ImmutableSortedSet<String> children;
+
+    CachedZNode(final String path,
+                final byte[] data,
+                final Stat stat,
+                final ImmutableSortedSet<String> children) {
+        this.path = path;
+        this.data = data == null ? EMPTY : data;
+        this.stat = stat;
+        this.children = children;
+    }
+
+    /**
+     * Returns the path of the ZNode, relative to the root of the cache.
+     *
+     * @return the path of the ZNode, relative to the root of the cache.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Returns a copy of the data of the ZNode.
+     *
+     * @return the data of the ZNode; or an empty array if it has no data.
+     */
+    public byte[] getData() {
+        return Arrays.copyOf(data, data.length);
+    }
+
+    /**
+     * Returns the version of the data of the ZNode.
+     *
+     * @return the version of the data of the ZNode.
+     */
+    public int getVersion() {
+        return stat.getVersion();
+    }
+
+    /**
+     * Returns the transaction id that last modified the ZNode.
+     *
+     * @return the transaction id that last modified the ZNode.
+     */
+    public long getModifiedTransactionId() {
+        return stat.getMzxid();
+    }
+
+    /**
+     * Returns the names of the children of the ZNode.
+     *
+     * @return the names of the children of the ZNode, in lexicographical order.
+     */
+    public ImmutableSortedSet<String> getChildren() {
+        return children;
+    }
+
+    CachedZNode withData(final byte[] data, final Stat stat) {
+        return new CachedZNode(path, data, stat, children);
+    }
+
+    CachedZNode withChildren(final ImmutableSortedSet<String> children) {
+        return new CachedZNode(path, data, stat, children);
+    }
+
+    @Override
+    public String toString() {
+        return "CachedZNode{path=" + path + ", version=" + stat.getVersion()
+                + ", children=" + children.size() + "}";
+    }
+}
@@ -0,0 +1,492 @@
+package com.datasift.dropwizard.zookeeper.cache;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableSortedSet;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.util.Duration;
+import org.apache.zookeeper.AsyncCallback;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.common.PathUtils;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-memory cache of a subtree of ZNodes, kept up to date by ZooKeeper watches.
+ * <p/>
+ * Reads are served from memory, without locking, as immutable {@link CachedZNode} snapshots, so
+ * frequently read configuration doesn't require a round-trip to the ensemble for every lookup.
+ * When a watch fires, only the affected ZNode is re-read, and added or removed children are
+ * loaded or evicted accordingly.
+ * <p/>
+ * If the connection to the ensemble is lost while re-reading a ZNode, the whole subtree is
+ * {@link #resync() re-synchronized} once the client reconnects. The cache may be stale while the
+ * client is disconnected.
+ * <p/>
+ * The cache is fresh while it's initialized, its client is connected to a read-write server, and
+ * it's not awaiting or performing a re-synchronization. Its {@link #getStaleness() staleness} is
+ * the time since it was last fresh, as determined by the connection events delivered to its
+ * watches and the completion of its reads.
+ * <p/>
+ * The following metrics are registered for each cache:
+ * <ul>
+ *     <li><i>size</i>: the number of ZNodes in the cache,</li>
+ *     <li><i>updateLag</i>: the time from a watch firing until the cache reflects the change,</li>
+ *     <li><i>resyncs</i>: the rate at which the whole subtree is re-synchronized.</li>
+ * </ul>
+ * <p/>
+ * All paths are relative to the root of the cache, such that "/" refers to the root itself.
+ */
+public class ZooKeeperCache implements Managed {
+
+    private static final long NEVER = -1;
+
+    private final Supplier<ZooKeeper> client;
+    private final String root;
+
+    private final ConcurrentMap<String, CachedZNode> nodes = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final CountDownLatch initialized = new CountDownLatch(1);
+
+    private final Timer updateLag;
+    private final Meter resyncs;
+
+    private final Watcher watcher = new CacheWatcher();
+    private final AsyncCallback.DataCallback dataCallback = new DataCallback();
+    private final AsyncCallback.Children2Callback childrenCallback = new ChildrenCallback();
+    private final AsyncCallback.StatCallback existsCallback = new ExistsCallback();
+
+    private volatile boolean running = false;
+    private volatile boolean stale = false;
+    private volatile boolean connected = false;
+    private volatile boolean resyncing = false;
+
+    private boolean fresh = false;
+    private long staleSince = NEVER;
+
+    /**
+     * Creates a cache of the subtree at the given root.
+     * <p/>
+     * The {@link ZooKeeper} client is obtained from the given {@link Supplier} for each request, so
+     * that clients that replace their {@link ZooKeeper} instance when a session expires may be
+     * cached.
+     *
+     * @param client   a {@link Supplier} of the {@link ZooKeeper} client to read ZNodes with.
+     * @param root     the path to the root of the subtree to cache.
+     * @param registry the {@link MetricRegistry} to register metrics for the cache with.
+     * @param name     the name of the cache.
+     *
+     * @throws IllegalArgumentException if the root is not a valid path.
+     */
+    public ZooKeeperCache(final Supplier<ZooKeeper> client,
+                          final String root,
+                          final MetricRegistry registry,
+                          final String name) {
+        PathUtils.validatePath(root);
+        this.client = client;
+        this.root = root;
+
+        this.updateLag = registry.timer(MetricRegistry.name(name, "updateLag"));
+        this.resyncs = registry.meter(MetricRegistry.name(name, "resyncs"));
+        registry.register(MetricRegistry.name(name, "size"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return size();
+            }
+        });
+    }
+
+    /**
+     * Begins loading the subtree in to the cache.
+     * <p/>
+     * The subtree is loaded asynchronously; use {@link #awaitInitialized(Duration)} to wait for
+     * it to be fully loaded.
+     */
+    @Override
+    public void start() {
+        final ZooKeeper zookeeper = client.get();
+        connected = zookeeper != null && zookeeper.getState() == ZooKeeper.States.CONNECTED;
+        running = true;
+        load("/", null);
+    }
+
+    /**
+     * Stops updating the cache, and evicts all ZNodes from it.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        nodes.clear();
+        updateFreshness();
+    }
+
+    /**
+     * Returns the path to the root of the cached subtree.
+     *
+     * @return the path to the root of the cached subtree.
+     */
+    public String getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns a snapshot of the ZNode at the given path.
+     *
+     * @param path the path of the ZNode, relative to the root of the cache.
+     *
+     * @return the cached ZNode at the path; or absent if there is no such ZNode.
+     */
+    public Optional<CachedZNode> get(final String path) {
+        return Optional.fromNullable(nodes.get(path));
+    }
+
+    /**
+     * Returns the data of the ZNode at the given path.
+     *
+     * @param path the path of the ZNode, relative to the root of the cache.
+     *
+     * @return the data of the ZNode at the path; or absent if there is no such ZNode.
+     */
+    public Optional<byte[]> getData(final String path) {
+        final CachedZNode node = nodes.get(path);
+        return node == null ? Optional.<byte[]>absent() : Optional.of(node.getData());
+    }
+
+    /**
+     * Returns the names of the children of the ZNode at the given path.
+     *
+     * @param path the path of the ZNode, relative to the root of the cache.
+     *
+     * @return the children of the ZNode at the path; or an empty set if there is no such ZNode.
+     */
+    public ImmutableSortedSet<String> getChildren(final String path) {
+        final CachedZNode node = nodes.get(path);
+        return node == null ? ImmutableSortedSet.<String>of() : node.getChildren();
+    }
+
+    /**
+     * Returns the number of ZNodes in the cache.
+     *
+     * @return the number of ZNodes in the cache.
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Determines whether the subtree has been fully loaded in to the cache.
+     *
+     * @return true if the subtree has been loaded; false if it's still loading.
+     */
+    public boolean isInitialized() {
+        return initialized.getCount() == 0;
+    }
+
+    /**
+     * Waits for the subtree to be fully loaded in to the cache.
+     *
+     * @param timeout the maximum time to wait.
+     *
+     * @return true if the subtree was loaded; false if the timeout elapsed first.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean awaitInitialized(final Duration timeout) throws InterruptedException {
+        return initialized.await(timeout.getQuantity(), timeout.getUnit());
+    }
+
+    /**
+     * Determines whether the cache is fresh.
+     *
+     * @return true if the cache is initialized, connected to a read-write server and not
+     *         re-synchronizing; otherwise, false.
+     */
+    public synchronized boolean isFresh() {
+        return fresh;
+    }
+
+    /**
+     * Returns the time since the cache was last fresh.
+     *
+     * @return the staleness of the cache, in nanoseconds; 0 if it's fresh; or -1 if it has never
+     *         been fresh.
+     *
+     * @see #isFresh()
+     */
+    public synchronized long getStaleness() {
+        if (fresh) {
+            return 0;
+        }
+        return staleSince == NEVER ? NEVER : System.nanoTime() - staleSince;
+    }
+
+    /**
+     * Re-reads every ZNode in the subtree and re-establishes their watches.
+     * <p/>
+     * This is necessary when watches may have been lost, such as when a new session is
+     * established after the previous one expired.
+     */
+    public void resync() {
+        if (!running) {
+            return;
+        }
+        stale = false;
+        resyncing = true;
+        updateFreshness();
+        resyncs.mark();
+        for (final String path : nodes.keySet()) {
+            if (!"/".equals(path)) {
+                load(path, null);
+            }
+        }
+        load("/", null);
+    }
+
+    private void load(final String path, final Long firedAt) {
+        loadData(path, firedAt);
+        loadChildren(path, firedAt);
+    }
+
+    private void loadData(final String path, final Long firedAt) {
+        pending.incrementAndGet();
+        client.get().getData(absolute(path), watcher, dataCallback, firedAt);
+    }
+
+    private void loadChildren(final String path, final Long firedAt) {
+        pending.incrementAndGet();
+        client.get().getChildren(absolute(path), watcher, childrenCallback, firedAt);
+    }
+
+    private void watchForCreation(final String path) {
+        pending.incrementAndGet();
+        client.get().exists(absolute(path), watcher, existsCallback, null);
+    }
+
+    private void evict(final String path) {
+        final CachedZNode node = nodes.remove(path);
+        if (node != null) {
+            for (final String child : node.getChildren()) {
+                evict(child(path, child));
+            }
+        }
+    }
+
+    private void failed(final KeeperException.Code code, final String path) {
+        if (code == KeeperException.Code.NONODE) {
+            evict(path);
+            if ("/".equals(path)) {
+                watchForCreation(path);
+            }
+        } else {
+            // the watch wasn't set, so the subtree must be re-read once reconnected
+            stale = true;
+            updateFreshness();
+        }
+    }
+
+    private void completed(final Object firedAt) {
+        if (firedAt != null) {
+            updateLag.update(System.nanoTime() - (Long) firedAt, TimeUnit.NANOSECONDS);
+        }
+        if (pending.decrementAndGet() == 0) {
+            initialized.countDown();
+            resyncing = false;
+            updateFreshness();
+        }
+    }
+
+    private void connectionChanged(final Watcher.Event.KeeperState state) {
+        switch (state) {
+            case SyncConnected:
+                connected = true;
+                break;
+            case Expired:
+                stale = true;
+                connected = false;
+                break;
+            default:
+                // disconnected, or connected to a read-only server
+                connected = false;
+                break;
+        }
+        updateFreshness();
+    }
+
+    private synchronized void updateFreshness() {
+        final boolean fresh = running && connected && !stale && !resyncing && isInitialized();
+        if (this.fresh && !fresh) {
+            staleSince = System.nanoTime();
+        }
+        this.fresh = fresh;
+    }
+
+    private String absolute(final String path) {
+        if ("/".equals(root)) {
+            return path;
+        }
+        return "/".equals(path) ? root : root + path;
+    }
+
+    private String relative(final String path) {
+        if ("/".equals(root)) {
+            return path;
+        }
+        return root.equals(path) ? "/" : path.substring(root.length());
+    }
+
+    private static String child(final String parent, final String child) {
+        return "/".equals(parent) ? "/" + child : parent + "/" + child;
+    }
+
+    /**
+     * Re-reads ZNodes when their watches fire.
+     */
+    private class CacheWatcher implements Watcher {
+
+        @Override
+        public void process(final WatchedEvent event) {
+            if (!running) {
+                return;
+            }
+
+            if (event.getType() == Event.EventType.None) {
+                connectionChanged(event.getState());
+                if (event.getState() == Event.KeeperState.SyncConnected && stale) {
+                    resync();
+                }
+                return;
+            }
+
+            final String path = relative(event.getPath());
+            final Long firedAt = System.nanoTime();
+            switch (event.getType()) {
+                case NodeCreated:
+                    load(path, firedAt);
+                    break;
+                case NodeDeleted:
+                    evict(path);
+                    if ("/".equals(path)) {
+                        watchForCreation(path);
+                    }
+                    break;
+                case NodeDataChanged:
+                    loadData(path, firedAt);
+                    break;
+                case NodeChildrenChanged:
+                    loadChildren(path, firedAt);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Replaces the data of a cached ZNode.
+     */
+    private class DataCallback implements AsyncCallback.DataCallback {
+
+        @Override
+        public void processResult(final int rc,
+                                  final String absolutePath,
+                                  final Object ctx,
+                                  final byte[] data,
+                                  final Stat stat) {
+            if (running) {
+                final String path = relative(absolutePath);
+                final KeeperException.Code code = KeeperException.Code.get(rc);
+                if (code == KeeperException.Code.OK) {
+                    final CachedZNode node = nodes.get(path);
+                    nodes.put(path, node == null
+                            ? new CachedZNode(path, data, stat, ImmutableSortedSet.<String>of())
+                            : node.withData(data, stat));
+                } else {
+                    failed(code, path);
+                }
+            }
+            completed(ctx);
+        }
+    }
+
+    /**
+     * Replaces the children of a cached ZNode, loading new children and evicting removed ones.
+     */
+    private class ChildrenCallback implements AsyncCallback.Children2Callback {
+
+        @Override
+        public void processResult(final int rc,
+                                  final String absolutePath,
+                                  final Object ctx,
+                                  final List<String> children,
+                                  final Stat stat) {
+            if (running) {
+                final String path = relative(absolutePath);
+                final KeeperException.Code code = KeeperException.Code.get(rc);
+                if (code == KeeperException.Code.OK) {
+                    final ImmutableSortedSet<String> current = ImmutableSortedSet.copyOf(children);
+                    final CachedZNode node = nodes.get(path);
+                    final ImmutableSortedSet<String> previous = node == null
+                            ? ImmutableSortedSet.<String>of()
+                            : node.getChildren();
+
+                    if (node == null) {
+                        // the ZNode was created after its data was read, so read it again
+                        nodes.put(path, new CachedZNode(path, null, stat, current));
+                        loadData(path, null);
+                    } else {
+                        nodes.put(path, node.withChildren(current));
+                    }
+
+                    for (final String child : previous) {
+                        if (!current.contains(child)) {
+                            evict(child(path, child));
+                        }
+                    }
+                    for (final String child : current) {
+                        if (!previous.contains(child)) {
+                            load(child(path, child), null);
+                        }
+                    }
+                } else {
+                    failed(code, path);
+                }
+            }
+            completed(ctx);
+        }
+    }
+
+    /**
+     * Loads the root of the subtree if it was created before its watch was set.
+     */
+    private class ExistsCallback implements AsyncCallback.StatCallback {
+
+        @Override
+        public void processResult(final int rc,
+                                  final String absolutePath,
+                                  final Object ctx,
+                                  final Stat stat) {
+            if (running) {
+                final KeeperException.Code code = KeeperException.Code.get(rc);
+                if (code == KeeperException.Code.OK) {
+                    load(relative(absolutePath), null);
+                } else if (code != KeeperException.Code.NONODE) {
+                    stale = true;
+                }
+            }
+            completed(ctx);
+        }
+    }
+}
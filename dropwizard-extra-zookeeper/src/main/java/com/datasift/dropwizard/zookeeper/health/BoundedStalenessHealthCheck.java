@@ -0,0 +1,38 @@
+package com.datasift.dropwizard.zookeeper.health;
+
+import com.codahale.metrics.health.HealthCheck;
+import com.datasift.dropwizard.zookeeper.cache.BoundedStalenessClient;
+
+/**
+ * A {@link HealthCheck} for the availability of a subtree read by a {@link
+ * BoundedStalenessClient}.
+ * <p/>
+ * The subtree is reported as healthy while it may be written, and as degraded, but still healthy,
+ * while it may only be read, such as when the ensemble has lost its quorum. It's only reported as
+ * unhealthy once it may no longer be read either.
+ */
+public class BoundedStalenessHealthCheck extends HealthCheck {
+
+    private final BoundedStalenessClient client;
+
+    /**
+     * Creates a {@link HealthCheck} that reports the availability of the subtree read by the given
+     * {@link BoundedStalenessClient}.
+     *
+     * @param client the client of the subtree to check the availability of.
+     */
+    public BoundedStalenessHealthCheck(final BoundedStalenessClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Returns the current availability of the subtree.
+     *
+     * @return {@link Result#unhealthy(String)} if the subtree may be neither read nor written;
+     *         otherwise, {@link Result#healthy()}, noting whether the subtree is degraded.
+     */
+    @Override
+    protected Result check() {
+        return client.getResult();
+    }
+}
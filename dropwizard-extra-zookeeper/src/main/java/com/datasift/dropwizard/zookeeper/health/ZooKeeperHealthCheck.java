@@ -12,36 +12,59 @@ import org.apache.zookeeper.ZooKeeper;
  *     <li>the client is connected to the cluster, and</li>
  *     <li>the configured namespace exists</li>
  * </ul>
+ * <p/>
+ * The checks are performed in the background by a {@link ZooKeeperHealthMonitor}, so checking
+ * health never blocks on, or adds load to, the ensemble.
  */
 public class ZooKeeperHealthCheck extends HealthCheck {
 
+    private final ZooKeeperHealthMonitor monitor;
     private final ZooKeeper client;
     private final String namespace;
 
     /**
      * Creates a {@link HealthCheck} that checks the given {@link ZooKeeper} client is functioning
-     * correctly.
+     * correctly, by checking it directly each time its health is checked.
      *
      * @param client the client to check the health of.
      * @param namespace the namespace to check for within the ZooKeeper ensemble.
-     * @param name the name of this {@link HealthCheck}.
+     *
+     * @deprecated checks block on, and add load to, the ensemble; use {@link
+     *             #ZooKeeperHealthCheck(ZooKeeperHealthMonitor)} instead.
      */
+    @Deprecated
     public ZooKeeperHealthCheck(final ZooKeeper client, final String namespace) {
+        this.monitor = null;
         this.client = client;
         this.namespace = namespace;
     }
 
     /**
-     * Checks that the configured {@link ZooKeeper} client is functioning correctly.
+     * Creates a {@link HealthCheck} that reports the health of a {@link ZooKeeper} client, as
+     * determined by the given {@link ZooKeeperHealthMonitor}.
+     *
+     * @param monitor the monitor of the client to check the health of.
+     */
+    public ZooKeeperHealthCheck(final ZooKeeperHealthMonitor monitor) {
+        this.monitor = monitor;
+        this.client = null;
+        this.namespace = null;
+    }
+
+    /**
+     * Returns the most recent health of the {@link ZooKeeper} client.
      *
-     * @return {@link Result#unhealthy(String)} if the client is not functioning correctly or the
-     *         connected ZooKeeper ensemble is not operating correctly; otherwise, {@link
-     *         Result#healthy()}.
+     * @return {@link Result#unhealthy(String)} if the client was not functioning correctly or the
+     *         connected ZooKeeper ensemble was not operating correctly when last checked;
+     *         otherwise, {@link Result#healthy()}.
      *
-     * @throws Exception if an error occurs checking the health of the {@link ZooKeeper} client.
+     * @throws Exception if an error occurs checking the health of a client without a monitor.
      */
     @Override
     protected Result check() throws Exception {
+        if (monitor != null) {
+            return monitor.getResult();
+        }
 
         final ZooKeeper.States state = client.getState();
 
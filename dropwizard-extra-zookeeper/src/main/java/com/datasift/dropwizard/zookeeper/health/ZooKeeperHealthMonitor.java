@@ -0,0 +1,281 @@
+package com.datasift.dropwizard.zookeeper.health;
+
+import com.codahale.metrics.health.HealthCheck;
+import com.google.common.base.Supplier;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.util.Duration;
+import org.apache.zookeeper.AsyncCallback;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monitors the health of a connection to a ZooKeeper ensemble, without blocking readers.
+ * <p/>
+ * The health of the connection is determined by:
+ * <ul>
+ *     <li>connection state events, which are applied as soon as they're received, and</li>
+ *     <li>a periodic, asynchronous probe for the existence of the configured namespace, which is
+ *     considered failed if it doesn't complete within a bounded timeout.</li>
+ * </ul>
+ * The most recent result is cached, so {@link #getResult()} never performs any I/O, regardless of
+ * how often it's called. Each result reports how long ago it was determined, and how many times
+ * the session has expired.
+ * <p/>
+ * A client connected to a read-only server, such as when the ensemble has lost its quorum, is
+ * reported as healthy, but degraded, as it may still serve reads.
+ * <p/>
+ * Connection state events may be delivered by registering this as the {@link Watcher} of a
+ * {@link ZooKeeper} client, or by calling {@link #connected()}, {@link #disconnected()} and {@link
+ * #expired()} directly, for clients that manage their own connection, such as Curator.
+ *
+ * @see ZooKeeperHealthCheck
+ */
+public class ZooKeeperHealthMonitor implements Managed, Watcher {
+
+    /**
+     * An immutable result of a check of the connection.
+     */
+    private static class Status {
+
+        private final boolean healthy;
+        private final String message;
+        private final long timestamp;
+
+        Status(final boolean healthy, final String message) {
+            this.healthy = healthy;
+            this.message = message;
+            this.timestamp = System.nanoTime();
+        }
+    }
+
+    private final Supplier<ZooKeeper> client;
+    private final String namespace;
+    private final ScheduledExecutorService executor;
+    private final Duration interval;
+    private final Duration timeout;
+
+    private final AtomicLong probes = new AtomicLong();
+    private final AtomicLong expiries = new AtomicLong();
+    private final AsyncCallback.StatCallback callback = new ProbeCallback();
+    private final Runnable probe = new Runnable() {
+        @Override
+        public void run() {
+            probe();
+        }
+    };
+
+    private volatile Status status = new Status(false, "Not yet checked");
+    private volatile long completedProbe = 0;
+    private volatile ScheduledFuture<?> schedule = null;
+
+    /**
+     * Creates a monitor for the connection of a {@link ZooKeeper} client.
+     * <p/>
+     * The {@link ZooKeeper} client is obtained from the given {@link Supplier} for each probe, so
+     * that clients that replace their {@link ZooKeeper} instance when a session expires may be
+     * monitored.
+     *
+     * @param client    a {@link Supplier} of the {@link ZooKeeper} client to monitor.
+     * @param namespace the namespace to probe for within the ZooKeeper ensemble.
+     * @param executor  the {@link ScheduledExecutorService} to run probes on.
+     * @param interval  the time between periodic probes.
+     * @param timeout   the maximum time to wait for a probe to complete.
+     */
+    public ZooKeeperHealthMonitor(final Supplier<ZooKeeper> client,
+                                  final String namespace,
+                                  final ScheduledExecutorService executor,
+                                  final Duration interval,
+                                  final Duration timeout) {
+        this.client = client;
+        this.namespace = namespace;
+        this.executor = executor;
+        this.interval = interval;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Begins periodically probing the connection.
+     */
+    @Override
+    public void start() {
+        schedule = executor.scheduleWithFixedDelay(
+                probe, 0, interval.getQuantity(), interval.getUnit());
+    }
+
+    /**
+     * Stops probing the connection.
+     */
+    @Override
+    public void stop() {
+        final ScheduledFuture<?> schedule = this.schedule;
+        if (schedule != null) {
+            schedule.cancel(false);
+        }
+        this.schedule = null;
+        update(false, "Client stopped");
+    }
+
+    /**
+     * Applies connection state events from a {@link ZooKeeper} client.
+     *
+     * @param event the event to apply; events for ZNodes are ignored.
+     */
+    @Override
+    public void process(final WatchedEvent event) {
+        if (event.getType() != Event.EventType.None) {
+            return;
+        }
+
+        switch (event.getState()) {
+            case SyncConnected:
+            case ConnectedReadOnly:
+                connected();
+                break;
+            case Disconnected:
+                disconnected();
+                break;
+            case Expired:
+                expired();
+                break;
+            default:
+                update(false, "Client in state: " + event.getState());
+                break;
+        }
+    }
+
+    /**
+     * Notifies this monitor that the client has (re)connected to the ensemble.
+     * <p/>
+     * The connection is immediately probed, rather than waiting for the next periodic probe.
+     */
+    public void connected() {
+        if (schedule != null) {
+            executor.execute(probe);
+        }
+    }
+
+    /**
+     * Notifies this monitor that the client has lost its connection to the ensemble.
+     */
+    public void disconnected() {
+        update(false, "Client disconnected");
+    }
+
+    /**
+     * Notifies this monitor that the session of the client has expired.
+     */
+    public void expired() {
+        expiries.incrementAndGet();
+        update(false, "Session expired");
+    }
+
+    /**
+     * Returns the number of times the session of the client has expired.
+     *
+     * @return the number of session expiries since the monitor was created.
+     */
+    public long getSessionExpiries() {
+        return expiries.get();
+    }
+
+    /**
+     * Returns the most recently determined health of the connection.
+     * <p/>
+     * This never blocks or performs any I/O.
+     *
+     * @return the cached health of the connection, annotated with its age and the number of
+     *         session expiries.
+     */
+    public HealthCheck.Result getResult() {
+        final Status status = this.status;
+        final long age = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - status.timestamp);
+        final String message = String.format(
+                "%s (checked %dms ago, %d session expiries)", status.message, age, expiries.get());
+        return status.healthy
+                ? HealthCheck.Result.healthy(message)
+                : HealthCheck.Result.unhealthy(message);
+    }
+
+    private void probe() {
+        final ZooKeeper zookeeper;
+        try {
+            zookeeper = client.get();
+        } catch (final RuntimeException e) {
+            update(false, "Client unavailable: " + e.getMessage());
+            return;
+        }
+        if (zookeeper == null) {
+            update(false, "Client not yet created");
+            return;
+        }
+
+        final ZooKeeper.States state = zookeeper.getState();
+        if (!state.isAlive()) {
+            update(false, "Client is dead, in state: " + state);
+            return;
+        }
+        if (!state.isConnected()) {
+            update(false, "Client not connected, in state: " + state);
+            return;
+        }
+
+        final long id = probes.incrementAndGet();
+        zookeeper.exists(namespace, false, callback, id);
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (completedProbe < id) {
+                    update(false, "Probe timed out after " + timeout);
+                }
+            }
+        }, timeout.getQuantity(), timeout.getUnit());
+    }
+
+    private boolean isReadOnly() {
+        final ZooKeeper zookeeper = client.get();
+        return zookeeper != null && zookeeper.getState() == ZooKeeper.States.CONNECTEDREADONLY;
+    }
+
+    private void update(final boolean healthy, final String message) {
+        status = new Status(healthy, message);
+    }
+
+    /**
+     * Records the result of a probe, unless a later probe has completed since.
+     */
+    private class ProbeCallback implements AsyncCallback.StatCallback {
+
+        @Override
+        public void processResult(final int rc,
+                                  final String path,
+                                  final Object ctx,
+                                  final Stat stat) {
+            final long id = (Long) ctx;
+            if (id < completedProbe) {
+                return;
+            }
+            completedProbe = id;
+
+            final KeeperException.Code code = KeeperException.Code.get(rc);
+            if (code == KeeperException.Code.OK) {
+                if (isReadOnly()) {
+                    update(true, "Degraded: connected to a read-only server");
+                } else {
+                    update(true, "Connected");
+                }
+            } else if (code == KeeperException.Code.NONODE) {
+                update(false, "Root namespace does not exist: " + namespace);
+            } else {
+                update(false, "Probe failed: " + code);
+            }
+        }
+    }
+}
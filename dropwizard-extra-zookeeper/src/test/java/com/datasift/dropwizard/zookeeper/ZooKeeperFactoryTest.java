@@ -1,6 +1,7 @@
 package com.datasift.dropwizard.zookeeper;
 
 import io.dropwizard.jackson.Jackson;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.io.Resources;
 import io.dropwizard.configuration.ConfigurationFactory;
 import io.dropwizard.util.Duration;
@@ -52,6 +53,18 @@ public class ZooKeeperFactoryTest {
         assertThat("default session timeout is 6 seconds",
                 conf.getSessionTimeout(),
                 equalTo(Duration.seconds(6)));
+
+        assertThat("default health check interval is 10 seconds",
+                conf.getHealthCheckInterval(),
+                equalTo(Duration.seconds(10)));
+
+        assertThat("default health check timeout is 2 seconds",
+                conf.getHealthCheckTimeout(),
+                equalTo(Duration.seconds(2)));
+
+        assertThat("default max staleness is 1 minute",
+                conf.getMaxStaleness(),
+                equalTo(Duration.minutes(1)));
     }
 
     @Test
@@ -74,6 +87,52 @@ public class ZooKeeperFactoryTest {
                 is("remote1:2181,remote2:2181"));
     }
 
+    @Test
+    public void quorumSpecWithPerHostPorts() {
+        final ZooKeeperFactory conf = new ZooKeeperFactory();
+        conf.setHosts(new String[] { "remote1:2182", "remote2" });
+        assertThat("quorum spec uses per-host ports",
+                conf.getQuorumSpec(),
+                is("remote1:2182,remote2:2181"));
+    }
+
+    @Test
+    public void selectsAllServersByDefault() {
+        final ZooKeeperFactory conf = zonedFactory();
+        assertThat("selects every server",
+                conf.getSelectedQuorumSpec(),
+                is("a1:2181,b1:2181,a2:2181"));
+    }
+
+    @Test
+    public void selectsOnlyLocalZoneServers() {
+        final ZooKeeperFactory conf = zonedFactory();
+        conf.setServerSelection(ZooKeeperFactory.ServerSelection.LOCAL_ZONE_ONLY);
+        assertThat("selects servers in the local zone",
+                conf.getSelectedQuorumSpec(),
+                is("a1:2181,a2:2181"));
+    }
+
+    @Test
+    public void weightsLocalZoneServers() {
+        final ZooKeeperFactory conf = zonedFactory();
+        conf.setServerSelection(ZooKeeperFactory.ServerSelection.PREFER_LOCAL_ZONE);
+        conf.setLocalZoneWeight(2);
+        assertThat("repeats servers in the local zone",
+                conf.getSelectedQuorumSpec(),
+                is("a1:2181,a2:2181,a1:2181,a2:2181,b1:2181"));
+    }
+
+    @Test
+    public void selectsAllServersWhenNoneAreLocal() {
+        final ZooKeeperFactory conf = zonedFactory();
+        conf.setServerSelection(ZooKeeperFactory.ServerSelection.LOCAL_ZONE_ONLY);
+        conf.setZone("zone-c");
+        assertThat("falls back to every server",
+                conf.getSelectedQuorumSpec(),
+                is("a1:2181,b1:2181,a2:2181"));
+    }
+
     @Test
     public void namespacePath() {
         final ZooKeeperFactory conf = new ZooKeeperFactory();
@@ -86,6 +145,14 @@ public class ZooKeeperFactoryTest {
                 is("/"));
     }
 
+    private static ZooKeeperFactory zonedFactory() {
+        final ZooKeeperFactory conf = new ZooKeeperFactory();
+        conf.setHosts(new String[] { "a1", "b1", "a2" });
+        conf.setZone("zone-a");
+        conf.setZones(ImmutableMap.of("a1", "zone-a", "a2", "zone-a", "b1", "zone-b"));
+        return conf;
+    }
+
     @Test
     public void parsedConfig() {
         assertThat("contains hosts",
@@ -107,5 +174,13 @@ public class ZooKeeperFactoryTest {
         assertThat("parses session timeout",
                 config.getSessionTimeout(),
                 is(Duration.seconds(30)));
+
+        assertThat("parses health check interval",
+                config.getHealthCheckInterval(),
+                is(Duration.seconds(5)));
+
+        assertThat("parses health check timeout",
+                config.getHealthCheckTimeout(),
+                is(Duration.milliseconds(500)));
     }
 }
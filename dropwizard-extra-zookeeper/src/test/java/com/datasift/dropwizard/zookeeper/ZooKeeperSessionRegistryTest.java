@@ -0,0 +1,168 @@
+package com.datasift.dropwizard.zookeeper;
+
+import com.datasift.dropwizard.zookeeper.testing.EmbeddedZooKeeper;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@link ZooKeeperSessionRegistry}.
+ */
+public class ZooKeeperSessionRegistryTest {
+
+    private EmbeddedZooKeeper zookeeper;
+    private ZooKeeperSessionRegistry registry;
+
+    @Before
+    public void setUp() throws Exception {
+        zookeeper = new EmbeddedZooKeeper();
+        zookeeper.start();
+
+        registry = new ZooKeeperSessionRegistry();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        zookeeper.stop();
+    }
+
+    @Test
+    public void sharesSessionOfSameEnsemble() throws Exception {
+        final SharedZooKeeper first = registry.acquire(factory("/"), null);
+        final SharedZooKeeper second = registry.acquire(factory("/"), null);
+        try {
+            assertThat("shares client", second, is(sameInstance(first)));
+            assertThat("counts references", first.getReferenceCount(), is(2));
+            assertThat("has one session", registry.size(), is(1));
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test
+    public void separatesSessionsOfDifferentNamespaces() throws Exception {
+        final SharedZooKeeper first = registry.acquire(factory("/"), null);
+        final SharedZooKeeper second = registry.acquire(factory("/other"), null);
+        try {
+            assertThat("separate clients", second, is(not(sameInstance(first))));
+            assertThat("has two sessions", registry.size(), is(2));
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test
+    public void separatesSessionsOfDifferentAuth() throws Exception {
+        final ZooKeeperFactory.Auth auth = new ZooKeeperFactory.Auth();
+        auth.setScheme("digest");
+        auth.setId("user:password");
+        final ZooKeeperFactory authenticated = factory("/");
+        authenticated.setAuth(auth);
+
+        final SharedZooKeeper first = registry.acquire(factory("/"), null);
+        final SharedZooKeeper second = registry.acquire(authenticated, null);
+        try {
+            assertThat("separate clients", second, is(not(sameInstance(first))));
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test
+    public void closesSessionWhenLastReferenceReleased() throws Exception {
+        final SharedZooKeeper first = registry.acquire(factory("/"), null);
+        final SharedZooKeeper second = registry.acquire(factory("/"), null);
+
+        first.close();
+        assertThat("session remains open",
+                second.getState(),
+                is(not(ZooKeeper.States.CLOSED)));
+
+        second.close();
+        assertThat("session is closed", second.getState(), is(ZooKeeper.States.CLOSED));
+        assertThat("session is removed", registry.size(), is(0));
+
+        final SharedZooKeeper third = registry.acquire(factory("/"), null);
+        try {
+            assertThat("new session is created", third, is(not(sameInstance(first))));
+        } finally {
+            third.close();
+        }
+    }
+
+    @Test
+    public void ignoresRepeatedReleaseByTheSameHolder() throws Exception {
+        final Watcher firstWatcher = connected(new CountDownLatch(1));
+        final Watcher secondWatcher = connected(new CountDownLatch(1));
+        final SharedZooKeeper first = registry.acquire(factory("/"), firstWatcher);
+        final SharedZooKeeper second = registry.acquire(factory("/"), secondWatcher);
+
+        first.release(firstWatcher);
+        first.release(firstWatcher);
+        first.close();
+        assertThat("retains the other holder's reference", second.getReferenceCount(), is(1));
+        assertThat("session remains open",
+                second.getState(),
+                is(not(ZooKeeper.States.CLOSED)));
+
+        second.release(secondWatcher);
+        assertThat("session is closed", second.getState(), is(ZooKeeper.States.CLOSED));
+        assertThat("session is removed", registry.size(), is(0));
+    }
+
+    @Test
+    public void notifiesLateHoldersOfConnection() throws Exception {
+        final CountDownLatch firstConnected = new CountDownLatch(1);
+        final CountDownLatch secondConnected = new CountDownLatch(1);
+
+        final SharedZooKeeper first = registry.acquire(factory("/"), connected(firstConnected));
+        try {
+            assertThat("first holder is connected",
+                    firstConnected.await(10, TimeUnit.SECONDS),
+                    is(true));
+
+            final SharedZooKeeper second =
+                    registry.acquire(factory("/"), connected(secondConnected));
+            try {
+                assertThat("second holder is notified of connection",
+                        secondConnected.await(10, TimeUnit.SECONDS),
+                        is(true));
+            } finally {
+                second.close();
+            }
+        } finally {
+            first.close();
+        }
+    }
+
+    private ZooKeeperFactory factory(final String namespace) {
+        final ZooKeeperFactory factory = new ZooKeeperFactory();
+        factory.setHosts(new String[] { "localhost" });
+        factory.setPort(zookeeper.getPort());
+        factory.setNamespace(namespace);
+        return factory;
+    }
+
+    private static Watcher connected(final CountDownLatch latch) {
+        return new Watcher() {
+            @Override
+            public void process(final WatchedEvent event) {
+                if (event.getState() == Event.KeeperState.SyncConnected) {
+                    latch.countDown();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,168 @@
+package com.datasift.dropwizard.zookeeper.batch;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datasift.dropwizard.zookeeper.testing.EmbeddedZooKeeper;
+import com.google.common.base.Suppliers;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link BatchingZooKeeperWriter}.
+ */
+public class BatchingZooKeeperWriterTest {
+
+    private static final Duration TIMEOUT = Duration.seconds(10);
+
+    private EmbeddedZooKeeper zookeeper;
+    private ZooKeeper client;
+    private MetricRegistry registry;
+    private BatchingZooKeeperWriter writer;
+
+    @Before
+    public void setUp() throws Exception {
+        zookeeper = new EmbeddedZooKeeper();
+        zookeeper.start();
+
+        client = zookeeper.newClient();
+
+        registry = new MetricRegistry();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (writer != null) {
+            writer.stop();
+        }
+        client.close();
+        zookeeper.stop();
+    }
+
+    @Test
+    public void coalescesWritesInToOneTransaction() throws Exception {
+        writer = writer(100);
+        final List<ListenableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(create("/node" + i, "data"));
+        }
+        writer.start();
+
+        for (int i = 0; i < 10; i++) {
+            assertThat("creates node", get(futures.get(i)), is("/node" + i));
+        }
+        assertThat("commits one batch", registry.timer("writer.batches").getCount(), is(1L));
+        assertThat("commits every write", registry.meter("writer.writes").getCount(), is(10L));
+    }
+
+    @Test
+    public void limitsOperationsPerTransaction() throws Exception {
+        writer = writer(3);
+        final List<ListenableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            futures.add(create("/node" + i, "data"));
+        }
+        writer.start();
+
+        for (final ListenableFuture<String> future : futures) {
+            get(future);
+        }
+        assertThat("commits three batches", registry.timer("writer.batches").getCount(), is(3L));
+    }
+
+    @Test
+    public void failsOnlyTheConflictingWrite() throws Exception {
+        client.create("/exists", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+
+        writer = writer(100);
+        final ListenableFuture<String> before = create("/before", "data");
+        final ListenableFuture<String> conflict = create("/exists", "data");
+        final ListenableFuture<String> after = create("/after", "data");
+        writer.start();
+
+        assertThat("creates earlier write", get(before), is("/before"));
+        assertThat("creates later write", get(after), is("/after"));
+        try {
+            get(conflict);
+            fail("conflicting write succeeded");
+        } catch (final ExecutionException e) {
+            assertThat("fails with cause",
+                    e.getCause(),
+                    is(instanceOf(KeeperException.NodeExistsException.class)));
+        }
+        assertThat("retries the rest of the batch",
+                registry.meter("writer.retries").getCount(),
+                is(2L));
+    }
+
+    @Test
+    public void updatesAndDeletes() throws Exception {
+        client.create("/update", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        client.create("/delete", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+
+        writer = writer(100);
+        writer.start();
+
+        assertThat("updates data",
+                writer.setData("/update", "new".getBytes(), 0)
+                        .get(TIMEOUT.getQuantity(), TIMEOUT.getUnit())
+                        .getVersion(),
+                is(1));
+        writer.delete("/delete", -1).get(TIMEOUT.getQuantity(), TIMEOUT.getUnit());
+
+        assertThat("writes data",
+                new String(client.getData("/update", false, null)),
+                is("new"));
+        assertThat("deletes node", client.exists("/delete", false), is(nullValue()));
+    }
+
+    @Test
+    public void rejectsWritesWhenStopped() throws Exception {
+        writer = writer(100);
+        writer.start();
+        writer.stop();
+
+        try {
+            get(create("/node", "data"));
+            fail("write accepted after stop");
+        } catch (final ExecutionException e) {
+            assertThat("fails as stopped",
+                    e.getCause(),
+                    is(instanceOf(IllegalStateException.class)));
+        }
+    }
+
+    private BatchingZooKeeperWriter writer(final int maxOperations) {
+        return new BatchingZooKeeperWriter(
+                Suppliers.ofInstance(client),
+                maxOperations,
+                Size.kilobytes(512),
+                Duration.milliseconds(5),
+                registry,
+                "writer");
+    }
+
+    private ListenableFuture<String> create(final String path, final String data) {
+        return writer.create(
+                path, data.getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+    }
+
+    private static <T> T get(final ListenableFuture<T> future) throws Exception {
+        return future.get(TIMEOUT.getQuantity(), TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,234 @@
+package com.datasift.dropwizard.zookeeper.cache;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.health.HealthCheck;
+import com.datasift.dropwizard.zookeeper.testing.EmbeddedZooKeeper;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableSortedSet;
+import io.dropwizard.util.Duration;
+import org.apache.zookeeper.AsyncCallback;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests {@link BoundedStalenessClient}.
+ */
+public class BoundedStalenessClientTest {
+
+    private static final Duration TIMEOUT = Duration.seconds(10);
+
+    private EmbeddedZooKeeper zookeeper;
+    private ZooKeeper client;
+    private MetricRegistry registry;
+    private ZooKeeperCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        zookeeper = new EmbeddedZooKeeper();
+        zookeeper.start();
+
+        client = zookeeper.newClient();
+
+        client.create("/config", "root".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE,
+                CreateMode.PERSISTENT);
+        client.create("/config/a", "1".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE,
+                CreateMode.PERSISTENT);
+
+        registry = new MetricRegistry();
+        cache = new ZooKeeperCache(Suppliers.ofInstance(client), "/config", registry, "cache");
+        cache.start();
+        assertThat("cache is initialized", cache.awaitInitialized(TIMEOUT), is(true));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cache.stop();
+        client.close();
+        zookeeper.stop();
+    }
+
+    @Test
+    public void servesReadsFromCacheWhileConnected() throws Exception {
+        final BoundedStalenessClient reader = reader(Duration.minutes(1));
+
+        assertThat("is healthy",
+                reader.getStatus(),
+                is(BoundedStalenessClient.Status.HEALTHY));
+        assertThat("reads data", new String(reader.getData("/a").get()), is("1"));
+        assertThat("reads children", reader.getChildren("/"), is(ImmutableSortedSet.of("a")));
+        assertThat("reads are served by the cache",
+                registry.meter("reader.cacheReads").getCount(),
+                is(2L));
+    }
+
+    @Test
+    public void writesWhileConnected() throws Exception {
+        final BoundedStalenessClient reader = reader(Duration.minutes(1));
+
+        reader.create("/b", "2".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        reader.setData("/a", "3".getBytes(), -1);
+
+        assertThat("creates relative to root",
+                new String(client.getData("/config/b", false, null)),
+                is("2"));
+        assertThat("updates relative to root",
+                new String(client.getData("/config/a", false, null)),
+                is("3"));
+    }
+
+    @Test
+    public void servesStaleReadsWhenDisconnected() throws Exception {
+        final BoundedStalenessClient reader = reader(Duration.minutes(1));
+
+        disconnect();
+
+        assertThat("is degraded",
+                reader.getStatus(),
+                is(BoundedStalenessClient.Status.DEGRADED));
+        assertThat("reads cached data", new String(reader.getData("/a").get()), is("1"));
+
+        final HealthCheck.Result result = reader.getResult();
+        assertThat("degraded is healthy", result.isHealthy(), is(true));
+        assertThat("reports degradation", result.getMessage(), startsWith("Degraded"));
+    }
+
+    @Test
+    public void rejectsWritesWhenDisconnected() throws Exception {
+        final BoundedStalenessClient reader = reader(Duration.minutes(1));
+
+        disconnect();
+
+        try {
+            reader.setData("/a", "3".getBytes(), -1);
+            fail("write was not rejected");
+        } catch (final KeeperException.ConnectionLossException e) {
+            assertThat("reports path", e.getPath(), is("/config/a"));
+        }
+        assertThat("records rejected write",
+                registry.meter("reader.rejectedWrites").getCount(),
+                is(1L));
+    }
+
+    @Test
+    public void rejectsReadsWhenTooStale() throws Exception {
+        final BoundedStalenessClient reader = reader(Duration.milliseconds(0));
+
+        disconnect();
+        Thread.sleep(5);
+
+        assertThat("is unavailable",
+                reader.getStatus(),
+                is(BoundedStalenessClient.Status.UNAVAILABLE));
+        assertThat("unavailable is unhealthy", reader.getResult().isHealthy(), is(false));
+        try {
+            reader.getData("/a");
+            fail("read was not rejected");
+        } catch (final KeeperException.ConnectionLossException e) {
+            assertThat("records rejected read",
+                    registry.meter("reader.rejectedReads").getCount(),
+                    is(1L));
+        }
+    }
+
+    @Test
+    public void measuresStalenessFromDisconnection() throws Exception {
+        final BoundedStalenessClient reader = reader(Duration.minutes(1));
+        Thread.sleep(500);
+
+        final long disconnectedAt = System.nanoTime();
+        disconnect();
+
+        assertThat("quiet period before disconnecting isn't stale",
+                reader.getStaleness(),
+                is(lessThanOrEqualTo(System.nanoTime() - disconnectedAt)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void readsFromSessionWhileCacheResyncs() throws Exception {
+        final ZooKeeper zookeeper = mock(ZooKeeper.class);
+        when(zookeeper.getState()).thenReturn(ZooKeeper.States.CONNECTED);
+        when(zookeeper.getData("/config", false, null)).thenReturn("root".getBytes());
+        final ZooKeeperCache cache = new ZooKeeperCache(
+                Suppliers.ofInstance(zookeeper), "/config", registry, "mocked");
+        final BoundedStalenessClient reader = new BoundedStalenessClient(
+                Suppliers.ofInstance(zookeeper), cache, Duration.milliseconds(1), registry,
+                "reader");
+
+        cache.start();
+        final Watcher watcher = loadRoot(zookeeper, 1);
+        assertThat("is fresh once loaded", reader.getStaleness(), is(0L));
+
+        watcher.process(new WatchedEvent(
+                Watcher.Event.EventType.None, Watcher.Event.KeeperState.Expired, null));
+        watcher.process(new WatchedEvent(
+                Watcher.Event.EventType.None, Watcher.Event.KeeperState.SyncConnected, null));
+        Thread.sleep(5);
+
+        assertThat("is connected", reader.getStatus(), is(BoundedStalenessClient.Status.HEALTHY));
+        assertThat("is stale while resyncing", reader.getStaleness(), is(greaterThan(0L)));
+        assertThat("reads from session", new String(reader.getData("/").get()), is("root"));
+        assertThat("records session read",
+                registry.meter("reader.sessionReads").getCount(),
+                is(1L));
+
+        loadRoot(zookeeper, 2);
+        assertThat("is fresh once resynced", reader.getStaleness(), is(0L));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Watcher loadRoot(final ZooKeeper zookeeper, final int times) {
+        final ArgumentCaptor<Watcher> watcher = ArgumentCaptor.forClass(Watcher.class);
+        final ArgumentCaptor<AsyncCallback.DataCallback> data =
+                ArgumentCaptor.forClass(AsyncCallback.DataCallback.class);
+        final ArgumentCaptor<AsyncCallback.Children2Callback> children =
+                ArgumentCaptor.forClass(AsyncCallback.Children2Callback.class);
+        verify(zookeeper, times(times))
+                .getData(eq("/config"), watcher.capture(), data.capture(), any());
+        verify(zookeeper, times(times))
+                .getChildren(eq("/config"), any(Watcher.class), children.capture(), any());
+
+        data.getValue().processResult(0, "/config", null, "root".getBytes(), new Stat());
+        children.getValue().processResult(
+                0, "/config", null, Collections.<String>emptyList(), new Stat());
+        return watcher.getValue();
+    }
+
+    private BoundedStalenessClient reader(final Duration maxStaleness) {
+        return new BoundedStalenessClient(
+                Suppliers.ofInstance(client), cache, maxStaleness, registry, "reader");
+    }
+
+    private void disconnect() throws Exception {
+        zookeeper.stop();
+        final long deadline = System.currentTimeMillis() + TIMEOUT.toMilliseconds();
+        while ((client.getState() == ZooKeeper.States.CONNECTED || cache.isFresh())
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat("client is disconnected",
+                client.getState(),
+                is(not(ZooKeeper.States.CONNECTED)));
+    }
+}
@@ -0,0 +1,141 @@
+package com.datasift.dropwizard.zookeeper.cache;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datasift.dropwizard.zookeeper.testing.EmbeddedZooKeeper;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableSortedSet;
+import io.dropwizard.util.Duration;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@link ZooKeeperCache}.
+ */
+public class ZooKeeperCacheTest {
+
+    private static final Duration TIMEOUT = Duration.seconds(10);
+
+    private EmbeddedZooKeeper zookeeper;
+    private ZooKeeper client;
+    private MetricRegistry registry;
+    private ZooKeeperCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        zookeeper = new EmbeddedZooKeeper();
+        zookeeper.start();
+
+        client = zookeeper.newClient();
+
+        create("/config", "root");
+        create("/config/a", "1");
+        create("/config/a/b", "2");
+
+        registry = new MetricRegistry();
+        cache = new ZooKeeperCache(Suppliers.ofInstance(client), "/config", registry, "cache");
+        cache.start();
+        assertThat("cache is initialized", cache.awaitInitialized(TIMEOUT), is(true));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cache.stop();
+        client.close();
+        zookeeper.stop();
+    }
+
+    @Test
+    public void loadsSubtree() {
+        assertThat("contains every ZNode", cache.size(), is(3));
+        assertThat("root has data", data("/"), is("root"));
+        assertThat("child has data", data("/a/b"), is("2"));
+        assertThat("root has children", cache.getChildren("/"), is(ImmutableSortedSet.of("a")));
+    }
+
+    @Test
+    public void missingZNodesAreAbsent() {
+        assertThat("missing ZNode is absent", cache.get("/missing").isPresent(), is(false));
+        assertThat("missing ZNode has no children",
+                cache.getChildren("/missing"),
+                is(ImmutableSortedSet.<String>of()));
+    }
+
+    @Test
+    public void updatesChangedData() throws Exception {
+        client.setData("/config/a", "changed".getBytes(), -1);
+        awaitData("/a", "changed");
+
+        assertThat("update lag is recorded",
+                registry.timer("cache.updateLag").getCount(),
+                is(greaterThanOrEqualTo(1L)));
+    }
+
+    @Test
+    public void loadsCreatedChildren() throws Exception {
+        create("/config/c", "3");
+        awaitData("/c", "3");
+
+        awaitChildren("/", ImmutableSortedSet.of("a", "c"));
+    }
+
+    @Test
+    public void evictsDeletedSubtrees() throws Exception {
+        client.delete("/config/a/b", -1);
+        client.delete("/config/a", -1);
+        awaitChildren("/", ImmutableSortedSet.<String>of());
+
+        assertThat("deleted ZNode is absent", cache.get("/a").isPresent(), is(false));
+        assertThat("deleted subtree is evicted", cache.size(), is(1));
+    }
+
+    @Test
+    public void resyncsSubtree() throws Exception {
+        cache.resync();
+        create("/config/d", "4");
+        awaitData("/d", "4");
+
+        assertThat("contains every ZNode", cache.size(), is(4));
+        assertThat("resync is recorded", registry.meter("cache.resyncs").getCount(), is(1L));
+    }
+
+    @Test
+    public void registersSizeGauge() {
+        assertThat("size gauge is registered",
+                registry.getGauges().get("cache.size").getValue(),
+                is((Object) 3));
+    }
+
+    private void create(final String path, final String data) throws Exception {
+        client.create(path, data.getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+    }
+
+    private String data(final String path) {
+        return new String(cache.getData(path).get());
+    }
+
+    private void awaitData(final String path, final String data) throws InterruptedException {
+        final long deadline = System.nanoTime() + TIMEOUT.toNanoseconds();
+        while (!cache.getData(path).isPresent() || !data(path).equals(data)) {
+            assertThat("update arrives within timeout", System.nanoTime() < deadline, is(true));
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    private void awaitChildren(final String path, final ImmutableSortedSet<String> children)
+            throws InterruptedException {
+        final long deadline = System.nanoTime() + TIMEOUT.toNanoseconds();
+        while (!cache.getChildren(path).equals(children)) {
+            assertThat("update arrives within timeout", System.nanoTime() < deadline, is(true));
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.datasift.dropwizard.zookeeper.health;
+
+import com.codahale.metrics.health.HealthCheck;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests {@link ZooKeeperHealthCheck}.
+ */
+public class ZooKeeperHealthCheckTest {
+
+    @Test
+    public void reportsResultOfMonitor() {
+        final ZooKeeperHealthMonitor monitor = mock(ZooKeeperHealthMonitor.class);
+        when(monitor.getResult()).thenReturn(HealthCheck.Result.unhealthy("Client disconnected"));
+
+        final HealthCheck.Result result = new ZooKeeperHealthCheck(monitor).execute();
+        assertThat("is unhealthy", result.isHealthy(), is(false));
+        assertThat("reports monitor's message", result.getMessage(), is("Client disconnected"));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void checksClientDirectlyWithoutMonitor() throws Exception {
+        final ZooKeeper client = mock(ZooKeeper.class);
+        when(client.getState()).thenReturn(ZooKeeper.States.CONNECTED);
+        when(client.exists("/test", false)).thenReturn(new Stat());
+
+        assertThat("is healthy when namespace exists",
+                new ZooKeeperHealthCheck(client, "/test").execute().isHealthy(),
+                is(true));
+        assertThat("is unhealthy when namespace is missing",
+                new ZooKeeperHealthCheck(client, "/missing").execute().isHealthy(),
+                is(false));
+
+        when(client.getState()).thenReturn(ZooKeeper.States.CONNECTING);
+        assertThat("is unhealthy when not connected",
+                new ZooKeeperHealthCheck(client, "/test").execute().isHealthy(),
+                is(false));
+    }
+}
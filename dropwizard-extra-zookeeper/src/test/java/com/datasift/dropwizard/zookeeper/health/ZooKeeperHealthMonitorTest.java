@@ -0,0 +1,153 @@
+package com.datasift.dropwizard.zookeeper.health;
+
+import com.codahale.metrics.health.HealthCheck;
+import com.google.common.base.Suppliers;
+import io.dropwizard.util.Duration;
+import org.apache.zookeeper.AsyncCallback;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests {@link ZooKeeperHealthMonitor}.
+ */
+public class ZooKeeperHealthMonitorTest {
+
+    private static final Duration TIMEOUT = Duration.seconds(5);
+
+    private final ZooKeeper client = mock(ZooKeeper.class);
+    private ScheduledExecutorService executor;
+    private ZooKeeperHealthMonitor monitor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        monitor = new ZooKeeperHealthMonitor(Suppliers.ofInstance(client), "/test", executor,
+                Duration.milliseconds(20), Duration.milliseconds(50));
+        when(client.getState()).thenReturn(ZooKeeper.States.CONNECTED);
+    }
+
+    @After
+    public void tearDown() {
+        monitor.stop();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void isUnhealthyBeforeFirstProbe() {
+        assertThat("not healthy before probing", monitor.getResult().isHealthy(), is(false));
+    }
+
+    @Test
+    public void isHealthyWhenNamespaceExists() throws Exception {
+        respondWith(KeeperException.Code.OK);
+        monitor.start();
+
+        awaitHealthy(true);
+        assertThat("reports age of result",
+                monitor.getResult().getMessage(),
+                containsString("checked"));
+    }
+
+    @Test
+    public void isUnhealthyWhenNamespaceIsMissing() throws Exception {
+        respondWith(KeeperException.Code.NONODE);
+        monitor.start();
+
+        awaitMessage("Root namespace does not exist");
+    }
+
+    @Test
+    public void isUnhealthyWhenProbeTimesOut() throws Exception {
+        monitor.start();
+
+        awaitMessage("Probe timed out");
+    }
+
+    @Test
+    public void isUnhealthyWhenNotConnected() throws Exception {
+        when(client.getState()).thenReturn(ZooKeeper.States.CONNECTING);
+        monitor.start();
+
+        awaitMessage("Client not connected");
+        verify(client, never())
+                .exists(anyString(), anyBoolean(), any(AsyncCallback.StatCallback.class), any());
+    }
+
+    @Test
+    public void isUnhealthyWhenDisconnected() throws Exception {
+        respondWith(KeeperException.Code.OK);
+        monitor.start();
+        awaitHealthy(true);
+        monitor.stop();
+
+        monitor.process(stateEvent(Watcher.Event.KeeperState.Disconnected));
+
+        assertThat("unhealthy once disconnected", monitor.getResult().isHealthy(), is(false));
+    }
+
+    @Test
+    public void countsSessionExpiries() {
+        monitor.process(stateEvent(Watcher.Event.KeeperState.Expired));
+        monitor.process(stateEvent(Watcher.Event.KeeperState.Expired));
+
+        assertThat("counts expiries", monitor.getSessionExpiries(), is(2L));
+        assertThat("reports expiries",
+                monitor.getResult().getMessage(),
+                containsString("2 session expiries"));
+        assertThat("unhealthy once expired", monitor.getResult().isHealthy(), is(false));
+    }
+
+    private void respondWith(final KeeperException.Code code) {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                final Object[] args = invocation.getArguments();
+                ((AsyncCallback.StatCallback) args[2])
+                        .processResult(code.intValue(), (String) args[0], args[3], new Stat());
+                return null;
+            }
+        }).when(client).exists(eq("/test"), eq(false),
+                any(AsyncCallback.StatCallback.class), any());
+    }
+
+    private static WatchedEvent stateEvent(final Watcher.Event.KeeperState state) {
+        return new WatchedEvent(Watcher.Event.EventType.None, state, null);
+    }
+
+    private void awaitHealthy(final boolean healthy) throws InterruptedException {
+        final long deadline = System.nanoTime() + TIMEOUT.toNanoseconds();
+        while (monitor.getResult().isHealthy() != healthy) {
+            assertThat("result arrives within timeout", System.nanoTime() < deadline, is(true));
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+    }
+
+    private void awaitMessage(final String message) throws InterruptedException {
+        final long deadline = System.nanoTime() + TIMEOUT.toNanoseconds();
+        HealthCheck.Result result = monitor.getResult();
+        while (!result.getMessage().startsWith(message)) {
+            assertThat("result arrives within timeout", System.nanoTime() < deadline, is(true));
+            TimeUnit.MILLISECONDS.sleep(5);
+            result = monitor.getResult();
+        }
+        assertThat("is unhealthy", result.isHealthy(), is(false));
+    }
+}